@@ -0,0 +1,238 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.ucl.excites.sapelli.shared.compression.PresetDictionary;
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreSetter;
+import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.java.JavaSQLiteRecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Attachment;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.util.UnknownModelException;
+import uk.ac.ucl.excites.sapelli.transmission.TransmissionClient;
+import uk.ac.ucl.excites.sapelli.transmission.model.Correspondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.Payload;
+
+/**
+ * Minimal {@link TransmissionClient} which knows only the {@link Fixtures} model and (optionally) uses a
+ * {@link JavaSQLiteRecordStore} in the given folder.
+ */
+public class BenchmarkClient extends TransmissionClient
+{
+
+	static final String DATABASE_BASENAME = "Benchmark";
+	static private final int DATABASE_VERSION = 1;
+	
+	private final Fixtures fixtures;
+	private final File databaseFolder;
+	private PresetDictionary presetDictionary;
+	private byte[] payloadKey;
+	private boolean integerTimeStamps = false;
+	private boolean normalisedListColumns = false;
+	private boolean locationIndexes = false;
+	private boolean gridLocationIndexes = false;
+	
+	/**
+	 * Creates a client without RecordStore.
+	 * 
+	 * @param fixtures
+	 */
+	public BenchmarkClient(Fixtures fixtures)
+	{
+		this(fixtures, null);
+	}
+	
+	/**
+	 * @param fixtures
+	 * @param databaseFolder folder in which to create the SQLite database, may be {@code null} if no RecordStore will be used
+	 */
+	public BenchmarkClient(Fixtures fixtures, File databaseFolder)
+	{
+		this.fixtures = fixtures;
+		this.databaseFolder = databaseFolder;
+	}
+	
+	@Override
+	protected void createAndSetRecordStore(StoreSetter<RecordStore> setter) throws DBException
+	{
+		if(databaseFolder == null)
+			throw new DBException("This client has no database folder.");
+		setter.setAndInitialise(new JavaSQLiteRecordStore(this, databaseFolder, DATABASE_BASENAME, DATABASE_VERSION, null, integerTimeStamps, normalisedListColumns, locationIndexes)
+		{
+			@Override
+			protected boolean isRTreeSupported()
+			{
+				return !gridLocationIndexes && super.isRTreeSupported();
+			}
+		});
+	}
+	
+	/**
+	 * Must be called before the RecordStore is first used.
+	 * 
+	 * @param integerTimeStamps whether or not the RecordStore should store TimeStamps as INTEGERs rather than as Strings
+	 */
+	public void setIntegerTimeStamps(boolean integerTimeStamps)
+	{
+		this.integerTimeStamps = integerTimeStamps;
+	}
+	
+	/**
+	 * Must be called before the RecordStore is first used.
+	 * 
+	 * @param normalisedListColumns whether or not the RecordStore should also store the elements of ListColumns in normalised side tables
+	 */
+	public void setNormalisedListColumns(boolean normalisedListColumns)
+	{
+		this.normalisedListColumns = normalisedListColumns;
+	}
+	
+	/**
+	 * Must be called before the RecordStore is first used.
+	 * 
+	 * @param locationIndexes whether or not the RecordStore should add a spatial index to each LocationColumn
+	 */
+	public void setLocationIndexes(boolean locationIndexes)
+	{
+		this.locationIndexes = locationIndexes;
+	}
+	
+	/**
+	 * Must be called before the RecordStore is first used.
+	 * 
+	 * @param gridLocationIndexes whether or not the RecordStore should use grid-based location indexes even if the SQLite library supports R*Trees
+	 */
+	public void setGridLocationIndexes(boolean gridLocationIndexes)
+	{
+		this.gridLocationIndexes = gridLocationIndexes;
+	}
+
+	@Override
+	public List<? extends Attachment> getRecordAttachments(Record record)
+	{
+		return Collections.<Attachment> emptyList();
+	}
+
+	@Override
+	protected Model getClientModel(long modelID)
+	{
+		return modelID == fixtures.model.getID() ? fixtures.model : null;
+	}
+
+	@Override
+	protected void serialiseClientModel(Model model, OutputStream out) throws IOException, UnknownModelException
+	{
+		throw new UnknownModelException(model.getID(), model.getName());
+	}
+
+	@Override
+	protected Model deserialiseClientModel(byte kind, InputStream in) throws Exception
+	{
+		return null;
+	}
+
+	@Override
+	public Schema getSchemaV1(int schemaID, int schemaVersion) throws UnknownModelException
+	{
+		throw new UnknownModelException(schemaID, schemaVersion);
+	}
+
+	/**
+	 * @param presetDictionary the preset dictionary to use for the {@link Fixtures} model, may be {@code null}
+	 */
+	public void setPresetDictionary(PresetDictionary presetDictionary)
+	{
+		this.presetDictionary = presetDictionary;
+	}
+	
+	@Override
+	public PresetDictionary getPresetDictionary(Model model)
+	{
+		return model == fixtures.model ? presetDictionary : null;
+	}
+	
+	@Override
+	public PresetDictionary getPresetDictionary(Model model, int dictionaryID)
+	{
+		return model == fixtures.model && presetDictionary != null && presetDictionary.getID() == dictionaryID ? presetDictionary : null;
+	}
+	
+	/**
+	 * @param payloadKey the key to encrypt records of the {@link Fixtures} model with (for all receivers), may be {@code null}
+	 */
+	public void setPayloadKey(byte[] payloadKey)
+	{
+		this.payloadKey = payloadKey;
+	}
+	
+	@Override
+	public boolean isPayloadEncryptionRequired(Model model, Correspondent receiver)
+	{
+		return model == fixtures.model && payloadKey != null;
+	}
+	
+	@Override
+	public byte[] getPayloadKey(Model model)
+	{
+		return model == fixtures.model ? payloadKey : null;
+	}
+	
+	@Override
+	public Payload createCustomPayload(int nonBuiltinType)
+	{
+		return null;
+	}
+
+	@Override
+	public List<Correspondent> getReceiversFor(Schema schema)
+	{
+		return Collections.<Correspondent> emptyList();
+	}
+
+	@Override
+	public void logError(String msg, Throwable throwable)
+	{
+		System.err.println("ERROR@" + getClass().getSimpleName() + ":" + msg);
+		if(throwable != null)
+			throwable.printStackTrace(System.err);
+	}
+
+	@Override
+	public void logWarning(String msg)
+	{
+		System.err.println("WARNING@" + getClass().getSimpleName() + ":" + msg);
+	}
+
+	@Override
+	public void logInfo(String msg)
+	{
+		// ignore (keep benchmark output clean)
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
+import uk.ac.ucl.excites.sapelli.shared.io.BitArrayInputStream;
+import uk.ac.ucl.excites.sapelli.shared.io.BitArrayOutputStream;
+import uk.ac.ucl.excites.sapelli.shared.io.BitInputStream;
+import uk.ac.ucl.excites.sapelli.shared.io.BitOutputStream;
+
+/**
+ * Benchmarks {@link BitOutputStream} and {@link BitInputStream} (through their in-memory {@link BitArrayOutputStream} and
+ * {@link BitArrayInputStream} implementations) with a mix of unaligned writes/reads like those done when records are encoded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitStreamBenchmark
+{
+
+	static private final int NUMBER_OF_VALUES = 1000;
+	static private final int INT_SIZE = 21; // bits
+	static private final String STRING_VALUE = "Sapelli";
+	
+	private final long[] values = new long[NUMBER_OF_VALUES];
+	private BitArray bits;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		Random random = new Random(Fixtures.RANDOM_SEED);
+		for(int i = 0; i < NUMBER_OF_VALUES; i++)
+			values[i] = random.nextInt(1 << INT_SIZE);
+		bits = write();
+	}
+	
+	@Benchmark
+	public BitArray write() throws IOException
+	{
+		BitArrayOutputStream out = new BitArrayOutputStream();
+		for(int i = 0; i < NUMBER_OF_VALUES; i++)
+		{
+			out.write((i & 1) == 0);					// 1 bit
+			out.write(values[i], INT_SIZE, false);		// unaligned integer
+			if(i % 10 == 0)
+			{
+				out.write(values[i]);					// 64 bit long
+				out.write(STRING_VALUE);				// UTF-8 bytes
+			}
+		}
+		out.close();
+		return out.toBitArray();
+	}
+	
+	@Benchmark
+	public long read() throws IOException
+	{
+		long checksum = 0;
+		BitInputStream in = new BitArrayInputStream(bits);
+		for(int i = 0; i < NUMBER_OF_VALUES; i++)
+		{
+			if(in.readBit())
+				checksum++;
+			checksum += in.readInteger(INT_SIZE, false);
+			if(i % 10 == 0)
+			{
+				checksum += in.readLong();
+				checksum += in.readString(STRING_VALUE.length()).length();
+			}
+		}
+		in.close();
+		return checksum;
+	}
+	
+}
@@ -0,0 +1,172 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.crypto.CRC16Digest;
+import uk.ac.ucl.excites.sapelli.shared.crypto.Hashing;
+import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
+import uk.ac.ucl.excites.sapelli.shared.io.BitArrayOutputStream;
+import uk.ac.ucl.excites.sapelli.shared.io.CRC16BitArrayOutputStream;
+
+/**
+ * Benchmarks the slicing-by-8 {@link CRC16Digest} against the byte-at-a-time algorithm it replaced, and hashing of
+ * serialised payload bits via {@link BitArray#toByteArray()} against {@link Hashing#getCRC16Hash(BitArray)} and
+ * hashing-while-writing with a {@link CRC16BitArrayOutputStream}.
+ * 
+ * The setup verifies, on random inputs, slices and incremental splits, that all methods produce the same hash.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CRC16Benchmark
+{
+
+	static private final int VERIFICATION_ROUNDS = 2000;
+	
+	@Param({ "16", "140", "4096" })
+	public int size; // bytes
+	
+	private byte[] data;
+	private BitArray bits;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		Random random = new Random(Fixtures.RANDOM_SEED);
+		verify(random);
+		data = new byte[size];
+		random.nextBytes(data);
+		bits = writeBits(new BitArrayOutputStream(), data, size * Byte.SIZE - 3).toBitArray(); // non-byte-aligned, like most payloads
+	}
+	
+	/**
+	 * Reference implementation: the byte-at-a-time algorithm previously used by {@link CRC16Digest}.
+	 */
+	static private int ReferenceCRC16(int crc, byte[] input, int offset, int len)
+	{
+		for(int b = offset; b < offset + len; b++)
+			crc = (crc >>> 8) ^ CRC16Digest.CRC16_TABLE[(crc ^ input[b]) & 0xff];
+		return crc;
+	}
+	
+	static private BitArrayOutputStream writeBits(BitArrayOutputStream out, byte[] source, int numberOfBits) throws IOException
+	{
+		for(int i = 0; i < numberOfBits; i++)
+			out.write(((source[i / Byte.SIZE] >>> (Byte.SIZE - 1 - i % Byte.SIZE)) & 1) == 1);
+		out.close();
+		return out;
+	}
+	
+	static private void verify(Random random) throws IOException
+	{
+		for(int r = 0; r < VERIFICATION_ROUNDS; r++)
+		{
+			byte[] input = new byte[random.nextInt(300)];
+			random.nextBytes(input);
+			
+			// Whole array & random slice:
+			Check(ReferenceCRC16(CRC16Digest.INITIAL_VALUE, input, 0, input.length), Hashing.getCRC16Hash(input), "whole array");
+			int offset = input.length == 0 ? 0 : random.nextInt(input.length);
+			int len = random.nextInt(input.length - offset + 1);
+			Check(ReferenceCRC16(CRC16Digest.INITIAL_VALUE, input, offset, len), CRC16Digest.Update(CRC16Digest.INITIAL_VALUE, input, offset, len), "slice");
+			
+			// MessageDigest with incremental updates (slice, single byte, rest):
+			CRC16Digest digest = new CRC16Digest();
+			int split = random.nextInt(input.length + 1);
+			digest.update(input, 0, split);
+			if(split < input.length)
+			{
+				digest.update(input[split]);
+				digest.update(input, split + 1, input.length - split - 1);
+			}
+			Check(ReferenceCRC16(CRC16Digest.INITIAL_VALUE, input, 0, input.length), digest.getValue(), "incremental digest");
+			
+			// Bits (not necessarily byte-aligned):
+			int numberOfBits = random.nextInt(input.length * Byte.SIZE + 1);
+			BitArray inputBits = writeBits(new BitArrayOutputStream(), input, numberOfBits).toBitArray();
+			int expected = Hashing.getCRC16Hash(inputBits.toByteArray());
+			CRC16BitArrayOutputStream crcOut = (CRC16BitArrayOutputStream) writeBits(new CRC16BitArrayOutputStream(), input, numberOfBits);
+			Check(expected, crcOut.getCRC16(), "streaming bits");
+			Check(expected, Hashing.getCRC16Hash(inputBits), "BitArray");
+		}
+	}
+	
+	static private void Check(int expected, int actual, String what)
+	{
+		if(expected != actual)
+			throw new IllegalStateException("CRC16 mismatch (" + what + "): expected " + expected + ", got " + actual);
+	}
+	
+	@Benchmark
+	public int byteAtATime()
+	{
+		return ReferenceCRC16(CRC16Digest.INITIAL_VALUE, data, 0, data.length);
+	}
+	
+	@Benchmark
+	public int slicingBy8()
+	{
+		return Hashing.getCRC16Hash(data);
+	}
+	
+	@Benchmark
+	public int hashBitsViaByteArray()
+	{
+		return Hashing.getCRC16Hash(bits.toByteArray());
+	}
+	
+	@Benchmark
+	public int hashBitArray()
+	{
+		return Hashing.getCRC16Hash(bits);
+	}
+	
+	@Benchmark
+	public int writeThenHash() throws IOException
+	{
+		return Hashing.getCRC16Hash(writeBits(new BitArrayOutputStream(), data, bits.length()).toBitArray().toByteArray());
+	}
+	
+	@Benchmark
+	public int hashWhileWriting() throws IOException
+	{
+		return ((CRC16BitArrayOutputStream) writeBits(new CRC16BitArrayOutputStream(), data, bits.length())).getCRC16();
+	}
+	
+}
@@ -0,0 +1,84 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.storage.eximport.ExportResult;
+import uk.ac.ucl.excites.sapelli.storage.eximport.csv.CSVRecordsExporter;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+
+/**
+ * Benchmarks exporting records to a CSV file (in a temporary folder) using the {@link CSVRecordsExporter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVExportBenchmark
+{
+
+	@Param({ "100", "1000" })
+	public int numberOfRecords;
+	
+	private List<Record> records;
+	private File exportFolder;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		records = new Fixtures().createRecords(numberOfRecords);
+		exportFolder = Fixtures.CreateTempFolder("sapelli-benchmark-csv");
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		FileUtils.deleteQuietly(exportFolder);
+	}
+	
+	@Benchmark
+	public ExportResult export()
+	{
+		ExportResult result = new CSVRecordsExporter(exportFolder).export(records, "Benchmark");
+		if(!result.wasSuccessful())
+			throw new IllegalStateException("Export failed", result.getFailureReason());
+		return result;
+	}
+	
+}
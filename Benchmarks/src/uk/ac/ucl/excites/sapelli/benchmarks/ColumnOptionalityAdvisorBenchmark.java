@@ -0,0 +1,192 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.collector.model.Field;
+import uk.ac.ucl.excites.sapelli.collector.model.Form;
+import uk.ac.ucl.excites.sapelli.collector.model.Project;
+import uk.ac.ucl.excites.sapelli.collector.model.Trigger;
+import uk.ac.ucl.excites.sapelli.collector.model.fields.ButtonField;
+import uk.ac.ucl.excites.sapelli.collector.model.fields.ChoiceField;
+import uk.ac.ucl.excites.sapelli.collector.model.fields.EndField;
+import uk.ac.ucl.excites.sapelli.collector.model.fields.Page;
+import uk.ac.ucl.excites.sapelli.collector.model.fields.TextBoxField;
+import uk.ac.ucl.excites.sapelli.collector.util.ColumnOptionalityAdvisor;
+
+/**
+ * Benchmarks the detection of by-passable fields by {@link ColumnOptionalityAdvisor}, using randomly generated forms
+ * with choice trees, jumps (including backwards ones, creating loops), pages, buttons, triggers and hidden fields.
+ * 
+ * Before benchmarking, the setup verifies on a corpus of generated forms that {@link ColumnOptionalityAdvisor#Analyse(Form)}
+ * gives the same results as {@link ColumnOptionalityAdvisor#AnalyseByPathEnumeration(Form)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColumnOptionalityAdvisorBenchmark
+{
+
+	static private final int VERIFICATION_CORPUS_SIZE = 500;
+	static private final int VERIFICATION_MAX_FIELDS = 14;
+	
+	/**
+	 * Generates a random form.
+	 * 
+	 * @param random
+	 * @param projectID
+	 * @param numberOfFields number of top-level fields (excluding EndFields)
+	 * @return
+	 */
+	static public Form GenerateForm(Random random, int projectID, int numberOfFields)
+	{
+		Project project = new Project(projectID, "Generated" + projectID, null, "1.0", random.nextInt());
+		Form form = new Form(project, "Form");
+		List<Field> jumpTargets = new ArrayList<Field>();
+		List<Field> jumpSources = new ArrayList<Field>();
+		for(int f = 0; f < numberOfFields; f++)
+		{
+			String id = "F" + f;
+			Field field;
+			switch(random.nextInt(5))
+			{
+				case 0 :
+				case 1 :
+					field = new TextBoxField(form, id, id);
+					break;
+				case 2 :
+					ChoiceField root = new ChoiceField(form, id, null, null, id);
+					int children = 1 + random.nextInt(3);
+					for(int c = 0; c < children; c++)
+					{
+						ChoiceField child = new ChoiceField(form, null, "v" + c, root, null);
+						if(random.nextBoolean())
+							for(int g = 0; g < 2; g++)
+								jumpSources.add(new ChoiceField(form, null, "v" + g, child, null));
+						else
+							jumpSources.add(child);
+					}
+					field = root;
+					break;
+				case 3 :
+					field = new ButtonField(form, id, id);
+					jumpSources.add(field);
+					break;
+				default :
+					Page page = new Page(form, id);
+					int onPage = 1 + random.nextInt(3);
+					for(int p = 0; p < onPage; p++)
+					{
+						Field fieldOnPage = random.nextInt(3) == 0 ? new ButtonField(form, id + "." + p, id + "." + p) : new TextBoxField(form, id + "." + p, id + "." + p);
+						if(fieldOnPage instanceof ButtonField)
+							jumpSources.add(fieldOnPage);
+						fieldOnPage.setOptional(random.nextInt(3) == 0);
+						page.addField(fieldOnPage);
+					}
+					field = page;
+					break;
+			}
+			field.setOptional(random.nextInt(4) == 0);
+			if(random.nextInt(10) == 0)
+				field.setShowOnCreate(false);
+			form.addField(field);
+			jumpTargets.add(field);
+			if(!(field instanceof ChoiceField) && random.nextInt(4) == 0)
+				jumpSources.add(field);
+		}
+		// End fields:
+		EndField save = new EndField(form, true, Form.Next.LOOPFORM);
+		EndField cancel = new EndField(form, false, Form.Next.LOOPFORM);
+		if(random.nextBoolean())
+			form.addField(save);
+		jumpTargets.add(save);
+		jumpTargets.add(cancel);
+		// Jumps:
+		for(Field source : jumpSources)
+		{
+			Field target = jumpTargets.get(random.nextInt(jumpTargets.size()));
+			if(source.getJump() == null && target != source && random.nextInt(3) != 0)
+				source.setJump(target);
+		}
+		// Form trigger:
+		if(random.nextInt(4) == 0)
+		{
+			Trigger trigger = new Trigger();
+			trigger.setJump(jumpTargets.get(random.nextInt(jumpTargets.size())));
+			form.addTrigger(trigger);
+		}
+		form.setStartField(form.getFields().get(0));
+		return form;
+	}
+	
+	@Param({ "10", "16", "32" })
+	public int numberOfFields;
+	
+	private Form form;
+	
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(Fixtures.RANDOM_SEED);
+		
+		// Verify results are identical on a corpus of generated forms:
+		for(int i = 0; i < VERIFICATION_CORPUS_SIZE; i++)
+		{
+			Form generated = GenerateForm(random, i, 1 + random.nextInt(VERIFICATION_MAX_FIELDS));
+			if(!ColumnOptionalityAdvisor.Analyse(generated).getIDsOfByPassableNonOptionalFieldsWithColumn().equals(
+				ColumnOptionalityAdvisor.AnalyseByPathEnumeration(generated).getIDsOfByPassableNonOptionalFieldsWithColumn()))
+				throw new IllegalStateException("Results differ for generated form #" + i);
+		}
+		
+		// Form to analyse in the benchmarks:
+		form = GenerateForm(random, VERIFICATION_CORPUS_SIZE, numberOfFields);
+	}
+	
+	@Benchmark
+	public ColumnOptionalityAdvisor graph()
+	{
+		return ColumnOptionalityAdvisor.Analyse(form);
+	}
+	
+	@Benchmark
+	public ColumnOptionalityAdvisor pathEnumeration()
+	{
+		return ColumnOptionalityAdvisor.AnalyseByPathEnumeration(form);
+	}
+	
+}
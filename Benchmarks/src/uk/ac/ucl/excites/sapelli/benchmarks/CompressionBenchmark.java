@@ -0,0 +1,171 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.compression.Compressor;
+import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory;
+import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory.Compression;
+import uk.ac.ucl.excites.sapelli.shared.io.BitArrayOutputStream;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.transmission.model.Payload;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+
+/**
+ * Benchmarks compression and decompression of encoded records, per {@link Compression} mode (to new byte arrays
+ * and into reused {@link ByteBuffer}s) and through {@link Payload#Compress(byte[], Compression[])} with the modes
+ * tried by {@link RecordsPayload}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark
+{
+
+	static private final int NUMBER_OF_RECORDS = 50;
+	
+	static private byte[] EncodeRecords() throws IOException
+	{
+		BitArrayOutputStream out = new BitArrayOutputStream();
+		for(Record record : new Fixtures().createRecords(NUMBER_OF_RECORDS))
+			record.writeToBitStream(out, false);
+		out.close();
+		return out.toBitArray().toByteArray();
+	}
+	
+	/**
+	 * Gives access to the protected static compression methods of {@link Payload}.
+	 */
+	static private final class CompressionAccessor extends RecordsPayload
+	{
+		
+		static byte[][] CompressWithRecordsPayloadModes(byte[] data) throws IOException
+		{
+			return Compress(data, COMPRESSION_MODES);
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	static public class ModeState
+	{
+		
+		@Param({ "DEFLATE", "GZIP", "LZMA", "LZMA2", "BZIP2" })
+		public Compression mode;
+		
+		private byte[] data;
+		private byte[] compressedData;
+		private Compressor compressor;
+		private ByteBuffer buffer;
+		
+		@Setup
+		public void setup() throws IOException
+		{
+			data = EncodeRecords();
+			compressor = CompressorFactory.getCompressor(mode);
+			compressedData = compressor.compress(data);
+			buffer = ByteBuffer.allocate(data.length * 2);
+			
+			// Verify round trips (repeatedly, to exercise reuse of pooled coders):
+			for(int i = 0; i < 3; i++)
+			{
+				if(!Arrays.equals(data, compressor.decompress(compressor.compress(data))))
+					throw new IllegalStateException(mode + ": decompressed data does not match input data");
+				buffer.clear();
+				compressor.compress(data, 0, data.length, buffer);
+				buffer.flip();
+				byte[] compressedInBuffer = new byte[buffer.remaining()];
+				buffer.get(compressedInBuffer);
+				buffer.clear();
+				int length = compressor.decompress(compressedInBuffer, 0, compressedInBuffer.length, buffer);
+				if(length != data.length || !Arrays.equals(data, Arrays.copyOf(buffer.array(), length)))
+					throw new IllegalStateException(mode + ": decompressed buffer does not match input data");
+			}
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	static public class PayloadState
+	{
+		
+		private byte[] data;
+		
+		@Setup
+		public void setup() throws IOException
+		{
+			data = EncodeRecords();
+		}
+		
+	}
+	
+	@Benchmark
+	public byte[] compress(ModeState state) throws IOException
+	{
+		return state.compressor.compress(state.data);
+	}
+	
+	@Benchmark
+	public byte[] decompress(ModeState state) throws IOException
+	{
+		return state.compressor.decompress(state.compressedData);
+	}
+	
+	@Benchmark
+	public int compressIntoBuffer(ModeState state) throws IOException
+	{
+		state.buffer.clear();
+		return state.compressor.compress(state.data, 0, state.data.length, state.buffer);
+	}
+	
+	@Benchmark
+	public int decompressIntoBuffer(ModeState state) throws IOException
+	{
+		state.buffer.clear();
+		return state.compressor.decompress(state.compressedData, 0, state.compressedData.length, state.buffer);
+	}
+	
+	/**
+	 * Compresses the data with all modes {@link RecordsPayload} chooses from.
+	 */
+	@Benchmark
+	public byte[][] payloadCompress(PayloadState state) throws IOException
+	{
+		return CompressionAccessor.CompressWithRecordsPayloadModes(state.data);
+	}
+	
+}
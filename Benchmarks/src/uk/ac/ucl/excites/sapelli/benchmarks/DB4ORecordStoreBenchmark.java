@@ -0,0 +1,164 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.storage.db.db4o.DB4ORecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
+import uk.ac.ucl.excites.sapelli.storage.queries.Order;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.AndConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.sources.Source;
+
+/**
+ * Benchmarks retrieving records from a {@link DB4ORecordStore}, with and without the use of its indexes,
+ * using a database file in a temporary folder.
+ * 
+ * On Java 9 and later DB4O needs reflective access to JDK internals, which must be granted by passing
+ * {@code --add-opens} options for (at least) the {@code java.lang}, {@code java.util} and {@code java.util.concurrent(.atomic/.locks)}
+ * packages of {@code java.base} to the forked JVM (using {@code -jvmArgsAppend}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DB4ORecordStoreBenchmark
+{
+	
+	@State(Scope.Thread)
+	static public class RetrieveState
+	{
+		
+		@Param({ "false", "true" })
+		public boolean useIndexes;
+		
+		@Param({ "2000" })
+		public int numberOfRecords;
+		
+		/**
+		 * Number of records selected by each range query
+		 */
+		static private final int RANGE_SIZE = 20;
+		static private final int LIMIT = 10;
+		
+		private Fixtures fixtures;
+		private File folder;
+		private DB4ORecordStore recordStore;
+		private RecordReference[] references;
+		private RecordsQuery[] rangeQueries;
+		private RecordsQuery latestQuery;
+		private int next = 0;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			fixtures = new Fixtures();
+			folder = Fixtures.CreateTempFolder("sapelli-benchmark-db4o");
+			recordStore = new DB4ORecordStore(new BenchmarkClient(fixtures), folder, "Benchmark", useIndexes);
+			List<Record> records = fixtures.createRecords(numberOfRecords);
+			recordStore.store(records);
+			recordStore.startTransaction();
+			recordStore.commitTransaction(); // DB4O only commits explicitly
+			references = new RecordReference[numberOfRecords];
+			rangeQueries = new RecordsQuery[numberOfRecords - RANGE_SIZE];
+			for(int r = 0; r < numberOfRecords; r++)
+			{
+				references[r] = records.get(r).getReference();
+				if(r < rangeQueries.length)
+					rangeQueries[r] = new RecordsQuery(fixtures.schema, new AndConstraint(
+						new RuleConstraint(fixtures.colStartTime, RuleConstraint.Comparison.GREATER_OR_EQUAL, fixtures.colStartTime.retrieveValue(records.get(r))),
+						new RuleConstraint(fixtures.colStartTime, RuleConstraint.Comparison.SMALLER, fixtures.colStartTime.retrieveValue(records.get(r + RANGE_SIZE)))));
+			}
+			latestQuery = new RecordsQuery(Source.From(fixtures.schema), Order.DescendingBy(fixtures.colStartTime), LIMIT);
+		}
+		
+		public RecordReference nextReference()
+		{
+			RecordReference ref = references[next];
+			next = (next + 1) % references.length;
+			return ref;
+		}
+		
+		public RecordsQuery nextRangeQuery()
+		{
+			RecordsQuery query = rangeQueries[next];
+			next = (next + 1) % rangeQueries.length;
+			return query;
+		}
+		
+		@TearDown(Level.Trial)
+		public void close()
+		{
+			System.out.println();
+			System.out.println(recordStore.getMetrics().snapshot());
+			recordStore.close();
+			FileUtils.deleteQuietly(folder);
+		}
+		
+	}
+	
+	/**
+	 * Retrieves a single record by its primary key.
+	 */
+	@Benchmark
+	public Record retrieveByReference(RetrieveState state)
+	{
+		return state.recordStore.retrieveRecord(state.nextReference());
+	}
+	
+	/**
+	 * Retrieves the records with a StartTime in a given (narrow) range.
+	 */
+	@Benchmark
+	public List<Record> retrieveByRange(RetrieveState state)
+	{
+		return state.recordStore.retrieveRecords(state.nextRangeQuery());
+	}
+	
+	/**
+	 * Retrieves the most recent records.
+	 */
+	@Benchmark
+	public List<Record> retrieveLatest(RetrieveState state)
+	{
+		return state.recordStore.retrieveRecords(state.latestQuery);
+	}
+	
+}
@@ -0,0 +1,164 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.ucl.excites.sapelli.storage.StorageClient;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.BooleanColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.FloatColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.indexes.PrimaryKey;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
+import uk.ac.ucl.excites.sapelli.storage.types.LocationColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
+import uk.ac.ucl.excites.sapelli.transmission.TransmissionClient;
+
+/**
+ * Generated (i.e. not loaded from a project file) model, schema and records used by the benchmarks.
+ * 
+ * The schema resembles that of a typical Collector form (a timestamp + device ID primary key, a location,
+ * some numeric fields and a free-text field) and is flagged as exportable and transmittable. Records are
+ * generated from a fixed seed so every run (and every fork) works on identical data.
+ */
+public class Fixtures
+{
+
+	// STATICS-------------------------------------------------------
+	static public final long MODEL_ID = 1234;
+	static public final long RANDOM_SEED = 20160301L;
+	
+	static public final int SCHEMA_FLAGS = StorageClient.SCHEMA_FLAG_EXPORTABLE | TransmissionClient.SCHEMA_FLAG_TRANSMITTABLE;
+	
+	static private final long START_TIME_MS = 1456790400000L; // 2016-03-01T00:00:00Z
+	static private final long RECORD_INTERVAL_MS = 90 * 1000; // 1.5 minutes
+	static private final int NOTES_MAX_LENGTH_CHARS = 100;
+	static private final String[] WORDS = { "tree", "hut", "river", "elephant", "logging", "track", "camp", "trap", "fire", "water", "path", "medicinal", "plant", "damaged", "new", "old" };
+	
+	/**
+	 * @param prefix
+	 * @return a new, empty temporary folder
+	 * @throws IOException
+	 */
+	static public File CreateTempFolder(String prefix) throws IOException
+	{
+		File folder = File.createTempFile(prefix, "");
+		if(!folder.delete() || !folder.mkdirs())
+			throw new IOException("Could not create temporary folder: " + folder.getAbsolutePath());
+		return folder;
+	}
+	
+	// DYNAMICS------------------------------------------------------
+	public final Model model;
+	public final Schema schema;
+	public final TimeStampColumn colStartTime;
+	public final IntegerColumn colDeviceID;
+	public final LocationColumn colLocation;
+	public final IntegerColumn colCount;
+	public final FloatColumn colValue;
+	public final BooleanColumn colFlag;
+	public final StringColumn colNotes;
+	
+	private final Random random = new Random(RANDOM_SEED);
+	private long nextStartTimeMS = START_TIME_MS;
+	
+	public Fixtures()
+	{
+		this(false);
+	}
+	
+	/**
+	 * @param trackChanges whether or not the schema should (also) be flagged to have changes to its records tracked
+	 */
+	public Fixtures(boolean trackChanges)
+	{
+		model = new Model(MODEL_ID, "BenchmarkModel", SCHEMA_FLAGS | (trackChanges ? StorageClient.SCHEMA_FLAG_TRACK_CHANGES : 0));
+		schema = new Schema(model, "Observation");
+		colStartTime = schema.addColumn(TimeStampColumn.Century21("StartTime", false, false)); // keep MS, PK columns must be lossless
+		colDeviceID = schema.addColumn(new IntegerColumn("DeviceID", false, false, Integer.SIZE));
+		colLocation = schema.addColumn(new LocationColumn("Location", true, false, true, false, false, true, false, false));
+		colCount = schema.addColumn(new IntegerColumn("Count", false, 0, 1000));
+		colValue = schema.addColumn(new FloatColumn("Value", true, true, false));
+		colFlag = schema.addColumn(new BooleanColumn("Flag", false));
+		colNotes = schema.addColumn(StringColumn.ForCharacterCount("Notes", true, NOTES_MAX_LENGTH_CHARS));
+		schema.setPrimaryKey(PrimaryKey.WithColumnNames(colStartTime, colDeviceID), true /*seal!*/);
+		model.seal();
+	}
+	
+	/**
+	 * Generates a new record, with a primary key value which is unique within this Fixtures instance.
+	 * 
+	 * @return
+	 */
+	public Record createRecord()
+	{
+		Record record = schema.createRecord();
+		colStartTime.storeValue(record, new TimeStamp(nextStartTimeMS));
+		nextStartTimeMS += RECORD_INTERVAL_MS;
+		colDeviceID.storeValue(record, 1000000L + random.nextInt(4)); // a handful of devices
+		if(random.nextInt(10) > 0) // 10% without location
+			colLocation.storeValue(record, new Location(51.5 + random.nextDouble(), -0.1 - random.nextDouble(), 20.0 + random.nextInt(100), null, null, 5.0f + random.nextInt(20), (Long) null, Location.PROVIDER_GPS));
+		colCount.storeValue(record, (long) random.nextInt(1001));
+		if(random.nextBoolean())
+			colValue.storeValue(record, random.nextGaussian() * 100.0d);
+		colFlag.storeValue(record, random.nextBoolean());
+		colNotes.storeValue(record, createNotes());
+		return record;
+	}
+	
+	/**
+	 * @param count
+	 * @return a list of newly generated records
+	 */
+	public List<Record> createRecords(int count)
+	{
+		List<Record> records = new ArrayList<Record>(count);
+		for(int r = 0; r < count; r++)
+			records.add(createRecord());
+		return records;
+	}
+	
+	private String createNotes()
+	{
+		int words = random.nextInt(8); // 0 - 7 words
+		if(words == 0)
+			return null;
+		StringBuilder bldr = new StringBuilder();
+		for(int w = 0; w < words; w++)
+		{
+			String word = WORDS[random.nextInt(WORDS.length)];
+			if(bldr.length() + 1 + word.length() > NOTES_MAX_LENGTH_CHARS)
+				break;
+			if(w > 0)
+				bldr.append(' ');
+			bldr.append(word);
+		}
+		return bldr.toString();
+	}
+	
+}
@@ -0,0 +1,83 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.util.AsyncLogWriter.OverflowPolicy;
+import uk.ac.ucl.excites.sapelli.shared.util.Logger;
+
+/**
+ * Benchmarks the latency of {@link Logger#addLine(String...)} on the calling thread, for a synchronous and an asynchronous Logger.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark
+{
+
+	@Param({ "false", "true" })
+	public boolean asynchronous;
+	
+	private File folder;
+	private Logger logger;
+	private long counter = 0;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		folder = Fixtures.CreateTempFolder("sapelli-benchmark-log");
+		logger = asynchronous ?
+			new Logger(folder.getAbsolutePath(), "Benchmark", false, false, OverflowPolicy.BLOCK) :
+			new Logger(folder.getAbsolutePath(), "Benchmark", false, false);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		logger.close();
+		FileUtils.deleteQuietly(folder);
+	}
+	
+	@Benchmark
+	public void addLine()
+	{
+		logger.addLine("Received transmission", Long.toString(counter++), "parts: 3");
+	}
+	
+}
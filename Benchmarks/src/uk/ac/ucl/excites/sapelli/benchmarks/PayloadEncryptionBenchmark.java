@@ -0,0 +1,226 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.transmission.EncryptionSettings;
+import uk.ac.ucl.excites.sapelli.transmission.crypto.PayloadCipher;
+import uk.ac.ucl.excites.sapelli.transmission.crypto.SecureKeyGenerator;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyServer;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSCorrespondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinarySMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionCapacityExceededException;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionSendingException;
+
+/**
+ * Measures the cost of encrypting {@link RecordsPayload}s with a {@link PayloadCipher}.
+ * 
+ * The setup verifies that encrypted payloads can be decoded, that tampering with them (including stripping the encryption)
+ * is detected and that nonces are not reused, and reports the size overhead (including the number of binary SMS parts
+ * needed to send filled-up transmissions). The benchmarks
+ * time payload serialisation with and without encryption, and the encryption of a single payload body on its own,
+ * both with and without the JVM's hardware AES (and SHA) support, to simulate a CPU which lacks AES instructions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadEncryptionBenchmark
+{
+
+	static private final int TEST_RECORDS = 200;
+	
+	@Param({ "1", "10" })
+	public int recordsPerPayload;
+	
+	private BenchmarkClient plainClient;
+	private BenchmarkClient encryptingClient;
+	private GeoKeyServer server;
+	private SMSCorrespondent smsReceiver;
+	private PayloadCipher cipher;
+	private RecordsPayload plainPayload;
+	private RecordsPayload encryptedPayload;
+	private byte[] body;
+	private byte[] nonce;
+	private byte[] associatedData;
+	
+	@Setup
+	public void setup() throws Exception
+	{
+		Fixtures fixtures = new Fixtures();
+		plainClient = new BenchmarkClient(fixtures);
+		encryptingClient = new BenchmarkClient(fixtures);
+		encryptingClient.setPayloadKey(new SecureKeyGenerator(EncryptionSettings.DEFAULT_PASSWORD, 256).getKey());
+		server = new GeoKeyServer(1, "Benchmark", "http://localhost");
+		cipher = encryptingClient.getPayloadCipher(fixtures.model, server);
+		smsReceiver = new SMSCorrespondent("Benchmark", "+447700900123", true);
+		
+		List<Record> testRecords = fixtures.createRecords(TEST_RECORDS);
+		plainPayload = createPayload(plainClient, testRecords.subList(0, recordsPerPayload));
+		encryptedPayload = createPayload(encryptingClient, testRecords.subList(0, recordsPerPayload));
+		
+		// Verify round trip:
+		BitArray encryptedBits = encryptedPayload.serialise();
+		RecordsPayload received = receive(encryptingClient, encryptedBits);
+		if(received.hasDecodeException() || received.getNumberOfRecords() != recordsPerPayload)
+			throw new IllegalStateException("Encrypted payload could not be decoded", received.getDecodeException());
+		if(!received.getRecords().equals(receive(plainClient, plainPayload.serialise()).getRecords()))
+			throw new IllegalStateException("Encrypted payload decoded to different records");
+		
+		// Verify that a client which requires encryption rejects unencrypted payloads:
+		if(!receive(encryptingClient, plainPayload.serialise()).hasDecodeException())
+			throw new IllegalStateException("Unencrypted payload was accepted");
+		
+		// Verify that nonces are not reused:
+		Set<BitArray> encryptions = new HashSet<BitArray>();
+		for(int i = 0; i < 1000; i++)
+			if(!encryptions.add(encryptedPayload.serialise()))
+				throw new IllegalStateException("Same payload encrypted twice to identical bits");
+		
+		// Verify that flipping any bit after the format version (i.e. in the header, nonce, body or tag) is detected
+		//	(except those of the model ID, altering it is bound to be detected as it makes the model unknown):
+		for(int b = 2; b < encryptedBits.length(); b++)
+			if(b < 3 || b >= 3 + Model.MODEL_ID_SIZE)
+				checkTamperingDetected(encryptedBits, b);
+		
+		// Report:
+		int plainBits = plainPayload.serialise().length();
+		System.out.println();
+		System.out.println(String.format("Payload of %d record(s): %d bits without, %d bits with encryption (overhead: %d bits)", recordsPerPayload, plainBits, encryptedBits.length(), encryptedBits.length() - plainBits));
+		System.out.println(String.format("Binary SMS parts, filled transmissions: %d without, %d with encryption", countSMSParts(plainClient, testRecords), countSMSParts(encryptingClient, testRecords)));
+		
+		// Body for encryption-only benchmarks (about as large as the compressed records):
+		body = new byte[plainBits / Byte.SIZE];
+		nonce = cipher.newNonce();
+		associatedData = new byte[12];
+	}
+	
+	private RecordsPayload receive(BenchmarkClient client, BitArray payloadBits)
+	{
+		RecordsPayload received = new RecordsPayload();
+		new GeoKeyTransmission(client, server, received);
+		received.deserialise(payloadBits);
+		return received;
+	}
+	
+	private void checkTamperingDetected(BitArray payloadBits, int index)
+	{
+		BitArray tampered = BitArray.FromBytes(payloadBits.toByteArray(), payloadBits.length());
+		tampered.set(index, !tampered.get(index));
+		if(!receive(encryptingClient, tampered).hasDecodeException())
+			throw new IllegalStateException("Tampering with bit " + index + " was not detected");
+	}
+	
+	private RecordsPayload createPayload(BenchmarkClient client, List<Record> records) throws TransmissionSendingException
+	{
+		RecordsPayload payload = new RecordsPayload();
+		new GeoKeyTransmission(client, server, payload);
+		for(Record record : records)
+			payload.addRecord(record);
+		return payload;
+	}
+	
+	/**
+	 * Sends the given records in filled-up binary SMS transmissions and returns the total number of SMS parts needed.
+	 */
+	private int countSMSParts(BenchmarkClient client, List<Record> records) throws TransmissionSendingException
+	{
+		int parts = 0;
+		int r = 0;
+		while(r < records.size())
+		{
+			RecordsPayload payload = new RecordsPayload();
+			BinarySMSTransmission transmission = new BinarySMSTransmission(client, smsReceiver, payload);
+			try
+			{
+				while(r < records.size())
+				{
+					payload.addRecord(records.get(r));
+					r++;
+				}
+			}
+			catch(TransmissionCapacityExceededException full)
+			{
+				// transmission is full, record r goes in the next one
+			}
+			transmission.prepare();
+			parts += transmission.getTotalNumberOfParts();
+		}
+		return parts;
+	}
+	
+	@Benchmark
+	public BitArray serialiseWithoutEncryption() throws IOException, TransmissionCapacityExceededException
+	{
+		return plainPayload.serialise();
+	}
+	
+	@Benchmark
+	public BitArray serialiseWithEncryption() throws IOException, TransmissionCapacityExceededException
+	{
+		return encryptedPayload.serialise();
+	}
+	
+	@Benchmark
+	public byte[] encrypt() throws GeneralSecurityException
+	{
+		return cipher.encrypt(nonce, associatedData, body, 0, body.length);
+	}
+	
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = { "-XX:-UseAES", "-XX:-UseSHA" })
+	public byte[] encryptWithoutHardwareSupport() throws GeneralSecurityException
+	{
+		return cipher.encrypt(nonce, associatedData, body, 0, body.length);
+	}
+	
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = { "-XX:-UseAES", "-XX:-UseSHA" })
+	public BitArray serialiseWithEncryptionWithoutHardwareSupport() throws IOException, TransmissionCapacityExceededException
+	{
+		return encryptedPayload.serialise();
+	}
+	
+}
@@ -0,0 +1,198 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore;
+import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore.PendingSMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.InvalidMessageException;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSCorrespondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinaryMessage;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinarySMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.text.TextMessage;
+import uk.ac.ucl.excites.sapelli.transmission.protocol.sms.SMSClient;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionCapacityExceededException;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionSendingException;
+
+/**
+ * Benchmarks determining when resend requests are due for all incomplete incoming SMS transmissions, as
+ * {@link uk.ac.ucl.excites.sapelli.transmission.control.TransmissionController#scheduleSMSResendRequests()} does at boot.
+ * The {@code summaries} benchmark reads the {@link TransmissionStore#PENDING_SMS_TRANSMISSION_SCHEMA} records, the
+ * {@code materialising} benchmark retrieves the transmissions with all of their parts (as was done before).
+ * 
+ * Each incomplete transmission is filled to capacity, with one (random) part missing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PendingSMSTransmissionBenchmark implements StoreUser
+{
+	
+	@Param({ "10", "100" })
+	public int numberOfIncompleteTransmissions;
+	
+	private Fixtures fixtures;
+	private BenchmarkClient client;
+	private File folder;
+	private TransmissionStore transmissionStore;
+	private final Random random = new Random(Fixtures.RANDOM_SEED);
+	
+	private final List<BinaryMessage> parts = new ArrayList<BinaryMessage>();
+	private SMSCorrespondent sender;
+	
+	/**
+	 * "Sends" messages by turning them into received ones.
+	 */
+	private final SMSClient smsClient = new SMSClient()
+	{
+		
+		@Override
+		public boolean send(SMSCorrespondent receiver, BinaryMessage binarySMS) throws TransmissionSendingException
+		{
+			try
+			{
+				parts.add(new BinaryMessage(sender, binarySMS.getContent()));
+				return true;
+			}
+			catch(InvalidMessageException e)
+			{
+				throw new TransmissionSendingException("Could not convert message", e);
+			}
+		}
+		
+		@Override
+		public boolean send(SMSCorrespondent receiver, TextMessage textSMS) throws TransmissionSendingException
+		{
+			return false;
+		}
+		
+	};
+	
+	@Setup(Level.Trial)
+	public void open() throws Exception
+	{
+		SQLiteRecordStoreBenchmark.SetSQLiteLibraryPath();
+		fixtures = new Fixtures();
+		folder = Fixtures.CreateTempFolder("sapelli-benchmark-pending");
+		client = new BenchmarkClient(fixtures, folder);
+		transmissionStore = client.transmissionStoreHandle.getStore(this);
+		sender = new SMSCorrespondent("Sender", "+447700900123", true);
+		transmissionStore.store(sender);
+		
+		// Receive all but one part of each transmission:
+		for(int t = 0; t < numberOfIncompleteTransmissions; t++)
+		{
+			RecordsPayload payload = new RecordsPayload();
+			BinarySMSTransmission outgoing = new BinarySMSTransmission(client, new SMSCorrespondent("Receiver", "+447700900456", true), payload);
+			outgoing.setLocalID(t + 1);
+			try
+			{
+				for(Record record : fixtures.createRecords(200))
+					payload.addRecord(record);
+			}
+			catch(TransmissionCapacityExceededException full)
+			{
+				// transmission is full
+			}
+			outgoing.prepare();
+			parts.clear();
+			for(BinaryMessage outgoingPart : outgoing.getParts())
+				outgoingPart.send(smsClient); // sets header values and converts to received message
+			parts.remove(random.nextInt(parts.size()));
+			BinarySMSTransmission incoming = null;
+			for(BinaryMessage part : parts)
+			{
+				if(incoming == null)
+					incoming = new BinarySMSTransmission(client, part);
+				else
+					incoming.addPart(part);
+				transmissionStore.storeReceivedPart(incoming, part);
+			}
+		}
+		
+		// Check that both approaches give the same result:
+		Map<Integer, TimeStamp> expected = new HashMap<Integer, TimeStamp>();
+		for(SMSTransmission<?> incomplete : transmissionStore.retrieveIncompleteSMSTransmissions())
+			expected.put(incomplete.getLocalID(), incomplete.getNextResendRequestSendingTime());
+		Map<Integer, TimeStamp> actual = new HashMap<Integer, TimeStamp>();
+		for(PendingSMSTransmission pending : transmissionStore.retrievePendingSMSTransmissions())
+			actual.put(pending.getLocalID(), pending.getNextResendRequestSendingTime());
+		if(expected.size() != numberOfIncompleteTransmissions || !expected.equals(actual))
+			throw new IllegalStateException("Pending SMS transmission summaries do not match incomplete transmissions: " + actual + " vs. " + expected);
+	}
+	
+	@Benchmark
+	public int materialising()
+	{
+		int due = 0;
+		for(SMSTransmission<?> incomplete : transmissionStore.retrieveIncompleteSMSTransmissions())
+			if(incomplete.getNextResendRequestSendingTime() != null)
+				due++;
+		return due;
+	}
+	
+	@Benchmark
+	public int summaries()
+	{
+		int due = 0;
+		for(PendingSMSTransmission pending : transmissionStore.retrievePendingSMSTransmissions())
+			if(pending.getNextResendRequestSendingTime() != null)
+				due++;
+		return due;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close()
+	{
+		client.transmissionStoreHandle.doneUsing(this);
+		FileUtils.deleteQuietly(folder);
+	}
+	
+}
@@ -0,0 +1,178 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.compression.PresetDictionary;
+import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyServer;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSCorrespondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinarySMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionCapacityExceededException;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionSendingException;
+
+/**
+ * Measures the effect of a {@link PresetDictionary}, trained on the encoded records of previously sent
+ * {@link RecordsPayload}s, on the size of payloads with newly generated records.
+ * 
+ * The setup reports the payload sizes and the number of binary SMS parts needed to send the test records (both
+ * one record per transmission and in filled-up transmissions), with and without dictionary. The benchmarks time
+ * payload serialisation (which includes trying each compression mode) with and without dictionary.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PresetDictionaryBenchmark
+{
+
+	static private final int DICTIONARY_ID = 1;
+	static private final int TRAINING_PAYLOADS = 200;
+	static private final int TEST_RECORDS = 200;
+	
+	@Param({ "1", "5" })
+	public int recordsPerPayload;
+	
+	@Param({ "512", "2048" })
+	public int dictionarySize;
+	
+	private BenchmarkClient plainClient;
+	private BenchmarkClient dictionaryClient;
+	private GeoKeyServer server;
+	private SMSCorrespondent smsReceiver;
+	private RecordsPayload plainPayload;
+	private RecordsPayload dictionaryPayload;
+	
+	@Setup
+	public void setup() throws Exception
+	{
+		Fixtures fixtures = new Fixtures();
+		plainClient = new BenchmarkClient(fixtures);
+		dictionaryClient = new BenchmarkClient(fixtures);
+		server = new GeoKeyServer(1, "Benchmark", "http://localhost");
+		smsReceiver = new SMSCorrespondent("Benchmark", "+447700900123", true);
+		
+		// Train dictionary on previously "sent" payloads:
+		List<byte[]> samples = new ArrayList<byte[]>(TRAINING_PAYLOADS);
+		for(int p = 0; p < TRAINING_PAYLOADS; p++)
+			samples.add(createPayload(plainClient, fixtures.createRecords(recordsPerPayload)).getEncodedRecords());
+		PresetDictionary dictionary = PresetDictionary.Train(DICTIONARY_ID, samples, dictionarySize);
+		dictionaryClient.setPresetDictionary(dictionary);
+		
+		// Test on new records:
+		List<Record> testRecords = fixtures.createRecords(TEST_RECORDS);
+		plainPayload = createPayload(plainClient, testRecords.subList(0, recordsPerPayload));
+		dictionaryPayload = createPayload(dictionaryClient, testRecords.subList(0, recordsPerPayload));
+		
+		// Verify round trip:
+		RecordsPayload received = new RecordsPayload();
+		new GeoKeyTransmission(dictionaryClient, server, received);
+		received.deserialise(dictionaryPayload.serialise());
+		if(received.hasDecodeException() || received.getNumberOfRecords() != recordsPerPayload)
+			throw new IllegalStateException("Payload compressed with preset dictionary could not be decoded", received.getDecodeException());
+		
+		// Report:
+		long plainBits = 0, dictionaryBits = 0;
+		for(int r = 0; r + recordsPerPayload <= TEST_RECORDS; r += recordsPerPayload)
+		{
+			List<Record> records = testRecords.subList(r, r + recordsPerPayload);
+			plainBits += createPayload(plainClient, records).serialise().length();
+			dictionaryBits += createPayload(dictionaryClient, records).serialise().length();
+		}
+		System.out.println();
+		System.out.println("Dictionary: " + dictionary + "; trained on " + TRAINING_PAYLOADS + " payloads of " + recordsPerPayload + " record(s)");
+		System.out.println(String.format("Payloads of %d record(s): %d bits without, %d bits with dictionary (ratio: %.3f)", recordsPerPayload, plainBits, dictionaryBits, dictionaryBits / (double) plainBits));
+		System.out.println(String.format("Binary SMS parts, %d record(s) per transmission: %d without, %d with dictionary", recordsPerPayload, countSMSParts(plainClient, testRecords, recordsPerPayload), countSMSParts(dictionaryClient, testRecords, recordsPerPayload)));
+		System.out.println(String.format("Binary SMS parts, filled transmissions: %d without, %d with dictionary", countSMSParts(plainClient, testRecords, TEST_RECORDS), countSMSParts(dictionaryClient, testRecords, TEST_RECORDS)));
+	}
+	
+	private RecordsPayload createPayload(BenchmarkClient client, List<Record> records) throws TransmissionSendingException
+	{
+		RecordsPayload payload = new RecordsPayload();
+		new GeoKeyTransmission(client, server, payload);
+		for(Record record : records)
+			payload.addRecord(record);
+		return payload;
+	}
+	
+	/**
+	 * Sends the given records in binary SMS transmissions, each containing at most the given number of records
+	 * (fewer if the transmission is full), and returns the total number of SMS parts needed.
+	 */
+	private int countSMSParts(BenchmarkClient client, List<Record> records, int maxRecordsPerTransmission) throws TransmissionSendingException
+	{
+		int parts = 0;
+		int r = 0;
+		while(r < records.size())
+		{
+			RecordsPayload payload = new RecordsPayload();
+			BinarySMSTransmission transmission = new BinarySMSTransmission(client, smsReceiver, payload);
+			try
+			{
+				while(r < records.size() && payload.getNumberOfRecords() < maxRecordsPerTransmission)
+				{
+					payload.addRecord(records.get(r));
+					r++;
+				}
+			}
+			catch(TransmissionCapacityExceededException full)
+			{
+				// transmission is full, record r goes in the next one
+			}
+			transmission.prepare();
+			parts += transmission.getTotalNumberOfParts();
+		}
+		return parts;
+	}
+	
+	@Benchmark
+	public BitArray serialiseWithoutDictionary() throws IOException, TransmissionCapacityExceededException
+	{
+		return plainPayload.serialise();
+	}
+	
+	@Benchmark
+	public BitArray serialiseWithDictionary() throws IOException, TransmissionCapacityExceededException
+	{
+		return dictionaryPayload.serialise();
+	}
+	
+}
@@ -0,0 +1,255 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.collector.load.ProjectLoader;
+import uk.ac.ucl.excites.sapelli.collector.load.parse.ProjectParser;
+import uk.ac.ucl.excites.sapelli.collector.load.parse.ProjectXMLCache;
+import uk.ac.ucl.excites.sapelli.collector.model.Project;
+import uk.ac.ucl.excites.sapelli.shared.io.Unzipper;
+
+/**
+ * Benchmarks the two halves of loading a Sapelli file: parsing a generated PROJECT.xml without and with a
+ * {@link ProjectXMLCache} hit (in which case the recorded SAX events are replayed instead of re-reading the XML),
+ * and extracting a generated Sapelli file holding the XML and media files, sequentially from a stream and in
+ * parallel from the file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectLoadBenchmark
+{
+
+	static private final int FIELDS_PER_FORM = 30;
+	static private final int CHOICES_PER_FIELD = 8;
+	static private final int MEDIA_FILE_SIZE = 64 * 1024; // bytes
+	
+	/**
+	 * Writes a PROJECT.xml with the given number of forms, each with text, check, location and photo fields and choice
+	 * trees with an image for every choice.
+	 *
+	 * @param xmlFile
+	 * @param numberOfForms
+	 * @throws IOException
+	 */
+	static public void GenerateProjectXML(File xmlFile, int numberOfForms) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(xmlFile), "UTF-8");
+		try
+		{
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<SapelliCollectorProject id=\"1234\" name=\"Benchmark\" version=\"1.0\" format=\"2\" defaultLanguage=\"en\">\n");
+			for(int f = 0; f < numberOfForms; f++)
+			{
+				writer.write("\t<Form id=\"Form" + f + "\">\n");
+				for(int i = 0; i < FIELDS_PER_FORM; i++)
+				{
+					String id = "f" + f + "_" + i;
+					switch(i % 5)
+					{
+						case 0 :
+							writer.write("\t\t<Text id=\"" + id + "\" caption=\"Notes &amp; remarks " + i + "\" optional=\"true\" />\n");
+							break;
+						case 1 :
+							writer.write("\t\t<Check id=\"" + id + "\" caption=\"Confirmed " + i + "\" />\n");
+							break;
+						case 2 :
+							writer.write("\t\t<Location id=\"" + id + "\" type=\"Any\" startWithForm=\"false\" />\n");
+							break;
+						case 3 :
+							writer.write("\t\t<Photo id=\"" + id + "\" max=\"3\" />\n");
+							break;
+						default :
+							writer.write("\t\t<Choice id=\"" + id + "\" caption=\"Pick " + i + "\" rows=\"2\" cols=\"4\">\n");
+							for(int c = 0; c < CHOICES_PER_FIELD; c++)
+								writer.write("\t\t\t<Choice value=\"v" + c + "\" img=\"choice" + c + ".png\" caption=\"Option " + c + "\" />\n");
+							writer.write("\t\t</Choice>\n");
+					}
+				}
+				writer.write("\t</Form>\n");
+			}
+			writer.write("</SapelliCollectorProject>\n");
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class ParseState
+	{
+		
+		@Param({ "4", "15" }) // 15 = maximum number of data-producing forms
+		public int numberOfForms;
+		
+		public File folder;
+		public File xmlFile;
+		public ProjectParser uncachedParser;
+		public ProjectParser cachedParser;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			folder = Fixtures.CreateTempFolder("sapelli-benchmark-project");
+			xmlFile = new File(folder, ProjectLoader.PROJECT_FILE);
+			GenerateProjectXML(xmlFile, numberOfForms);
+			uncachedParser = new ProjectParser();
+			cachedParser = new ProjectParser(ProjectParser.DEFAULT_GENERATED_AUDIO_EXTENSION, new ProjectXMLCache());
+			cachedParser.parseProject(xmlFile); // fill the cache
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			FileUtils.deleteQuietly(folder);
+		}
+	
+	}
+	
+	@State(Scope.Thread)
+	public static class ExtractState
+	{
+		
+		@Param({ "20", "100" })
+		public int numberOfMediaFiles;
+		
+		public File folder;
+		public File sapelliFile;
+		public File extractionFolder;
+		
+		@Setup(Level.Trial)
+		public void setup() throws IOException
+		{
+			folder = Fixtures.CreateTempFolder("sapelli-benchmark-unzip");
+			File xmlFile = new File(folder, ProjectLoader.PROJECT_FILE);
+			GenerateProjectXML(xmlFile, 5);
+			
+			// Media files are random bytes with runs of zeros, so they compress a little, like images do:
+			Random random = new Random(Fixtures.RANDOM_SEED);
+			sapelliFile = new File(folder, "Benchmark.sapelli");
+			ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(sapelliFile));
+			try
+			{
+				zip.putNextEntry(new ZipEntry(ProjectLoader.PROJECT_FILE));
+				zip.write(FileUtils.readFileToByteArray(xmlFile));
+				zip.closeEntry();
+				zip.putNextEntry(new ZipEntry("img/")); // unzipping from a stream needs the folder entry
+				zip.closeEntry();
+				byte[] media = new byte[MEDIA_FILE_SIZE];
+				for(int m = 0; m < numberOfMediaFiles; m++)
+				{
+					random.nextBytes(media);
+					for(int b = 0; b < media.length; b += 64)
+						for(int z = b; z < b + 16; z++)
+							media[z] = 0;
+					zip.putNextEntry(new ZipEntry("img/media" + m + ".png"));
+					zip.write(media);
+					zip.closeEntry();
+				}
+			}
+			finally
+			{
+				zip.close();
+			}
+		}
+		
+		@Setup(Level.Invocation)
+		public void createExtractionFolder() throws IOException
+		{
+			extractionFolder = Fixtures.CreateTempFolder("sapelli-benchmark-extract");
+		}
+		
+		@TearDown(Level.Invocation)
+		public void deleteExtractionFolder()
+		{
+			FileUtils.deleteQuietly(extractionFolder);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			FileUtils.deleteQuietly(folder);
+		}
+	
+	}
+	
+	@Benchmark
+	public Project parse(ParseState state) throws Exception
+	{
+		return state.uncachedParser.parseProject(state.xmlFile);
+	}
+	
+	@Benchmark
+	public Project parseCached(ParseState state) throws Exception
+	{
+		return state.cachedParser.parseProject(state.xmlFile);
+	}
+	
+	@Benchmark
+	public int unzipStream(ExtractState state) throws IOException
+	{
+		InputStream input = new BufferedInputStream(new FileInputStream(state.sapelliFile));
+		try
+		{
+			return Unzipper.unzip(input, state.extractionFolder);
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	@Benchmark
+	public int unzipParallel(ExtractState state) throws IOException
+	{
+		return Unzipper.unzip(state.sapelliFile, state.extractionFolder, ProjectLoader.MAX_EXTRACTION_THREADS);
+	}
+
+}
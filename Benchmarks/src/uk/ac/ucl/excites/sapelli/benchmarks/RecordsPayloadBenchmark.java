@@ -0,0 +1,135 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyServer;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSCorrespondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinarySMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionCapacityExceededException;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionSendingException;
+
+/**
+ * Benchmarks filling a {@link RecordsPayload} (in a capacity-limited binary SMS transmission, meaning the
+ * payload is re-serialised upon every added record) and serialising a filled payload (in a GeoKey transmission,
+ * whose capacity is unlimited), as well as encoding its records (without compression) and deserialising it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordsPayloadBenchmark
+{
+
+	@Param({ "10", "50" })
+	public int numberOfRecords;
+	
+	private BenchmarkClient client;
+	private List<Record> records;
+	private SMSCorrespondent smsReceiver;
+	private RecordsPayload filledPayload;
+	private BitArray serialisedPayload;
+	private GeoKeyServer geoKeyServer;
+	
+	@Setup
+	public void setup() throws IOException, TransmissionSendingException
+	{
+		Fixtures fixtures = new Fixtures();
+		client = new BenchmarkClient(fixtures);
+		records = fixtures.createRecords(numberOfRecords);
+		smsReceiver = new SMSCorrespondent("Benchmark", "+447700900123", true);
+		
+		geoKeyServer = new GeoKeyServer(1, "Benchmark", "http://localhost");
+		filledPayload = new RecordsPayload();
+		new GeoKeyTransmission(client, geoKeyServer, filledPayload);
+		for(Record record : records)
+			filledPayload.addRecord(record);
+		serialisedPayload = filledPayload.serialise();
+		
+		// Check round trip:
+		RecordsPayload decoded = deserialise();
+		if(decoded.hasDecodeException() || decoded.getNumberOfRecords() != numberOfRecords)
+			throw new IllegalStateException("Payload could not be deserialised", decoded.getDecodeException());
+	}
+	
+	/**
+	 * Adds records to a binary SMS transmission until all have been added or its capacity is exceeded.
+	 * 
+	 * @return the number of records added
+	 */
+	@Benchmark
+	public int fill() throws TransmissionSendingException
+	{
+		RecordsPayload payload = new RecordsPayload();
+		new BinarySMSTransmission(client, smsReceiver, payload);
+		try
+		{
+			for(Record record : records)
+				payload.addRecord(record);
+		}
+		catch(TransmissionCapacityExceededException full)
+		{
+			// transmission is full
+		}
+		return payload.getNumberOfRecords();
+	}
+	
+	@Benchmark
+	public BitArray serialise() throws IOException, TransmissionCapacityExceededException
+	{
+		return filledPayload.serialise();
+	}
+	
+	@Benchmark
+	public byte[] encodeRecords() throws IOException, TransmissionCapacityExceededException
+	{
+		return filledPayload.getEncodedRecords();
+	}
+	
+	@Benchmark
+	public RecordsPayload deserialise()
+	{
+		RecordsPayload payload = new RecordsPayload();
+		new GeoKeyTransmission(client, geoKeyServer, payload);
+		payload.deserialise(serialisedPayload);
+		return payload;
+	}
+	
+}
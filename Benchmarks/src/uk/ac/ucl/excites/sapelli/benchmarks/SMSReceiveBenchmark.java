@@ -0,0 +1,192 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.transmission.protocol.sms.SMSClient;
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore;
+import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.InvalidMessageException;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSCorrespondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinaryMessage;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinarySMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.text.TextMessage;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionCapacityExceededException;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionSendingException;
+
+/**
+ * Benchmarks the storage side of receiving multi-part binary SMS transmissions, with parts arriving in random order.
+ * 
+ * Each invocation receives one full (i.e. filled to capacity) transmission, mimicking what
+ * {@link uk.ac.ucl.excites.sapelli.transmission.control.TransmissionController#receiveSMS(uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.Message)}
+ * does for every part: look up the incomplete transmission, add the part, persist it and, once complete, reassemble and
+ * decode the payload. The {@code appendOnly} mode uses {@link TransmissionStore#storeReceivedPart(uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSTransmission, uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.Message)},
+ * the {@code fullRewrite} mode uses {@link TransmissionStore#store(Transmission)} (which rewrites all parts received so far).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SMSReceiveBenchmark implements StoreUser
+{
+
+	@Param({ "appendOnly", "fullRewrite" })
+	public String mode;
+	
+	private Fixtures fixtures;
+	private BenchmarkClient client;
+	private File folder;
+	private TransmissionStore transmissionStore;
+	private SMSCorrespondent sender;
+	private final Random random = new Random(Fixtures.RANDOM_SEED);
+	private int nextSendingSideID = 1;
+	
+	/**
+	 * The parts of the transmission to receive in the next invocation, in random order.
+	 */
+	private List<BinaryMessage> parts;
+	
+	/**
+	 * "Sends" messages by turning them into received ones.
+	 */
+	private final SMSClient smsClient = new SMSClient()
+	{
+		
+		@Override
+		public boolean send(SMSCorrespondent receiver, BinaryMessage binarySMS) throws TransmissionSendingException
+		{
+			try
+			{
+				parts.add(new BinaryMessage(sender, binarySMS.getContent()));
+				return true;
+			}
+			catch(InvalidMessageException e)
+			{
+				throw new TransmissionSendingException("Could not convert message", e);
+			}
+		}
+		
+		@Override
+		public boolean send(SMSCorrespondent receiver, TextMessage textSMS) throws TransmissionSendingException
+		{
+			return false;
+		}
+		
+	};
+	
+	@Setup(Level.Trial)
+	public void open() throws Exception
+	{
+		SQLiteRecordStoreBenchmark.SetSQLiteLibraryPath();
+		fixtures = new Fixtures();
+		folder = Fixtures.CreateTempFolder("sapelli-benchmark-sms");
+		client = new BenchmarkClient(fixtures, folder);
+		transmissionStore = client.transmissionStoreHandle.getStore(this);
+		sender = new SMSCorrespondent("Sender", "+447700900123", true);
+		transmissionStore.store(sender);
+	}
+	
+	/**
+	 * Creates a new transmission on the "sending side", filled to capacity, and converts its parts into received messages.
+	 * 
+	 * @throws Exception
+	 */
+	@Setup(Level.Invocation)
+	public void nextTransmission() throws Exception
+	{
+		RecordsPayload payload = new RecordsPayload();
+		BinarySMSTransmission outgoing = new BinarySMSTransmission(client, new SMSCorrespondent("Receiver", "+447700900456", true), payload);
+		outgoing.setLocalID(nextSendingSideID++);
+		try
+		{
+			for(Record record : fixtures.createRecords(200))
+				payload.addRecord(record);
+		}
+		catch(TransmissionCapacityExceededException full)
+		{
+			// transmission is full
+		}
+		outgoing.prepare();
+		parts = new ArrayList<BinaryMessage>(outgoing.getParts().size());
+		for(BinaryMessage outgoingPart : outgoing.getParts())
+			outgoingPart.send(smsClient); // sets header values and converts to received message (see below)
+		Collections.shuffle(parts, random);
+	}
+	
+	@Benchmark
+	public Transmission<?> receive() throws Exception
+	{
+		boolean appendOnly = "appendOnly".equals(mode);
+		BinarySMSTransmission transmission = null;
+		for(BinaryMessage part : parts)
+		{
+			transmission = (BinarySMSTransmission) transmissionStore.retrieveTransmission(true, Transmission.Type.BINARY_SMS, sender, part.getSendingSideTransmissionID(), part.getPayloadHash(), part.getTotalParts());
+			if(transmission == null)
+				transmission = new BinarySMSTransmission(client, part);
+			else
+				transmission.addPart(part);
+			if(appendOnly)
+				transmissionStore.storeReceivedPart(transmission, part);
+			else
+				transmissionStore.store(transmission);
+		}
+		transmission.receive();
+		if(appendOnly)
+			transmissionStore.updateTransmissionRecord(transmission);
+		else
+			transmissionStore.store(transmission);
+		return transmission;
+	}
+	
+	@TearDown(Level.Trial)
+	public void close()
+	{
+		System.out.println();
+		System.out.println("Parts per transmission: " + parts.size());
+		client.transmissionStoreHandle.doneUsing(this);
+		FileUtils.deleteQuietly(folder);
+	}
+	
+}
@@ -0,0 +1,518 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
+import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteRecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringListColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.indexes.PrimaryKey;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.BoundingBoxConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.ListMembershipConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RadiusConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
+
+/**
+ * Benchmarks storing and retrieving records in a {@link SQLiteRecordStore} (the sqlite4java-based implementation),
+ * using a database file in a temporary folder.
+ * 
+ * The native sqlite4java library is loaded from the folder given by the {@value #SQLITE4JAVA_LIBRARY_PATH_PROPERTY}
+ * system property or, if that is not set, from the {@code lib} folder next to the benchmarks jar (or classes folder).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SQLiteRecordStoreBenchmark
+{
+
+	static public final String SQLITE4JAVA_LIBRARY_PATH_PROPERTY = "sqlite4java.library.path";
+	
+	static void SetSQLiteLibraryPath() throws Exception
+	{
+		if(System.getProperty(SQLITE4JAVA_LIBRARY_PATH_PROPERTY) == null)
+		{
+			File codeLocation = new File(SQLiteRecordStoreBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			System.setProperty(SQLITE4JAVA_LIBRARY_PATH_PROPERTY, new File(codeLocation.getParentFile(), "lib").getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Holds a BenchmarkClient with a SQLite RecordStore in a temporary folder.
+	 */
+	static public abstract class StoreState implements StoreUser
+	{
+		
+		protected Fixtures fixtures;
+		protected RecordStore recordStore;
+		protected BenchmarkClient client;
+		private File folder;
+		
+		protected void open() throws Exception
+		{
+			open(false);
+		}
+		
+		/**
+		 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs rather than as Strings
+		 * @throws Exception
+		 */
+		protected void open(boolean integerTimeStamps) throws Exception
+		{
+			open(new Fixtures(), integerTimeStamps);
+		}
+		
+		/**
+		 * @param fixtures
+		 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs rather than as Strings
+		 * @throws Exception
+		 */
+		protected void open(Fixtures fixtures, boolean integerTimeStamps) throws Exception
+		{
+			open(fixtures, integerTimeStamps, false);
+		}
+		
+		/**
+		 * @param fixtures
+		 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs rather than as Strings
+		 * @param normalisedListColumns whether or not to also store the elements of ListColumns in normalised side tables
+		 * @throws Exception
+		 */
+		protected void open(Fixtures fixtures, boolean integerTimeStamps, boolean normalisedListColumns) throws Exception
+		{
+			open(fixtures, integerTimeStamps, normalisedListColumns, false);
+		}
+		
+		/**
+		 * @param fixtures
+		 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs rather than as Strings
+		 * @param normalisedListColumns whether or not to also store the elements of ListColumns in normalised side tables
+		 * @param locationIndexes whether or not to add a spatial index to each LocationColumn
+		 * @throws Exception
+		 */
+		protected void open(Fixtures fixtures, boolean integerTimeStamps, boolean normalisedListColumns, boolean locationIndexes) throws Exception
+		{
+			open(fixtures, integerTimeStamps, normalisedListColumns, locationIndexes, false);
+		}
+		
+		/**
+		 * @param fixtures
+		 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs rather than as Strings
+		 * @param normalisedListColumns whether or not to also store the elements of ListColumns in normalised side tables
+		 * @param locationIndexes whether or not to add a spatial index to each LocationColumn
+		 * @param gridLocationIndexes whether or not to use grid-based spatial indexes even if the SQLite library supports R*Trees
+		 * @throws Exception
+		 */
+		protected void open(Fixtures fixtures, boolean integerTimeStamps, boolean normalisedListColumns, boolean locationIndexes, boolean gridLocationIndexes) throws Exception
+		{
+			SetSQLiteLibraryPath();
+			this.fixtures = fixtures;
+			folder = Fixtures.CreateTempFolder("sapelli-benchmark-db");
+			client = new BenchmarkClient(fixtures, folder);
+			client.setIntegerTimeStamps(integerTimeStamps);
+			client.setNormalisedListColumns(normalisedListColumns);
+			client.setLocationIndexes(locationIndexes);
+			client.setGridLocationIndexes(gridLocationIndexes);
+			recordStore = client.recordStoreHandle.getStore(this);
+		}
+		
+		@TearDown(Level.Trial)
+		public void close()
+		{
+			System.out.println();
+			System.out.println(recordStore.getMetrics().snapshot());
+			client.recordStoreHandle.doneUsing(this);
+			recordStore.close();
+			FileUtils.deleteQuietly(folder);
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	static public class InsertState extends StoreState
+	{
+		
+		@Param({ "1", "100" })
+		public int batchSize;
+		
+		private List<Record> batch;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			open();
+		}
+		
+		@Setup(Level.Invocation)
+		public void nextBatch()
+		{
+			batch = fixtures.createRecords(batchSize); // new records, with new primary key values
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	static public class RetrieveState extends StoreState
+	{
+		
+		@Param({ "1000" })
+		public int numberOfRecords;
+		
+		private Record[] records;
+		private RecordReference[] references;
+		private int next = 0;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			open();
+			List<Record> records = fixtures.createRecords(numberOfRecords);
+			recordStore.store(records);
+			this.records = records.toArray(new Record[numberOfRecords]);
+			references = new RecordReference[numberOfRecords];
+			for(int r = 0; r < numberOfRecords; r++)
+				references[r] = records.get(r).getReference();
+		}
+		
+		public RecordReference nextReference()
+		{
+			RecordReference ref = references[next];
+			next = (next + 1) % references.length;
+			return ref;
+		}
+		
+		/**
+		 * @return a record which is stored, with identical values, in the record store
+		 */
+		public Record nextRecord()
+		{
+			Record record = records[next];
+			next = (next + 1) % records.length;
+			return record;
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	static public class DeleteState extends StoreState
+	{
+		
+		@Param({ "1000" })
+		public int numberOfRecords;
+		
+		private List<Record> records;
+		private RecordsQuery query;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			open(new Fixtures(true /*track changes*/), false);
+			records = fixtures.createRecords(numberOfRecords);
+			query = new RecordsQuery(fixtures.schema, new RuleConstraint(fixtures.colCount, RuleConstraint.Comparison.GREATER_OR_EQUAL, 0L)); // matches all records
+		}
+		
+		@Setup(Level.Invocation)
+		public void refill() throws DBException
+		{
+			recordStore.store(records);
+		}
+		
+	}
+	
+	/**
+	 * Holds a store with many (non-empty) tables, which is reopened before each invocation and then used to retrieve
+	 * a record from each of the tables (as happens when browsing data), so all of them are known to the store when it is closed.
+	 */
+	@State(Scope.Thread)
+	static public class CleanupState extends StoreState
+	{
+		
+		@Param({ "320" })
+		public int numberOfTables;
+		
+		private List<RecordReference> references;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			open();
+			references = new ArrayList<RecordReference>(numberOfTables);
+			List<Record> records = new ArrayList<Record>(numberOfTables);
+			Model model = null;
+			for(int t = 0; t < numberOfTables; t++)
+			{
+				if(t % Model.MAX_SCHEMATA == 0)
+				{
+					if(model != null)
+						model.seal();
+					model = new Model(Fixtures.MODEL_ID + 1 + t / Model.MAX_SCHEMATA, "CleanupModel" + t / Model.MAX_SCHEMATA, Fixtures.SCHEMA_FLAGS);
+				}
+				Schema schema = new Schema(model, "Table" + t);
+				IntegerColumn colID = schema.addColumn(new IntegerColumn("ID", false, false, Integer.SIZE));
+				schema.addColumn(StringColumn.ForCharacterCount("Value", true, 20));
+				schema.setPrimaryKey(PrimaryKey.WithColumnNames(colID), true /*seal!*/);
+				Record record = schema.createRecord(Long.valueOf(t), "value" + t);
+				records.add(record);
+				references.add(record.getReference());
+			}
+			model.seal();
+			recordStore.store(records);
+		}
+		
+		@Setup(Level.Invocation)
+		public void reopen() throws DBException
+		{
+			recordStore = client.recordStoreHandle.getStore(this);
+			for(RecordReference reference : references)
+				recordStore.retrieveRecord(reference);
+		}
+		
+	}
+	
+	/**
+	 * Holds a store with records that have a list of tags, stored either only in serialised form or also in normalised form.
+	 */
+	@State(Scope.Thread)
+	static public class ListQueryState extends StoreState
+	{
+		
+		@Param({ "false", "true" })
+		public boolean normalisedListColumns;
+		
+		@Param({ "2000" })
+		public int numberOfRecords;
+		
+		static private final int NUMBER_OF_TAGS = 100;
+		static private final int MAX_TAGS_PER_RECORD = 5;
+		
+		private RecordsQuery[] queries;
+		private int next = 0;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			open(new Fixtures(), false, normalisedListColumns);
+			Model model = new Model(Fixtures.MODEL_ID + 1, "ListModel", Fixtures.SCHEMA_FLAGS);
+			Schema schema = new Schema(model, "Tagged");
+			IntegerColumn colID = schema.addColumn(new IntegerColumn("ID", false, false, Integer.SIZE));
+			StringListColumn colTags = schema.addColumn(new StringListColumn("Tags", StringColumn.ForCharacterCount("Tag", false, 10), true));
+			schema.setPrimaryKey(PrimaryKey.WithColumnNames(colID), true /*seal!*/);
+			model.seal();
+			Random random = new Random(Fixtures.RANDOM_SEED);
+			List<Record> records = new ArrayList<Record>(numberOfRecords);
+			for(int r = 0; r < numberOfRecords; r++)
+			{
+				List<String> tags = new ArrayList<String>();
+				for(int t = random.nextInt(MAX_TAGS_PER_RECORD + 1); t > 0; t--)
+					tags.add("tag" + random.nextInt(NUMBER_OF_TAGS));
+				records.add(schema.createRecord(Long.valueOf(r), tags));
+			}
+			recordStore.store(records);
+			queries = new RecordsQuery[NUMBER_OF_TAGS];
+			for(int t = 0; t < NUMBER_OF_TAGS; t++)
+				queries[t] = new RecordsQuery(schema, ListMembershipConstraint.Contains(colTags, "tag" + t));
+		}
+		
+		public RecordsQuery nextQuery()
+		{
+			RecordsQuery query = queries[next];
+			next = (next + 1) % queries.length;
+			return query;
+		}
+		
+	}
+	
+	/**
+	 * Holds a store with records that (mostly) have a location, without spatial index, with an R*Tree index or with a grid index.
+	 * Note that "rtree" falls back to a grid if the SQLite library lacks the R*Tree module.
+	 */
+	@State(Scope.Thread)
+	static public class LocationQueryState extends StoreState
+	{
+		
+		@Param({ "none", "rtree", "grid" })
+		public String locationIndex;
+		
+		@Param({ "20000" })
+		public int numberOfRecords;
+		
+		static private final int NUMBER_OF_QUERIES = 100;
+		static private final double BOX_SIZE_DEGREES = 0.02d;
+		static private final double RADIUS_M = 1000.0d;
+		
+		private RecordsQuery[] boxQueries;
+		private RecordsQuery[] radiusQueries;
+		private int next = 0;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			open(new Fixtures(), false, false, !"none".equals(locationIndex), "grid".equals(locationIndex));
+			recordStore.store(fixtures.createRecords(numberOfRecords));
+			// Query areas within the area covered by the Fixtures' locations:
+			Random random = new Random(Fixtures.RANDOM_SEED);
+			boxQueries = new RecordsQuery[NUMBER_OF_QUERIES];
+			radiusQueries = new RecordsQuery[NUMBER_OF_QUERIES];
+			for(int q = 0; q < NUMBER_OF_QUERIES; q++)
+			{
+				double lat = 51.5d + random.nextDouble();
+				double lon = -0.1d - random.nextDouble();
+				boxQueries[q] = new RecordsQuery(fixtures.schema, new BoundingBoxConstraint(fixtures.colLocation, lat, lat + BOX_SIZE_DEGREES, lon, lon + BOX_SIZE_DEGREES));
+				radiusQueries[q] = new RecordsQuery(fixtures.schema, new RadiusConstraint(fixtures.colLocation, new Location(lat, lon), RADIUS_M));
+			}
+		}
+		
+		public RecordsQuery nextBoxQuery()
+		{
+			RecordsQuery query = boxQueries[next];
+			next = (next + 1) % boxQueries.length;
+			return query;
+		}
+		
+		public RecordsQuery nextRadiusQuery()
+		{
+			RecordsQuery query = radiusQueries[next];
+			next = (next + 1) % radiusQueries.length;
+			return query;
+		}
+		
+	}
+	
+	/**
+	 * Stores a batch of new records (in a single transaction).
+	 */
+	@Benchmark
+	public void store(InsertState state) throws DBException
+	{
+		state.recordStore.store(state.batch);
+	}
+	
+	/**
+	 * Stores a record which is already stored with identical values (i.e. a no-op update).
+	 */
+	@Benchmark
+	public void storeUnchanged(RetrieveState state) throws DBException
+	{
+		state.recordStore.store(state.nextRecord());
+	}
+	
+	/**
+	 * Inserts a record which is already stored with identical values (i.e. a no-op insert).
+	 */
+	@Benchmark
+	public void insertUnchanged(RetrieveState state) throws DBException
+	{
+		state.recordStore.insert(state.nextRecord());
+	}
+	
+	/**
+	 * Deletes all records of a schema which has change tracking enabled.
+	 */
+	@Benchmark
+	public void deleteTracked(DeleteState state) throws DBException
+	{
+		state.recordStore.delete(state.query);
+	}
+	
+	/**
+	 * Closes a store which knows about many tables (closing involves cleaning up empty tables).
+	 */
+	@Benchmark
+	public void close(CleanupState state)
+	{
+		state.recordStore.close(); // reopened by the handle before the next invocation
+	}
+	
+	/**
+	 * Retrieves a single record by its primary key.
+	 */
+	@Benchmark
+	public Record retrieveByReference(RetrieveState state)
+	{
+		return state.recordStore.retrieveRecord(state.nextReference());
+	}
+	
+	/**
+	 * Retrieves all records of the schema.
+	 */
+	@Benchmark
+	public List<Record> retrieveAll(RetrieveState state)
+	{
+		return state.recordStore.retrieveRecords(state.fixtures.schema);
+	}
+	
+	/**
+	 * Retrieves the records whose list of tags contains a given tag.
+	 */
+	@Benchmark
+	public List<Record> retrieveByListElement(ListQueryState state)
+	{
+		return state.recordStore.retrieveRecords(state.nextQuery());
+	}
+	
+	/**
+	 * Retrieves the records whose location lies within a small bounding box.
+	 */
+	@Benchmark
+	public List<Record> retrieveByBoundingBox(LocationQueryState state)
+	{
+		return state.recordStore.retrieveRecords(state.nextBoxQuery());
+	}
+	
+	/**
+	 * Retrieves the records whose location lies within a given distance from a point.
+	 */
+	@Benchmark
+	public List<Record> retrieveByRadius(LocationQueryState state)
+	{
+		return state.recordStore.retrieveRecords(state.nextRadiusQuery());
+	}
+	
+}
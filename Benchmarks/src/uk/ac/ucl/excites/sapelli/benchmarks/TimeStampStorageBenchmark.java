@@ -0,0 +1,142 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.queries.Order;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.AndConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint.Comparison;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+
+/**
+ * Compares String-based (ISO-8601) and INTEGER-based storage of TimeStampColumns in a SQLite RecordStore,
+ * by running a time-range selection and a "latest n records" query on a large table.
+ * 
+ * The records have different UTC offsets, which means the String-based storage (which compares the ISO-8601
+ * representations as text) does not return the same records as an in-memory evaluation of the queries would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeStampStorageBenchmark
+{
+	
+	/**
+	 * UTC offsets (in quarters of an hour) given to the records, in turn.
+	 */
+	static private final int[] QH_OFFSETS = { 0, 4, -20, 22 }; // UTC, UTC+1, UTC-5, UTC+5:30
+	
+	static private final int RANGE_PERCENTAGE = 5;
+	static private final int LATEST_LIMIT = 100;
+	
+	@State(Scope.Thread)
+	static public class TimeRangeState extends SQLiteRecordStoreBenchmark.StoreState
+	{
+		
+		@Param({ "string", "integer" })
+		public String storage;
+		
+		@Param({ "20000" })
+		public int numberOfRecords;
+		
+		private RecordsQuery rangeQuery;
+		private RecordsQuery latestQuery;
+		
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			open("integer".equals(storage));
+			List<Record> records = fixtures.createRecords(numberOfRecords);
+			for(int r = 0; r < numberOfRecords; r++)
+			{
+				Record record = records.get(r);
+				fixtures.colStartTime.storeValue(record, new TimeStamp(fixtures.colStartTime.retrieveValue(record).getMsSinceEpoch(), QH_OFFSETS[r % QH_OFFSETS.length]));
+			}
+			recordStore.store(records);
+			
+			TimeStamp from = fixtures.colStartTime.retrieveValue(records.get(numberOfRecords / 2));
+			TimeStamp to = fixtures.colStartTime.retrieveValue(records.get(numberOfRecords / 2 + numberOfRecords * RANGE_PERCENTAGE / 100));
+			rangeQuery = new RecordsQuery(
+				fixtures.schema,
+				new AndConstraint(
+					new RuleConstraint(fixtures.colStartTime, Comparison.GREATER_OR_EQUAL, from),
+					new RuleConstraint(fixtures.colStartTime, Comparison.SMALLER, to)));
+			latestQuery = new RecordsQuery(fixtures.schema, Order.DescendingBy(fixtures.colStartTime), LATEST_LIMIT);
+			
+			// Compare with in-memory query evaluation:
+			check("range", rangeQuery, records);
+			check("latest", latestQuery, records);
+		}
+		
+		private void check(String name, RecordsQuery query, List<Record> records)
+		{
+			List<Record> expected = query.execute(records);
+			List<Record> actual = recordStore.retrieveRecords(query);
+			if(!expected.equals(actual))
+			{
+				String msg = name + " query on " + storage + " storage returned " + actual.size() + " records, expected " + expected.size() + " (or different records/order)";
+				if("integer".equals(storage))
+					throw new IllegalStateException(msg);
+				System.out.println();
+				System.out.println("Note: " + msg);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Retrieves the records from a time range (covering {@value #RANGE_PERCENTAGE}% of the table).
+	 */
+	@Benchmark
+	public List<Record> selectRange(TimeRangeState state)
+	{
+		return state.recordStore.retrieveRecords(state.rangeQuery);
+	}
+	
+	/**
+	 * Retrieves the {@value #LATEST_LIMIT} most recent records.
+	 */
+	@Benchmark
+	public List<Record> sortLatest(TimeRangeState state)
+	{
+		return state.recordStore.retrieveRecords(state.latestQuery);
+	}
+	
+}
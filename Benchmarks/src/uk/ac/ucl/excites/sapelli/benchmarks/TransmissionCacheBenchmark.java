@@ -0,0 +1,100 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionCache;
+import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyServer;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyTransmission;
+
+/**
+ * Measures the cost of {@link TransmissionCache} operations, as done by the TransmissionStore for every stored or
+ * retrieved transmission.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransmissionCacheBenchmark
+{
+	
+	static private final int POOL_SIZE = 1024; // power of 2
+	
+	@Param({ "1024", "16384" })
+	public int bodySize; // bytes
+	
+	private GeoKeyServer server;
+	private GeoKeyTransmission response;
+	private TransmissionCache cache;
+	private Transmission<?>[] pool;
+	private int next;
+	
+	@Setup
+	public void setup()
+	{
+		server = new GeoKeyServer(1, "Benchmark", "http://localhost");
+		response = createTransmission(Integer.MAX_VALUE, 0, null);
+		cache = new TransmissionCache();
+		pool = new Transmission<?>[POOL_SIZE];
+		Random random = new Random(Fixtures.RANDOM_SEED);
+		for(int i = 0; i < POOL_SIZE; i++)
+			pool[i] = createTransmission(i + 1, bodySize, random.nextBoolean() ? response : null);
+		next = 0;
+	}
+	
+	private GeoKeyTransmission createTransmission(int localID, int bodySize, GeoKeyTransmission response)
+	{
+		return new GeoKeyTransmission(null, server, true, localID, localID, 0, 0, null, null, response, new byte[bodySize]);
+	}
+	
+	/**
+	 * Puts a transmission and gets a recently put one, which is what storing & then updating a transmission amounts to.
+	 */
+	@Benchmark
+	public Transmission<?> putAndGet()
+	{
+		Transmission<?> transmission = pool[next++ & (POOL_SIZE - 1)];
+		cache.put(transmission);
+		return cache.get(pool[(next - 2) & (POOL_SIZE - 1)].getLocalID());
+	}
+	
+	@Benchmark
+	public Transmission<?> getMiss()
+	{
+		return cache.get(-(next++ & (POOL_SIZE - 1)) - 1);
+	}
+	
+}
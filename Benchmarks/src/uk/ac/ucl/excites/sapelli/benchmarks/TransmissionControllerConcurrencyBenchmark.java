@@ -0,0 +1,535 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.db.StoreBackupper;
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreSetter;
+import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.SingleRecordQuery;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.transmission.TransmissionClient;
+import uk.ac.ucl.excites.sapelli.transmission.control.TransmissionController;
+import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore;
+import uk.ac.ucl.excites.sapelli.transmission.model.Correspondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.InvalidMessageException;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.Message;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSCorrespondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinaryMessage;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.text.TextMessage;
+import uk.ac.ucl.excites.sapelli.transmission.protocol.geokey.GeoKeyClient;
+import uk.ac.ucl.excites.sapelli.transmission.protocol.sms.SMSClient;
+import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionSendingException;
+
+/**
+ * Multi-threaded stress test of the {@link TransmissionController}, in which every benchmark thread is a device that
+ * sends records to a single, shared "server" controller over a simulated SMS link with a fixed per-message latency.
+ * The server receives and decodes the multi-part transmissions of all devices concurrently and replies to each with
+ * an ACK, which the device receives before its invocation ends.
+ * 
+ * In {@code striped} mode the controllers use their per-correspondent locks, in {@code global} mode they use a single
+ * lock (as the former {@code synchronized} methods did), so comparing both (or running with different numbers of
+ * threads, using {@code -t}) shows how throughput scales. Both sides use in-memory stores (the sqlite4java
+ * back-end only allows access from the thread that opened it) whose methods are synchronised, like those of the real
+ * {@link TransmissionStore}. When the trial ends the benchmark verifies that every record was received exactly once,
+ * that no local transmission ID was allocated twice and that every transmission was acknowledged.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class TransmissionControllerConcurrencyBenchmark
+{
+	
+	static public final int RECORDS_PER_SEND = 5;
+	static public final long LINK_LATENCY_NS = TimeUnit.MILLISECONDS.toNanos(10);
+	static public final String SERVER_NUMBER = "+447700900000";
+	
+	/**
+	 * Shared server side.
+	 */
+	@State(Scope.Benchmark)
+	static public class Server
+	{
+		
+		@Param({ "global", "striped" })
+		public String locking;
+		
+		final Fixtures fixtures = new Fixtures();
+		final Map<String, Device> devicesByNumber = new ConcurrentHashMap<String, Device>();
+		final AtomicInteger nextDeviceNumber = new AtomicInteger();
+		final Set<RecordReference> sentRecords = Collections.newSetFromMap(new ConcurrentHashMap<RecordReference, Boolean>());
+		final Set<RecordReference> receivedRecords = Collections.newSetFromMap(new ConcurrentHashMap<RecordReference, Boolean>());
+		final AtomicInteger duplicateRecords = new AtomicInteger();
+		Client client;
+		Controller controller;
+		
+		@Setup(Level.Trial)
+		public void setup() throws DBException
+		{
+			client = new Client(fixtures, this);
+			controller = new Controller(client, "global".equals(locking), new SMSClient()
+			{
+				@Override
+				public boolean send(SMSCorrespondent receiver, BinaryMessage binarySMS) throws TransmissionSendingException
+				{
+					Device device = devicesByNumber.get(receiver.getAddress());
+					device.controller.receive(new BinaryMessage(device.server, binarySMS.getContent()));
+					return true;
+				}
+				
+				@Override
+				public boolean send(SMSCorrespondent receiver, TextMessage textSMS) throws TransmissionSendingException
+				{
+					return false;
+				}
+			});
+		}
+		
+		List<Record> createRecords()
+		{
+			synchronized(fixtures)
+			{
+				return fixtures.createRecords(RECORDS_PER_SEND);
+			}
+		}
+		
+		@TearDown(Level.Trial)
+		public void verify()
+		{
+			if(duplicateRecords.get() != 0)
+				throw new IllegalStateException(duplicateRecords.get() + " records were received more than once");
+			if(!receivedRecords.equals(sentRecords))
+				throw new IllegalStateException("Sent " + sentRecords.size() + " records but received " + receivedRecords.size());
+			int incoming = client.store.verify(true);
+			int acks = client.store.verify(false);
+			if(acks != incoming)
+				throw new IllegalStateException("Received " + incoming + " transmissions but sent " + acks + " ACKs");
+			int outgoing = 0;
+			for(Device device : devicesByNumber.values())
+				outgoing += device.client.store.verifyAllReceived();
+			if(outgoing != incoming)
+				throw new IllegalStateException("Devices sent " + outgoing + " transmissions but the server received " + incoming);
+			System.out.println();
+			System.out.println("Verified: " + receivedRecords.size() + " records in " + incoming + " transmissions from " + devicesByNumber.size() + " devices");
+		}
+		
+	}
+	
+	/**
+	 * One device per benchmark thread.
+	 */
+	@State(Scope.Thread)
+	static public class Device
+	{
+		
+		Server serverSide;
+		SMSCorrespondent server; // as known to the device
+		SMSCorrespondent self; // as known to the server
+		Client client;
+		Controller controller;
+		
+		@Setup(Level.Trial)
+		public void setup(final Server serverSide) throws DBException
+		{
+			this.serverSide = serverSide;
+			int number = serverSide.nextDeviceNumber.incrementAndGet();
+			server = new SMSCorrespondent("Server", SERVER_NUMBER, true);
+			self = new SMSCorrespondent("Device" + number, String.format("+4477009%05d", number), true);
+			client = new Client(serverSide.fixtures, serverSide);
+			controller = new Controller(client, "global".equals(serverSide.locking), new SMSClient()
+			{
+				@Override
+				public boolean send(SMSCorrespondent receiver, BinaryMessage binarySMS) throws TransmissionSendingException
+				{
+					serverSide.controller.receive(new BinaryMessage(self, binarySMS.getContent()));
+					return true;
+				}
+				
+				@Override
+				public boolean send(SMSCorrespondent receiver, TextMessage textSMS) throws TransmissionSendingException
+				{
+					return false;
+				}
+			});
+			serverSide.devicesByNumber.put(self.getAddress(), this);
+		}
+		
+	}
+	
+	@Benchmark
+	public void sendRecords(Device device)
+	{
+		device.client.store.recordsToTransmit = device.serverSide.createRecords();
+		device.controller.sendRecords(device.serverSide.fixtures.model, device.server);
+	}
+	
+	/**
+	 * Controller with a simulated SMS link. Scheduling of resend requests is not needed as no messages are lost.
+	 */
+	static private class Controller extends TransmissionController
+	{
+		
+		private final Lock globalLock;
+		private final SMSClient smsClient;
+		
+		public Controller(TransmissionClient client, boolean globalLocking, SMSClient smsClient) throws DBException
+		{
+			super(client);
+			this.globalLock = globalLocking ? new ReentrantLock() : null;
+			this.smsClient = smsClient;
+		}
+		
+		public void receive(BinaryMessage msg) throws TransmissionSendingException
+		{
+			LockSupport.parkNanos(LINK_LATENCY_NS);
+			try
+			{
+				receiveSMS(msg);
+			}
+			catch(Exception e)
+			{
+				throw new TransmissionSendingException("Error upon receiving message", e);
+			}
+		}
+		
+		@Override
+		protected Lock getCorrespondentLock(Correspondent correspondent)
+		{
+			return globalLock != null ? globalLock : super.getCorrespondentLock(correspondent);
+		}
+		
+		@Override
+		protected File getLogsFolder()
+		{
+			return null;
+		}
+		
+		@Override
+		public SMSClient getSMSClient()
+		{
+			return smsClient;
+		}
+		
+		@Override
+		public GeoKeyClient getGeoKeyClient()
+		{
+			return null;
+		}
+		
+		@Override
+		public void scheduleSMSResendRequest(int localID, TimeStamp time)
+		{
+			// not needed
+		}
+		
+		@Override
+		protected void cancelSMSResendRequest(int localID)
+		{
+			// not needed
+		}
+		
+		@Override
+		protected String getApplicationInfo()
+		{
+			return getClass().getSimpleName();
+		}
+		
+	}
+	
+	static private class Client extends BenchmarkClient
+	{
+		
+		private final Server serverSide;
+		private MemoryTransmissionStore store;
+		
+		public Client(Fixtures fixtures, Server serverSide)
+		{
+			super(fixtures);
+			this.serverSide = serverSide;
+		}
+		
+		@Override
+		protected void createAndSetRecordStore(StoreSetter<RecordStore> setter) throws DBException
+		{
+			setter.setAndInitialise(new MemoryRecordStore(this, serverSide));
+		}
+		
+		@Override
+		protected TransmissionStore createTransmissionStore() throws DBException
+		{
+			return store = new MemoryTransmissionStore(this, serverSide);
+		}
+		
+	}
+	
+	/**
+	 * Keeps transmissions in memory and implements only what the send/receive/ACK cycle needs.
+	 */
+	static private class MemoryTransmissionStore extends TransmissionStore
+	{
+		
+		private final Server serverSide;
+		private final Map<Integer, Transmission<?>> outgoing = new HashMap<Integer, Transmission<?>>();
+		private final Map<Integer, Transmission<?>> incoming = new HashMap<Integer, Transmission<?>>();
+		private final Map<String, Integer> incomingByRemoteID = new HashMap<String, Integer>();
+		private int nextOutgoingID = 1;
+		private int nextIncomingID = 1;
+		volatile List<Record> recordsToTransmit = Collections.<Record> emptyList();
+		
+		public MemoryTransmissionStore(TransmissionClient client, Server serverSide) throws DBException
+		{
+			super(client);
+			this.serverSide = serverSide;
+		}
+		
+		private String getRemoteKey(Correspondent correspondent, int remoteID, int payloadHash)
+		{
+			return correspondent.getAddress() + "/" + remoteID + "/" + payloadHash;
+		}
+		
+		@Override
+		public synchronized void store(Transmission<?> transmission) throws DBException
+		{
+			Map<Integer, Transmission<?>> transmissions = transmission.incoming ? incoming : outgoing;
+			if(!transmission.isLocalIDSet())
+			{
+				transmission.setLocalID(transmission.incoming ? nextIncomingID++ : nextOutgoingID++);
+				if(transmissions.put(transmission.getLocalID(), transmission) != null)
+					throw new IllegalStateException("Local ID allocated twice: " + transmission.getLocalID());
+				if(transmission.incoming)
+					incomingByRemoteID.put(getRemoteKey(transmission.getCorrespondent(), transmission.getRemoteID(), transmission.getPayloadHash()), transmission.getLocalID());
+			}
+			else if(transmissions.get(transmission.getLocalID()) != transmission)
+				throw new IllegalStateException("Local ID " + transmission.getLocalID() + " is used by another transmission");
+		}
+		
+		@Override
+		public synchronized void updateTransmissionRecord(Transmission<?> transmission) throws DBException
+		{
+			store(transmission);
+		}
+		
+		@Override
+		public synchronized boolean storeReceivedPart(SMSTransmission<?> smsTransmission, Message<?, ?> part) throws DBException
+		{
+			if(smsTransmission.getPart(part.getPartNumber()) != part)
+				return false;
+			store(smsTransmission);
+			return true;
+		}
+		
+		@Override
+		public synchronized Transmission<?> retrieveTransmission(boolean incoming, Transmission.Type type, Correspondent correspondent, int remoteID, int payloadHash, int numberOfParts)
+		{
+			Integer localID = incomingByRemoteID.get(getRemoteKey(correspondent, remoteID, payloadHash));
+			return localID != null ? this.incoming.get(localID) : null;
+		}
+		
+		@Override
+		public synchronized Transmission<?> retrieveTransmission(boolean incoming, int localID)
+		{
+			return (incoming ? this.incoming : outgoing).get(localID);
+		}
+		
+		@Override
+		public synchronized Transmission<?> retrieveTransmission(boolean incoming, int localID, int payloadHash)
+		{
+			Transmission<?> transmission = retrieveTransmission(incoming, localID);
+			return transmission != null && transmission.getPayloadHash() == payloadHash ? transmission : null;
+		}
+		
+		@Override
+		public synchronized List<Record> retrieveRecordsToTransmitNow(Correspondent receiver, Model model)
+		{
+			return recordsToTransmit;
+		}
+		
+		@Override
+		public synchronized void storeTransmittableRecord(Correspondent correspondent, RecordReference recordReference, Transmission<?> transmission)
+		{
+			if(!serverSide.sentRecords.add(recordReference))
+				throw new IllegalStateException("Record sent twice: " + recordReference);
+		}
+		
+		/**
+		 * @param incoming
+		 * @return the number of incoming or outgoing transmissions
+		 */
+		public synchronized int verify(boolean incoming)
+		{
+			Map<Integer, Transmission<?>> transmissions = incoming ? this.incoming : outgoing;
+			for(Map.Entry<Integer, Transmission<?>> entry : transmissions.entrySet())
+				if(entry.getValue().getLocalID() != entry.getKey())
+					throw new IllegalStateException("Inconsistent local ID");
+			return transmissions.size();
+		}
+		
+		/**
+		 * @return the number of outgoing transmissions, all of which must have been ACKed
+		 */
+		public synchronized int verifyAllReceived()
+		{
+			for(Transmission<?> transmission : outgoing.values())
+				if(!transmission.isReceived())
+					throw new IllegalStateException("Transmission " + transmission.getLocalID() + " was not acknowledged");
+			return verify(false);
+		}
+		
+	}
+	
+	/**
+	 * Only stores (i.e. registers) the received records.
+	 */
+	static private class MemoryRecordStore extends RecordStore
+	{
+		
+		private final Server serverSide;
+		
+		public MemoryRecordStore(TransmissionClient client, Server serverSide)
+		{
+			super(client, false);
+			this.serverSide = serverSide;
+		}
+		
+		@Override
+		protected void doStartTransaction()
+		{
+			// does nothing
+		}
+		
+		@Override
+		protected void doCommitTransaction()
+		{
+			// does nothing
+		}
+		
+		@Override
+		protected void doRollbackTransaction()
+		{
+			// does nothing
+		}
+		
+		@Override
+		protected Boolean doStore(Record record)
+		{
+			return doInsert(record);
+		}
+		
+		@Override
+		protected boolean doInsert(Record record)
+		{
+			if(!serverSide.receivedRecords.add(record.getReference()))
+			{
+				serverSide.duplicateRecords.incrementAndGet();
+				return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public List<Record> retrieveRecords(RecordsQuery query)
+		{
+			return new ArrayList<Record>();
+		}
+		
+		@Override
+		public List<RecordReference> retrieveRecordReferences(RecordsQuery query)
+		{
+			return new ArrayList<RecordReference>();
+		}
+		
+		@Override
+		public Record retrieveRecord(SingleRecordQuery query)
+		{
+			return null;
+		}
+		
+		@Override
+		public Model retrieveModel(long modelID)
+		{
+			return null;
+		}
+		
+		@Override
+		protected boolean doDelete(Record record)
+		{
+			return false;
+		}
+		
+		@Override
+		protected void closeConnection()
+		{
+			// does nothing
+		}
+		
+		@Override
+		protected void doBackup(StoreBackupper backuper, File destinationFolder) throws DBException
+		{
+			throw new DBException("Not supported");
+		}
+		
+		@Override
+		public boolean hasFullIndexSupport()
+		{
+			return false;
+		}
+		
+	}
+	
+}
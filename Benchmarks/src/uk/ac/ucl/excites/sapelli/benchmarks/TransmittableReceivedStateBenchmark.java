@@ -0,0 +1,193 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
+import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.queries.Order;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.EqualityConstraint;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore;
+import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSCorrespondent;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinarySMSTransmission;
+
+/**
+ * Benchmarks {@link TransmissionStore#updateTransmittableReceivedState(uk.ac.ucl.excites.sapelli.transmission.model.Correspondent, uk.ac.ucl.excites.sapelli.storage.model.Model)},
+ * which marks the transmittables of received (i.e. ACKed) transmissions as received using set-based queries, against the
+ * record-at-a-time approach it replaced (retrieve each transmission, then store each of its transmittables individually).
+ * 
+ * Before each invocation all transmittables are reset to unreceived. Every {@value #UNRECEIVED_EVERY}th transmission is
+ * left unreceived so that both approaches have to discriminate between received and unreceived ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransmittableReceivedStateBenchmark implements StoreUser
+{
+	
+	static public final int UNRECEIVED_EVERY = 5;
+	
+	@Param({ "10", "100" })
+	public int numberOfTransmissions;
+	
+	@Param({ "20" })
+	public int recordsPerTransmission;
+	
+	private Fixtures fixtures;
+	private File folder;
+	private BenchmarkClient client;
+	private RecordStore recordStore;
+	private TransmissionStore transmissionStore;
+	private SMSCorrespondent receiver;
+	private int expectedReceived;
+	
+	@Setup(Level.Trial)
+	public void open() throws Exception
+	{
+		SQLiteRecordStoreBenchmark.SetSQLiteLibraryPath();
+		fixtures = new Fixtures();
+		folder = Fixtures.CreateTempFolder("sapelli-benchmark-transmittables");
+		client = new BenchmarkClient(fixtures, folder);
+		recordStore = client.recordStoreHandle.getStore(this);
+		transmissionStore = client.transmissionStoreHandle.getStore(this);
+		receiver = new SMSCorrespondent("Receiver", "+447700900456", true);
+		transmissionStore.store(receiver);
+		
+		// Create, store & (mostly) receive transmissions, and register their records as transmittables:
+		for(int t = 0; t < numberOfTransmissions; t++)
+		{
+			RecordsPayload payload = new RecordsPayload();
+			BinarySMSTransmission transmission = new BinarySMSTransmission(client, receiver, payload);
+			List<Record> records = fixtures.createRecords(recordsPerTransmission);
+			for(Record record : records)
+				payload.addRecord(record);
+			transmission.prepare();
+			transmissionStore.store(transmission);
+			for(Record record : records)
+				transmissionStore.storeTransmittableRecord(receiver, record.getReference(), transmission);
+			if(t % UNRECEIVED_EVERY != 0)
+			{
+				transmission.setReceivedAt(TimeStamp.now());
+				transmissionStore.updateTransmissionRecord(transmission);
+				expectedReceived += recordsPerTransmission;
+			}
+		}
+		
+		// Check that both approaches give the same result:
+		markAllUnreceived();
+		recordAtATime();
+		int recordAtATimeReceived = countReceived();
+		markAllUnreceived();
+		bulk();
+		int bulkReceived = countReceived();
+		if(recordAtATimeReceived != expectedReceived || bulkReceived != expectedReceived)
+			throw new IllegalStateException("Expected " + expectedReceived + " received transmittables, got " + recordAtATimeReceived + " (record-at-a-time) and " + bulkReceived + " (bulk)");
+	}
+	
+	@Setup(Level.Invocation)
+	public void markAllUnreceived() throws DBException
+	{
+		recordStore.update(new RecordsQuery(TransmissionStore.TRANSMITTABLE_RECORDS_SCHEMA), TransmissionStore.TRANSMITTABLE_RECORDS_COLUMN_RECEIVED, Boolean.FALSE);
+	}
+	
+	private int countReceived()
+	{
+		return recordStore.retrieveRecords(new RecordsQuery(TransmissionStore.TRANSMITTABLE_RECORDS_SCHEMA, new EqualityConstraint(TransmissionStore.TRANSMITTABLE_RECORDS_COLUMN_RECEIVED, Boolean.TRUE))).size();
+	}
+	
+	@Benchmark
+	public void bulk()
+	{
+		transmissionStore.updateTransmittableReceivedState(receiver, fixtures.model);
+	}
+	
+	/**
+	 * The approach {@link TransmissionStore#updateTransmittableReceivedState(uk.ac.ucl.excites.sapelli.transmission.model.Correspondent, uk.ac.ucl.excites.sapelli.storage.model.Model)}
+	 * used before: retrieve the transmission of each unreceived transmittable and store each transmittable individually.
+	 * 
+	 * @throws DBException
+	 */
+	@Benchmark
+	public void recordAtATime() throws DBException
+	{
+		Map<Integer, Boolean> received = new HashMap<Integer, Boolean>();
+		for(Record toSendRec : recordStore.retrieveRecords(new RecordsQuery(
+			TransmissionStore.TRANSMITTABLE_RECORDS_SCHEMA,
+			Order.By(TransmissionStore.TRANSMITTABLE_RECORDS_COLUMN_TRANSMISSION),
+			transmissionStore.getCorrespondentRecordReference(receiver, false, false).getRecordQueryConstraint(),
+			fixtures.model.getModelRecordReference().getRecordQueryConstraint(),
+			EqualityConstraint.IsNotNull(TransmissionStore.TRANSMITTABLE_RECORDS_COLUMN_TRANSMISSION),
+			new EqualityConstraint(TransmissionStore.TRANSMITTABLE_RECORDS_COLUMN_RECEIVED, Boolean.FALSE))))
+		{
+			Integer localID = ((Long) TransmissionStore.TRANSMITTABLE_RECORDS_CP_TRANSMISSION_ID.retrieveValue(toSendRec)).intValue();
+			Boolean isReceived = received.get(localID);
+			if(isReceived == null)
+			{
+				Transmission<?> transmission = transmissionStore.retrieveTransmission(false, localID);
+				received.put(localID, isReceived = transmission != null && transmission.isReceived());
+			}
+			if(isReceived)
+			{
+				TransmissionStore.TRANSMITTABLE_RECORDS_COLUMN_RECEIVED.storeValue(toSendRec, Boolean.TRUE);
+				recordStore.store(toSendRec);
+			}
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void close()
+	{
+		System.out.println();
+		System.out.println(recordStore.getMetrics().snapshot());
+		client.transmissionStoreHandle.doneUsing(this);
+		client.recordStoreHandle.doneUsing(this);
+		FileUtils.deleteQuietly(folder);
+	}
+	
+}
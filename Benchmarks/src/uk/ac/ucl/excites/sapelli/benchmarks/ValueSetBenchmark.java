@@ -0,0 +1,106 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.ValueSet;
+
+/**
+ * Benchmarks binary (de)serialisation of records through {@link ValueSet#toBytes(boolean)} and {@link ValueSet#fromBytes(byte[], boolean)},
+ * and comparison of records with their decoded versions through {@link Record#equals(Object, boolean, boolean)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueSetBenchmark
+{
+
+	static private final int NUMBER_OF_RECORDS = 100;
+	
+	@Param({ "true", "false" })
+	public boolean lossless;
+	
+	private List<Record> records;
+	private byte[][] serialisedRecords;
+	private Record[] decodedRecords;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		records = new Fixtures().createRecords(NUMBER_OF_RECORDS);
+		serialisedRecords = new byte[NUMBER_OF_RECORDS][];
+		decodedRecords = new Record[NUMBER_OF_RECORDS];
+		for(int r = 0; r < NUMBER_OF_RECORDS; r++)
+		{
+			serialisedRecords[r] = records.get(r).toBytes(lossless);
+			decodedRecords[r] = records.get(r).getSchema().createRecord(serialisedRecords[r], lossless);
+		}
+	}
+	
+	/**
+	 * Serialises {@value #NUMBER_OF_RECORDS} records.
+	 */
+	@Benchmark
+	public void toBytes(Blackhole bh) throws IOException
+	{
+		for(Record record : records)
+			bh.consume(record.toBytes(lossless));
+	}
+	
+	/**
+	 * Deserialises {@value #NUMBER_OF_RECORDS} records (into existing instances).
+	 */
+	@Benchmark
+	public void fromBytes(Blackhole bh) throws IOException
+	{
+		for(int r = 0; r < NUMBER_OF_RECORDS; r++)
+			bh.consume(records.get(r).fromBytes(serialisedRecords[r], lossless));
+	}
+	
+	/**
+	 * Compares {@value #NUMBER_OF_RECORDS} records with their decoded versions, as if lossyly encoded.
+	 */
+	@Benchmark
+	public void equalsAsLossyEncoded(Blackhole bh)
+	{
+		for(int r = 0; r < NUMBER_OF_RECORDS; r++)
+			bh.consume(records.get(r).equals(decodedRecords[r], false, true));
+	}
+	
+}
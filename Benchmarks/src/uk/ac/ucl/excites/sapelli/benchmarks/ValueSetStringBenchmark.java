@@ -0,0 +1,145 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.ucl.excites.sapelli.storage.model.Column;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.model.ValueSet;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.BooleanColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.FloatColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerListColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
+import uk.ac.ucl.excites.sapelli.storage.types.LocationColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
+
+/**
+ * Benchmarks String (de)serialisation of records of wide schemata through {@link ValueSet#serialise()} and {@link ValueSet#parse(String)},
+ * as used by the CSV exporter/importer and for record references.
+ * 
+ * Each schema consists of {@code groups} repetitions of a group of 7 columns of different types (plain, self-delimiting, and list columns).
+ * Some of the generated String values contain the separator and/or delimiter characters and thus require escaping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueSetStringBenchmark
+{
+
+	static private final int NUMBER_OF_RECORDS = 100;
+	static private final String[] WORDS = { "tree", "hut", "river", "elephant", "logging, old", "track", "camp `A`", "trap", "fire", "water" };
+	
+	@Param({ "3", "30" })
+	public int groups;
+	
+	private Schema schema;
+	private List<Record> records;
+	private String[] serialisedRecords;
+	
+	@Setup
+	public void setup()
+	{
+		Model model = new Model(Fixtures.MODEL_ID + 1, "WideModel", Fixtures.SCHEMA_FLAGS);
+		schema = new Schema(model, "Wide");
+		for(int g = 0; g < groups; g++)
+		{
+			schema.addColumn(new IntegerColumn("Int" + g, true, true, Integer.SIZE));
+			schema.addColumn(StringColumn.ForCharacterCount("Str" + g, true, 100));
+			schema.addColumn(new FloatColumn("Float" + g, true, true, true));
+			schema.addColumn(TimeStampColumn.Century21("Time" + g, true, false));
+			schema.addColumn(new BooleanColumn("Bool" + g, true));
+			schema.addColumn(new LocationColumn("Loc" + g, true, true, true, false, false, true, false, false));
+			schema.addColumn(new IntegerListColumn("List" + g, new IntegerColumn("Element", false, 0, 1000), true));
+		}
+		schema.seal();
+		model.seal();
+		
+		List<Column<?>> columns = schema.getColumns(false);
+		Random random = new Random(Fixtures.RANDOM_SEED);
+		records = new ArrayList<Record>(NUMBER_OF_RECORDS);
+		serialisedRecords = new String[NUMBER_OF_RECORDS];
+		for(int r = 0; r < NUMBER_OF_RECORDS; r++)
+		{
+			Record record = schema.createRecord();
+			for(int g = 0, c = 0; g < groups; g++)
+			{
+				((IntegerColumn) columns.get(c++)).storeValue(record, (long) random.nextInt());
+				((StringColumn) columns.get(c++)).storeValue(record, WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+				((FloatColumn) columns.get(c++)).storeValue(record, random.nextGaussian() * 1000);
+				((TimeStampColumn) columns.get(c++)).storeValue(record, new TimeStamp(1456790400000L + random.nextInt(Integer.MAX_VALUE)));
+				((BooleanColumn) columns.get(c++)).storeValue(record, random.nextBoolean());
+				((LocationColumn) columns.get(c++)).storeValue(record, new Location(51.5 + random.nextDouble(), -0.1 - random.nextDouble(), 20.0 + random.nextInt(100), null, null, 5.0f + random.nextInt(20), (Long) null, Location.PROVIDER_GPS));
+				List<Long> list = new ArrayList<Long>();
+				for(int i = random.nextInt(4); i > 0; i--)
+					list.add((long) random.nextInt(1001));
+				((IntegerListColumn) columns.get(c++)).storeValue(record, list);
+			}
+			schema.getAutoIncrementingPrimaryKeyColumn().storeValue(record, (long) r);
+			records.add(record);
+			serialisedRecords[r] = record.serialise();
+		}
+	}
+	
+	/**
+	 * Serialises {@value #NUMBER_OF_RECORDS} records to Strings.
+	 */
+	@Benchmark
+	public void serialise(Blackhole bh)
+	{
+		for(Record record : records)
+			bh.consume(record.serialise());
+	}
+	
+	/**
+	 * Parses {@value #NUMBER_OF_RECORDS} records from Strings (into new instances).
+	 */
+	@Benchmark
+	public void parse(Blackhole bh) throws Exception
+	{
+		for(String serialisedRecord : serialisedRecords)
+			bh.consume(schema.createRecord(serialisedRecord));
+	}
+	
+}
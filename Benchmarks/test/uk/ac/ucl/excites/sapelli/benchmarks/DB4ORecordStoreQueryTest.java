@@ -0,0 +1,188 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import uk.ac.ucl.excites.sapelli.storage.db.db4o.DB4ORecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
+import uk.ac.ucl.excites.sapelli.storage.queries.Order;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.AndConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.EqualityConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.OrConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.sources.Source;
+
+/**
+ * Checks that a {@link DB4ORecordStore}, using its indexed or its scanning query path, returns exactly the records which a
+ * brute-force, in-memory evaluation selects, for queries like those of {@link DB4ORecordStoreBenchmark} and for equality,
+ * comparison, null and combined constraints on every type of column, with various orders and limits.
+ * 
+ * On Java 9 and later DB4O needs the {@code --add-opens} options which the jdk9+ profile passes to the test JVM.
+ */
+public class DB4ORecordStoreQueryTest
+{
+	
+	static private final int NUMBER_OF_RECORDS = 200;
+	static private final int RANGE_SIZE = 20;
+	static private final int RANGE_STEP = 10;
+	static private final int[] LIMITS = { 0, 7 };
+	
+	private File folder;
+	private DB4ORecordStore recordStore;
+	
+	@After
+	public void close()
+	{
+		if(recordStore != null)
+			recordStore.close();
+		FileUtils.deleteQuietly(folder);
+	}
+	
+	@Test
+	public void indexed() throws Exception
+	{
+		checkQueries(true);
+	}
+	
+	@Test
+	public void scanning() throws Exception
+	{
+		checkQueries(false);
+	}
+	
+	/**
+	 * Checks that records stored while the file was opened without indexes are found once it is opened with indexes again.
+	 */
+	@Test
+	public void indexedAfterUseWithoutIndexes() throws Exception
+	{
+		Fixtures fixtures = new Fixtures();
+		folder = Fixtures.CreateTempFolder("sapelli-test-db4o");
+		List<Record> records = fixtures.createRecords(NUMBER_OF_RECORDS);
+		for(boolean useIndexes : new boolean[] { true, false })
+		{
+			recordStore = new DB4ORecordStore(new BenchmarkClient(fixtures), folder, "Test", useIndexes);
+			recordStore.store(useIndexes ? records.subList(0, NUMBER_OF_RECORDS / 2) : records.subList(NUMBER_OF_RECORDS / 2, NUMBER_OF_RECORDS));
+			recordStore.close();
+		}
+		
+		recordStore = new DB4ORecordStore(new BenchmarkClient(fixtures), folder, "Test", true);
+		assertQuery(new RecordsQuery(fixtures.schema), records);
+		for(long deviceID = 1000000L; deviceID < 1000004L; deviceID++)
+			assertQuery(new RecordsQuery(fixtures.schema, new EqualityConstraint(fixtures.colDeviceID, deviceID)), records);
+		for(int r = 0; r < NUMBER_OF_RECORDS; r += RANGE_STEP)
+			assertQuery(new RecordsQuery(fixtures.schema, new RuleConstraint(fixtures.colStartTime, RuleConstraint.Comparison.GREATER_OR_EQUAL, fixtures.colStartTime.retrieveValue(records.get(r)))), records);
+	}
+	
+	private void checkQueries(boolean useIndexes) throws Exception
+	{
+		Fixtures fixtures = new Fixtures();
+		folder = Fixtures.CreateTempFolder("sapelli-test-db4o");
+		recordStore = new DB4ORecordStore(new BenchmarkClient(fixtures), folder, "Test", useIndexes);
+		List<Record> records = fixtures.createRecords(NUMBER_OF_RECORDS);
+		recordStore.store(records);
+		recordStore.startTransaction();
+		recordStore.commitTransaction(); // DB4O only commits explicitly
+		
+		// Lookups by reference, time ranges & latest records:
+		for(Record record : records)
+		{
+			RecordReference reference = record.getReference();
+			Record retrieved = recordStore.retrieveRecord(reference);
+			assertNotNull("Could not retrieve record " + reference, retrieved);
+			assertEquals(reference, retrieved.getReference());
+		}
+		for(int r = 0; r + RANGE_SIZE < NUMBER_OF_RECORDS; r += RANGE_STEP)
+			assertQuery(new RecordsQuery(fixtures.schema, new AndConstraint(
+				new RuleConstraint(fixtures.colStartTime, RuleConstraint.Comparison.GREATER_OR_EQUAL, fixtures.colStartTime.retrieveValue(records.get(r))),
+				new RuleConstraint(fixtures.colStartTime, RuleConstraint.Comparison.SMALLER, fixtures.colStartTime.retrieveValue(records.get(r + RANGE_SIZE))))), records);
+		assertQuery(new RecordsQuery(Source.From(fixtures.schema), Order.DescendingBy(fixtures.colStartTime), 10), records);
+		
+		// Constraints on every type of column, combined with several orders & limits:
+		Record some = records.get(NUMBER_OF_RECORDS / 2);
+		List<Constraint> constraints = new ArrayList<Constraint>();
+		constraints.add(null);
+		constraints.add(new EqualityConstraint(fixtures.colDeviceID, fixtures.colDeviceID.retrieveValue(some)));
+		constraints.add(new EqualityConstraint(fixtures.colStartTime, fixtures.colStartTime.retrieveValue(some)));
+		constraints.add(new EqualityConstraint(fixtures.colNotes, "tree"));
+		constraints.add(new EqualityConstraint(fixtures.colNotes, "tree", false));
+		constraints.add(EqualityConstraint.IsNull(fixtures.colNotes));
+		constraints.add(EqualityConstraint.IsNull(fixtures.colValue));
+		constraints.add(new EqualityConstraint(fixtures.colFlag, true));
+		for(RuleConstraint.Comparison comparison : RuleConstraint.Comparison.values())
+		{
+			constraints.add(new RuleConstraint(fixtures.colStartTime, comparison, fixtures.colStartTime.retrieveValue(some)));
+			constraints.add(new RuleConstraint(fixtures.colDeviceID, comparison, 1000001L));
+			constraints.add(new RuleConstraint(fixtures.colCount, comparison, 500L));
+			constraints.add(new RuleConstraint(fixtures.colValue, comparison, 0.0d));
+			constraints.add(new RuleConstraint(fixtures.colFlag, comparison, false));
+			constraints.add(new RuleConstraint(fixtures.colNotes, comparison, "m"));
+		}
+		constraints.add(new AndConstraint(new RuleConstraint(fixtures.colCount, RuleConstraint.Comparison.GREATER, 100L), new RuleConstraint(fixtures.colValue, RuleConstraint.Comparison.SMALLER_OR_EQUAL, 50.0d), new EqualityConstraint(fixtures.colFlag, false)));
+		constraints.add(new OrConstraint(new EqualityConstraint(fixtures.colCount, 7L), new EqualityConstraint(fixtures.colDeviceID, 1000003L)));
+		constraints.add(new EqualityConstraint(fixtures.colDeviceID, 1000002L).negate());
+		constraints.add(new AndConstraint(new RuleConstraint(fixtures.colCount, RuleConstraint.Comparison.GREATER, 500L), new RuleConstraint(fixtures.colCount, RuleConstraint.Comparison.SMALLER, 500L)));
+		List<Order> orders = Arrays.asList(	Order.UNDEFINED,
+											Order.DescendingBy(fixtures.colStartTime),
+											Order.AscendingBy(fixtures.colValue),
+											Order.By(fixtures.colFlag, fixtures.colCount));
+		for(Constraint constraint : constraints)
+			for(Order order : orders)
+				for(int limit : LIMITS)
+					assertQuery(new RecordsQuery(Source.From(fixtures.schema), order, limit, constraint), records);
+	}
+	
+	/**
+	 * Asserts that the store returns the records which brute-force filtering, sorting and limiting of all records selects.
+	 * Records which are tied on the order may come in any order, and if the order is undefined any selection of
+	 * matching records of the right size is accepted.
+	 * 
+	 * @param query
+	 * @param records all stored records
+	 */
+	private void assertQuery(RecordsQuery query, List<Record> records)
+	{
+		Constraint constraint = query.getConstraints();
+		List<Record> expected = constraint == null ? new ArrayList<Record>(records) : constraint.filter(records);
+		Order order = query.getOrder();
+		order.sort(expected);
+		if(query.isLimited() && expected.size() > query.getLimit())
+			expected = expected.subList(0, query.getLimit());
+		List<Record> actual = recordStore.retrieveRecords(query);
+		String description = "Query with " + constraint + ", " + order + " and limit " + query.getLimit();
+		assertEquals(description + " returned the wrong number of records", expected.size(), actual.size());
+		for(int r = 0; r < actual.size(); r++)
+			assertTrue(description + " returned a wrong record at position " + r, (constraint == null || constraint.isValid(actual.get(r))) && (order.isUndefined() || order.compare(actual.get(r), expected.get(r)) == 0));
+	}
+	
+}
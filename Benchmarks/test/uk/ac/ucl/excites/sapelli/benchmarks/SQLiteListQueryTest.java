@@ -0,0 +1,215 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerListColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringListColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.indexes.PrimaryKey;
+import uk.ac.ucl.excites.sapelli.storage.queries.ExtremeValueRecordQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.Order;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.AndConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.EqualityConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.ListMembershipConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.OrConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.sources.Source;
+
+/**
+ * Checks, for both list column layouts of the SQLite RecordStore (serialised only, and also in normalised side tables), that
+ * membership queries on a list of (nullable) strings and a list of integers (also negated, combined, for {@code null} elements,
+ * ordered & limited and for extreme values) return exactly the records which in-memory filtering selects, also after single &
+ * bulk updates, deletions and reopening the store.
+ */
+public class SQLiteListQueryTest implements StoreUser
+{
+	
+	static private final int NUMBER_OF_RECORDS = 300;
+	static private final int MAX_TAGS_PER_RECORD = 5;
+	static private final int LIMIT = 3;
+	
+	private File folder;
+	private BenchmarkClient client;
+	private RecordStore recordStore;
+	
+	@After
+	public void close()
+	{
+		if(recordStore != null)
+		{
+			client.recordStoreHandle.doneUsing(this);
+			recordStore.close();
+		}
+		FileUtils.deleteQuietly(folder);
+	}
+	
+	@Test
+	public void serialisedListColumns() throws Exception
+	{
+		checkListQueries(false);
+	}
+	
+	@Test
+	public void normalisedListColumns() throws Exception
+	{
+		checkListQueries(true);
+	}
+	
+	private void checkListQueries(boolean normalisedListColumns) throws Exception
+	{
+		SQLiteRecordStoreBenchmark.SetSQLiteLibraryPath();
+		folder = Fixtures.CreateTempFolder("sapelli-test-db");
+		client = new BenchmarkClient(new Fixtures(), folder);
+		client.setNormalisedListColumns(normalisedListColumns);
+		recordStore = client.recordStoreHandle.getStore(this);
+		
+		Model model = new Model(Fixtures.MODEL_ID + 2, "ListTestModel", Fixtures.SCHEMA_FLAGS);
+		Schema schema = new Schema(model, "Things");
+		IntegerColumn colID = schema.addColumn(new IntegerColumn("ID", false, false, Integer.SIZE));
+		StringListColumn colTags = schema.addColumn(new StringListColumn("Tags", StringColumn.ForCharacterCount("Tag", true, 20), true));
+		IntegerListColumn colNums = schema.addColumn(new IntegerListColumn("Nums", new IntegerColumn("Num", true, true, Integer.SIZE), true));
+		schema.setPrimaryKey(PrimaryKey.WithColumnNames(colID), true /*seal!*/);
+		model.seal();
+		
+		Random random = new Random(Fixtures.RANDOM_SEED);
+		List<Record> records = new ArrayList<Record>(NUMBER_OF_RECORDS);
+		for(int r = 0; r < NUMBER_OF_RECORDS; r++)
+		{
+			Record record = schema.createRecord();
+			colID.storeValue(record, Long.valueOf(r));
+			if(random.nextInt(10) > 0) // 10% without list
+			{
+				List<String> tags = new ArrayList<String>();
+				for(int t = random.nextInt(MAX_TAGS_PER_RECORD); t > 0; t--)
+					tags.add(random.nextInt(8) == 0 ? null : "t" + random.nextInt(20));
+				colTags.storeValue(record, tags);
+			}
+			List<Long> nums = new ArrayList<Long>();
+			for(int n = random.nextInt(4); n > 0; n--)
+				nums.add(Long.valueOf(random.nextInt(10) - 5));
+			colNums.storeValue(record, nums);
+			records.add(record);
+		}
+		recordStore.store(records);
+		
+		List<Constraint> constraints = new ArrayList<Constraint>();
+		constraints.add(ListMembershipConstraint.Contains(colTags, "t3"));
+		constraints.add(ListMembershipConstraint.DoesNotContain(colTags, "t3"));
+		constraints.add(ListMembershipConstraint.Contains(colTags, "t3").negate());
+		constraints.add(ListMembershipConstraint.Contains(colTags, null));
+		constraints.add(ListMembershipConstraint.Contains(colNums, -2L));
+		constraints.add(ListMembershipConstraint.Contains(colNums, 3));
+		constraints.add(new AndConstraint(ListMembershipConstraint.Contains(colTags, "t1"), ListMembershipConstraint.Contains(colNums, 0L)));
+		constraints.add(new OrConstraint(ListMembershipConstraint.Contains(colTags, "t1"), new RuleConstraint(colID, RuleConstraint.Comparison.SMALLER, 10L)));
+		constraints.add(new OrConstraint(ListMembershipConstraint.Contains(colTags, "t2"), EqualityConstraint.IsNull(colTags)).negate());
+		
+		for(Constraint constraint : constraints)
+		{
+			List<Record> expected = constraint.filter(records);
+			assertSameRecords(constraint, expected, recordStore.retrieveRecords(new RecordsQuery(schema, constraint)), colID);
+			assertEquals("Number of references for " + constraint, expected.size(), recordStore.retrieveRecordReferences(new RecordsQuery(schema, constraint)).size());
+			// Ordered & limited, and extreme value:
+			List<Record> expectedLast = new ArrayList<Record>(expected);
+			Collections.reverse(expectedLast);
+			expectedLast = expectedLast.subList(0, Math.min(LIMIT, expectedLast.size()));
+			assertSameRecords(constraint, expectedLast, recordStore.retrieveRecords(new RecordsQuery(Source.From(schema), Order.DescendingBy(colID), LIMIT, constraint)), colID);
+			Record max = recordStore.retrieveRecord(ExtremeValueRecordQuery.Max(colID, new RecordsQuery(schema, constraint)));
+			assertEquals("Maximum for " + constraint, expectedLast.isEmpty() ? null : colID.retrieveValue(expectedLast.get(0)), max == null ? null : colID.retrieveValue(max));
+		}
+		
+		// Single record updates:
+		for(int u = 0; u < NUMBER_OF_RECORDS / 6; u++)
+		{
+			Record record = records.get(random.nextInt(records.size()));
+			colTags.storeValue(record, Arrays.asList("t3", "new" + u));
+			recordStore.store(record);
+		}
+		assertSameRecords(schema, constraints, records, colID);
+		
+		// Bulk update of the list column, on records selected by membership of the other list:
+		Constraint bulkConstraint = ListMembershipConstraint.Contains(colNums, 4L);
+		List<Record> toUpdate = bulkConstraint.filter(records);
+		assertEquals("Number of records updated for " + bulkConstraint, toUpdate.size(), recordStore.update(new RecordsQuery(schema, bulkConstraint), colTags, Arrays.asList("bulk")));
+		for(Record record : toUpdate)
+			colTags.storeValue(record, Arrays.asList("bulk"));
+		constraints.add(ListMembershipConstraint.Contains(colTags, "bulk"));
+		assertSameRecords(schema, constraints, records, colID);
+		
+		// Deletion of a single record, and of records selected by membership:
+		recordStore.delete(records.remove(5));
+		Constraint deleteConstraint = ListMembershipConstraint.Contains(colTags, "t3");
+		List<Record> toDelete = deleteConstraint.filter(records);
+		recordStore.delete(new RecordsQuery(schema, deleteConstraint));
+		records.removeAll(toDelete);
+		assertSameRecords(schema, constraints, records, colID);
+		assertSameRecords(null, records, recordStore.retrieveRecords(schema), colID);
+		
+		// Reopen the store:
+		client.recordStoreHandle.doneUsing(this);
+		recordStore.close();
+		recordStore = client.recordStoreHandle.getStore(this);
+		assertSameRecords(schema, constraints, records, colID);
+	}
+	
+	private void assertSameRecords(Schema schema, List<Constraint> constraints, List<Record> records, IntegerColumn colID)
+	{
+		for(Constraint constraint : constraints)
+			assertSameRecords(constraint, constraint.filter(records), recordStore.retrieveRecords(new RecordsQuery(schema, constraint)), colID);
+	}
+	
+	/**
+	 * @param constraint
+	 * @param expected records selected by in-memory filtering
+	 * @param actual records returned by the store
+	 * @param colID
+	 */
+	static private void assertSameRecords(Constraint constraint, List<Record> expected, List<Record> actual, IntegerColumn colID)
+	{
+		Set<Long> expectedIDs = new HashSet<Long>();
+		for(Record record : expected)
+			expectedIDs.add(colID.retrieveValue(record));
+		Set<Long> actualIDs = new HashSet<Long>();
+		for(Record record : actual)
+			actualIDs.add(colID.retrieveValue(record));
+		assertEquals("Records returned for " + constraint, expectedIDs, actualIDs);
+	}
+	
+}
@@ -0,0 +1,166 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
+import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.BoundingBoxConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RadiusConstraint;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
+
+/**
+ * Checks that the SQLite RecordStore, without spatial index, with an R*Tree index and with a grid index, returns exactly the
+ * records a brute-force evaluation of the constraint (over all stored records) selects, for bounding-box and radius queries
+ * like those of {@link SQLiteRecordStoreBenchmark}, queries with bounds on stored coordinates, spanning the antimeridian or
+ * covering too many grid cells, and again after locations have been updated and records deleted.
+ * Note that the R*Tree test falls back to a grid if the SQLite library lacks the R*Tree module.
+ */
+public class SQLiteLocationQueryTest implements StoreUser
+{
+	
+	static private final int NUMBER_OF_RECORDS = 2000;
+	static private final int NUMBER_OF_QUERIES = 100;
+	static private final double BOX_SIZE_DEGREES = 0.02d;
+	static private final double RADIUS_M = 1000.0d;
+	
+	private File folder;
+	private BenchmarkClient client;
+	private RecordStore recordStore;
+	
+	@After
+	public void close()
+	{
+		if(recordStore != null)
+		{
+			client.recordStoreHandle.doneUsing(this);
+			recordStore.close();
+		}
+		FileUtils.deleteQuietly(folder);
+	}
+	
+	@Test
+	public void noIndex() throws Exception
+	{
+		checkLocationQueries(false, false);
+	}
+	
+	@Test
+	public void rTreeIndex() throws Exception
+	{
+		checkLocationQueries(true, false);
+	}
+	
+	@Test
+	public void gridIndex() throws Exception
+	{
+		checkLocationQueries(true, true);
+	}
+	
+	private void checkLocationQueries(boolean locationIndexes, boolean gridLocationIndexes) throws Exception
+	{
+		SQLiteRecordStoreBenchmark.SetSQLiteLibraryPath();
+		Fixtures fixtures = new Fixtures();
+		folder = Fixtures.CreateTempFolder("sapelli-test-db");
+		client = new BenchmarkClient(fixtures, folder);
+		client.setLocationIndexes(locationIndexes);
+		client.setGridLocationIndexes(gridLocationIndexes);
+		recordStore = client.recordStoreHandle.getStore(this);
+		List<Record> records = fixtures.createRecords(NUMBER_OF_RECORDS);
+		recordStore.store(records);
+		
+		Random random = new Random(Fixtures.RANDOM_SEED);
+		List<Constraint> constraints = new ArrayList<Constraint>();
+		// Query areas within the area covered by the Fixtures' locations:
+		for(int q = 0; q < NUMBER_OF_QUERIES; q++)
+		{
+			double lat = 51.5d + random.nextDouble();
+			double lon = -0.1d - random.nextDouble();
+			constraints.add(new BoundingBoxConstraint(fixtures.colLocation, lat, lat + BOX_SIZE_DEGREES, lon, lon + BOX_SIZE_DEGREES));
+			constraints.add(new RadiusConstraint(fixtures.colLocation, new Location(lat, lon), RADIUS_M));
+		}
+		// Bounds which coincide with stored coordinates (an R*Tree rounds those to 32 bit floats):
+		for(Record record : records.subList(0, NUMBER_OF_QUERIES))
+		{
+			Location location = fixtures.colLocation.retrieveValue(record);
+			if(location == null)
+				continue;
+			double lat = location.getLatitude(), lon = location.getLongitude();
+			constraints.add(new BoundingBoxConstraint(fixtures.colLocation, lat, lat, lon, lon));
+			constraints.add(new BoundingBoxConstraint(fixtures.colLocation, Math.nextUp(lat), lat + BOX_SIZE_DEGREES, lon - BOX_SIZE_DEGREES, lon));
+			constraints.add(new BoundingBoxConstraint(fixtures.colLocation, lat - BOX_SIZE_DEGREES, lat, Math.nextUp(lon), lon + BOX_SIZE_DEGREES));
+			constraints.add(new RadiusConstraint(fixtures.colLocation, location, 0.0d));
+			constraints.add(new RadiusConstraint(fixtures.colLocation, location, random.nextDouble() * RADIUS_M));
+		}
+		// Boxes spanning the antimeridian, and areas covering more grid rows than a grid index narrows down:
+		constraints.add(new BoundingBoxConstraint(fixtures.colLocation, 51.5d, 52.5d, -0.5d, -0.6d));
+		constraints.add(new BoundingBoxConstraint(fixtures.colLocation, 51.5d, 52.5d, 179.0d, -0.5d));
+		constraints.add(new BoundingBoxConstraint(fixtures.colLocation, -90.0d, 90.0d, -180.0d, 180.0d));
+		constraints.add(new RadiusConstraint(fixtures.colLocation, new Location(52.0d, -0.6d), 50000.0d));
+		
+		assertSameRecords(fixtures, constraints);
+		
+		// Move some of the records (possibly to/from having no location) and delete others:
+		for(Record record : records)
+			if(random.nextBoolean())
+			{
+				fixtures.colLocation.storeValue(record, random.nextInt(10) == 0 ? null : new Location(51.5d + random.nextDouble(), -0.1d - random.nextDouble()));
+				recordStore.store(record);
+			}
+		recordStore.delete(records.subList(0, NUMBER_OF_RECORDS / 4));
+		assertSameRecords(fixtures, constraints);
+	}
+	
+	/**
+	 * Asserts that the store returns exactly the records which the constraints select from all stored records (in memory).
+	 * 
+	 * @param fixtures
+	 * @param constraints
+	 */
+	private void assertSameRecords(Fixtures fixtures, List<Constraint> constraints)
+	{
+		List<Record> allRecords = recordStore.retrieveRecords(fixtures.schema);
+		for(Constraint constraint : constraints)
+		{
+			Set<RecordReference> expected = new HashSet<RecordReference>();
+			for(Record record : constraint.filter(allRecords))
+				expected.add(record.getReference());
+			Set<RecordReference> actual = new HashSet<RecordReference>();
+			for(Record record : recordStore.retrieveRecords(new RecordsQuery(fixtures.schema, constraint)))
+				actual.add(record.getReference());
+			assertEquals("Records returned for " + constraint, expected, actual);
+		}
+	}
+	
+}
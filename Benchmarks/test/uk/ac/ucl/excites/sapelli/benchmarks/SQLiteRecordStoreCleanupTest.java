@@ -0,0 +1,148 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package uk.ac.ucl.excites.sapelli.benchmarks;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteRecordStore;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.indexes.PrimaryKey;
+
+/**
+ * Checks that closing the SQLite RecordStore drops empty tables, also when their record count was not known to the store
+ * (i.e. the table became empty in an earlier session which did not end with a clean-up), or when the store's idea of the
+ * count includes inserts which were rolled back.
+ */
+public class SQLiteRecordStoreCleanupTest implements StoreUser
+{
+	
+	private File folder;
+	private Schema schema;
+	private IntegerColumn colID;
+	
+	@Before
+	public void setup() throws Exception
+	{
+		SQLiteRecordStoreBenchmark.SetSQLiteLibraryPath();
+		folder = Fixtures.CreateTempFolder("sapelli-test-db");
+		Model model = new Model(Fixtures.MODEL_ID + 3, "CleanupTestModel", Fixtures.SCHEMA_FLAGS);
+		schema = new Schema(model, "Things");
+		colID = schema.addColumn(new IntegerColumn("ID", false, false, Integer.SIZE));
+		schema.setPrimaryKey(PrimaryKey.WithColumnNames(colID), true /*seal!*/);
+		model.seal();
+	}
+	
+	@After
+	public void deleteFolder()
+	{
+		FileUtils.deleteQuietly(folder);
+	}
+	
+	@Test
+	public void dropsTablesLeftEmptyByEarlierSession() throws Exception
+	{
+		// A session which empties the table but ends without clean-up (e.g. because the app crashed):
+		BenchmarkClient crashingClient = new BenchmarkClient(new Fixtures(), folder);
+		RecordStore crashingStore = crashingClient.recordStoreHandle.getStore(this);
+		Record record = schema.createRecord(1L);
+		crashingStore.store(record);
+		crashingStore.delete(record);
+		assertTrue(tableExists());
+		
+		// A session which only reads from the table:
+		BenchmarkClient client = new BenchmarkClient(new Fixtures(), folder);
+		RecordStore recordStore = client.recordStoreHandle.getStore(this);
+		assertTrue(recordStore.retrieveRecords(schema).isEmpty());
+		client.recordStoreHandle.doneUsing(this);
+		recordStore.close();
+		assertFalse(tableExists());
+	}
+	
+	@Test
+	public void dropsTablesEmptyAfterRollback() throws Exception
+	{
+		BenchmarkClient client = new BenchmarkClient(new Fixtures(), folder);
+		RecordStore recordStore = client.recordStoreHandle.getStore(this);
+		Record record = schema.createRecord(1L);
+		recordStore.store(record);
+		recordStore.delete(record);
+		recordStore.startTransaction();
+		recordStore.store(schema.createRecord(2L));
+		recordStore.rollbackTransactions();
+		assertTrue(recordStore.retrieveRecords(schema).isEmpty());
+		client.recordStoreHandle.doneUsing(this);
+		recordStore.close();
+		assertFalse(tableExists());
+	}
+	
+	@Test
+	public void keepsNonEmptyTables() throws Exception
+	{
+		BenchmarkClient client = new BenchmarkClient(new Fixtures(), folder);
+		RecordStore recordStore = client.recordStoreHandle.getStore(this);
+		recordStore.store(schema.createRecord(1L));
+		client.recordStoreHandle.doneUsing(this);
+		recordStore.close();
+		
+		client = new BenchmarkClient(new Fixtures(), folder);
+		recordStore = client.recordStoreHandle.getStore(this);
+		assertFalse(recordStore.retrieveRecords(schema).isEmpty());
+		client.recordStoreHandle.doneUsing(this);
+		recordStore.close();
+		assertTrue(tableExists());
+	}
+	
+	private boolean tableExists() throws Exception
+	{
+		SQLiteConnection connection = new SQLiteConnection(new File(folder, SQLiteRecordStore.GetDBFileName(BenchmarkClient.DATABASE_BASENAME)));
+		connection.openReadonly();
+		try
+		{
+			SQLiteStatement statement = connection.prepare("SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?;");
+			try
+			{
+				return statement.bind(1, schema.tableName).step();
+			}
+			finally
+			{
+				statement.dispose();
+			}
+		}
+		finally
+		{
+			connection.dispose();
+		}
+	}
+	
+}
@@ -18,27 +18,42 @@
 
 package uk.ac.ucl.excites.sapelli.collector.load;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import uk.ac.ucl.excites.sapelli.collector.io.FileStorageProvider;
-import uk.ac.ucl.excites.sapelli.collector.load.process.PostProcessor;
+import uk.ac.ucl.excites.sapelli.collector.load.process.ConcurrentPostProcessor;
 import uk.ac.ucl.excites.sapelli.collector.load.process.TTVSynthesisTask;
 import uk.ac.ucl.excites.sapelli.collector.model.Project;
 import uk.ac.ucl.excites.sapelli.shared.util.WarningKeeper;
 import android.content.Context;
 
 /**
+ * Post-processor which synthesises speech on Android.
+ * 
+ * Several {@link TTVSynthesisTask}s can be executed at the same time (at most {@link #MAX_CONCURRENT_SYNTHESIS_TASKS}).
+ * Because a {@link TextToVoice} instance can only handle one job at a time each thread executing tasks uses its own instance.
+ * 
  * @author mstevens, benelliott
  *
  */
-public class AndroidPostProcessor implements PostProcessor
+public class AndroidPostProcessor implements ConcurrentPostProcessor
 {
 	
 	@SuppressWarnings("unused")
     private static final String TAG = "AndroidPostProcessor";
 	
+	/**
+	 * Maximum number of synthesis tasks executed at the same time (each uses its own TextToSpeech instance)
+	 */
+	private static final int MAX_CONCURRENT_SYNTHESIS_TASKS = 3;
+	
 	private Context context;
 	private FileStorageProvider fileStorageProvider;
-	private TextToVoice ttv;
-	private boolean warnedAboutLanguage = false;
+	private ThreadLocal<TextToVoice> threadTTV = new ThreadLocal<TextToVoice>();
+	private final List<TextToVoice> ttvs = new ArrayList<TextToVoice>(); // all instances in use, guarded by itself
+	private final AtomicBoolean warnedAboutLanguage = new AtomicBoolean(false);
 
 	public AndroidPostProcessor(Context context, FileStorageProvider fileStorageProvider)
 	{
@@ -50,17 +65,25 @@ public class AndroidPostProcessor implements PostProcessor
     public void initialise(Project project)
 	{
 		// Reset "already warned" flags:
-		warnedAboutLanguage = false;
+		warnedAboutLanguage.set(false);
     }
 	
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.collector.load.process.ConcurrentPostProcessor#getMaxConcurrentTasks()
+	 */
+	@Override
+	public int getMaxConcurrentTasks()
+	{
+		return Math.max(1, Math.min(MAX_CONCURRENT_SYNTHESIS_TASKS, Runtime.getRuntime().availableProcessors()));
+	}
+	
 	/* (non-Javadoc)
 	 * @see uk.ac.ucl.excites.sapelli.collector.load.process.PostProcessor#execute(uk.ac.ucl.excites.sapelli.collector.load.process.TTSSynthesisTask, uk.ac.ucl.excites.sapelli.collector.model.Project, uk.ac.ucl.excites.sapelli.shared.util.WarningKeeper)
 	 */
 	@Override
 	public void execute(TTVSynthesisTask ttsTask, Project project, WarningKeeper warningKeeper) throws Exception
 	{
-		if (ttv == null)
-			ttv = new TextToVoice(context);
+		TextToVoice ttv = getTextToVoice();
 		
 		String filepath = (fileStorageProvider.getProjectSoundFile(project, ttsTask.getAudioFileRelativePath())).getAbsolutePath();
 		
@@ -75,26 +98,43 @@ public class AndroidPostProcessor implements PostProcessor
 	    }
 	    catch (TTVUnsupportedLanguageException e)
 	    {
-	    	if (!warnedAboutLanguage)
-	    	{
+	    	if (warnedAboutLanguage.compareAndSet(false, true))
 	    		warningKeeper.addWarning("Text-to-speech synthesis: specified language code not supported for synthesis. Make sure the provided language code is valid, but know that Android will not support all valid language codes for speech synthesis.");
-	    		warnedAboutLanguage = true;
-	    	}
 	    }
 	}
 
+	/**
+	 * @return the TextToVoice instance of the current thread (created upon first use)
+	 */
+	private TextToVoice getTextToVoice()
+	{
+		TextToVoice ttv = threadTTV.get();
+		if(ttv == null)
+		{
+			ttv = new TextToVoice(context);
+			threadTTV.set(ttv);
+			synchronized(ttvs)
+			{
+				ttvs.add(ttv);
+			}
+		}
+		return ttv;
+	}
+
 	/**
 	 * Frees any resources that were being used by the PostProcessor
 	 */
 	@Override
 	public void freeResources()
 	{
-		// destroy TTS engine:
-		if(ttv != null)
+		// destroy TTS engines:
+		synchronized(ttvs)
 		{
-			ttv.destroy();
-			ttv = null;
+			for(TextToVoice ttv : ttvs)
+				ttv.destroy();
+			ttvs.clear();
 		}
+		threadTTV = new ThreadLocal<TextToVoice>(); // forget the destroyed instances (also those of threads which are still alive)
 	}
 
 }
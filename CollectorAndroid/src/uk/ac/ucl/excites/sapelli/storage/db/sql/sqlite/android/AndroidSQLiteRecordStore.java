@@ -36,6 +36,7 @@ import android.os.Build;
 import uk.ac.ucl.excites.sapelli.collector.BuildConfig;
 import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Counter;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStoreUpgrader;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteCursor;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteRecordStore;
@@ -67,7 +68,55 @@ public class AndroidSQLiteRecordStore extends SQLiteRecordStore
 	 */
 	public AndroidSQLiteRecordStore(StorageClient client, Context context, File databaseFolder, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader) throws DBException
 	{
-		super(client);
+		this(client, context, databaseFolder, baseName, targetVersion, upgrader, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param context
+	 * @param databaseFolder
+	 * @param baseName
+	 * @param targetVersion
+	 * @param upgrader
+	 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean)})
+	 * @throws DBException
+	 */
+	public AndroidSQLiteRecordStore(StorageClient client, Context context, File databaseFolder, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader, boolean integerTimeStamps) throws DBException
+	{
+		this(client, context, databaseFolder, baseName, targetVersion, upgrader, integerTimeStamps, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param context
+	 * @param databaseFolder
+	 * @param baseName
+	 * @param targetVersion
+	 * @param upgrader
+	 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean)})
+	 * @param normalisedListColumns whether or not to also store the elements of ListColumns in normalised form (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean, boolean)})
+	 * @throws DBException
+	 */
+	public AndroidSQLiteRecordStore(StorageClient client, Context context, File databaseFolder, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader, boolean integerTimeStamps, boolean normalisedListColumns) throws DBException
+	{
+		this(client, context, databaseFolder, baseName, targetVersion, upgrader, integerTimeStamps, normalisedListColumns, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param context
+	 * @param databaseFolder
+	 * @param baseName
+	 * @param targetVersion
+	 * @param upgrader
+	 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean)})
+	 * @param normalisedListColumns whether or not to also store the elements of ListColumns in normalised form (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean, boolean)})
+	 * @param locationIndexes whether or not to add a spatial index to each LocationColumn (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean, boolean, boolean)})
+	 * @throws DBException
+	 */
+	public AndroidSQLiteRecordStore(StorageClient client, Context context, File databaseFolder, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader, boolean integerTimeStamps, boolean normalisedListColumns, boolean locationIndexes) throws DBException
+	{
+		super(client, integerTimeStamps, normalisedListColumns, locationIndexes);
 		
 		// Helper:
 		CustomSQLiteOpenHelper helper = new CustomSQLiteOpenHelper(new CollectorContext(context, databaseFolder), GetDBFileName(baseName), new AndroidSQLiteCursorFactory(), targetVersion);
@@ -290,6 +339,7 @@ public class AndroidSQLiteRecordStore extends SQLiteRecordStore
 			client.logInfo(TAG + "> Compile statement: " + sql);
 		try
 		{
+			metrics.increment(Counter.STATEMENT_COMPILATIONS);
 			return new AndroidSQLiteStatement(this, db.compileStatement(sql), paramCols);
 		}
 		catch(Exception e)
@@ -26,6 +26,7 @@ import uk.ac.ucl.excites.sapelli.shared.io.FileHelpers;
 import com.db4o.Db4oEmbedded;
 import com.db4o.ObjectContainer;
 import com.db4o.config.EmbeddedConfiguration;
+import com.db4o.config.EmbeddedConfigurationItem;
 
 /**
  * Helper class to open connections to DB4O ObjectContainers
@@ -47,6 +48,18 @@ public final class DB4OConnector
 	}
 	
 	static public ObjectContainer open(File db4oFile, Class<?>... cascadeClasses) throws Exception
+	{
+		return open(db4oFile, (EmbeddedConfigurationItem) null, cascadeClasses);
+	}
+	
+	/**
+	 * @param db4oFile
+	 * @param configurationItem additional configuration (e.g. field indexes) to apply to the ObjectContainer, may be {@code null}
+	 * @param cascadeClasses
+	 * @return
+	 * @throws Exception
+	 */
+	static public ObjectContainer open(File db4oFile, EmbeddedConfigurationItem configurationItem, Class<?>... cascadeClasses) throws Exception
 	{
 		ObjectContainer objCont = null;
 		try
@@ -63,6 +76,8 @@ public final class DB4OConnector
 					dbConfig.common().objectClass(clazz).cascadeOnUpdate(true);
 					dbConfig.common().objectClass(clazz).cascadeOnDelete(true);
 				}
+			if(configurationItem != null)
+				dbConfig.addConfigurationItem(configurationItem);
 			// Open the db:
 			objCont = Db4oEmbedded.openFile(dbConfig, db4oFile.getAbsolutePath()); // (throws various exceptions)
 		}
@@ -22,7 +22,11 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import uk.ac.ucl.excites.sapelli.shared.db.StoreBackupper;
 import uk.ac.ucl.excites.sapelli.shared.db.db4o.DB4OConnector;
@@ -31,6 +35,8 @@ import uk.ac.ucl.excites.sapelli.shared.util.ExceptionHelpers;
 import uk.ac.ucl.excites.sapelli.shared.util.TimeUtils;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient;
 import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Counter;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Operation;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBPrimaryKeyException;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBRecordsException;
 import uk.ac.ucl.excites.sapelli.storage.model.Column;
@@ -38,18 +44,43 @@ import uk.ac.ucl.excites.sapelli.storage.model.Model;
 import uk.ac.ucl.excites.sapelli.storage.model.Record;
 import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
 import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.BooleanColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.FloatColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.indexes.AutoIncrementingPrimaryKey;
+import uk.ac.ucl.excites.sapelli.storage.model.indexes.Index;
+import uk.ac.ucl.excites.sapelli.storage.queries.Order;
+import uk.ac.ucl.excites.sapelli.storage.queries.Order.ColumnOrdering;
 import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
 import uk.ac.ucl.excites.sapelli.storage.queries.SingleRecordQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.AndConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.BitFlagConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.BoundingBoxConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.DummyConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.EqualityConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.ListMembershipConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.NotConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.OrConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RadiusConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.sources.Source;
 import uk.ac.ucl.excites.sapelli.storage.queries.sources.SourceBySchemata;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
+import uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer;
 
 import com.db4o.ObjectContainer;
 import com.db4o.ObjectSet;
+import com.db4o.config.EmbeddedConfiguration;
+import com.db4o.config.EmbeddedConfigurationItem;
+import com.db4o.config.ObjectClass;
+import com.db4o.EmbeddedObjectContainer;
 import com.db4o.ext.ExtObjectContainer;
 import com.db4o.query.Predicate;
+import com.db4o.query.Query;
 
 /**
  * DB4O implementation of {@link RecordStore}.
@@ -73,11 +104,41 @@ public class DB4ORecordStore extends RecordStore
 	
 	private AutoIncrementDictionary autoIncrementDict;
 	
+	private final boolean useIndexes;
+	
+	/**
+	 * Cache of the indexed columns of each schema (mapped by schema key), see {@link #getIndexedColumns(Schema)}
+	 */
+	private final Map<String, List<Column<?>>> indexedColumnsCache = new HashMap<String, List<Column<?>>>();
+	
+	/**
+	 * Keys of the schemata for which the {@link IndexEntry}s are known to be complete
+	 */
+	private final Set<String> indexedSchemata = new HashSet<String>();
+	
 	public DB4ORecordStore(StorageClient client, File folder, String baseFilename) throws Exception
+	{
+		this(client, folder, baseFilename, true);
+	}
+	
+	/**
+	 * @param client
+	 * @param folder
+	 * @param baseFilename
+	 * @param useIndexes whether or not to maintain {@link IndexEntry}s for the primary key and indexed columns of each record and use them to evaluate queries;
+	 * 	when {@code false} any existing entries are deleted (as they would go stale), so they are rebuilt when the file is opened with indexes again
+	 * @throws Exception
+	 */
+	public DB4ORecordStore(StorageClient client, File folder, String baseFilename, boolean useIndexes) throws Exception
 	{
 		super(client, false); // don't make use of roll-back tasks
 		this.filename = baseFilename + DATABASE_NAME_SUFFIX;
-		this.db4o = DB4OConnector.open(DB4OConnector.getFile(folder, filename), Record.class, Schema.class);
+		this.useIndexes = useIndexes;
+		this.db4o = DB4OConnector.open(DB4OConnector.getFile(folder, filename), new IndexConfiguration(), Record.class, Schema.class);
+		
+		// Index entries are not maintained without indexes, so get rid of them:
+		if(!useIndexes)
+			deleteAllIndexEntries();
 		
 		// Get or set the AutoIncrementDictionary:
 		ObjectSet<AutoIncrementDictionary> resultSet = db4o.query(AutoIncrementDictionary.class);
@@ -122,6 +183,8 @@ public class DB4ORecordStore extends RecordStore
 		{
 			client.logError("Could not roll-back changes to DB4O file: " + ExceptionHelpers.getMessageAndCause(e));
 		}
+		// Index entries created since the last commit (possibly including those of entire schemata) have been rolled back as well:
+		indexedSchemata.clear();
 	}
 	
 	/* (non-Javadoc)
@@ -159,6 +222,9 @@ public class DB4ORecordStore extends RecordStore
 	{
 		try
 		{
+			// Make sure the index entries of the schema are complete before anything is changed:
+			ensureIndexEntries(record.getSchema());
+			
 			// Get auto-incrementing ID column (if there is one):
 			IntegerColumn autoIncrIDColumn;
 			if(record.getSchema().getPrimaryKey() instanceof AutoIncrementingPrimaryKey)
@@ -211,7 +277,10 @@ public class DB4ORecordStore extends RecordStore
 			// Insert, or update (i.e. replace; when allowed) the record:
 			boolean insert = previouslyStored == null;
 			if(insert || updateAllowed)
+			{
 				db4o.store(record);
+				storeIndexEntries(record, !insert);
+			}
 			return insert;
 		}
 		catch(Exception e)
@@ -247,6 +316,38 @@ public class DB4ORecordStore extends RecordStore
 	 */
 	@Override
 	public List<Record> retrieveRecords(final RecordsQuery query)
+	{
+		long startNS = metrics.startTimer();
+		List<Record> result = null;
+		try
+		{
+			result = doRetrieveRecords(query);
+		}
+		finally
+		{
+			metrics.record(Operation.RETRIEVE, null, startNS, result != null);
+		}
+		metrics.add(Counter.RECORDS_RETRIEVED, result.size());
+		return result;
+	}
+	
+	private List<Record> doRetrieveRecords(final RecordsQuery query)
+	{
+		// Use the index entries if the query is about a single schema which has indexed columns:
+		Schema schema = getSingleSchema(query.getSource());
+		if(schema != null && !getIndexedColumns(schema).isEmpty())
+			return retrieveIndexedRecords(schema, query);
+		else
+			return scanRecords(query);
+	}
+	
+	/**
+	 * Retrieves records using a native query which visits all stored records and filters them in Java.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	private List<Record> scanRecords(final RecordsQuery query)
 	{
 		final Source source = query.getSource();
 		
@@ -291,6 +392,239 @@ public class DB4ORecordStore extends RecordStore
 			return result;
 	}
 	
+	/**
+	 * Retrieves records of the given schema by first evaluating the indexable parts of the query's constraints (and
+	 * its order) as SODA queries on the {@link IndexEntry}s, such that only candidate records need to be activated.
+	 * The candidates are then filtered by the full constraints (and source) in Java.
+	 * 
+	 * @param schema the one schema the query selects from
+	 * @param query
+	 * @return
+	 */
+	private List<Record> retrieveIndexedRecords(Schema schema, RecordsQuery query)
+	{
+		String schemaKey = GetSchemaKey(schema);
+		ensureIndexEntries(schema);
+		
+		// Get the IDs of the candidate records (if the constraints can narrow them down):
+		Set<Long> candidateIDs = new IndexQueryTranslator(schema, schemaKey).getCandidateRecordIDs(query.getConstraints());
+		if(candidateIDs != null && candidateIDs.isEmpty())
+			return Collections.<Record> emptyList();
+		
+		Column<?> orderColumn = getIndexedOrderColumn(schema, query.getOrder());
+		if(orderColumn != null)
+		{	// Walk the index entries of the order column in the requested order, stopping as soon as the limit is reached:
+			IndexedRecordCollector collector = new IndexedRecordCollector(query, candidateIDs, query.getLimit());
+			Query nullsQuery = createEntryQuery(schemaKey, orderColumn);
+			nullsQuery.descend(IndexEntry.FIELD_VALUE_NULL).constrain(true);
+			Query valuesQuery = createEntryQuery(schemaKey, orderColumn);
+			valuesQuery.descend(IndexEntry.FIELD_VALUE_NULL).constrain(false);
+			Query valueField = valuesQuery.descend(IndexEntry.GetValueField(orderColumn));
+			if(query.getOrder().getOrderings().get(0).isAsc())
+			{	// null is the smallest value
+				valueField.orderAscending();
+				if(collector.collect(nullsQuery.<IndexEntry> execute()))
+					collector.collect(valuesQuery.<IndexEntry> execute());
+			}
+			else
+			{
+				valueField.orderDescending();
+				if(collector.collect(valuesQuery.<IndexEntry> execute()))
+					collector.collect(nullsQuery.<IndexEntry> execute());
+			}
+			return collector.records;
+		}
+		else
+		{	// Activate (and filter) the candidates (or all records of the schema), then sort & apply limit:
+			IndexedRecordCollector collector = new IndexedRecordCollector(query, null, query.getOrder().isUndefined() ? query.getLimit() : RecordsQuery.NO_LIMIT);
+			if(candidateIDs != null)
+			{
+				for(Long recordID : candidateIDs)
+					if(!collector.collect(recordID))
+						break;
+			}
+			else
+				collector.collect(createEntryQuery(schemaKey, getIndexedColumns(schema).get(0)).<IndexEntry> execute()); // every record has an entry for each indexed column
+			List<Record> result = collector.records;
+			query.getOrder().sort(result);
+			int limit = query.getLimit();
+			if(limit != RecordsQuery.NO_LIMIT && result.size() > limit)
+				return result.subList(0, limit);
+			else
+				return result;
+		}
+	}
+	
+	/**
+	 * @param source
+	 * @return the only schema the source selects from, or {@code null} if there is no such schema
+	 */
+	private Schema getSingleSchema(Source source)
+	{
+		if(source instanceof SourceBySchemata && ((SourceBySchemata) source).isByInclusion())
+		{
+			Set<Schema> schemata = ((SourceBySchemata) source).getSchemata();
+			if(schemata.size() == 1)
+				return schemata.iterator().next();
+		}
+		return null;
+	}
+	
+	/**
+	 * @param schema
+	 * @param order
+	 * @return the indexed column by which the records must be ordered, or {@code null} if the order cannot be (entirely) established using the index entries
+	 */
+	private Column<?> getIndexedOrderColumn(Schema schema, Order order)
+	{
+		if(order.getOrderings().size() != 1 || !(order.getOrderings().get(0) instanceof ColumnOrdering))
+			return null;
+		Column<?> column = getIndexedColumn(schema, ((ColumnOrdering) order.getOrderings().get(0)).getBy());
+		// DB4O orders Strings by their byte representation, which does not match String#compareTo(String):
+		return column instanceof StringColumn ? null : column;
+	}
+	
+	/**
+	 * @param schema
+	 * @param columnPointer
+	 * @return the indexed column of the schema the pointer points to, or {@code null} if the pointer does not point to an indexed column
+	 */
+	private Column<?> getIndexedColumn(Schema schema, ColumnPointer<?> columnPointer)
+	{
+		if(!columnPointer.isTopLevelColumn())
+			return null;
+		for(Column<?> column : getIndexedColumns(schema))
+			if(column.name.equals(columnPointer.getColumn().name))
+				return column;
+		return null;
+	}
+	
+	/**
+	 * Returns the top-level columns which are part of the primary key or of another index of the given schema and which have a
+	 * type supported by {@link IndexEntry}. For each record of the schema an {@link IndexEntry} is stored for each of these columns.
+	 * 
+	 * @param schema
+	 * @return the indexed columns, an empty list if the schema has none or if indexes are not used
+	 */
+	private List<Column<?>> getIndexedColumns(Schema schema)
+	{
+		String schemaKey = GetSchemaKey(schema);
+		List<Column<?>> indexedColumns = indexedColumnsCache.get(schemaKey);
+		if(indexedColumns == null)
+		{
+			indexedColumns = new ArrayList<Column<?>>();
+			if(useIndexes)
+				for(Index index : schema.getIndexes(true))
+					for(Column<?> column : index.getColumns(false))
+						if(IndexEntry.IsSupported(column) && schema.containsColumn(column) && !indexedColumns.contains(column))
+							indexedColumns.add(column);
+			indexedColumnsCache.put(schemaKey, indexedColumns);
+		}
+		return indexedColumns;
+	}
+	
+	/**
+	 * Makes sure there are {@link IndexEntry}s for each indexed column of each stored record of the given schema.
+	 * Index entries are created for all existing records of the schema when the schema (or one of its indexed columns)
+	 * is encountered for the first time (e.g. upon first use of a database file created by an older version).
+	 * 
+	 * @param schema
+	 */
+	private void ensureIndexEntries(Schema schema)
+	{
+		String schemaKey = GetSchemaKey(schema);
+		if(indexedSchemata.contains(schemaKey))
+			return;
+		List<Column<?>> missingColumns = new ArrayList<Column<?>>();
+		for(Column<?> column : getIndexedColumns(schema))
+		{
+			Query query = db4o.query();
+			query.constrain(IndexedColumn.class);
+			query.descend(IndexedColumn.FIELD_ENTRY_KEY).constrain(IndexEntry.GetEntryKey(schemaKey, column));
+			if(query.execute().isEmpty())
+				missingColumns.add(column);
+		}
+		if(!missingColumns.isEmpty())
+		{
+			for(Record record : scanRecords(new RecordsQuery(schema)))
+			{
+				long recordID = db4o.ext().getID(record);
+				for(Column<?> column : missingColumns)
+					db4o.store(new IndexEntry(schemaKey, column, record, recordID));
+			}
+			for(Column<?> column : missingColumns)
+				db4o.store(new IndexedColumn(IndexEntry.GetEntryKey(schemaKey, column)));
+		}
+		indexedSchemata.add(schemaKey);
+	}
+	
+	/**
+	 * @param record a record which has just been stored
+	 * @param replace whether or not the record may already have index entries (which must then be replaced)
+	 */
+	private void storeIndexEntries(Record record, boolean replace)
+	{
+		List<Column<?>> indexedColumns = getIndexedColumns(record.getSchema());
+		if(indexedColumns.isEmpty())
+			return;
+		long recordID = db4o.ext().getID(record);
+		if(replace)
+			deleteIndexEntries(recordID);
+		String schemaKey = GetSchemaKey(record.getSchema());
+		for(Column<?> column : indexedColumns)
+			db4o.store(new IndexEntry(schemaKey, column, record, recordID));
+	}
+	
+	/**
+	 * @param recordID the DB4O ID of the record whose index entries must be deleted
+	 */
+	private void deleteIndexEntries(long recordID)
+	{
+		Query query = db4o.query();
+		query.constrain(IndexEntry.class);
+		query.descend(IndexEntry.FIELD_RECORD_ID).constrain(recordID);
+		for(Object entry : query.execute())
+			db4o.delete(entry);
+	}
+	
+	/**
+	 * Deletes all {@link IndexedColumn} markers and {@link IndexEntry}s, in a single commit so that no entries can remain without markers
+	 * (which would cause {@link #ensureIndexEntries(Schema)} to create duplicates).
+	 */
+	private void deleteAllIndexEntries()
+	{
+		ObjectSet<IndexedColumn> markers = db4o.query(IndexedColumn.class);
+		if(markers.isEmpty())
+			return;
+		for(IndexedColumn marker : markers)
+			db4o.delete(marker);
+		for(IndexEntry entry : db4o.query(IndexEntry.class))
+			db4o.delete(entry);
+		db4o.commit();
+	}
+	
+	/**
+	 * @param schemaKey
+	 * @param column
+	 * @return a new SODA query on the index entries of the given column of the schema with the given key
+	 */
+	private Query createEntryQuery(String schemaKey, Column<?> column)
+	{
+		Query query = db4o.query();
+		query.constrain(IndexEntry.class);
+		query.descend(IndexEntry.FIELD_ENTRY_KEY).constrain(IndexEntry.GetEntryKey(schemaKey, column));
+		return query;
+	}
+	
+	/**
+	 * @param schema
+	 * @return a String which identifies the schema among all schemata of all models
+	 */
+	static private String GetSchemaKey(Schema schema)
+	{
+		return schema.model.id + IndexEntry.KEY_SEPARATOR + schema.modelSchemaNumber;
+	}
+	
 	@Override
 	public List<RecordReference> retrieveRecordReferences(RecordsQuery query)
 	{
@@ -361,6 +695,8 @@ public class DB4ORecordStore extends RecordStore
 		{
 			if(db4o.ext().isStored(record))
 			{
+				if(!getIndexedColumns(record.getSchema()).isEmpty())
+					deleteIndexEntries(db4o.ext().getID(record));
 				db4o.delete(record);
 				return true;
 			}
@@ -419,6 +755,363 @@ public class DB4ORecordStore extends RecordStore
 		return false;
 	}
 	
+	/**
+	 * Entry in the DB4O-level index of the records. DB4O cannot index (or evaluate SODA constraints on) the individual
+	 * elements of the values array of a {@link Record}. Therefore, for each column which is part of the primary key or
+	 * of another index of a record's schema, the column value is also stored in a separate, typed field of an
+	 * {@link IndexEntry}, together with the DB4O ID of the record.
+	 * DB4O maintains field indexes on these fields (see {@link IndexConfiguration}).
+	 * 
+	 * Note that records are referred to by their DB4O ID, which changes upon defragmentation of the database file.
+	 */
+	static private final class IndexEntry
+	{
+		
+		static public final String KEY_SEPARATOR = ":";
+		
+		static public final String FIELD_ENTRY_KEY = "entryKey";
+		static public final String FIELD_RECORD_ID = "recordID";
+		static public final String FIELD_VALUE_NULL = "valueNull";
+		static public final String FIELD_INTEGER_VALUE = "integerValue";
+		static public final String FIELD_FLOAT_VALUE = "floatValue";
+		static public final String FIELD_STRING_VALUE = "stringValue";
+		
+		static public final String[] INDEXED_FIELDS = { FIELD_ENTRY_KEY, FIELD_RECORD_ID, FIELD_INTEGER_VALUE, FIELD_FLOAT_VALUE, FIELD_STRING_VALUE };
+		
+		/**
+		 * @param column
+		 * @return whether or not values of the column can be held by an IndexEntry
+		 */
+		static public boolean IsSupported(Column<?> column)
+		{
+			return	column instanceof IntegerColumn ||
+					column instanceof FloatColumn ||
+					column instanceof BooleanColumn ||
+					column instanceof TimeStampColumn ||
+					column instanceof StringColumn;
+		}
+		
+		static public String GetEntryKey(String schemaKey, Column<?> column)
+		{
+			return schemaKey + KEY_SEPARATOR + column.name;
+		}
+		
+		/**
+		 * @param column a supported column
+		 * @return the name of the field which holds the (non-null) values of the column
+		 */
+		static public String GetValueField(Column<?> column)
+		{
+			if(column instanceof FloatColumn)
+				return FIELD_FLOAT_VALUE;
+			else if(column instanceof StringColumn)
+				return FIELD_STRING_VALUE;
+			else
+				return FIELD_INTEGER_VALUE;
+		}
+		
+		/**
+		 * @param column a supported column
+		 * @param value a non-null value of the column
+		 * @return the value as held by the field returned by {@link #GetValueField(Column)}, preserving the order defined by the column
+		 */
+		static public Object GetFieldValue(Column<?> column, Object value)
+		{
+			if(value instanceof TimeStamp)
+				return ((TimeStamp) value).getMsSinceEpoch();
+			else if(value instanceof Boolean)
+				return ((Boolean) value) ? 1L : 0L;
+			else
+				return value; // Long, Double or String
+		}
+		
+		private String entryKey;
+		private long recordID;
+		private boolean valueNull;
+		private long integerValue;
+		private double floatValue;
+		private String stringValue;
+		
+		public IndexEntry(String schemaKey, Column<?> column, Record record, long recordID)
+		{
+			this.entryKey = GetEntryKey(schemaKey, column);
+			this.recordID = recordID;
+			Object value = column.retrieveValue(record);
+			this.valueNull = value == null;
+			if(!valueNull)
+			{
+				Object fieldValue = GetFieldValue(column, value);
+				if(fieldValue instanceof Long)
+					this.integerValue = (Long) fieldValue;
+				else if(fieldValue instanceof Double)
+					this.floatValue = (Double) fieldValue;
+				else
+					this.stringValue = (String) fieldValue;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Marks that {@link IndexEntry}s exist for all records of a schema for one of its indexed columns.
+	 */
+	static private final class IndexedColumn
+	{
+		
+		static public final String FIELD_ENTRY_KEY = "entryKey";
+		
+		@SuppressWarnings("unused")
+		private String entryKey;
+		
+		public IndexedColumn(String entryKey)
+		{
+			this.entryKey = entryKey;
+		}
+		
+	}
+	
+	/**
+	 * Configures the DB4O field indexes on the {@link IndexEntry} and {@link IndexedColumn} fields.
+	 */
+	static private final class IndexConfiguration implements EmbeddedConfigurationItem
+	{
+		
+		@Override
+		public void prepare(EmbeddedConfiguration configuration)
+		{
+			ObjectClass entryClass = configuration.common().objectClass(IndexEntry.class);
+			for(String field : IndexEntry.INDEXED_FIELDS)
+				entryClass.objectField(field).indexed(true);
+			configuration.common().objectClass(IndexedColumn.class).objectField(IndexedColumn.FIELD_ENTRY_KEY).indexed(true);
+		}
+		
+		@Override
+		public void apply(EmbeddedObjectContainer db)
+		{
+			// nothing to do
+		}
+		
+	}
+	
+	/**
+	 * Translates the indexable parts of a {@link Constraint} into SODA queries on {@link IndexEntry}s.
+	 * Only {@link EqualityConstraint}s and {@link RuleConstraint}s (with a value as right-hand side) on indexed
+	 * columns which are (possibly nested) members of a top-level AND are translated; the records selected by the
+	 * resulting queries are a superset of those matching the full constraint.
+	 */
+	private class IndexQueryTranslator implements ConstraintVisitor
+	{
+		
+		private final Schema schema;
+		private final String schemaKey;
+		private final List<Query> queries = new ArrayList<Query>();
+		private boolean noneValid = false;
+		
+		public IndexQueryTranslator(Schema schema, String schemaKey)
+		{
+			this.schema = schema;
+			this.schemaKey = schemaKey;
+		}
+		
+		/**
+		 * @param constraints may be {@code null}
+		 * @return the (sorted) DB4O IDs of the candidate records, or {@code null} if the constraints could not be (partially) translated
+		 */
+		public Set<Long> getCandidateRecordIDs(Constraint constraints)
+		{
+			if(constraints != null)
+				constraints.accept(this);
+			if(noneValid)
+				return Collections.<Long> emptySet();
+			if(queries.isEmpty())
+				return null;
+			Set<Long> candidateIDs = null;
+			for(Query query : queries)
+			{
+				Set<Long> recordIDs = new TreeSet<Long>();
+				for(IndexEntry entry : query.<IndexEntry> execute())
+					if(candidateIDs == null || candidateIDs.contains(entry.recordID))
+						recordIDs.add(entry.recordID);
+				candidateIDs = recordIDs;
+				if(candidateIDs.isEmpty())
+					break;
+			}
+			return candidateIDs;
+		}
+		
+		@Override
+		public void visit(AndConstraint andConstr)
+		{
+			for(Constraint subConstraint : andConstr.getSubConstraints())
+				subConstraint.accept(this);
+		}
+		
+		@Override
+		public void visit(OrConstraint orConstr)
+		{
+			// not translated
+		}
+		
+		@Override
+		public void visit(NotConstraint notConstr)
+		{
+			// not translated
+		}
+		
+		@Override
+		public void visit(EqualityConstraint equalityConstr)
+		{
+			if(equalityConstr.isEqual()) // inequality is hardly selective
+				addQuery(equalityConstr.getColumnPointer(), RuleConstraint.Comparison.EQUAL, equalityConstr.getValue());
+		}
+		
+		@Override
+		public void visit(RuleConstraint ruleConstr)
+		{
+			if(ruleConstr.isRHSValue() && ruleConstr.getRHSValue() != null)
+				addQuery(ruleConstr.getLHSColumnPointer(), ruleConstr.getComparison(), ruleConstr.getRHSValue());
+		}
+		
+		/**
+		 * @param columnPointer
+		 * @param comparison
+		 * @param value value to compare to, may be {@code null} only in case of {@link RuleConstraint.Comparison#EQUAL}
+		 */
+		private void addQuery(ColumnPointer<?> columnPointer, RuleConstraint.Comparison comparison, Object value)
+		{
+			Column<?> column = getIndexedColumn(schema, columnPointer);
+			if(column == null || comparison == RuleConstraint.Comparison.NOT_EQUAL)
+				return;
+			// DB4O compares Strings by their byte representation, which does not match String#compareTo(String):
+			if(column instanceof StringColumn && comparison != RuleConstraint.Comparison.EQUAL)
+				return;
+			Query query = createEntryQuery(schemaKey, column);
+			Query valueNull = query.descend(IndexEntry.FIELD_VALUE_NULL);
+			if(value == null)
+			{
+				valueNull.constrain(true);
+				queries.add(query);
+				return;
+			}
+			Object fieldValue = IndexEntry.GetFieldValue(column, value);
+			if(fieldValue instanceof Double && ((Double) fieldValue).isNaN())
+				return;
+			Query valueField = query.descend(IndexEntry.GetValueField(column));
+			switch(comparison)
+			{
+				case EQUAL :
+					valueNull.constrain(false).and(valueField.constrain(fieldValue));
+					break;
+				case GREATER :
+					valueNull.constrain(false).and(valueField.constrain(fieldValue).greater());
+					break;
+				case GREATER_OR_EQUAL :
+					valueNull.constrain(false).and(valueField.constrain(fieldValue).greater().equal());
+					break;
+				case SMALLER : // null is the smallest value
+					valueNull.constrain(true).or(valueField.constrain(fieldValue).smaller());
+					break;
+				case SMALLER_OR_EQUAL : // null is the smallest value
+					valueNull.constrain(true).or(valueField.constrain(fieldValue).smaller().equal());
+					break;
+				default :
+					return;
+			}
+			queries.add(query);
+		}
+		
+		@Override
+		public void visit(BitFlagConstraint bitFlagConstr)
+		{
+			// not translated
+		}
+		
+		@Override
+		public void visit(ListMembershipConstraint listMembershipConstr)
+		{
+			// not translated
+		}
+		
+		@Override
+		public void visit(BoundingBoxConstraint boundingBoxConstr)
+		{
+			// not translated
+		}
+		
+		@Override
+		public void visit(RadiusConstraint radiusConstr)
+		{
+			// not translated
+		}
+		
+		@Override
+		public void visit(DummyConstraint dummyConstr)
+		{
+			if(!dummyConstr.allValid)
+				noneValid = true;
+		}
+		
+	}
+	
+	/**
+	 * Activates records by their DB4O ID and collects those which match the source and constraints of a query.
+	 */
+	private class IndexedRecordCollector
+	{
+		
+		private final Source source;
+		private final Constraint constraints;
+		private final Set<Long> candidateIDs;
+		private final int limit;
+		public final List<Record> records = new ArrayList<Record>();
+		
+		/**
+		 * @param query
+		 * @param candidateIDs IDs of the records which may be collected, or {@code null} if any record may be collected
+		 * @param limit maximum number of records to collect
+		 */
+		public IndexedRecordCollector(RecordsQuery query, Set<Long> candidateIDs, int limit)
+		{
+			this.source = query.getSource();
+			this.constraints = query.getConstraints();
+			this.candidateIDs = candidateIDs;
+			this.limit = limit;
+		}
+		
+		/**
+		 * @param entries
+		 * @return whether or not more records may be collected
+		 */
+		public boolean collect(ObjectSet<IndexEntry> entries)
+		{
+			for(IndexEntry entry : entries)
+				if(!collect(entry.recordID))
+					return false;
+			return true;
+		}
+		
+		/**
+		 * @param recordID
+		 * @return whether or not more records may be collected
+		 */
+		public boolean collect(long recordID)
+		{
+			if(candidateIDs != null && !candidateIDs.contains(recordID))
+				return true;
+			Object obj = db4o.ext().getByID(recordID);
+			if(obj instanceof Record)
+			{
+				Record record = (Record) obj;
+				if(!db4o.ext().isActive(record))
+					db4o.activate(record, ACTIVATION_DEPTH);
+				if(source.isValid(record) && (constraints == null || constraints.isValid(record)))
+					records.add(record);
+			}
+			return limit == RecordsQuery.NO_LIMIT || records.size() < limit;
+		}
+		
+	}
+	
 	/**
 	 * Helper class which does the book keeping for auto-incrementing primary keys
 	 * 
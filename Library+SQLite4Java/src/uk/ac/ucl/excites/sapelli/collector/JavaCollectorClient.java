@@ -70,7 +70,7 @@ public class JavaCollectorClient extends CollectorClient implements SQLRecordSto
 	@Override
 	protected void createAndSetRecordStore(StoreSetter<RecordStore> setter) throws DBException
 	{
-		setter.setAndInitialise(new JavaSQLiteRecordStore(this, fileStorageProvider.getDBFolder(true), DATABASE_BASENAME, CURRENT_COLLECTOR_RECORDSTORE_VERSION, new CollectorSQLRecordStoreUpgrader(this, this, fileStorageProvider)));
+		setter.setAndInitialise(new JavaSQLiteRecordStore(this, fileStorageProvider.getDBFolder(true), DATABASE_BASENAME, CURRENT_COLLECTOR_RECORDSTORE_VERSION, new CollectorSQLRecordStoreUpgrader(this, this, fileStorageProvider), COLLECTOR_RECORDSTORE_INTEGER_TIMESTAMPS));
 	}
 
 	@Override
@@ -28,6 +28,7 @@ import com.almworks.sqlite4java.SQLiteException;
 import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
 import uk.ac.ucl.excites.sapelli.shared.io.StreamHelpers;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Counter;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStoreUpgrader;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteCursor;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteRecordStore;
@@ -53,7 +54,52 @@ public class JavaSQLiteRecordStore extends SQLiteRecordStore
 	 */
 	public JavaSQLiteRecordStore(StorageClient client, File folderPath, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader) throws DBException
 	{
-		super(client);
+		this(client, folderPath, baseName, targetVersion, upgrader, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param folderPath
+	 * @param baseName
+	 * @param targetVersion
+	 * @param upgrader
+	 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean)})
+	 * @throws DBException
+	 */
+	public JavaSQLiteRecordStore(StorageClient client, File folderPath, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader, boolean integerTimeStamps) throws DBException
+	{
+		this(client, folderPath, baseName, targetVersion, upgrader, integerTimeStamps, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param folderPath
+	 * @param baseName
+	 * @param targetVersion
+	 * @param upgrader
+	 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean)})
+	 * @param normalisedListColumns whether or not to also store the elements of ListColumns in normalised form (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean, boolean)})
+	 * @throws DBException
+	 */
+	public JavaSQLiteRecordStore(StorageClient client, File folderPath, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader, boolean integerTimeStamps, boolean normalisedListColumns) throws DBException
+	{
+		this(client, folderPath, baseName, targetVersion, upgrader, integerTimeStamps, normalisedListColumns, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param folderPath
+	 * @param baseName
+	 * @param targetVersion
+	 * @param upgrader
+	 * @param integerTimeStamps whether or not to store TimeStamps as INTEGERs (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean)})
+	 * @param normalisedListColumns whether or not to also store the elements of ListColumns in normalised form (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean, boolean)})
+	 * @param locationIndexes whether or not to add a spatial index to each LocationColumn (see {@link SQLiteRecordStore#SQLiteRecordStore(StorageClient, boolean, boolean, boolean)})
+	 * @throws DBException
+	 */
+	public JavaSQLiteRecordStore(StorageClient client, File folderPath, String baseName, int targetVersion, SQLRecordStoreUpgrader upgrader, boolean integerTimeStamps, boolean normalisedListColumns, boolean locationIndexes) throws DBException
+	{
+		super(client, integerTimeStamps, normalisedListColumns, locationIndexes);
 		
 		// Database file:
 		File dbFile = new File(folderPath, GetDBFileName(baseName));
@@ -191,6 +237,7 @@ public class JavaSQLiteRecordStore extends SQLiteRecordStore
 		{
 			if(loggingEnabled)
 				client.logInfo("SQLite> Compile/reuse statement: " + sql);
+			metrics.increment(Counter.STATEMENT_COMPILATIONS);
 			return new JavaSQLiteStatement(db, sql, paramCols);
 		}
 		catch(SQLiteException sqliteE)
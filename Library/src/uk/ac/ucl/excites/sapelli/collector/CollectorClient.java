@@ -44,6 +44,7 @@ import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreSetter;
 import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
 import uk.ac.ucl.excites.sapelli.shared.io.StreamHelpers;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.Beta17UpgradeStep;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.IntegerTimeStampsUpgradeStep;
 import uk.ac.ucl.excites.sapelli.storage.model.Model;
 import uk.ac.ucl.excites.sapelli.storage.model.Record;
 import uk.ac.ucl.excites.sapelli.storage.model.Schema;
@@ -73,7 +74,20 @@ public abstract class CollectorClient extends TransmissionClient
 	 */
 	static public final int COLLECTOR_RECORDSTORE_V3 = 3;
 	
-	static public final int CURRENT_COLLECTOR_RECORDSTORE_VERSION = COLLECTOR_RECORDSTORE_V3;
+	/**
+	 * Version in which TimeStamps are stored as INTEGERs rather than as Strings.
+	 * 
+	 * @see IntegerTimeStampsUpgradeStep
+	 * @see CollectorSQLRecordStoreUpgrader
+	 */
+	static public final int COLLECTOR_RECORDSTORE_V4 = 4;
+	
+	static public final int CURRENT_COLLECTOR_RECORDSTORE_VERSION = COLLECTOR_RECORDSTORE_V4;
+	
+	/**
+	 * Whether or not the record store stores TimeStamps as INTEGERs, must remain {@code true} from {@link #COLLECTOR_RECORDSTORE_V4} onwards.
+	 */
+	static public final boolean COLLECTOR_RECORDSTORE_INTEGER_TIMESTAMPS = true;
 	
 	/**
 	 * Flag indicating that a Schema has been defined at the Collector layer of the Sapelli Library.
@@ -379,5 +393,31 @@ public abstract class CollectorClient extends TransmissionClient
 			return Collections.<Correspondent> emptyList();
 		}
 	}
+	
+	/**
+	 * Encryption is required when the {@link SendSchedule} of the Project for the given correspondent asks for it.
+	 * The key itself must be supplied by the platform-specific subclass, see {@link #getPayloadKey(Model)}.
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.transmission.TransmissionClient#isPayloadEncryptionRequired(uk.ac.ucl.excites.sapelli.storage.model.Model, uk.ac.ucl.excites.sapelli.transmission.model.Correspondent)
+	 */
+	@Override
+	public boolean isPayloadEncryptionRequired(Model model, final Correspondent correspondent)
+	{
+		final Project project = getProject(model);
+		if(project == null || correspondent == null)
+			return false;
+		Boolean encrypt = projectStoreHandle.executeWithReturnNoEx(new StoreOperationWithReturnNoException<ProjectStore, Boolean>()
+		{
+			@Override
+			public Boolean execute(ProjectStore store)
+			{
+				for(SendSchedule schedule : store.retrieveSendSchedulesForProject(project))
+					if(correspondent.equals(schedule.getReceiver()) && schedule.isEncrypt())
+						return true;
+				return false;
+			}
+		});
+		return encrypt == null || encrypt; // if the schedules could not be checked we err on the safe side
+	}
 
 }
@@ -30,6 +30,7 @@ import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreUser;
 import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStoreUpgrader;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.Beta17UpgradeStep;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.IntegerTimeStampsUpgradeStep;
 import uk.ac.ucl.excites.sapelli.storage.model.Column;
 import uk.ac.ucl.excites.sapelli.storage.model.Model;
 import uk.ac.ucl.excites.sapelli.storage.model.Record;
@@ -48,7 +49,9 @@ public class CollectorSQLRecordStoreUpgrader extends SQLRecordStoreUpgrader impl
 				fileStorageProvider.getOldDBVersionsFolder(false),
 				// Steps:
 				//	v2->v3:
-				new CollectorBeta17UpgradeStep(client, fileStorageProvider)
+				new CollectorBeta17UpgradeStep(client, fileStorageProvider),
+				//	v3->v4:
+				new IntegerTimeStampsUpgradeStep<CollectorClient>(client, CollectorClient.COLLECTOR_RECORDSTORE_V3, CollectorClient.COLLECTOR_RECORDSTORE_V4)
 				/*...*/);
 	}
 
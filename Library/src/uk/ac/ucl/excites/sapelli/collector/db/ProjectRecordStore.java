@@ -39,6 +39,7 @@ import uk.ac.ucl.excites.sapelli.collector.db.exceptions.ProjectSignatureClashEx
 import uk.ac.ucl.excites.sapelli.collector.io.FileStorageProvider;
 import uk.ac.ucl.excites.sapelli.collector.load.FormSchemaInfoProvider;
 import uk.ac.ucl.excites.sapelli.collector.load.ProjectLoader;
+import uk.ac.ucl.excites.sapelli.collector.load.parse.ProjectXMLCache;
 import uk.ac.ucl.excites.sapelli.collector.model.Field;
 import uk.ac.ucl.excites.sapelli.collector.model.Form;
 import uk.ac.ucl.excites.sapelli.collector.model.Project;
@@ -181,6 +182,7 @@ public class ProjectRecordStore extends ProjectStore implements FormSchemaInfoPr
 	private final TransmissionStore transmissionStore;
 	private final FileStorageProvider fileStorageProvider;
 	private final Map<Long, Project> cache;
+	private final ProjectXMLCache xmlCache;
 	
 	/**
 	 * @param client
@@ -194,6 +196,7 @@ public class ProjectRecordStore extends ProjectStore implements FormSchemaInfoPr
 		this.transmissionStore = client.transmissionStoreHandle.getStore(this);
 		this.fileStorageProvider = fileStorageProvider;
 		this.cache = new HashMap<Long, Project>();
+		this.xmlCache = new ProjectXMLCache();
 	}
 	
 	private Record getProjectRecord(Project project)
@@ -305,7 +308,7 @@ public class ProjectRecordStore extends ProjectStore implements FormSchemaInfoPr
 		// Parse project if we didn't get it from the cache: 
 		if(project == null)
 		{
-			project = ProjectLoader.ParseProjectXMLInFolder(getProjectFolder(projDescr), this); // pass this as FormSchemaInfoProvider
+			project = ProjectLoader.ParseProjectXMLInFolder(getProjectFolder(projDescr), this, xmlCache); // pass this as FormSchemaInfoProvider
 			// Check if we have a project:
 			if(project == null)
 				// If not, delete the project:
@@ -497,8 +500,9 @@ public class ProjectRecordStore extends ProjectStore implements FormSchemaInfoPr
 			rsWrapper.recordStore.delete(new RecordsQuery(FSI_SCHEMA, projectMatchConstraint));
 			rsWrapper.recordStore.delete(new RecordsQuery(HFK_SCHEMA, projectMatchConstraint));
 			rsWrapper.recordStore.delete(new RecordsQuery(SEND_SCHEDULE_SCHEMA, projectMatchConstraint));
-			// Remove project from cache:
+			// Remove project from caches:
 			cache.remove(getCacheKey(projectDescriptor));
+			xmlCache.remove(ProjectLoader.GetProjectXMLFile(getProjectFolder(projectDescriptor)));
 		}
 		catch(DBException e)
 		{
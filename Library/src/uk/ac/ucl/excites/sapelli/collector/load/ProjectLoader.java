@@ -26,11 +26,20 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 
 import uk.ac.ucl.excites.sapelli.collector.io.FileStorageProvider;
 import uk.ac.ucl.excites.sapelli.collector.load.parse.ProjectParser;
+import uk.ac.ucl.excites.sapelli.collector.load.parse.ProjectXMLCache;
+import uk.ac.ucl.excites.sapelli.collector.load.process.ConcurrentPostProcessor;
 import uk.ac.ucl.excites.sapelli.collector.load.process.PostProcessTask;
 import uk.ac.ucl.excites.sapelli.collector.load.process.PostProcessor;
 import uk.ac.ucl.excites.sapelli.collector.model.Project;
@@ -51,6 +60,7 @@ public class ProjectLoader implements WarningKeeper
 	// STATICS -----------------------------------------------------------
 	static public final String[] SAPELLI_FILE_EXTENSIONS = { "sap", "sapelli", "excites", "zip" };
 	static public final String PROJECT_FILE = "PROJECT.xml";
+	static public final int MAX_EXTRACTION_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
 
 	/**
 	 * Checks if the given file has a support sapelli file extension
@@ -108,7 +118,25 @@ public class ProjectLoader implements WarningKeeper
 	 */
 	static public Project ParseProjectXMLInFolder(File folder, FormSchemaInfoProvider fsiProvider)
 	{
-		return ParseProjectXML(GetProjectXMLFile(folder), fsiProvider);
+		return ParseProjectXMLInFolder(folder, fsiProvider, null);
+	}
+	
+	/**
+	 * Parses the {@value #PROJECT_FILE} file in the given folder to produce a {@link Project} instance.
+	 * If one is given the {@link FormSchemaInfoProvider} is used to speed up {@link Schema} generation,
+	 * and the {@link ProjectXMLCache} to avoid reading an unchanged {@value #PROJECT_FILE} file again.
+	 * No warnings are generated and no exceptions thrown.
+	 * Use this for projects that have been successfully parsed before. Otherwise it is advisable to use
+	 * the non-static {@link #load(File)} or {@link #loadParseOnly(File)} methods instead.
+	 * 
+	 * @param folder folder in which the {@value #PROJECT_FILE} file resides
+	 * @param fsiProvider a {@link FormSchemaInfoProvider}, or {@code null}
+	 * @param xmlCache a {@link ProjectXMLCache}, or {@code null}
+	 * @return a {@link Project} instance or {@code null} in case something went wrong
+	 */
+	static public Project ParseProjectXMLInFolder(File folder, FormSchemaInfoProvider fsiProvider, ProjectXMLCache xmlCache)
+	{
+		return ParseProjectXML(GetProjectXMLFile(folder), fsiProvider, xmlCache);
 	}
 	
 	/**
@@ -132,10 +160,26 @@ public class ProjectLoader implements WarningKeeper
 	 * @return a {@link Project} instance or {@code null} in case something went wrong
 	 */
 	static public Project ParseProjectXML(File projectXML, FormSchemaInfoProvider fsiProvider)
+	{
+		return ParseProjectXML(projectXML, fsiProvider, null);
+	}
+	
+	/**
+	 * Parses the given {@value #PROJECT_FILE} file to produce a {@link Project} instance.
+	 * If one is given the {@link FormSchemaInfoProvider} is used to speed up {@link Schema} generation,
+	 * and the {@link ProjectXMLCache} to avoid reading an unchanged file again.
+	 * No warnings are generated and no exceptions thrown.
+	 * 
+	 * @param projectXML the {@value #PROJECT_FILE} file
+	 * @param fsiProvider a {@link FormSchemaInfoProvider}, or {@code null}
+	 * @param xmlCache a {@link ProjectXMLCache}, or {@code null}
+	 * @return a {@link Project} instance or {@code null} in case something went wrong
+	 */
+	static public Project ParseProjectXML(File projectXML, FormSchemaInfoProvider fsiProvider, ProjectXMLCache xmlCache)
 	{
 		try
 		{
-			return new ProjectParser().parseProject(projectXML, fsiProvider);
+			return new ProjectParser(ProjectParser.DEFAULT_GENERATED_AUDIO_EXTENSION, xmlCache).parseProject(projectXML, fsiProvider);
 		}
 		catch(Exception e)
 		{
@@ -211,7 +255,9 @@ public class ProjectLoader implements WarningKeeper
 	 */
 	public Project load(File sapelliFile) throws Exception
 	{
-		return load(FileHelpers.openInputStream(sapelliFile, true));
+		if(sapelliFile == null || !sapelliFile.exists())
+			throw new IllegalArgumentException("Invalid Sapelli file");
+		return load(sapelliFile, null);
 	}
 	
 	/**
@@ -222,6 +268,17 @@ public class ProjectLoader implements WarningKeeper
 	 * @throws Exception
 	 */
 	public Project load(InputStream sapelliFileInputStream) throws Exception
+	{
+		return load(null, sapelliFileInputStream);
+	}
+	
+	/**
+	 * @param sapelliFile the Sapelli file as a File object (allows parallel extraction), or {@code null} if the InputStream is given
+	 * @param sapelliFileInputStream the Sapelli file as an InputStream, or {@code null} if the File is given
+	 * @return the loaded Project
+	 * @throws Exception
+	 */
+	private Project load(File sapelliFile, InputStream sapelliFileInputStream) throws Exception
 	{
 		clearWarnings();
 		Project project = null;
@@ -236,7 +293,10 @@ public class ProjectLoader implements WarningKeeper
 			// STEP 1 - Extract the content of the Sapelli file to a new subfolder of the temp folder:
 			try
 			{
-				if(Unzipper.unzip(sapelliFileInputStream, extractFolder) == 0)
+				int extracted = sapelliFile != null ?
+									Unzipper.unzip(sapelliFile, extractFolder, MAX_EXTRACTION_THREADS) :
+									Unzipper.unzip(sapelliFileInputStream, extractFolder);
+				if(extracted == 0)
 					throw new Exception("Sapelli file is not a valid ZIP archive or does not contain any files.");
 			}
 			catch(IOException ioe)
@@ -278,19 +338,14 @@ public class ProjectLoader implements WarningKeeper
 				if(postProcessor != null)
 				{
 					postProcessor.initialise(project);
-					for(PostProcessTask task : tasks)
+					try
+					{
+						executePostProcessingTasks(tasks, project);
+					}
+					finally
 					{
-						try
-						{
-							task.execute(postProcessor, project, this);
-						}
-						catch(Exception e)
-						{
-							throw new Exception("Error on executing post-processing task", e);
-						}
+						postProcessor.freeResources();
 					}
-					
-					postProcessor.freeResources();
 				}
 				else
 					addWarning("Unable to perform " + tasks.size() + " post-processing");
@@ -309,6 +364,68 @@ public class ProjectLoader implements WarningKeeper
 		return project;
 	}
 	
+	/**
+	 * Executes the given post-processing tasks, concurrently if the post-processor is a {@link ConcurrentPostProcessor}.
+	 * When a task fails the tasks which have not started yet are cancelled and this method only returns (by throwing an
+	 * Exception) once the running ones have finished, so that the caller can safely roll back (i.e. delete the project files).
+	 * 
+	 * @param tasks
+	 * @param project
+	 * @throws Exception when one of the tasks failed
+	 */
+	private void executePostProcessingTasks(List<PostProcessTask> tasks, final Project project) throws Exception
+	{
+		int maxConcurrentTasks = postProcessor instanceof ConcurrentPostProcessor ? Math.min(((ConcurrentPostProcessor) postProcessor).getMaxConcurrentTasks(), tasks.size()) : 1;
+		if(maxConcurrentTasks < 2)
+		{	// Sequential execution:
+			for(PostProcessTask task : tasks)
+			{
+				try
+				{
+					task.execute(postProcessor, project, this);
+				}
+				catch(Exception e)
+				{
+					throw new Exception("Error on executing post-processing task", e);
+				}
+			}
+			return;
+		}
+		// Concurrent execution:
+		ExecutorService executor = Executors.newFixedThreadPool(maxConcurrentTasks);
+		try
+		{
+			CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+			for(final PostProcessTask task : tasks)
+				completion.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						task.execute(postProcessor, project, ProjectLoader.this);
+						return null;
+					}
+				});
+			for(int t = 0; t < tasks.size(); t++)
+			{
+				try
+				{
+					completion.take().get();
+				}
+				catch(ExecutionException ee)
+				{
+					throw new Exception("Error on executing post-processing task", ee.getCause());
+				}
+			}
+		}
+		finally
+		{	// Cancel remaining tasks (only happens upon failure) and wait for running ones to finish:
+			executor.shutdownNow();
+			while(!executor.awaitTermination(1, TimeUnit.SECONDS))
+				continue;
+		}
+	}
+	
 	/**
 	 * @param project
 	 * @throws IllegalArgumentException when the project is not acceptable
@@ -361,7 +478,7 @@ public class ProjectLoader implements WarningKeeper
 	}
 	
 	@Override
-	public void addWarning(String warning)
+	public synchronized void addWarning(String warning)
 	{
 		if(warnings == null)
 			warnings = new ArrayList<String>();
@@ -369,7 +486,7 @@ public class ProjectLoader implements WarningKeeper
 	}
 
 	@Override
-	public void addWarnings(Collection<String> warnings)
+	public synchronized void addWarnings(Collection<String> warnings)
 	{
 		if(this.warnings == null)
 			this.warnings = new ArrayList<String>();
@@ -377,13 +494,13 @@ public class ProjectLoader implements WarningKeeper
 	}
 
 	@Override
-	public List<String> getWarnings()
+	public synchronized List<String> getWarnings()
 	{
 		return warnings != null ? warnings : Collections.<String> emptyList();
 	}
 	
 	@Override
-	public void clearWarnings()
+	public synchronized void clearWarnings()
 	{
 		warnings = null;
 	}
@@ -18,6 +18,7 @@
 
 package uk.ac.ucl.excites.sapelli.collector.load.parse;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.text.ParseException;
@@ -27,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
 
+import org.apache.commons.io.IOUtils;
 import org.xml.sax.SAXException;
 
 import uk.ac.ucl.excites.sapelli.collector.load.FormSchemaInfoProvider;
@@ -34,10 +36,12 @@ import uk.ac.ucl.excites.sapelli.collector.load.process.PostProcessTask;
 import uk.ac.ucl.excites.sapelli.collector.model.Form;
 import uk.ac.ucl.excites.sapelli.collector.model.Project;
 import uk.ac.ucl.excites.sapelli.collector.model.fields.Relationship;
+import uk.ac.ucl.excites.sapelli.shared.io.StreamHelpers;
 import uk.ac.ucl.excites.sapelli.shared.io.UnclosableBufferedInputStream;
 import uk.ac.ucl.excites.sapelli.shared.util.xml.DocumentParser;
 import uk.ac.ucl.excites.sapelli.shared.util.xml.XMLAttributes;
 import uk.ac.ucl.excites.sapelli.shared.util.xml.XMLHasher;
+import uk.ac.ucl.excites.sapelli.shared.util.xml.XMLRecording;
 import uk.ac.ucl.excites.sapelli.storage.model.ComparableColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.Schema;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint;
@@ -104,6 +108,7 @@ public class ProjectParser extends DocumentParser
 	private HashMap<Relationship, String> relationshipToFormID;
 	private HashMap<Relationship, List<ConstraintDescription>> relationshipToConstraints;
 	private List<PostProcessTask> postProcessingTasks; 
+	private final ProjectXMLCache cache;
 
 	public ProjectParser()
 	{
@@ -111,9 +116,19 @@ public class ProjectParser extends DocumentParser
 	}
 
 	public ProjectParser(String generatedAudioExtension)
+	{
+		this(generatedAudioExtension, null);
+	}
+	
+	/**
+	 * @param generatedAudioExtension
+	 * @param cache cache of previously read PROJECT.xml files, used by {@link #parseProject(File, FormSchemaInfoProvider)}, or {@code null} to always read the file
+	 */
+	public ProjectParser(String generatedAudioExtension, ProjectXMLCache cache)
 	{
 		super();
 		this.generatedAudioExtension = generatedAudioExtension;
+		this.cache = cache;
 	}
 	
 	/**
@@ -139,6 +154,8 @@ public class ProjectParser extends DocumentParser
 	/**
 	 * Parses the given XML file to produce a {@link Project} instance.
 	 * If one is given the {@link FormSchemaInfoProvider} is used to speed up {@link Schema} generation.
+	 * If this parser has a {@link ProjectXMLCache} and the file has not changed since it was last read the cached
+	 * recording of its contents is parsed instead, which still results in a new Project instance.
 	 * 
 	 * @param xmlFile
 	 * @param fsiProvider a {@link FormSchemaInfoProvider}, or {@code null}
@@ -147,7 +164,46 @@ public class ProjectParser extends DocumentParser
 	 */
 	public Project parseProject(File xmlFile, FormSchemaInfoProvider fsiProvider) throws Exception
 	{
-		return parseProject(open(xmlFile), fsiProvider);
+		if(cache == null)
+			return parseProject(open(xmlFile), fsiProvider);
+		
+		// Read file (lastModified first so a concurrent change makes the entry stale rather than wrongly valid):
+		long lastModified = xmlFile.lastModified();
+		InputStream input = open(xmlFile);
+		byte[] content;
+		try
+		{
+			content = IOUtils.toByteArray(input);
+		}
+		finally
+		{
+			StreamHelpers.SilentClose(input);
+		}
+		byte[] digest = ProjectXMLCache.Digest(content);
+		
+		// Get recording & fingerprint, from the cache if the file is unchanged:
+		ProjectXMLCache.CachedXML cached = cache.get(xmlFile, lastModified, content, digest);
+		XMLRecording recording;
+		int fingerPrint;
+		if(cached != null)
+		{
+			recording = cached.recording;
+			fingerPrint = cached.fingerPrint;
+		}
+		else
+		{
+			recording = XMLRecording.Record(new ByteArrayInputStream(content));
+			fingerPrint = (new XMLHasher()).getJavaHashCode(recording);
+			cache.put(xmlFile, lastModified, content, digest, fingerPrint, recording);
+		}
+		
+		// (Re)Initialise:
+		initialise(fsiProvider);
+		this.fingerPrint = fingerPrint;
+		
+		// Parse recorded XML:
+		parse(recording); //!!!
+		return project;
 	}
 	
 	/**
@@ -174,17 +230,7 @@ public class ProjectParser extends DocumentParser
 	public Project parseProject(InputStream input, FormSchemaInfoProvider fsiProvider) throws Exception
 	{		
 		// (Re)Initialise:
-		format = DEFAULT_FORMAT;
-		project = null;
-		fingerPrint = null;
-		startFormID = null;
-		this.fsiProvider = fsiProvider;
-		if(relationshipToFormID != null)
-			relationshipToFormID.clear();
-		if(relationshipToConstraints != null)
-			relationshipToConstraints.clear();
-		if(postProcessingTasks != null)
-			postProcessingTasks.clear();
+		initialise(fsiProvider);
 		
 		// Get XML hash:
 		UnclosableBufferedInputStream ubInput = new UnclosableBufferedInputStream(input); // decorate stream to avoid it from being closed and to ensure we can use mark/reset
@@ -197,6 +243,21 @@ public class ProjectParser extends DocumentParser
 		parse(ubInput); //!!!
 		return project;
 	}
+	
+	private void initialise(FormSchemaInfoProvider fsiProvider)
+	{
+		format = DEFAULT_FORMAT;
+		project = null;
+		fingerPrint = null;
+		startFormID = null;
+		this.fsiProvider = fsiProvider;
+		if(relationshipToFormID != null)
+			relationshipToFormID.clear();
+		if(relationshipToConstraints != null)
+			relationshipToConstraints.clear();
+		if(postProcessingTasks != null)
+			postProcessingTasks.clear();
+	}
 
 	@Override
 	public void startDocument() throws SAXException
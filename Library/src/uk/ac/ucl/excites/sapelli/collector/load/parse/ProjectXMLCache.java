@@ -0,0 +1,177 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.collector.load.parse;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.ac.ucl.excites.sapelli.shared.util.xml.XMLRecording;
+
+/**
+ * Small, thread-safe LRU cache of the parse inputs of PROJECT.xml files: an {@link XMLRecording} of each file's contents
+ * plus its {@link uk.ac.ucl.excites.sapelli.shared.util.xml.XMLHasher} fingerprint. A {@link ProjectParser} which is
+ * given a cache replays the recording instead of reading and tokenising an unchanged file again, but still builds a new
+ * {@link uk.ac.ucl.excites.sapelli.collector.model.Project} (with its own warnings and post-processing tasks) every time,
+ * so nothing mutable is shared between callers.
+ * 
+ * Entries are keyed by the file's canonical path and are only used as long as the file's modification time, length and
+ * SHA-256 content digest are unchanged. Owners should {@link #remove(File)} the entry of a project that is deleted.
+ * 
+ * There is no shared instance: a cache is opt-in, per owner (e.g. a project store).
+ */
+public final class ProjectXMLCache
+{
+	
+	static public final int DEFAULT_MAX_ENTRIES = 8;
+	
+	static private final String DIGEST_ALGORITHM = "SHA-256";
+	
+	/**
+	 * Cached parse inputs of a PROJECT.xml file
+	 */
+	static public final class CachedXML
+	{
+		
+		private final long lastModified;
+		private final long length;
+		private final byte[] digest;
+		public final int fingerPrint;
+		public final XMLRecording recording;
+		
+		private CachedXML(long lastModified, long length, byte[] digest, int fingerPrint, XMLRecording recording)
+		{
+			this.lastModified = lastModified;
+			this.length = length;
+			this.digest = digest;
+			this.fingerPrint = fingerPrint;
+			this.recording = recording;
+		}
+		
+		private boolean isValidFor(long lastModified, byte[] content, byte[] digest)
+		{
+			return	this.lastModified == lastModified &&
+					this.length == content.length &&
+					MessageDigest.isEqual(this.digest, digest);
+		}
+		
+	}
+	
+	/**
+	 * @param content
+	 * @return the SHA-256 digest of the given bytes
+	 */
+	static /*package*/ byte[] Digest(byte[] content)
+	{
+		try
+		{
+			return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(content);
+		}
+		catch(NoSuchAlgorithmException e)
+		{	// every Java platform is required to support SHA-256
+			throw new IllegalStateException(DIGEST_ALGORITHM + " not supported", e);
+		}
+	}
+	
+	private final Map<String, CachedXML> entries;
+	
+	public ProjectXMLCache()
+	{
+		this(DEFAULT_MAX_ENTRIES);
+	}
+	
+	/**
+	 * @param maxEntries maximum number of files to keep (the least recently used one is evicted first)
+	 */
+	public ProjectXMLCache(final int maxEntries)
+	{
+		if(maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be at least 1");
+		this.entries = new LinkedHashMap<String, CachedXML>(16, 0.75f, true /*access-order*/)
+		{
+			private static final long serialVersionUID = 2L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedXML> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+	
+	private String getKey(File xmlFile)
+	{
+		try
+		{
+			return xmlFile.getCanonicalPath();
+		}
+		catch(Exception e)
+		{
+			return xmlFile.getAbsolutePath();
+		}
+	}
+	
+	/**
+	 * @param xmlFile the PROJECT.xml file
+	 * @param lastModified the modification time of the file at the time the content was read
+	 * @param content the current content of the file
+	 * @param digest the {@link #Digest(byte[])} of the content
+	 * @return the cached entry, or {@code null} if there is none or if it is stale (in which case it is removed)
+	 */
+	/*package*/ synchronized CachedXML get(File xmlFile, long lastModified, byte[] content, byte[] digest)
+	{
+		String key = getKey(xmlFile);
+		CachedXML cached = entries.get(key);
+		if(cached != null && !cached.isValidFor(lastModified, content, digest))
+		{
+			entries.remove(key);
+			return null;
+		}
+		return cached;
+	}
+	
+	/*package*/ synchronized void put(File xmlFile, long lastModified, byte[] content, byte[] digest, int fingerPrint, XMLRecording recording)
+	{
+		entries.put(getKey(xmlFile), new CachedXML(lastModified, content.length, Arrays.copyOf(digest, digest.length), fingerPrint, recording));
+	}
+	
+	/**
+	 * Removes the entry of the given PROJECT.xml file (e.g. because the project has been deleted) from the cache.
+	 * 
+	 * @param xmlFile
+	 */
+	public synchronized void remove(File xmlFile)
+	{
+		entries.remove(getKey(xmlFile));
+	}
+	
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+	
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	
+}
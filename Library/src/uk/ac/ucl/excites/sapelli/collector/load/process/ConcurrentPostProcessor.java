@@ -0,0 +1,34 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.collector.load.process;
+
+/**
+ * A {@link PostProcessor} which can safely execute several {@link PostProcessTask}s at the same time (on different threads).
+ * The {@link uk.ac.ucl.excites.sapelli.collector.load.ProjectLoader} will run the tasks of a project concurrently when
+ * its post-processor implements this interface, and sequentially otherwise.
+ */
+public interface ConcurrentPostProcessor extends PostProcessor
+{
+
+	/**
+	 * @return the maximum number of tasks that may be executed at the same time (values below 2 mean sequential execution)
+	 */
+	public int getMaxConcurrentTasks();
+	
+}
@@ -21,10 +21,13 @@ package uk.ac.ucl.excites.sapelli.collector.util;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Stack;
@@ -63,21 +66,89 @@ public final class ColumnOptionalityAdvisor
 {
 
 	// STATICS-------------------------------------------------------
+	/**
+	 * Analyses the given form to find by-passable non-optional fields.
+	 * 
+	 * The form is compiled into a directed graph of fields, in which by-passable fields are found using dominator analysis
+	 * (see {@link FieldGraph}). For the rare forms on which that would not give results identical to the (exponential-time)
+	 * enumeration of all paths through the form we fall back to the latter (see {@link PathEnumerator}).
+	 * 
+	 * @param form
+	 * @return
+	 */
 	static public ColumnOptionalityAdvisor Analyse(final Form form)
 	{
 		//System.out.println("Analysing form: " + form.id);
-		final Analyser analyser = new Analyser(form);
+		// Compile graph for CREATE mode:
+		final FieldGraph graph = new FieldGraph(form, Mode.CREATE);
+		// (analysing for EDIT mode should not be necessary)
+		
+		// Return advisor:
+		return new ColumnOptionalityAdvisor(form, graph.isExact() ? graph.findBypassableFieldIDs() : AnalyseByPathEnumeration(form).byPassableFieldIDs);
+	}
+	
+	/**
+	 * Analyses the given form by enumerating all possible paths through it. This can take time exponential in the size of the form,
+	 * so {@link #Analyse(Form)} should be preferred. This method is only kept as a fall-back and for reference.
+	 * 
+	 * @param form
+	 * @return
+	 */
+	static public ColumnOptionalityAdvisor AnalyseByPathEnumeration(final Form form)
+	{
+		final PathEnumerator enumerator = new PathEnumerator(form);
 		
 		// Start analysis for CREATE mode:
-		analyser.traverse(Mode.CREATE);
+		enumerator.traverse(Mode.CREATE);
 		// (analysing for EDIT mode should not be necessary)
 		
 		// Return advisor:
-		return new ColumnOptionalityAdvisor(form, analyser.bypassableFieldIDs);
+		return new ColumnOptionalityAdvisor(form, enumerator.bypassableFieldIDs);
 	}
 	
 	private static final Queue<FieldWithArguments> EMPTY_QUEUE = new EmptyQueue<FieldWithArguments>();
 	
+	/**
+	 * Finds all top-level and Page-owned fields which have a column and are non-optional 
+	 * 
+	 * @param fields
+	 * @param result
+	 * @return
+	 */
+	static private Set<Field> AssembleFieldsToCheck(final List<Field> fields, final Set<Field> result)
+	{
+		for(Field f : fields)
+		{
+			if(f instanceof Page)
+				AssembleFieldsToCheck(((Page) f).getFields(), result);
+			else if(!f.isNoColumn() && !f.isOptional())
+				result.add(f);
+		}
+		return result;
+	}
+	
+	/**
+	 * Fields that are not to be shown in the given mode are "by-passed" by definition. This method removes those from
+	 * fieldsToCheck and adds their IDs to bypassableFieldIDs.
+	 * 
+	 * @param mode
+	 * @param fieldsToCheck
+	 * @param bypassableFieldIDs
+	 */
+	static private void RemoveFieldsNotToBeShown(final Mode mode, final Collection<Field> fieldsToCheck, final Collection<String> bypassableFieldIDs)
+	{
+		Iterator<Field> iter = fieldsToCheck.iterator();
+		while(iter.hasNext())
+		{
+			Field fieldToCheck = iter.next();
+			if(!CollectorController.IsFieldToBeShown(mode, fieldToCheck))
+			{
+				bypassableFieldIDs.add(fieldToCheck.id);
+				iter.remove(); // !!! remove field from fieldsToCheck (we now know it is "by-passable" so we don't need to check it against paths)
+			}
+		}
+	}
+	
 	// DYNAMICS------------------------------------------------------
 	public final Form form;
 	private final Set<String> byPassableFieldIDs;
@@ -129,162 +200,62 @@ public final class ColumnOptionalityAdvisor
 	}
 
 	/**
-	 * Simulates all possible traversals of a form in order to find non-optional, column-holding
-	 * fields (either top-level or Page-owned) which can be by-passed. A field can be by-passed
-	 * if it is possible to traverse the form (in CREATE mode) from the start field to a saving
-	 * EndField without visiting (i.e. entering) the field in question.
+	 * Simulates what happens when fields of a form are entered (in the absence of a UI) in order to determine
+	 * which fields can be reached from them. Shared by {@link PathEnumerator} and {@link FieldGraph}.
 	 * 
 	 * @author mstevens
 	 */
-	private final static class Analyser implements FieldVisitor
+	private static abstract class Simulator implements FieldVisitor
 	{
 		
-		private final Form form;
-		private final List<Field> fieldsToCheck;
-		private final List<String> bypassableFieldIDs;
+		protected final Form form;
+		protected Mode mode;
+		protected Field currentField;
 		
-		private Mode mode;
+		public Simulator(final Form form)
+		{
+			this.form = form;
+		}
 		
 		/**
-		 * Contains visited Fields and nulls for skipped fields
+		 * Called for every field (w/ args) that can be reached from the current field.
+		 * 
+		 * @param next never {@code null}
 		 */
-		private final Stack<Field> passed;
+		protected abstract void addNext(final FieldWithArguments next);
 		
 		/**
-		 * Contains skipped Fields
+		 * Called right before the given field is entered as part of entering its Page.
+		 * 
+		 * @param fieldOnPage
 		 */
-		private final Stack<Field> skipped;
-		
-		private final Set<FieldWithArguments> assembleNextFields;
-		
-		private Field currentField;
-		
-		public Analyser(final Form form)
-		{
-			this.form = form;
-			this.fieldsToCheck = new LinkedList<Field>(assembleFieldsToCheck(form.getFields(), new HashSet<Field>()));
-			this.bypassableFieldIDs = new ArrayList<String>(fieldsToCheck.size());
-			this.passed = new Stack<Field>();
-			this.skipped = new Stack<Field>();
-			this.assembleNextFields = new HashSet<FieldWithArguments>(8); // initial capacity of 8 (rather than the default of 16)
-		}
+		protected abstract void enteringFieldOnPage(final Field fieldOnPage);
 		
 		/**
-		 * Finds all top-level and Page-owned fields which have a column and are non-optional 
+		 * Called when an EndField which saves the record is entered.
 		 * 
-		 * @param fields
-		 * @param result
-		 * @return
+		 * @param ef
 		 */
-		private Set<Field> assembleFieldsToCheck(final List<Field> fields, final Set<Field> result)
-		{
-			for(Field f : fields)
-			{
-				if(f instanceof Page)
-					assembleFieldsToCheck(((Page) f).getFields(), result);
-				else if(!f.isNoColumn() && !f.isOptional())
-					result.add(f);
-			}
-			return result;
-		}
+		protected abstract void enteredSavingEndField(final EndField ef);
 		
-		public void traverse(final Mode mode)
+		private void addNextIfNotNull(final FieldWithArguments next)
 		{
-			this.mode = mode;
-			
-			// Fields that are not to be shown in the current mode are will be "by-passed" by definition...
-			Iterator<Field> iter = fieldsToCheck.iterator();
-			while(iter.hasNext())
-			{
-				Field fieldToCheck = iter.next();
-				if(!CollectorController.IsFieldToBeShown(mode, fieldToCheck))
-				{
-					bypassableFieldIDs.add(fieldToCheck.id);
-					iter.remove(); // !!! remove field from fieldsToCheck (we now know it is "by-passable" so we don't need to check it against paths)
-				}
-			}
-			if(fieldsToCheck.isEmpty())
-				return;
-			
-			// Do a depth-first traversal to investigate all possible paths through the form to find which of the fields to check are "by-passable"...
-			//	Initialise...
-			this.currentField = null;
-			this.passed.clear();
-			this.skipped.clear();
-			//	DFT stack (containing lists of fields-with-args left to visit):
-			final Stack<Queue<FieldWithArguments>> toVisit = new Stack<Queue<FieldWithArguments>>();
-			//	Start at the beginning:
-			toVisit.push(new SingletonQueue<FieldWithArguments>(new FieldWithArguments(form.getStartField())));
-			//	DFT loop:
-			do
-			{
-				Queue<FieldWithArguments> queue = toVisit.peek();
-				if(!queue.isEmpty())
-				{
-					Queue<FieldWithArguments> nextFields = goTo(queue.poll());
-					if(nextFields != null)
-						toVisit.push(nextFields); // Note: nextFields may be empty (but will never contain nulls)
-				}
-				else
-				{	// Backtrack...
-					toVisit.pop();
-					while(!passed.isEmpty()) // there is always 1 item less on the passed stack
-					{
-						Field popped = passed.pop();
-						if(popped == null)
-							skipped.pop(); // a null on the passed stack corresponds to a skipped field on the skipped stack
-						else if(popped.isOnPage())
-							continue; // if the field is part of a page we must keep popping until we pop the containing page
-						break;
-					}
-				}
-			}
-			while(!toVisit.isEmpty() && !fieldsToCheck.isEmpty());
-		}
-		
-		public Queue<FieldWithArguments> goTo(final FieldWithArguments nextFieldAndArguments)
-		{
-			// Avoid endless loops:
-			if(passed.contains(nextFieldAndArguments.field) || skipped.contains(nextFieldAndArguments.field))
-				return null;
-			
-			// The nextField becomes the "current field":
-			currentField = nextFieldAndArguments.field;
-			
-			// Clear assembleNextFields set:
-			assembleNextFields.clear();
-			
-			if(CollectorController.IsFieldToBeShown(mode, currentField))
-			{	
-				// This field would be shown to the user...
-				passed.push(currentField); // remember we visited it
-
-				// Actually enter the field:
-				currentField.enter(this, nextFieldAndArguments.arguments, false); // there's no UI so return value is ignored
-			}
-			else
-			{
-				// This field is not meant to be shown in the current form mode, so skip it...
-				skipped.push(currentField); // remember we skipped the field (for loop check)
-				passed.push(null); // *and* also insert a null on passed skip
-				
-				// Go to field below:
-				addNext(form.getNextFieldAndArguments(currentField, false)); // no jump allowed
-			}
-			
-			// Return queue of next fields (w/ args) to visit:
-			return assembleNextFields.isEmpty() ? EMPTY_QUEUE : new ArrayDeque<FieldWithArguments>(assembleNextFields);
+			if(next != null)
+				addNext(next);
 		}
 		
-		private void addNext(final FieldWithArguments next)
+		/**
+		 * Simulates what happens when a field is not to be shown in the current mode.
+		 */
+		protected void skip()
 		{
-			if(next != null)
-				assembleNextFields.add(next);
+			// Go to field below:
+			addNextIfNotNull(form.getNextFieldAndArguments(currentField, false)); // no jump allowed
 		}
 		
 		private void goForward()
 		{
-			addNext(form.getNextFieldAndArguments(currentField, true)); // jump allowed
+			addNextIfNotNull(form.getNextFieldAndArguments(currentField, true)); // jump allowed
 		}
 		
 		private boolean enterLinearField(final boolean withPage)
@@ -356,7 +327,7 @@ public final class ColumnOptionalityAdvisor
 				if(CollectorController.IsFieldToBeShown(mode, fieldOnPage))
 				{
 					// Remember the field is visited:
-					passed.push(fieldOnPage);
+					enteringFieldOnPage(fieldOnPage);
 					// Enter it:
 					fieldOnPage.enter(this, FieldParameters.EMPTY, true); // enter with page (but don't pass on the arguments)
 				}
@@ -442,23 +413,377 @@ public final class ColumnOptionalityAdvisor
 		public boolean enterEndField(EndField ef, FieldParameters arguments)
 		{
 			if(ef.isSave())
+				enteredSavingEndField(ef);
+			// We go nowhere from here...
+			return false;
+		}
+		
+	}
+	
+	/**
+	 * Simulates all possible traversals of a form in order to find non-optional, column-holding
+	 * fields (either top-level or Page-owned) which can be by-passed. A field can be by-passed
+	 * if it is possible to traverse the form (in CREATE mode) from the start field to a saving
+	 * EndField without visiting (i.e. entering) the field in question.
+	 * 
+	 * Note that the number of paths can grow exponentially with the size of the form.
+	 */
+	private final static class PathEnumerator extends Simulator
+	{
+		
+		private final List<Field> fieldsToCheck;
+		private final List<String> bypassableFieldIDs;
+		
+		/**
+		 * Contains visited Fields and nulls for skipped fields
+		 */
+		private final Stack<Field> passed;
+		
+		/**
+		 * Contains skipped Fields
+		 */
+		private final Stack<Field> skipped;
+		
+		private final Set<FieldWithArguments> assembleNextFields;
+		
+		public PathEnumerator(final Form form)
+		{
+			super(form);
+			this.fieldsToCheck = new LinkedList<Field>(AssembleFieldsToCheck(form.getFields(), new HashSet<Field>()));
+			this.bypassableFieldIDs = new ArrayList<String>(fieldsToCheck.size());
+			this.passed = new Stack<Field>();
+			this.skipped = new Stack<Field>();
+			this.assembleNextFields = new HashSet<FieldWithArguments>(8); // initial capacity of 8 (rather than the default of 16)
+		}
+		
+		public void traverse(final Mode mode)
+		{
+			this.mode = mode;
+			
+			// Fields that are not to be shown in the current mode are will be "by-passed" by definition...
+			RemoveFieldsNotToBeShown(mode, fieldsToCheck, bypassableFieldIDs);
+			if(fieldsToCheck.isEmpty())
+				return;
+			
+			// Do a depth-first traversal to investigate all possible paths through the form to find which of the fields to check are "by-passable"...
+			//	Initialise...
+			this.currentField = null;
+			this.passed.clear();
+			this.skipped.clear();
+			//	DFT stack (containing lists of fields-with-args left to visit):
+			final Stack<Queue<FieldWithArguments>> toVisit = new Stack<Queue<FieldWithArguments>>();
+			//	Start at the beginning:
+			toVisit.push(new SingletonQueue<FieldWithArguments>(new FieldWithArguments(form.getStartField())));
+			//	DFT loop:
+			do
 			{
-				// Which of the fieldsToCheck have *not* been visited?
-				Iterator<Field> iter = fieldsToCheck.iterator();
-				while(iter.hasNext())
+				Queue<FieldWithArguments> queue = toVisit.peek();
+				if(!queue.isEmpty())
 				{
-					final Field fieldToCheck = iter.next();
-					if(!passed.contains(fieldToCheck))
-					{	// ... field would have been shown in the current mode but was *not* visited while traversing from start to end/saving: so it is "by-passable"
-						bypassableFieldIDs.add(fieldToCheck.id);
-						iter.remove(); // !!! remove field from fieldsToCheck (we now know it is "by-passable" so we don't need to check it against other paths)
+					Queue<FieldWithArguments> nextFields = goTo(queue.poll());
+					if(nextFields != null)
+						toVisit.push(nextFields); // Note: nextFields may be empty (but will never contain nulls)
+				}
+				else
+				{	// Backtrack...
+					toVisit.pop();
+					while(!passed.isEmpty()) // there is always 1 item less on the passed stack
+					{
+						Field popped = passed.pop();
+						if(popped == null)
+							skipped.pop(); // a null on the passed stack corresponds to a skipped field on the skipped stack
+						else if(popped.isOnPage())
+							continue; // if the field is part of a page we must keep popping until we pop the containing page
+						break;
 					}
 				}
 			}
+			while(!toVisit.isEmpty() && !fieldsToCheck.isEmpty());
+		}
+		
+		public Queue<FieldWithArguments> goTo(final FieldWithArguments nextFieldAndArguments)
+		{
+			// Avoid endless loops:
+			if(passed.contains(nextFieldAndArguments.field) || skipped.contains(nextFieldAndArguments.field))
+				return null;
+			
+			// The nextField becomes the "current field":
+			currentField = nextFieldAndArguments.field;
+			
+			// Clear assembleNextFields set:
+			assembleNextFields.clear();
+			
+			if(CollectorController.IsFieldToBeShown(mode, currentField))
+			{	
+				// This field would be shown to the user...
+				passed.push(currentField); // remember we visited it
+
+				// Actually enter the field:
+				currentField.enter(this, nextFieldAndArguments.arguments, false); // there's no UI so return value is ignored
+			}
+			else
+			{
+				// This field is not meant to be shown in the current form mode, so skip it...
+				skipped.push(currentField); // remember we skipped the field (for loop check)
+				passed.push(null); // *and* also insert a null on passed skip
+				
+				// Go to field below:
+				skip();
+			}
+			
+			// Return queue of next fields (w/ args) to visit:
+			return assembleNextFields.isEmpty() ? EMPTY_QUEUE : new ArrayDeque<FieldWithArguments>(assembleNextFields);
+		}
+		
+		@Override
+		protected void addNext(final FieldWithArguments next)
+		{
+			assembleNextFields.add(next);
+		}
+		
+		@Override
+		protected void enteringFieldOnPage(final Field fieldOnPage)
+		{
+			passed.push(fieldOnPage);
+		}
+
+		@Override
+		protected void enteredSavingEndField(final EndField ef)
+		{
+			// Which of the fieldsToCheck have *not* been visited?
+			Iterator<Field> iter = fieldsToCheck.iterator();
+			while(iter.hasNext())
+			{
+				final Field fieldToCheck = iter.next();
+				if(!passed.contains(fieldToCheck))
+				{	// ... field would have been shown in the current mode but was *not* visited while traversing from start to end/saving: so it is "by-passable"
+					bypassableFieldIDs.add(fieldToCheck.id);
+					iter.remove(); // !!! remove field from fieldsToCheck (we now know it is "by-passable" so we don't need to check it against other paths)
+				}
+			}
 			// We go nowhere from here, backtrack will start...
-			return false;
 		}
 
 	}
+	
+	/**
+	 * Compiles a form into a directed graph in which each node represents a field that can be gone to (in a given mode), and each edge a
+	 * possible transition from one field to another. Each node "covers" the field it represents (unless that field is skipped in the given
+	 * mode) and, if it represents a Page, the fields on the Page which are shown. A virtual exit node is added as the successor of all nodes
+	 * representing saving EndFields.
+	 * 
+	 * A field is by-passable if the exit can be reached from the start without going through the node covering it, i.e. iff that node
+	 * does not dominate the exit node. Dominators are computed using the iterative algorithm by Cooper, Harvey &amp; Kennedy ("A Simple,
+	 * Fast Dominance Algorithm", 2001), which runs in (near-)linear time on the kind of graphs that forms give rise to.
+	 * 
+	 * Because the path enumeration in {@link PathEnumerator} considers the fields on a Page to have been visited along with the Page,
+	 * it never goes to such a field directly after its Page was entered. Dominator analysis cannot express such path-dependent
+	 * restrictions, therefore the graph is marked as not {@link #isExact() exact} when a field on a Page can be gone to directly, or
+	 * when a Page holds a Page or an EndField.
+	 */
+	private final static class FieldGraph extends Simulator
+	{
+		
+		private final static class Node
+		{
+			
+			final Field field;
+			final Set<Node> successors = new LinkedHashSet<Node>();
+			final List<Node> predecessors = new ArrayList<Node>();
+			final List<Field> covered = new ArrayList<Field>(1);
+			int postOrder = -1;
+			Node immediateDominator;
+			
+			Node(final Field field)
+			{
+				this.field = field;
+			}
+			
+		}
+		
+		private final Map<Field, Node> nodes = new HashMap<Field, Node>();
+		private final Queue<Node> toExpand = new ArrayDeque<Node>();
+		private final Node start;
+		private final Node exit = new Node(null);
+		private final List<String> bypassableFieldIDs = new ArrayList<String>();
+		private final List<Field> fieldsToCheck;
+		private Node currentNode;
+		private boolean exact = true;
+		
+		public FieldGraph(final Form form, final Mode mode)
+		{
+			super(form);
+			this.mode = mode;
+			
+			// Determine fields to check:
+			this.fieldsToCheck = new ArrayList<Field>(AssembleFieldsToCheck(form.getFields(), new HashSet<Field>()));
+			RemoveFieldsNotToBeShown(mode, fieldsToCheck, bypassableFieldIDs);
+			
+			// Compile graph (breadth-first, each node is expanded once):
+			this.start = fieldsToCheck.isEmpty() ? null : getNode(form.getStartField()); // (no need to compile if there is nothing to check)
+			while(!toExpand.isEmpty())
+			{
+				currentNode = toExpand.poll();
+				currentField = currentNode.field;
+				if(CollectorController.IsFieldToBeShown(mode, currentField))
+				{
+					currentNode.covered.add(currentField);
+					currentField.enter(this, FieldParameters.EMPTY, false); // arguments do not influence where we can go next
+				}
+				else
+					skip();
+			}
+			currentNode = null;
+			currentField = null;
+			
+			// Set predecessors:
+			for(Node node : nodes.values())
+				for(Node successor : node.successors)
+					successor.predecessors.add(node);
+		}
+		
+		private Node getNode(final Field field)
+		{
+			Node node = nodes.get(field);
+			if(node == null)
+			{
+				node = new Node(field);
+				nodes.put(field, node);
+				toExpand.add(node); // expand later
+				if(field.isOnPage())
+					exact = false; // field on page can be gone to directly
+			}
+			return node;
+		}
+		
+		@Override
+		protected void addNext(final FieldWithArguments next)
+		{
+			currentNode.successors.add(getNode(next.field));
+		}
+		
+		@Override
+		protected void enteringFieldOnPage(final Field fieldOnPage)
+		{
+			currentNode.covered.add(fieldOnPage);
+			if(fieldOnPage instanceof Page || fieldOnPage instanceof EndField)
+				exact = false;
+		}
+		
+		@Override
+		protected void enteredSavingEndField(final EndField ef)
+		{
+			currentNode.successors.add(exit);
+		}
+		
+		/**
+		 * @return whether or not the results of {@link #findBypassableFieldIDs()} are guaranteed to be identical to those of the {@link PathEnumerator}
+		 */
+		public boolean isExact()
+		{
+			return exact;
+		}
+		
+		/**
+		 * @return the IDs of the by-passable non-optional fields with a column
+		 */
+		public List<String> findBypassableFieldIDs()
+		{
+			if(fieldsToCheck.isEmpty())
+				return bypassableFieldIDs;
+			
+			// Number nodes in post-order:
+			List<Node> postOrder = computePostOrder();
+			if(exit.postOrder < 0)
+				return bypassableFieldIDs; // there is no way to reach a saving EndField: no field is by-passable (other than those that are not shown)
+			
+			// Compute immediate dominators (iterating over nodes in reverse post-order):
+			start.immediateDominator = start;
+			boolean changed = true;
+			while(changed)
+			{
+				changed = false;
+				for(int i = postOrder.size() - 2; i >= 0; i--) // skip start, which is last in post-order
+				{
+					Node node = postOrder.get(i);
+					Node newIDom = null;
+					for(Node predecessor : node.predecessors)
+						if(predecessor.immediateDominator != null)
+							newIDom = (newIDom == null) ? predecessor : intersect(predecessor, newIDom);
+					if(node.immediateDominator != newIDom)
+					{
+						node.immediateDominator = newIDom;
+						changed = true;
+					}
+				}
+			}
+			
+			// Collect fields covered by nodes which dominate the exit (these cannot be by-passed):
+			Set<Field> unavoidable = new HashSet<Field>();
+			Node dominator = exit;
+			do
+			{
+				dominator = dominator.immediateDominator;
+				unavoidable.addAll(dominator.covered);
+			}
+			while(dominator != start);
+			
+			// Which of the fields to check are not covered by any of those nodes?
+			for(Field fieldToCheck : fieldsToCheck)
+				if(!unavoidable.contains(fieldToCheck))
+					bypassableFieldIDs.add(fieldToCheck.id);
+			return bypassableFieldIDs;
+		}
+		
+		private Node intersect(Node a, Node b)
+		{
+			while(a != b)
+			{
+				while(a.postOrder < b.postOrder)
+					a = a.immediateDominator;
+				while(b.postOrder < a.postOrder)
+					b = b.immediateDominator;
+			}
+			return a;
+		}
+		
+		/**
+		 * Iterative depth-first traversal from the start node which sets the {@link Node#postOrder} of each reachable node.
+		 * 
+		 * @return the reachable nodes, in post-order
+		 */
+		private List<Node> computePostOrder()
+		{
+			List<Node> postOrder = new ArrayList<Node>(nodes.size() + 1);
+			Set<Node> visited = new HashSet<Node>();
+			Stack<Node> nodeStack = new Stack<Node>();
+			Stack<Iterator<Node>> iteratorStack = new Stack<Iterator<Node>>();
+			visited.add(start);
+			nodeStack.push(start);
+			iteratorStack.push(start.successors.iterator());
+			while(!nodeStack.isEmpty())
+			{
+				Iterator<Node> successors = iteratorStack.peek();
+				if(successors.hasNext())
+				{
+					Node successor = successors.next();
+					if(visited.add(successor))
+					{
+						nodeStack.push(successor);
+						iteratorStack.push(successor.successors.iterator());
+					}
+				}
+				else
+				{
+					iteratorStack.pop();
+					Node node = nodeStack.pop();
+					node.postOrder = postOrder.size();
+					postOrder.add(node);
+				}
+			}
+			return postOrder;
+		}
+		
+	}
 
 }
@@ -0,0 +1,135 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.shared.compression;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small, bounded, thread-safe pool of (de)compression coder instances (e.g. {@link java.util.zip.Deflater}s)
+ * which are expensive to create and/or hold on to native memory.
+ * 
+ * Coders are {@link #reset(Object) reset} when they are returned to the pool. When the pool is full a returned
+ * coder is {@link #dispose(Object) disposed of} instead (e.g. by calling {@link java.util.zip.Deflater#end()}),
+ * so that native memory is released immediately rather than upon finalisation.
+ * 
+ * @param <C> the coder type
+ */
+public abstract class CoderPool<C>
+{
+
+	static public final int DEFAULT_MAX_SIZE = 8;
+	
+	private final Queue<C> idle = new ConcurrentLinkedQueue<C>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final int maxSize;
+	
+	public CoderPool()
+	{
+		this(DEFAULT_MAX_SIZE);
+	}
+	
+	/**
+	 * @param maxSize maximum number of idle coders kept in the pool
+	 */
+	public CoderPool(int maxSize)
+	{
+		if(maxSize < 0)
+			throw new IllegalArgumentException("maxSize cannot be negative");
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Returns an idle coder from the pool, or a new one if the pool is empty.
+	 * The coder must be given back using {@link #release(Object)} once it is no longer used.
+	 * 
+	 * @return a coder in its initial state
+	 */
+	public C obtain()
+	{
+		C coder = idle.poll();
+		if(coder == null)
+			return create();
+		idleCount.decrementAndGet();
+		return coder;
+	}
+	
+	/**
+	 * Gives the coder back to the pool, or disposes of it when the pool is full.
+	 * The caller must not use the coder afterwards.
+	 * 
+	 * @param coder may be null
+	 */
+	public void release(C coder)
+	{
+		if(coder == null)
+			return;
+		if(idleCount.incrementAndGet() <= maxSize)
+		{
+			reset(coder);
+			idle.offer(coder);
+		}
+		else
+		{
+			idleCount.decrementAndGet();
+			dispose(coder);
+		}
+	}
+	
+	/**
+	 * Disposes of the coder without returning it to the pool (e.g. because it is in an unknown state after an error).
+	 * 
+	 * @param coder may be null
+	 */
+	public void discard(C coder)
+	{
+		if(coder != null)
+			dispose(coder);
+	}
+	
+	/**
+	 * @return the number of idle coders currently held by the pool
+	 */
+	public int getIdleCount()
+	{
+		return idleCount.get();
+	}
+	
+	/**
+	 * @return a new coder
+	 */
+	protected abstract C create();
+	
+	/**
+	 * Brings the given coder back to its initial state.
+	 * 
+	 * @param coder
+	 */
+	protected abstract void reset(C coder);
+	
+	/**
+	 * Releases any resources held by the given coder, it will not be used again.
+	 * 
+	 * @param coder
+	 */
+	protected abstract void dispose(C coder);
+	
+}
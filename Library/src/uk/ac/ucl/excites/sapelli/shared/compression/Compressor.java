@@ -23,9 +23,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.io.IOUtils;
 
+import uk.ac.ucl.excites.sapelli.shared.io.ByteBufferOutputStream;
 import uk.ac.ucl.excites.sapelli.shared.io.StreamHelpers;
 
 /**
@@ -36,6 +39,8 @@ public abstract class Compressor
 {
 	
 	static public final long UNKNOWN_UNCOMPRESSED_SIZE = -1;
+	
+	static protected final int CHUNK_SIZE = 4 * 1024; // 4 KiB
 
 	public abstract CompressorFactory.Compression getMode();
 
@@ -53,6 +58,22 @@ public abstract class Compressor
 	
 	protected abstract OutputStream _getOutputStream(OutputStream sink, long uncompressedSizeBytes) throws IOException;
 	
+	/**
+	 * @return whether or not this compressor can make use of a {@link PresetDictionary}
+	 */
+	public boolean supportsPresetDictionary()
+	{
+		return false;
+	}
+	
+	/**
+	 * @return the {@link PresetDictionary} used by this compressor, or {@code null} if it does not use one
+	 */
+	public PresetDictionary getPresetDictionary()
+	{
+		return null;
+	}
+	
 	/**
 	 * @param data
 	 * @return
@@ -60,12 +81,24 @@ public abstract class Compressor
 	 */
 	public byte[] compress(byte[] data) throws IOException
 	{
-		ByteArrayOutputStream byteArraySink = new ByteArrayOutputStream();
+		return compress(data, 0, data.length);
+	}
+	
+	/**
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] compress(byte[] data, int offset, int length) throws IOException
+	{
+		ByteArrayOutputStream byteArraySink = new ByteArrayOutputStream(GetInitialSinkSize(length));
 		OutputStream out = null;
 		try
 		{
-			out = getOutputStream(byteArraySink, data.length);
-			out.write(data);
+			out = getOutputStream(byteArraySink, length);
+			out.write(data, offset, length);
 			out.flush();
 			out.close();
 			return byteArraySink.toByteArray();
@@ -80,6 +113,47 @@ public abstract class Compressor
 		}
 	}
 	
+	/**
+	 * Compresses {@code length} bytes of {@code data}, starting at {@code offset}, into the given buffer, starting
+	 * at its current position. Upon success the position of the buffer is advanced past the compressed data.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param target
+	 * @return the number of bytes written to the target buffer
+	 * @throws IOException
+	 * @throws BufferOverflowException when the target buffer does not have enough bytes remaining to hold the compressed data (its position is then left unchanged)
+	 */
+	public int compress(byte[] data, int offset, int length, ByteBuffer target) throws IOException, BufferOverflowException
+	{
+		int start = target.position();
+		OutputStream out = null;
+		try
+		{
+			out = getOutputStream(new ByteBufferOutputStream(target), length);
+			out.write(data, offset, length);
+			out.flush();
+			out.close();
+			return target.position() - start;
+		}
+		catch(BufferOverflowException boe)
+		{
+			target.position(start);
+			throw boe;
+		}
+		catch(IOException ioe)
+		{
+			target.position(start);
+			ThrowIfOverflow(ioe);
+			throw new IOException("Error upon " + getMode() + " compression", ioe);
+		}
+		finally
+		{
+			StreamHelpers.SilentClose(out);
+		}
+	}
+	
 	public abstract InputStream getInputStream(InputStream source) throws IOException;
 
 	/**
@@ -110,6 +184,92 @@ public abstract class Compressor
 		}
 	}
 	
+	/**
+	 * Decompresses {@code length} bytes of {@code compressedData}, starting at {@code offset}, into the given buffer,
+	 * starting at its current position. Upon success the position of the buffer is advanced past the decompressed data.
+	 * 
+	 * @param compressedData
+	 * @param offset
+	 * @param length
+	 * @param target
+	 * @return the number of bytes written to the target buffer
+	 * @throws IOException
+	 * @throws BufferOverflowException when the target buffer does not have enough bytes remaining to hold the decompressed data (its position is then left unchanged)
+	 */
+	public int decompress(byte[] compressedData, int offset, int length, ByteBuffer target) throws IOException, BufferOverflowException
+	{
+		int start = target.position();
+		InputStream in = null;
+		try
+		{
+			in = getInputStream(new ByteArrayInputStream(compressedData, offset, length));
+			byte[] chunk = target.hasArray() ? null : new byte[CHUNK_SIZE];
+			while(true)
+			{
+				if(!target.hasRemaining())
+				{
+					if(in.read() != -1)
+						throw new BufferOverflowException();
+					break;
+				}
+				int read;
+				if(chunk == null)
+				{
+					read = in.read(target.array(), target.arrayOffset() + target.position(), target.remaining());
+					if(read > 0)
+						target.position(target.position() + read);
+				}
+				else
+				{
+					read = in.read(chunk, 0, Math.min(chunk.length, target.remaining()));
+					if(read > 0)
+						target.put(chunk, 0, read);
+				}
+				if(read == -1)
+					break;
+			}
+			in.close();
+			return target.position() - start;
+		}
+		catch(BufferOverflowException boe)
+		{
+			target.position(start);
+			throw boe;
+		}
+		catch(IOException ioe)
+		{
+			target.position(start);
+			throw new IOException("Error upon " + getMode() + " decompression", ioe);
+		}
+		finally
+		{
+			StreamHelpers.SilentClose(in);
+		}
+	}
+	
+	/**
+	 * @param uncompressedSizeBytes
+	 * @return initial capacity for a sink receiving compressed data
+	 */
+	static protected int GetInitialSinkSize(int uncompressedSizeBytes)
+	{
+		return Math.max(32, uncompressedSizeBytes / 2);
+	}
+	
+	/**
+	 * Rethrows a {@link BufferOverflowException} which was wrapped in an {@link IOException}
+	 * (e.g. because it occurred on a separate coder thread).
+	 * 
+	 * @param ioe
+	 * @throws BufferOverflowException
+	 */
+	static private void ThrowIfOverflow(IOException ioe) throws BufferOverflowException
+	{
+		for(Throwable cause = ioe; cause != null; cause = cause.getCause())
+			if(cause instanceof BufferOverflowException)
+				throw (BufferOverflowException) cause;
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -62,6 +62,35 @@ public class CompressorFactory
 		}
 	}
 	
+	/**
+	 * Returns a compressor for the given mode which uses the given preset dictionary if the mode supports it
+	 * (currently {@link Compression#DEFLATE} and {@link Compression#LZMA2}), or an ordinary one if it does not.
+	 * 
+	 * @param mode
+	 * @param dictionary may be {@code null}
+	 * @return
+	 */
+	static public Compressor getCompressor(Compression mode, PresetDictionary dictionary)
+	{
+		if(dictionary != null)
+			switch(mode)
+			{
+				case DEFLATE	: return new DeflateCompressor(dictionary);
+				case LZMA2		: return new LZMA2Compressor(dictionary);
+				default			: break;
+			}
+		return getCompressor(mode);
+	}
+	
+	/**
+	 * @param mode
+	 * @return whether or not the given mode supports the use of a {@link PresetDictionary}
+	 */
+	static public boolean SupportsPresetDictionary(Compression mode)
+	{
+		return mode == Compression.DEFLATE || mode == Compression.LZMA2;
+	}
+	
 	/**
 	 * @param mode
 	 * @param sink
@@ -21,6 +21,10 @@ package uk.ac.ucl.excites.sapelli.shared.compression;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -32,6 +36,13 @@ import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory.Compressio
  * DEFLATE compressor.
  * Uses Java SE's implementation (java.util.zip).
  * 
+ * {@link Deflater}s and {@link Inflater}s hold on to native (zlib) memory until they are {@link Deflater#end() ended}.
+ * Therefore they are taken from (bounded) {@link CoderPool}s, reset between uses, and ended when no longer pooled.
+ * The streams returned by {@link #getOutputStream(OutputStream)} and {@link #getInputStream(InputStream)} give their
+ * coder back to the pool when they are closed, the byte array and {@link ByteBuffer} methods do so before returning.
+ * 
+ * A {@link PresetDictionary} can be used to improve compression of small inputs.
+ * 
  * @author mstevens
  * @see <a href="http://en.wikipedia.org/wiki/DEFLATE">http://en.wikipedia.org/wiki/DEFLATE</a>
  * @see <a href="http://docs.oracle.com/javase/6/docs/api/java/util/zip/package-summary.html">http://docs.oracle.com/javase/6/docs/api/java/util/zip/package-summary.html</a>
@@ -41,7 +52,167 @@ public class DeflateCompressor extends Compressor
 	
 	static public final boolean DEFAULT_HEADERLESS = true;
 	
+	static public final int LEVEL = Deflater.BEST_COMPRESSION; // best compression
+	
+	static private final class DeflaterPool extends CoderPool<Deflater>
+	{
+		
+		private final boolean headerless;
+		
+		public DeflaterPool(boolean headerless)
+		{
+			this.headerless = headerless;
+		}
+
+		@Override
+		protected Deflater create()
+		{
+			return new Deflater(LEVEL, headerless);
+		}
+
+		@Override
+		protected void reset(Deflater deflater)
+		{
+			deflater.reset();
+		}
+
+		@Override
+		protected void dispose(Deflater deflater)
+		{
+			deflater.end();
+		}
+		
+	}
+	
+	static private final class InflaterPool extends CoderPool<Inflater>
+	{
+		
+		private final boolean headerless;
+		
+		public InflaterPool(boolean headerless)
+		{
+			this.headerless = headerless;
+		}
+
+		@Override
+		protected Inflater create()
+		{
+			return new Inflater(headerless);
+		}
+
+		@Override
+		protected void reset(Inflater inflater)
+		{
+			inflater.reset();
+		}
+
+		@Override
+		protected void dispose(Inflater inflater)
+		{
+			inflater.end();
+		}
+		
+	}
+	
+	static private final DeflaterPool HEADERLESS_DEFLATERS = new DeflaterPool(true);
+	static private final DeflaterPool DEFLATERS = new DeflaterPool(false);
+	static private final InflaterPool HEADERLESS_INFLATERS = new InflaterPool(true);
+	static private final InflaterPool INFLATERS = new InflaterPool(false);
+	
+	/**
+	 * DeflaterOutputStream which gives its {@link Deflater} back to the pool when it is closed.
+	 */
+	static private final class PooledDeflaterOutputStream extends DeflaterOutputStream
+	{
+		
+		private final DeflaterPool pool;
+		private boolean released = false;
+		
+		public PooledDeflaterOutputStream(OutputStream sink, DeflaterPool pool, PresetDictionary dictionary)
+		{
+			super(sink, pool.obtain());
+			this.pool = pool;
+			if(dictionary != null)
+				def.setDictionary(dictionary.data);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if(released)
+				throw new IOException("Stream closed");
+			super.write(b, off, len);
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			if(released)
+				return;
+			try
+			{
+				super.close(); // does not end the deflater because it was not created by the DeflaterOutputStream itself
+			}
+			finally
+			{
+				released = true;
+				pool.release(def);
+			}
+		}
+		
+	}
+	
+	/**
+	 * InflaterInputStream which gives its {@link Inflater} back to the pool when it is closed.
+	 */
+	static private final class PooledInflaterInputStream extends InflaterInputStream
+	{
+		
+		private final InflaterPool pool;
+		private final PresetDictionary dictionary;
+		private boolean released = false;
+		
+		public PooledInflaterInputStream(InputStream source, InflaterPool pool, boolean headerless, PresetDictionary dictionary)
+		{
+			super(source, pool.obtain());
+			this.pool = pool;
+			this.dictionary = dictionary;
+			if(dictionary != null && headerless)
+				inf.setDictionary(dictionary.data); // raw streams do not signal the need for a dictionary, so it must be set up front
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int read = super.read(b, off, len);
+			if(read == -1 && dictionary != null && inf.needsDictionary())
+			{	// zlib stream requests the dictionary after its header:
+				inf.setDictionary(dictionary.data);
+				read = super.read(b, off, len);
+			}
+			return read;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			if(released)
+				return;
+			try
+			{
+				super.close(); // does not end the inflater because it was not created by the InflaterInputStream itself
+			}
+			finally
+			{
+				released = true;
+				pool.release(inf);
+			}
+		}
+		
+	}
+	
 	private final boolean headerless;
+	private final PresetDictionary dictionary;
 	
 	/**
 	 * 
@@ -55,20 +226,256 @@ public class DeflateCompressor extends Compressor
 	 * @param headerless
 	 */
 	public DeflateCompressor(boolean headerless)
+	{
+		this(headerless, null);
+	}
+	
+	/**
+	 * @param dictionary preset dictionary to use, may be {@code null}
+	 */
+	public DeflateCompressor(PresetDictionary dictionary)
+	{
+		this(DEFAULT_HEADERLESS, dictionary);
+	}
+	
+	/**
+	 * @param headerless
+	 * @param dictionary preset dictionary to use, may be {@code null}
+	 */
+	public DeflateCompressor(boolean headerless, PresetDictionary dictionary)
 	{
 		this.headerless = headerless;
+		this.dictionary = dictionary;
+	}
+	
+	private DeflaterPool getDeflaterPool()
+	{
+		return headerless ? HEADERLESS_DEFLATERS : DEFLATERS;
+	}
+	
+	private InflaterPool getInflaterPool()
+	{
+		return headerless ? HEADERLESS_INFLATERS : INFLATERS;
 	}
 	
 	@Override
 	protected OutputStream _getOutputStream(OutputStream sink, long uncompressedSizeBytes) throws IOException
 	{
-		return new DeflaterOutputStream(sink, new Deflater(Deflater.BEST_COMPRESSION, headerless)); // best compression
+		return new PooledDeflaterOutputStream(sink, getDeflaterPool(), dictionary);
 	}
 
 	@Override
 	public InputStream getInputStream(InputStream source) throws IOException
 	{
-		return new InflaterInputStream(source, new Inflater(headerless));
+		return new PooledInflaterInputStream(source, getInflaterPool(), headerless, dictionary);
+	}
+	
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.shared.compression.Compressor#compress(byte[], int, int)
+	 */
+	@Override
+	public byte[] compress(byte[] data, int offset, int length) throws IOException
+	{
+		DeflaterPool pool = getDeflaterPool();
+		Deflater deflater = pool.obtain();
+		try
+		{
+			if(dictionary != null)
+				deflater.setDictionary(dictionary.data);
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			byte[] result = new byte[GetInitialSinkSize(length)];
+			int size = 0;
+			while(!deflater.finished())
+			{
+				if(size == result.length)
+					result = Arrays.copyOf(result, result.length * 2);
+				size += deflater.deflate(result, size, result.length - size);
+			}
+			return size == result.length ? result : Arrays.copyOf(result, size);
+		}
+		finally
+		{
+			pool.release(deflater);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.shared.compression.Compressor#compress(byte[], int, int, java.nio.ByteBuffer)
+	 */
+	@Override
+	public int compress(byte[] data, int offset, int length, ByteBuffer target) throws IOException, BufferOverflowException
+	{
+		DeflaterPool pool = getDeflaterPool();
+		Deflater deflater = pool.obtain();
+		int start = target.position();
+		try
+		{
+			if(dictionary != null)
+				deflater.setDictionary(dictionary.data);
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			byte[] chunk = target.hasArray() ? null : new byte[CHUNK_SIZE];
+			while(!deflater.finished())
+			{
+				if(!target.hasRemaining())
+					throw new BufferOverflowException();
+				if(chunk == null)
+					target.position(target.position() + deflater.deflate(target.array(), target.arrayOffset() + target.position(), target.remaining()));
+				else
+					target.put(chunk, 0, deflater.deflate(chunk, 0, Math.min(chunk.length, target.remaining())));
+			}
+			return target.position() - start;
+		}
+		catch(BufferOverflowException boe)
+		{
+			target.position(start);
+			throw boe;
+		}
+		finally
+		{
+			pool.release(deflater);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.shared.compression.Compressor#decompress(byte[])
+	 */
+	@Override
+	public byte[] decompress(byte[] compressedData) throws IOException
+	{
+		InflaterPool pool = getInflaterPool();
+		Inflater inflater = pool.obtain();
+		try
+		{
+			setDictionary(inflater);
+			inflater.setInput(compressedData);
+			byte[] result = new byte[Math.max(CHUNK_SIZE, compressedData.length * 4)];
+			int size = 0;
+			while(!inflater.finished())
+			{
+				if(size == result.length)
+					result = Arrays.copyOf(result, result.length * 2);
+				int inflated = inflater.inflate(result, size, result.length - size);
+				if(inflated == 0)
+					checkStuck(inflater);
+				size += inflated;
+			}
+			return Arrays.copyOf(result, size);
+		}
+		catch(DataFormatException dfe)
+		{
+			throw new IOException("Error upon " + getMode() + " decompression", dfe);
+		}
+		finally
+		{
+			pool.release(inflater);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.shared.compression.Compressor#decompress(byte[], int, int, java.nio.ByteBuffer)
+	 */
+	@Override
+	public int decompress(byte[] compressedData, int offset, int length, ByteBuffer target) throws IOException, BufferOverflowException
+	{
+		InflaterPool pool = getInflaterPool();
+		Inflater inflater = pool.obtain();
+		int start = target.position();
+		try
+		{
+			setDictionary(inflater);
+			inflater.setInput(compressedData, offset, length);
+			byte[] chunk = target.hasArray() ? null : new byte[CHUNK_SIZE];
+			while(!inflater.finished())
+			{
+				if(!target.hasRemaining())
+				{	// Check whether there is more output to come:
+					if(inflater.inflate(new byte[1]) != 0)
+						throw new BufferOverflowException();
+					if(inflater.finished())
+						break;
+					checkStuck(inflater);
+				}
+				int inflated;
+				if(chunk == null)
+				{
+					inflated = inflater.inflate(target.array(), target.arrayOffset() + target.position(), target.remaining());
+					target.position(target.position() + inflated);
+				}
+				else
+				{
+					inflated = inflater.inflate(chunk, 0, Math.min(chunk.length, target.remaining()));
+					target.put(chunk, 0, inflated);
+				}
+				if(inflated == 0)
+					checkStuck(inflater);
+			}
+			return target.position() - start;
+		}
+		catch(BufferOverflowException boe)
+		{
+			target.position(start);
+			throw boe;
+		}
+		catch(IOException ioe)
+		{
+			target.position(start);
+			throw ioe;
+		}
+		catch(DataFormatException dfe)
+		{
+			target.position(start);
+			throw new IOException("Error upon " + getMode() + " decompression", dfe);
+		}
+		finally
+		{
+			pool.release(inflater);
+		}
+	}
+	
+	/**
+	 * Sets the preset dictionary, if there is one, on a raw (headerless) inflater. Raw streams do not signal the need for a
+	 * dictionary so it must be set up front. zlib streams do signal it (after their header), which is handled in {@link #checkStuck(Inflater)}.
+	 * 
+	 * @param inflater
+	 */
+	private void setDictionary(Inflater inflater)
+	{
+		if(dictionary != null && headerless)
+			inflater.setDictionary(dictionary.data);
+	}
+	
+	/**
+	 * Called when the inflater produced no output, to provide the preset dictionary when the (zlib) stream requests it,
+	 * and to detect truncated input (or a missing preset dictionary) instead of looping forever.
+	 * 
+	 * @param inflater
+	 * @throws IOException
+	 */
+	private void checkStuck(Inflater inflater) throws IOException
+	{
+		if(inflater.needsDictionary())
+		{
+			if(dictionary == null)
+				throw new IOException("Error upon " + getMode() + " decompression: a preset dictionary is required");
+			inflater.setDictionary(dictionary.data);
+			return;
+		}
+		if(inflater.needsInput())
+			throw new IOException("Error upon " + getMode() + " decompression: unexpected end of compressed data");
+	}
+
+	@Override
+	public boolean supportsPresetDictionary()
+	{
+		return true;
+	}
+	
+	@Override
+	public PresetDictionary getPresetDictionary()
+	{
+		return dictionary;
 	}
 
 	@Override
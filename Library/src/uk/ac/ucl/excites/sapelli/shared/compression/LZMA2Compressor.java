@@ -23,6 +23,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.tukaani.xz.FinishableOutputStream;
+import org.tukaani.xz.LZMA2InputStream;
 import org.tukaani.xz.LZMA2Options;
 import org.tukaani.xz.UnsupportedOptionsException;
 
@@ -31,6 +32,7 @@ import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory.Compressio
 /**
  * LZMA2 compressor.
  * Uses the "XZ for Java" library by Lasse Collin (public domain).
+ * Supports the use of a {@link PresetDictionary}.
  * 
  * @author mstevens
  * 
@@ -41,14 +43,26 @@ public class LZMA2Compressor extends Compressor
 {
 
 	private LZMA2Options options;
+	private final PresetDictionary dictionary;
 	
 	public LZMA2Compressor()
 	{
+		this(null);
+	}
+	
+	/**
+	 * @param dictionary preset dictionary to use, may be {@code null}
+	 */
+	public LZMA2Compressor(PresetDictionary dictionary)
+	{
+		this.dictionary = dictionary;
 		try
 		{
 			options = new LZMA2Options(6);
 			options.setDictSize(1 << 20); // dictSize at present 6 is too high
 			//options.setNiceLen(LZMA2Options.NICE_LEN_MAX); // = "NumFastBytes" on LZMA(1)
+			if(dictionary != null)
+				options.setPresetDict(dictionary.data);
 		}
 		catch(UnsupportedOptionsException e)
 		{
@@ -65,7 +79,20 @@ public class LZMA2Compressor extends Compressor
 	@Override
 	public InputStream getInputStream(InputStream source) throws IOException
 	{
-		return options.getInputStream(source);
+		// Note: LZMA2Options#getInputStream(InputStream) ignores the preset dictionary
+		return new LZMA2InputStream(source, options.getDictSize(), dictionary != null ? dictionary.data : null);
+	}
+	
+	@Override
+	public boolean supportsPresetDictionary()
+	{
+		return true;
+	}
+	
+	@Override
+	public PresetDictionary getPresetDictionary()
+	{
+		return dictionary;
 	}
 
 	public class WrappedOutputStream extends FinishableOutputStream
@@ -140,6 +140,65 @@ public class LZMACompressor extends Compressor
 		return specMode ? SPEC_HEADER_UNCOMPRESSED_SIZE_FIELD_SIZE : MINI_HEADER_UNCOMPRESSED_SIZE_FIELD_SIZE;
 	}
 	
+	/**
+	 * Pool of {@link Encoder}s, which are expensive to create (they allocate the match finder's buffers and
+	 * hash tables, which take up several megabytes with our dictionary size). An encoder can be reused once
+	 * the {@link LzmaOutputStream} which used it has been closed (closing waits for the coder thread to finish).
+	 */
+	static private final CoderPool<Encoder> ENCODERS = new CoderPool<Encoder>()
+	{
+		
+		@Override
+		protected Encoder create()
+		{
+			return CreateEncoder();
+		}
+		
+		@Override
+		protected void reset(Encoder encoder)
+		{
+			// the encoder (re)initialises its state at the start of each encoding run
+		}
+		
+		@Override
+		protected void dispose(Encoder encoder)
+		{
+			// nothing to release (Java-only implementation)
+		}
+		
+	};
+	
+	/**
+	 * The coder properties (1 byte for lc/lp/pb and 4 bytes for the dictionary size) written by our encoders.
+	 * These do not depend on whether an end-of-payload marker is used.
+	 */
+	static private final byte[] CODER_PROPERTIES;
+	static
+	{
+		ByteArrayOutputStream propertiesOut = new ByteArrayOutputStream(5);
+		try
+		{
+			CreateEncoder().writeCoderProperties(propertiesOut);
+		}
+		catch(IOException ioe)
+		{
+			throw new IllegalStateException("Could not determine LZMA coder properties", ioe); // should never happen
+		}
+		CODER_PROPERTIES = propertiesOut.toByteArray();
+	}
+	
+	static private Encoder CreateEncoder()
+	{
+		Encoder encoder = new Encoder();
+
+		// Properties:
+		encoder.setDictionarySize(1 << 20); // Default: 1 << 23 (but then it uses way too much memory!)
+		encoder.setMatchFinder(Encoder.EMatchFinderTypeBT4);
+		encoder.setNumFastBytes(0x20); // Default: 0x20 (= 32)
+		
+		return encoder;
+	}
+	
 	private final int mode;
 	
 	public LZMACompressor()
@@ -153,19 +212,15 @@ public class LZMACompressor extends Compressor
 	}
 	
 	/**
+	 * Returns a new encoder. Note that the streams returned by {@link #getOutputStream(OutputStream)} use pooled encoders instead.
+	 * 
 	 * @param writeEndOfPayloadMarker whether or not the end-of-payload marker will be used (takes 5 to 6 bytes)
 	 * @return
 	 */
 	public Encoder getEncoder(boolean writeEndOfPayloadMarker)
 	{
-		Encoder encoder = new Encoder();
-
-		// Properties:
-		encoder.setDictionarySize(1 << 20); // Default: 1 << 23 (but then it uses way too much memory!)
+		Encoder encoder = CreateEncoder();
 		encoder.setEndMarkerMode(writeEndOfPayloadMarker); // whether or not the end-of-payload marker will be used (takes 5 to 6 bytes)
-		encoder.setMatchFinder(Encoder.EMatchFinderTypeBT4);
-		encoder.setNumFastBytes(0x20); // Default: 0x20 (= 32)
-		
 		return encoder;
 	}
 	
@@ -193,13 +248,39 @@ public class LZMACompressor extends Compressor
 			writeSPECh(sink, uncompressedSize);
 		}
 		
-		// Return compressing OutputStream:
+		// Get a pooled encoder and use end-of-payload marker if size in unknown or if in {@link #MODE_NO_HEADER}:
+		final Encoder encoder = ENCODERS.obtain();
+		encoder.setEndMarkerMode(uncompressedSize == UNKNOWN_UNCOMPRESSED_SIZE || mode == MODE_NO_HEADER);
+		
+		// Return compressing OutputStream, which gives the encoder back to the pool when it is closed:
 		return new LzmaOutputStream(
 					/* We always remove the header produced by the underlying LzmaOutputStream, even when
 					 * in {@link #MODE_SPEC_HEADER} because it always encodes an unknown uncompressed size: */
 					new HeaderEatingOutputStream(sink, SPEC_HEADER_SIZE),
-					// Use end-of-payload marker if size in unknown or if in {@link #MODE_NO_HEADER}:
-					getEncoder(uncompressedSize == UNKNOWN_UNCOMPRESSED_SIZE || mode == MODE_NO_HEADER));
+					encoder)
+		{
+			
+			private boolean released = false;
+			
+			@Override
+			public void close() throws IOException
+			{
+				if(released)
+					return;
+				released = true;
+				try
+				{
+					super.close();
+				}
+				catch(IOException ioe)
+				{
+					ENCODERS.discard(encoder); // encoder state is unknown after a failure
+					throw ioe;
+				}
+				ENCODERS.release(encoder);
+			}
+			
+		};
 	}
 
 	@Override
@@ -241,7 +322,7 @@ public class LZMACompressor extends Compressor
 	private void writeSPECh(OutputStream headerOut, long uncompressedSize) throws IOException
 	{
 		// Write header with coder settings (takes up 5 bytes: 1 for properties, 4 for dictionary size):
-		getEncoder(uncompressedSize == UNKNOWN_UNCOMPRESSED_SIZE).writeCoderProperties(headerOut);
+		headerOut.write(CODER_PROPERTIES);
 		// Write -1 as "unknown" for file size (takes up 8 bytes):
 		writeSize(headerOut, uncompressedSize, true);
 		// Insert 0x00 byte (first byte is ignored by decoder, see above):
@@ -0,0 +1,287 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.shared.compression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A preset dictionary for compressors which support one (see {@link Compressor#supportsPresetDictionary()}).
+ * 
+ * Compressors "learn" the data as they go, which makes them ineffective on very small inputs (such as the
+ * body of a binary SMS). A preset dictionary primes the compressor (and decompressor) with content which is
+ * likely to occur in the data, such that even the first occurrence of a repeated byte sequence can be encoded
+ * as a back-reference. The exact same dictionary must be used for compression and decompression, hence each
+ * dictionary carries a small {@link #getID() ID} which can be stored alongside compressed data.
+ * 
+ * Dictionaries can be {@link #Train(int, Collection, int) trained} from samples of (uncompressed) data.
+ */
+public class PresetDictionary
+{
+
+	// STATICS ------------------------------------------------------
+	static public final int ID_SIZE = 8; // bits
+	static public final int MAX_ID = (1 << ID_SIZE) - 1;
+	
+	/**
+	 * DEFLATE can only reference the last 32 KiB, larger dictionaries would be useless.
+	 */
+	static public final int MAX_SIZE = 32 * 1024; // 32 KiB
+	
+	static public final int DEFAULT_TRAINED_SIZE = 2 * 1024; // 2 KiB
+	
+	/**
+	 * Length of the byte sequences (k-grams) which are counted during training (= the minimum DEFLATE match length).
+	 */
+	static private final int KGRAM_LENGTH = 3;
+	
+	/**
+	 * Length of the segments of the samples from which a trained dictionary is assembled.
+	 */
+	static private final int SEGMENT_LENGTH = 16;
+	
+	/**
+	 * Trains a dictionary from the given samples (e.g. previously compressed inputs).
+	 * 
+	 * The training algorithm is a simplified version of the "COVER" algorithm used by Zstandard: the samples are cut
+	 * into segments, which are scored by the number of samples in which each of their (not yet covered) k-grams occur.
+	 * The best-scoring segments are greedily selected until the dictionary is full. Because back-references to the end
+	 * of the dictionary are cheapest, the best segments are placed at the end.
+	 * 
+	 * @param id the ID of the dictionary, in [0, {@link #MAX_ID}]
+	 * @param samples the sample data, in chronological order
+	 * @param maxSize maximum size of the dictionary in bytes, at most {@link #MAX_SIZE}
+	 * @return the trained dictionary
+	 * @throws IllegalArgumentException when the ID or size is invalid, or when there are no samples
+	 */
+	static public PresetDictionary Train(int id, Collection<byte[]> samples, int maxSize) throws IllegalArgumentException
+	{
+		if(samples == null || samples.isEmpty())
+			throw new IllegalArgumentException("At least 1 sample is needed to train a dictionary");
+		if(maxSize < 1 || maxSize > MAX_SIZE)
+			throw new IllegalArgumentException("Dictionary size must be in [1, " + MAX_SIZE + "] bytes");
+		
+		// Count in how many samples each k-gram occurs:
+		Map<Integer, int[]> frequencies = new HashMap<Integer, int[]>();
+		Set<Integer> seen = new HashSet<Integer>();
+		for(byte[] sample : samples)
+		{
+			seen.clear();
+			for(int i = 0; i + KGRAM_LENGTH <= sample.length; i++)
+			{
+				Integer kGram = GetKGram(sample, i);
+				if(seen.add(kGram))
+				{
+					int[] frequency = frequencies.get(kGram);
+					if(frequency == null)
+						frequencies.put(kGram, new int[] { 1 });
+					else
+						frequency[0]++;
+				}
+			}
+		}
+		
+		// Cut samples into segments and score them:
+		PriorityQueue<Segment> queue = new PriorityQueue<Segment>();
+		for(byte[] sample : samples)
+			for(int start = 0; start + KGRAM_LENGTH <= sample.length; start += SEGMENT_LENGTH)
+			{
+				Segment segment = new Segment(sample, start, Math.min(SEGMENT_LENGTH, sample.length - start));
+				if(segment.score(frequencies) > 0)
+					queue.add(segment);
+			}
+		
+		// Greedily select the best segments (lazily re-scoring them because scores only decrease as k-grams get covered):
+		List<Segment> selected = new ArrayList<Segment>();
+		int size = 0;
+		while(size < maxSize && !queue.isEmpty())
+		{
+			Segment best = queue.poll();
+			if(best.score(frequencies) == 0)
+				continue;
+			if(!queue.isEmpty() && best.score < queue.peek().score)
+			{	// score went down and another segment may now be better, try again later:
+				queue.add(best);
+				continue;
+			}
+			selected.add(best);
+			size += best.length;
+			best.cover(frequencies);
+		}
+		
+		// Assemble dictionary (best segments last):
+		byte[] data;
+		if(selected.isEmpty())
+		{	// Nothing in common, use (the end of) the most recent sample:
+			byte[] last = null;
+			for(byte[] sample : samples)
+				last = sample;
+			data = Arrays.copyOfRange(last, Math.max(0, last.length - maxSize), last.length);
+		}
+		else
+		{
+			data = new byte[Math.min(size, maxSize)];
+			int end = data.length;
+			for(Segment segment : selected)
+			{
+				int length = Math.min(segment.length, end);
+				System.arraycopy(segment.sample, segment.start, data, end - length, length);
+				end -= length;
+				if(end == 0)
+					break;
+			}
+		}
+		return new PresetDictionary(id, data);
+	}
+	
+	static private int GetKGram(byte[] data, int offset)
+	{
+		return ((data[offset] & 0xFF) << 16) | ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+	}
+	
+	/**
+	 * A segment of a sample, used during training.
+	 */
+	static private final class Segment implements Comparable<Segment>
+	{
+		
+		final byte[] sample;
+		final int start;
+		final int length;
+		int score;
+		
+		Segment(byte[] sample, int start, int length)
+		{
+			this.sample = sample;
+			this.start = start;
+			this.length = length;
+		}
+		
+		/**
+		 * (Re)computes the score: the sum of the frequencies of the distinct k-grams in the segment.
+		 * 
+		 * @param frequencies
+		 * @return the score
+		 */
+		int score(Map<Integer, int[]> frequencies)
+		{
+			Set<Integer> kGrams = new HashSet<Integer>();
+			score = 0;
+			for(int i = start; i + KGRAM_LENGTH <= start + length; i++)
+				if(kGrams.add(GetKGram(sample, i)))
+					score += frequencies.get(GetKGram(sample, i))[0];
+			return score;
+		}
+		
+		/**
+		 * Marks the k-grams in the segment as covered (their frequency becomes 0).
+		 * 
+		 * @param frequencies
+		 */
+		void cover(Map<Integer, int[]> frequencies)
+		{
+			for(int i = start; i + KGRAM_LENGTH <= start + length; i++)
+				frequencies.get(GetKGram(sample, i))[0] = 0;
+		}
+		
+		@Override
+		public int compareTo(Segment another)
+		{
+			return another.score - this.score; // highest score first
+		}
+		
+	}
+	
+	// DYNAMICS -----------------------------------------------------
+	private final int id;
+	/*package*/ final byte[] data;
+	
+	/**
+	 * @param id the ID of the dictionary, in [0, {@link #MAX_ID}]
+	 * @param data the dictionary content, at most {@link #MAX_SIZE} bytes (will be copied)
+	 * @throws IllegalArgumentException when the ID or size is invalid
+	 */
+	public PresetDictionary(int id, byte[] data) throws IllegalArgumentException
+	{
+		if(id < 0 || id > MAX_ID)
+			throw new IllegalArgumentException("Dictionary ID must be in [0, " + MAX_ID + "]");
+		if(data == null || data.length == 0 || data.length > MAX_SIZE)
+			throw new IllegalArgumentException("Dictionary must contain between 1 and " + MAX_SIZE + " bytes");
+		this.id = id;
+		this.data = data.clone();
+	}
+	
+	/**
+	 * @return the ID of the dictionary, in [0, {@link #MAX_ID}]
+	 */
+	public int getID()
+	{
+		return id;
+	}
+	
+	/**
+	 * @return a copy of the dictionary content
+	 */
+	public byte[] getData()
+	{
+		return data.clone();
+	}
+	
+	/**
+	 * @return the size of the dictionary in bytes
+	 */
+	public int getSize()
+	{
+		return data.length;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true;
+		if(obj instanceof PresetDictionary)
+		{
+			PresetDictionary that = (PresetDictionary) obj;
+			return this.id == that.id && Arrays.equals(this.data, that.data);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * id + Arrays.hashCode(data);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return PresetDictionary.class.getSimpleName() + "_[ID:" + id + "; size:" + data.length + " bytes]";
+	}
+	
+}
@@ -27,6 +27,12 @@ import java.security.MessageDigest;
  * 
  * Uses irreducible polynomial: x^16 + x^15 + x^2 + 1
  * 
+ * Byte arrays are processed 8 bytes at a time using the "slicing-by-8" technique (8 lookup tables derived from {@link #CRC16_TABLE}),
+ * which is several times faster than processing them byte by byte. The CRC can also be computed incrementally without a
+ * {@link MessageDigest} instance, using {@link #Update(int, byte[], int, int)}.
+ * 
+ * @see <a href="http://create.stephan-brumme.com/crc32/#slicing-by-8-overview">Slicing-by-8</a>
+ * 
  * TODO register this MessageDigest class with system so we can get an instance using MessageDigest.getInstance("CRC16");
  * 
  * @author mstevens
@@ -54,7 +60,71 @@ public class CRC16Digest extends MessageDigest
 			0x8801, 0x48C0, 0x4980, 0x8941, 0x4B00, 0x8BC1, 0x8A81, 0x4A40, 0x4E00, 0x8EC1, 0x8F81, 0x4F40, 0x8D01, 0x4DC0, 0x4C80, 0x8C41,
 			0x4400, 0x84C1, 0x8581, 0x4540, 0x8701, 0x47C0, 0x4680, 0x8641, 0x8201, 0x42C0, 0x4380, 0x8341, 0x4100, 0x81C1, 0x8081, 0x4040, };
 	
-	private int crc = 0x0000;
+	static public final int INITIAL_VALUE = 0x0000;
+	
+	/**
+	 * Slicing-by-8 tables: SLICING_TABLES[0] is {@link #CRC16_TABLE}, SLICING_TABLES[k][i] is the CRC of byte i followed by k zero bytes.
+	 */
+	static private final int[][] SLICING_TABLES = new int[8][];
+	static
+	{
+		SLICING_TABLES[0] = CRC16_TABLE;
+		for(int k = 1; k < SLICING_TABLES.length; k++)
+		{
+			SLICING_TABLES[k] = new int[256];
+			for(int i = 0; i < 256; i++)
+			{
+				int previous = SLICING_TABLES[k - 1][i];
+				SLICING_TABLES[k][i] = (previous >>> 8) ^ CRC16_TABLE[previous & 0xff];
+			}
+		}
+	}
+	
+	/**
+	 * Updates the given CRC value with a single byte.
+	 * 
+	 * @param crc the current CRC value (start with {@link #INITIAL_VALUE})
+	 * @param b the byte (only the lowest 8 bits are used)
+	 * @return the updated CRC value
+	 */
+	static public int Update(int crc, int b)
+	{
+		return (crc >>> 8) ^ CRC16_TABLE[(crc ^ b) & 0xff];
+	}
+	
+	/**
+	 * Updates the given CRC value with {@code len} bytes of {@code input}, starting at {@code offset}.
+	 * 
+	 * @param crc the current CRC value (start with {@link #INITIAL_VALUE})
+	 * @param input
+	 * @param offset
+	 * @param len
+	 * @return the updated CRC value
+	 */
+	static public int Update(int crc, byte[] input, int offset, int len)
+	{
+		if(offset < 0 || len < 0 || offset > input.length - len)
+			throw new ArrayIndexOutOfBoundsException("Invalid offset (" + offset + ") and/or length (" + len + ") for array of length " + input.length);
+		final int[] t0 = SLICING_TABLES[0], t1 = SLICING_TABLES[1], t2 = SLICING_TABLES[2], t3 = SLICING_TABLES[3],
+					t4 = SLICING_TABLES[4], t5 = SLICING_TABLES[5], t6 = SLICING_TABLES[6], t7 = SLICING_TABLES[7];
+		int i = offset;
+		final int end = offset + len;
+		// 8 bytes at a time:
+		for(final int end8 = end - 7; i < end8; i += 8)
+		{
+			crc ^= (input[i] & 0xff) | ((input[i + 1] & 0xff) << 8);
+			crc =	t7[crc & 0xff] ^ t6[crc >>> 8] ^
+					t5[input[i + 2] & 0xff] ^ t4[input[i + 3] & 0xff] ^
+					t3[input[i + 4] & 0xff] ^ t2[input[i + 5] & 0xff] ^
+					t1[input[i + 6] & 0xff] ^ t0[input[i + 7] & 0xff];
+		}
+		// Remaining bytes:
+		for(; i < end; i++)
+			crc = (crc >>> 8) ^ t0[(crc ^ input[i]) & 0xff];
+		return crc;
+	}
+	
+	private int crc = INITIAL_VALUE;
 
 	public CRC16Digest()
 	{
@@ -65,14 +135,27 @@ public class CRC16Digest extends MessageDigest
 	@Override
 	protected void engineUpdate(byte b)
 	{
-		crc = (crc >>> 8) ^ CRC16_TABLE[((crc ^ b) & 0xff)];
+		crc = Update(crc, b);
 	}
 
 	@Override
 	protected void engineUpdate(byte[] input, int offset, int len)
 	{
-		for(int b = offset; b < len; b++)
-			engineUpdate(input[b]);
+		crc = Update(crc, input, offset, len);
+	}
+	
+	/**
+	 * @return the CRC of the data processed so far (unsigned 16 bit value), without resetting the digest
+	 */
+	public int getValue()
+	{
+		return crc;
+	}
+	
+	@Override
+	protected int engineGetDigestLength()
+	{
+		return 2;
 	}
 
 	@Override
@@ -90,7 +173,7 @@ public class CRC16Digest extends MessageDigest
 	@Override
 	protected void engineReset()
 	{
-		crc = 0x0000;
+		crc = INITIAL_VALUE;
 	}
 	
 }
\ No newline at end of file
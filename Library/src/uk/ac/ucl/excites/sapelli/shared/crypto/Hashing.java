@@ -25,6 +25,8 @@ import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
+
 /**
  * Hash algorithms
  * 
@@ -117,13 +119,36 @@ public final class Hashing
 			return new BigInteger(result.hash);
 	}
 	
+	/**
+	 * Computes a 16 bit CRC hash code from the provided data
+	 * 
+	 * @param byteArray
+	 * @return the hash as an unsigned 16 bit value
+	 * @see CRC16Digest
+	 */
 	static public int getCRC16Hash(byte[] byteArray)
 	{
-		HashResult result = digest(CRC16Digest.NAME, new ByteArrayInputStream(byteArray));
-		if(result == null)
-			return 0;
-		else
-			return (result.hash[0] & 0xFF) << 8 | (result.hash[1] & 0xFF);
+		return CRC16Digest.Update(CRC16Digest.INITIAL_VALUE, byteArray, 0, byteArray.length);
+	}
+	
+	/**
+	 * Computes a 16 bit CRC hash code from the provided bits, which are hashed as they would be returned
+	 * by {@link BitArray#toByteArray()} (i.e. padded with zeros to the next byte boundary), but without
+	 * converting the whole array.
+	 * 
+	 * @param bits
+	 * @return the hash as an unsigned 16 bit value
+	 * @see CRC16Digest
+	 */
+	static public int getCRC16Hash(BitArray bits)
+	{
+		final int bufferSize = 64; // bytes
+		byte[] buffer = new byte[bufferSize];
+		int crc = CRC16Digest.INITIAL_VALUE;
+		int count;
+		for(int b = 0; (count = bits.toByteArray(b, buffer, 0, bufferSize)) > 0; b += count)
+			crc = CRC16Digest.Update(crc, buffer, 0, count);
+		return crc;
 	}
 	
 	/**
@@ -74,7 +74,7 @@ public class StoreHandle<S extends Store>
 	 * @return
 	 * @throws DBException
 	 */
-	public S getStore(StoreUser user) throws DBException
+	public synchronized S getStore(StoreUser user) throws DBException
 	{
 		boolean hadStrongRef = false;
 		
@@ -260,7 +260,7 @@ public class StoreHandle<S extends Store>
 	 * 
 	 * @param user
 	 */
-	public void doneUsing(StoreUser user)
+	public synchronized void doneUsing(StoreUser user)
 	{
 		// Remove client for this store:
 		users.remove(System.identityHashCode(user));
@@ -153,12 +153,42 @@ public class BitArray implements Iterable<Boolean>
 	public byte[] toByteArray()
 	{
 		byte[] bytes = new byte[BinaryHelpers.bytesNeeded(length)];
-		for(int i = 0; i < length; i++)
-			if(bits.get(i))
-				bytes[i / Byte.SIZE] |= 1 << (7 - (i % 8)); // MSB is read first
+		toByteArray(0, bytes, 0, bytes.length);
 		return bytes;
 	}
 	
+	/**
+	 * Copies (part of) the bits to the given byte array, in the same format as {@link #toByteArray()} (MSB first,
+	 * last byte padded with zeros), without allocating a new array.
+	 * 
+	 * @param fromByte index of the first byte to copy (i.e. bit {@code fromByte * 8})
+	 * @param dest the destination array
+	 * @param destOffset offset in dest
+	 * @param numberOfBytes maximum number of bytes to copy
+	 * @return the number of bytes copied (less than numberOfBytes when the end of the array is reached)
+	 */
+	public int toByteArray(int fromByte, byte[] dest, int destOffset, int numberOfBytes)
+	{
+		if(fromByte < 0 || destOffset < 0 || numberOfBytes < 0 || destOffset + numberOfBytes > dest.length)
+			throw new IndexOutOfBoundsException();
+		int count = Math.max(0, Math.min(numberOfBytes, BinaryHelpers.bytesNeeded(length) - fromByte));
+		int i = fromByte * Byte.SIZE;
+		for(int d = destOffset; d < destOffset + count; d++)
+		{
+			int b = 0;
+			for(int end = Math.min(i + Byte.SIZE, length); i < end; i++)
+			{
+				b <<= 1;
+				if(bits.get(i))
+					b |= 1;
+			}
+			if(i % Byte.SIZE != 0)
+				b <<= Byte.SIZE - (i % Byte.SIZE); // pad with zeros
+			dest[d] = (byte) b; // MSB is read first
+		}
+		return count;
+	}
+	
 	/**
 	 * Writes the bits to a {@link BitOutputStream}
 	 * 
@@ -0,0 +1,71 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.shared.io;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream which writes into a (caller-supplied) {@link ByteBuffer}, starting at its current position.
+ * Writing more bytes than the buffer has remaining causes a {@link BufferOverflowException}.
+ */
+public class ByteBufferOutputStream extends OutputStream
+{
+
+	private final ByteBuffer buffer;
+	
+	/**
+	 * @param buffer
+	 */
+	public ByteBufferOutputStream(ByteBuffer buffer)
+	{
+		if(buffer == null)
+			throw new NullPointerException("ByteBuffer cannot be null!");
+		this.buffer = buffer;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) throws BufferOverflowException
+	{
+		buffer.put((byte) b);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws BufferOverflowException
+	{
+		buffer.put(b, off, len);
+	}
+	
+	/**
+	 * @return the buffer being written to
+	 */
+	public ByteBuffer getBuffer()
+	{
+		return buffer;
+	}
+
+}
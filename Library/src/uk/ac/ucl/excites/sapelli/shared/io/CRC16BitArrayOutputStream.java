@@ -0,0 +1,93 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.shared.io;
+
+import java.io.IOException;
+
+import uk.ac.ucl.excites.sapelli.shared.crypto.CRC16Digest;
+
+/**
+ * A {@link BitArrayOutputStream} which computes the CRC16 (see {@link CRC16Digest}) of the bits as they are being written,
+ * such that no separate pass over (or conversion of) the resulting {@link BitArray} is needed to hash it.
+ * 
+ * The CRC is computed over the bits as they would be returned by {@link BitArray#toByteArray()}, i.e. MSB first and padded
+ * with zeros to the next byte boundary.
+ */
+public class CRC16BitArrayOutputStream extends BitArrayOutputStream
+{
+
+	static private final int BUFFER_SIZE = 64; // bytes
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int bufferedBytes = 0;
+	private int currentByte = 0;
+	private int numBitsInCurrentByte = 0;
+	private int crc = CRC16Digest.INITIAL_VALUE;
+	
+	public CRC16BitArrayOutputStream()
+	{
+		super();
+	}
+	
+	/**
+	 * @param maxLength
+	 */
+	public CRC16BitArrayOutputStream(int maxLength)
+	{
+		super(maxLength);
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.shared.io.BitArrayOutputStream#writeBit(boolean)
+	 */
+	@Override
+	protected void writeBit(boolean bit) throws IOException
+	{
+		super.writeBit(bit);
+		currentByte <<= 1;
+		if(bit)
+			currentByte++;
+		if(++numBitsInCurrentByte == Byte.SIZE)
+		{
+			buffer[bufferedBytes++] = (byte) currentByte;
+			currentByte = 0;
+			numBitsInCurrentByte = 0;
+			if(bufferedBytes == BUFFER_SIZE)
+			{
+				crc = CRC16Digest.Update(crc, buffer, 0, BUFFER_SIZE);
+				bufferedBytes = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the CRC16 hash of the bits written so far. Writing can continue afterwards.
+	 * 
+	 * @return the hash as an unsigned 16 bit value, equal to {@code Hashing.getCRC16Hash(toBitArray().toByteArray())}
+	 */
+	public int getCRC16()
+	{
+		int value = CRC16Digest.Update(crc, buffer, 0, bufferedBytes);
+		if(numBitsInCurrentByte > 0)
+			value = CRC16Digest.Update(value, currentByte << (Byte.SIZE - numBitsInCurrentByte)); // pad with zeros
+		return value;
+	}
+	
+}
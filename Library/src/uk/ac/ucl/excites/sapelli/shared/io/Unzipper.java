@@ -22,7 +22,17 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -81,6 +91,111 @@ public final class Unzipper
 		}
 	}
 	
+	/**
+	 * Extracts the given ZIP file using up to {@code maxThreads} threads, each of which extracts (i.e. inflates and writes) different entries.
+	 * Unlike {@link #unzip(InputStream, File)} this requires random access to the archive, hence the {@link File} parameter.
+	 * 
+	 * @param zipFile
+	 * @param extractionFolder
+	 * @param maxThreads maximum number of threads to use
+	 * @return the number of extracted entries
+	 * @throws IOException - always wraps around a causing Exception
+	 */
+	static public int unzip(File zipFile, File extractionFolder, int maxThreads) throws IOException
+	{
+		ZipFile zip = null;
+		ExecutorService executor = null;
+		try
+		{
+			final String extractionPath = extractionFolder.getAbsolutePath() + File.separator;
+			zip = new ZipFile(zipFile);
+			
+			// Create all folders first (sequentially) and collect the file entries:
+			int entryCount = 0;
+			List<ZipEntry> fileEntries = new ArrayList<ZipEntry>();
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while(entries.hasMoreElements())
+			{
+				ZipEntry ze = entries.nextElement();
+				entryCount++;
+				File target = new File(extractionPath + ze.getName());
+				File folder = ze.isDirectory() ? target : target.getParentFile();
+				if(!FileHelpers.createDirectory(folder))
+					throw new IOException("Could not create folder: " + folder.getAbsolutePath());
+				if(!ze.isDirectory())
+					fileEntries.add(ze);
+			}
+			if(fileEntries.isEmpty())
+				return entryCount;
+			
+			// Extract the files in parallel:
+			executor = Executors.newFixedThreadPool(Math.max(1, Math.min(maxThreads, fileEntries.size())));
+			CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+			final ZipFile finalZip = zip;
+			for(final ZipEntry ze : fileEntries)
+				completion.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							extract(finalZip.getInputStream(ze), new File(extractionPath + ze.getName()));
+						}
+						catch(IOException ioe)
+						{
+							throw new RuntimeException("Could not extract " + ze.getName(), ioe);
+						}
+					}
+				}, null);
+			for(int i = 0; i < fileEntries.size(); i++)
+				completion.take().get(); // throws ExecutionException if extraction failed
+			
+			return entryCount;
+		}
+		catch(ExecutionException ee)
+		{
+			throw new IOException("Error on unzipping archive", ee.getCause());
+		}
+		catch(Exception e)
+		{
+			throw new IOException("Error on unzipping archive", e);
+		}
+		finally
+		{
+			if(executor != null)
+			{	// stop & wait for any remaining extractions (only happens upon failure):
+				executor.shutdownNow();
+				try
+				{
+					executor.awaitTermination(1, TimeUnit.MINUTES);
+				}
+				catch(InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			StreamHelpers.SilentClose(zip);
+		}
+	}
+	
+	static private void extract(InputStream in, File target) throws IOException
+	{
+		FileOutputStream fout = null;
+		try
+		{
+			fout = new FileOutputStream(target, false);
+			byte[] buffer = new byte[8192];
+			for(int c = in.read(buffer); c != -1; c = in.read(buffer))
+				fout.write(buffer, 0, c);
+		}
+		finally
+		{
+			StreamHelpers.SilentClose(in);
+			StreamHelpers.SilentClose(fout);
+		}
+	}
+	
 	public static InputStream getInputStreamForFileInZip(InputStream zipFileStream, String filename) throws IOException
 	{
 		ZipInputStream zin = new ZipInputStream(zipFileStream);
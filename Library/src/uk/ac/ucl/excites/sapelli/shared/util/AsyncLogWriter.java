@@ -0,0 +1,346 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ *
+ * Copyright 2012-2016 University College London - ExCiteS group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.shared.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+import uk.ac.ucl.excites.sapelli.shared.io.FileHelpers;
+import uk.ac.ucl.excites.sapelli.shared.io.StreamHelpers;
+import uk.ac.ucl.excites.sapelli.shared.io.text.UnicodeBOM;
+
+/**
+ * Writes lines to a (rotating) log file on a dedicated background thread.
+ *
+ * Lines are handed over through a bounded, lock-free queue and are written by a single writer thread in
+ * batches to a large buffered stream, which is only flushed once the queue has been drained (or a batch
+ * has reached {@link #MAX_BATCH_SIZE} lines). Lines are written in the order in which they were enqueued
+ * and in exactly the same format as {@link uk.ac.ucl.excites.sapelli.shared.io.text.FileWriter#writeLine(String)} would.
+ *
+ * When a maximum file size is set the writer continues in a new file, named {@code <base>-<n>.<extension>},
+ * once the current one has reached (approximately, the check happens at batch boundaries) that size.
+ */
+public class AsyncLogWriter
+{
+
+	// STATICS ------------------------------------------------------
+	/**
+	 * Determines what happens when a line is enqueued while the queue is full.
+	 */
+	static public enum OverflowPolicy
+	{
+		/**
+		 * The calling thread waits until the writer thread has made space in the queue (nothing is lost).
+		 */
+		BLOCK,
+
+		/**
+		 * The line is discarded (and counted, see {@link AsyncLogWriter#getDroppedLineCount()}), the calling thread never waits.
+		 */
+		DROP
+	}
+
+	static public final int DEFAULT_QUEUE_CAPACITY = 4096;
+	static public final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+	static public final long NO_ROTATION = 0;
+
+	static private final int OUTPUT_BUFFER_SIZE = 64 * 1024; // 64 KiB
+	static private final int MAX_BATCH_SIZE = 1024; // lines
+	static private final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(250);
+	static private final char LINE_SEPARATOR = '\n';
+
+	// DYNAMICS -----------------------------------------------------
+	private final String pathWithoutExtension;
+	private final String extension;
+	private final Charset charset;
+	private final long maxFileSizeBytes;
+	private final OverflowPolicy overflowPolicy;
+
+	private final Queue<String> queue = new ConcurrentLinkedQueue<String>();
+	private final Semaphore freeSlots;
+	private final AtomicLong droppedLines = new AtomicLong();
+	private final Thread writerThread;
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock(); // producers hold the read lock while enqueuing, close() takes the write lock to set closed
+	private volatile boolean writerWaiting = false;
+	private volatile boolean closed = false;
+	private volatile boolean failed = false;
+
+	// Only accessed by the writer thread (after construction):
+	private File file;
+	private CountingOutputStream counter;
+	private OutputStreamWriter writer;
+	private long initialFileSize;
+
+	/**
+	 * @param fullPath full path of the (first) log file
+	 * @param charset the character encoding to use
+	 * @param queueCapacity maximum number of lines waiting to be written
+	 * @param overflowPolicy what to do when the queue is full
+	 * @param maxFileSizeBytes file size (in bytes) after which to continue in a new file, or {@link #NO_ROTATION}
+	 * @throws IOException when the log file could not be opened
+	 */
+	public AsyncLogWriter(String fullPath, Charset charset, int queueCapacity, OverflowPolicy overflowPolicy, long maxFileSizeBytes) throws IOException
+	{
+		if(fullPath == null)
+			throw new NullPointerException("fullPath cannot be null");
+		if(charset == null)
+			throw new NullPointerException("charset cannot be null");
+		if(queueCapacity < 1)
+			throw new IllegalArgumentException("Queue capacity must be strictly positive");
+		this.pathWithoutExtension = FileHelpers.trimFileExtensionAndDot(fullPath);
+		this.extension = FileHelpers.getFileExtension(fullPath);
+		this.charset = charset;
+		this.maxFileSizeBytes = maxFileSizeBytes;
+		this.overflowPolicy = overflowPolicy != null ? overflowPolicy : DEFAULT_OVERFLOW_POLICY;
+		this.freeSlots = new Semaphore(queueCapacity);
+
+		// Open the file on the calling thread so that I/O problems are reported to the creator:
+		openFile(new File(fullPath));
+
+		// Start writer thread:
+		writerThread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeLoop();
+			}
+		}, "AsyncLogWriter-" + file.getName());
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Enqueues the given line for writing. A line separator will be appended by the writer.
+	 *
+	 * @param line
+	 * @return whether the line was accepted (only {@code false} when the queue is full and the {@link OverflowPolicy} is {@link OverflowPolicy#DROP})
+	 * @throws IllegalStateException when the writer has been closed or has failed
+	 */
+	public boolean writeLine(String line) throws IllegalStateException
+	{
+		// Hold the read lock so that close() cannot happen between the closed check and the enqueuing of the line (the writer thread would then exit without writing it):
+		closeLock.readLock().lock();
+		try
+		{
+			if(!isWritable())
+				throw new IllegalStateException("AsyncLogWriter has been closed or could not write to file.");
+			switch(overflowPolicy)
+			{
+				case DROP :
+					if(!freeSlots.tryAcquire())
+					{
+						droppedLines.incrementAndGet();
+						return false;
+					}
+					break;
+				case BLOCK :
+				default :
+					freeSlots.acquireUninterruptibly(); // the writer thread keeps draining until closed, which cannot happen while we hold the read lock
+					break;
+			}
+			queue.offer(line);
+		}
+		finally
+		{
+			closeLock.readLock().unlock();
+		}
+		if(writerWaiting)
+			LockSupport.unpark(writerThread);
+		return true;
+	}
+
+	public boolean isWritable()
+	{
+		return !closed && !failed;
+	}
+
+	/**
+	 * @return the number of lines which were discarded because the queue was full
+	 */
+	public long getDroppedLineCount()
+	{
+		return droppedLines.get();
+	}
+
+	/**
+	 * @return the number of lines currently waiting to be written
+	 */
+	public int getQueuedLineCount()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * @return the full path of the file currently being written to
+	 */
+	public String getFullPath()
+	{
+		File current = file;
+		return current != null ? current.getAbsolutePath() : pathWithoutExtension + "." + extension;
+	}
+
+	/**
+	 * Writes out all queued lines, closes the file and stops the writer thread.
+	 * Blocks until that is done. Nothing can be written after this method has been called.
+	 */
+	public void close()
+	{
+		// Wait for producers which are enqueuing a line, their lines must still be written:
+		closeLock.writeLock().lock();
+		try
+		{
+			if(closed)
+				return;
+			closed = true;
+		}
+		finally
+		{
+			closeLock.writeLock().unlock();
+		}
+		LockSupport.unpark(writerThread);
+		if(Thread.currentThread() == writerThread)
+			return;
+		boolean interrupted = false;
+		while(writerThread.isAlive())
+		{
+			try
+			{
+				writerThread.join();
+			}
+			catch(InterruptedException ie)
+			{
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void writeLoop()
+	{
+		int batchSize = 0;
+		while(true)
+		{
+			String line = queue.poll();
+			if(line == null || batchSize >= MAX_BATCH_SIZE)
+			{	// End of batch:
+				endBatch();
+				batchSize = 0;
+				if(line == null)
+				{
+					if(closed && queue.isEmpty())
+						break;
+					// Nothing to do, wait for new lines (writerWaiting must be set before re-checking the queue):
+					writerWaiting = true;
+					if(queue.isEmpty() && !closed)
+						LockSupport.parkNanos(this, IDLE_PARK_NS);
+					writerWaiting = false;
+					continue;
+				}
+			}
+			freeSlots.release();
+			if(!failed)
+			{
+				try
+				{
+					writer.write(line);
+					writer.write(LINE_SEPARATOR);
+					batchSize++;
+				}
+				catch(IOException e)
+				{
+					fail(e);
+				}
+			}
+		}
+		StreamHelpers.SilentClose(writer);
+		writer = null;
+	}
+
+	private void endBatch()
+	{
+		if(failed || writer == null)
+			return;
+		try
+		{
+			writer.flush();
+			if(maxFileSizeBytes > NO_ROTATION && initialFileSize + counter.getByteCount() >= maxFileSizeBytes)
+				rotate();
+		}
+		catch(IOException e)
+		{
+			fail(e);
+		}
+	}
+
+	private void rotate() throws IOException
+	{
+		StreamHelpers.SilentClose(writer);
+		// Find the next file name which does not exist yet:
+		File next;
+		int i = 1;
+		do
+		{
+			next = new File(pathWithoutExtension + "-" + i + "." + extension);
+			i++;
+		}
+		while(next.exists());
+		openFile(next);
+	}
+
+	private void openFile(File file) throws IOException
+	{
+		boolean append = file.exists();
+		if(!append)
+		{
+			if(file.getParentFile() != null)
+				file.getParentFile().mkdirs();
+			file.createNewFile();
+		}
+		this.file = file;
+		this.initialFileSize = append ? file.length() : 0;
+		this.counter = new CountingOutputStream(new FileOutputStream(file, append));
+		// If not appending, the UTF-x BOM will be inserted by the GetWriter() method:
+		this.writer = UnicodeBOM.GetWriter(new BufferedOutputStream(counter, OUTPUT_BUFFER_SIZE), charset, append);
+	}
+
+	private void fail(IOException e)
+	{
+		System.err.println("AsyncLogWriter: Could not write to file: " + e.getMessage());
+		e.printStackTrace(System.err);
+		failed = true; // the writer thread keeps draining the queue (so blocked callers are released) until closed
+		StreamHelpers.SilentClose(writer);
+	}
+
+}
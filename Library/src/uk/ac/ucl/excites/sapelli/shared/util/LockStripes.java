@@ -0,0 +1,82 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.shared.util;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of {@link ReentrantLock}s ("stripes") to which keys are mapped by their hash code.
+ * 
+ * Allows work on different keys (e.g. different correspondents) to proceed concurrently while
+ * work on the same key is serialised, without having to keep a lock object around for every key
+ * that was ever seen. Distinct keys may share a stripe, in which case they are (harmlessly)
+ * serialised as well. The {@code null} key is mapped to the first stripe.
+ */
+public final class LockStripes
+{
+	
+	static public final int DEFAULT_NUMBER_OF_STRIPES = 64;
+	
+	private final Lock[] stripes;
+	private final int mask;
+	
+	public LockStripes()
+	{
+		this(DEFAULT_NUMBER_OF_STRIPES);
+	}
+	
+	/**
+	 * @param minimumNumberOfStripes will be rounded up to the nearest power of 2
+	 */
+	public LockStripes(int minimumNumberOfStripes)
+	{
+		if(minimumNumberOfStripes < 1)
+			throw new IllegalArgumentException("Number of stripes must be strictly positive");
+		int n = Integer.highestOneBit(minimumNumberOfStripes);
+		if(n < minimumNumberOfStripes)
+			n <<= 1;
+		stripes = new Lock[n];
+		for(int i = 0; i < n; i++)
+			stripes[i] = new ReentrantLock();
+		mask = n - 1;
+	}
+	
+	/**
+	 * @param key may be {@code null}
+	 * @return the lock for the given key
+	 */
+	public Lock get(Object key)
+	{
+		if(key == null)
+			return stripes[0];
+		// Spread the hash code (as in java.util.HashMap) so that keys which only differ in their high bits do not all end up on the same stripe:
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return stripes[h & mask];
+	}
+	
+	public int getNumberOfStripes()
+	{
+		return stripes.length;
+	}
+	
+}
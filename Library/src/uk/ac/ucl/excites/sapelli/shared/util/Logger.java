@@ -20,14 +20,23 @@ package uk.ac.ucl.excites.sapelli.shared.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 import org.joda.time.DateTime;
 
 import uk.ac.ucl.excites.sapelli.shared.io.FileHelpers;
 import uk.ac.ucl.excites.sapelli.shared.io.text.FileWriter;
+import uk.ac.ucl.excites.sapelli.shared.util.AsyncLogWriter.OverflowPolicy;
 
 
 /**
+ * Logger which writes lines to a log file.
+ * 
+ * By default each line is written (and flushed) to the file on the calling thread. Alternatively the Logger
+ * can be created in asynchronous mode, in which case lines are handed to an {@link AsyncLogWriter} which
+ * writes them in batches on a background thread (and optionally rotates the file once it reaches a given size).
+ * The file contents are identical in both modes.
+ * 
  * @author Michalis Vitos, mstevens, benelliott
  *
  */
@@ -37,7 +46,10 @@ public class Logger
 	public static final String FIELD_SEPARATOR = ";";
 	public static final String LOG_EXTENSION = ".log";
 	
-	private FileWriter fileWriter;
+	static public final long DEFAULT_MAX_FILE_SIZE_BYTES = 8 * 1024 * 1024; // 8 MiB
+	
+	private FileWriter fileWriter; // only used in synchronous mode
+	private AsyncLogWriter asyncWriter; // only used in asynchronous mode
 	protected final boolean printToOutputStream;
 	
 	/**
@@ -66,6 +78,56 @@ public class Logger
 		this.printToOutputStream = printToOutputStream;
 		fileWriter.open(FileHelpers.FILE_EXISTS_STRATEGY_APPEND, FileHelpers.FILE_DOES_NOT_EXIST_STRATEGY_CREATE);
 	}
+	
+	/**
+	 * Creates a Logger in asynchronous mode, using a queue of {@link AsyncLogWriter#DEFAULT_QUEUE_CAPACITY} lines,
+	 * the {@link AsyncLogWriter#DEFAULT_OVERFLOW_POLICY} and rotating files at {@link #DEFAULT_MAX_FILE_SIZE_BYTES}.
+	 * 
+	 * @param folderPath path to the folder in which the log file is saved
+	 * @param baseFileName base filename for the log file
+	 * @param timestampFilename whether or not to suffix the base filename with a timestamp (precise to the second of file creation)
+	 * @param printToOutputStream whether or not to also echo log statements to the standard output stream (e.g. System.out or Android Logcat)
+	 * @param overflowPolicy what to do when lines are added faster than they can be written
+	 * @throws IOException from file system I/O
+	 */
+	public Logger(String folderPath, String baseFileName, boolean timestampFilename, boolean printToOutputStream, OverflowPolicy overflowPolicy) throws IOException
+	{
+		this(folderPath, baseFileName, timestampFilename, printToOutputStream, AsyncLogWriter.DEFAULT_QUEUE_CAPACITY, overflowPolicy, DEFAULT_MAX_FILE_SIZE_BYTES);
+	}
+	
+	/**
+	 * Creates a Logger in asynchronous mode.
+	 * 
+	 * @param folderPath path to the folder in which the log file is saved
+	 * @param baseFileName base filename for the log file
+	 * @param timestampFilename whether or not to suffix the base filename with a timestamp (precise to the second of file creation)
+	 * @param printToOutputStream whether or not to also echo log statements to the standard output stream (e.g. System.out or Android Logcat)
+	 * @param queueCapacity maximum number of lines waiting to be written
+	 * @param overflowPolicy what to do when lines are added faster than they can be written
+	 * @param maxFileSizeBytes file size (in bytes) after which logging continues in a new file, or {@link AsyncLogWriter#NO_ROTATION}
+	 * @throws IOException from file system I/O
+	 */
+	public Logger(String folderPath, String baseFileName, boolean timestampFilename, boolean printToOutputStream, int queueCapacity, OverflowPolicy overflowPolicy, long maxFileSizeBytes) throws IOException
+	{
+		this.asyncWriter = new AsyncLogWriter(folderPath + File.separator + baseFileName + (timestampFilename ? TimeUtils.getTimestampForFileName() : "") + LOG_EXTENSION, Charset.defaultCharset(), queueCapacity, overflowPolicy, maxFileSizeBytes);
+		this.printToOutputStream = printToOutputStream;
+	}
+	
+	/**
+	 * @return whether this Logger writes to file on a background thread
+	 */
+	public boolean isAsynchronous()
+	{
+		return asyncWriter != null;
+	}
+	
+	/**
+	 * @return the number of lines which were not written because the queue was full (always 0 in synchronous mode)
+	 */
+	public long getDroppedLineCount()
+	{
+		return asyncWriter != null ? asyncWriter.getDroppedLineCount() : 0;
+	}
 
 	/**
 	 * Add a new line with the following format: TIMESTAMP;MSG
@@ -148,8 +210,15 @@ public class Logger
 	
 	private void writeLine(String str)
 	{
+		if(asyncWriter != null)
+		{
+			if(!asyncWriter.isWritable())
+				throw new IllegalStateException("Logger " + asyncWriter.getFullPath() + " has been closed or file is not writable.");
+			asyncWriter.writeLine(str);
+			return;
+		}
 		if(fileWriter == null || !fileWriter.isWritable())
-			throw new IllegalStateException("Logger " + fileWriter.getFullPath() + "has been closed or file is not writable.");
+			throw new IllegalStateException("Logger " + (fileWriter != null ? fileWriter.getFullPath() + " " : "") + "has been closed or file is not writable.");
 		fileWriter.writeLine(str);
 	}
 	
@@ -168,6 +237,7 @@ public class Logger
 
 	/**
 	 * Closes the log file. Nothing can be added to it after this method has been called.
+	 * In asynchronous mode this blocks until all lines added so far have been written.
 	 */
 	public void close()
 	{
@@ -176,6 +246,8 @@ public class Logger
 			fileWriter.dispose();
 			fileWriter = null;
 		}
+		if(asyncWriter != null)
+			asyncWriter.close(); // keep the reference, so the writer can report it is no longer writable
 	}
 
 	/**
@@ -225,19 +225,54 @@ public final class StringUtils
 	{
 		if(str == null)
 			return str;
-		if(avoid == null)
-			avoid = new char[0];
+		StringBuilder bldr = new StringBuilder(str.length() + 2);
+		appendEscapedByDoublingAndWrapping(bldr, str, wrapDelimiter, forceWrapping, avoid);
+		return bldr.length() == str.length() ? str : bldr.toString();
+	}
+	
+	/**
+	 * Appends the given {@code chars} to the given {@link StringBuilder}, escaped and wrapped in the same way as
+	 * {@link #escapeByDoublingAndWrapping(String, char, boolean, char...)} would, but without intermediate copies.
+	 * Sequences which need neither escaping nor wrapping are appended as-is.
+	 * 
+	 * @param bldr
+	 * @param chars may be {@code null}, in which case nothing is appended
+	 * @param wrapDelimiter
+	 * @param forceWrapping
+	 * @param avoid - maybe empty, in which case only occurrences of wrapDelimiter itself will cause unforced wrapping
+	 * @return the given {@link StringBuilder}
+	 */
+	static public StringBuilder appendEscapedByDoublingAndWrapping(StringBuilder bldr, final CharSequence chars, final char wrapDelimiter, final boolean forceWrapping, final char... avoid)
+	{
+		if(chars == null)
+			return bldr;
+		final int length = chars.length();
+		// Check whether we need to wrap and/or escape:
 		boolean needsWrapping = forceWrapping;
-		StringBuilder bldr = new StringBuilder(str.length());
-		for(char c : str.toCharArray())
+		boolean needsEscaping = false;
+		for(int i = 0; i < length && !needsEscaping; i++)
 		{
+			char c = chars.charAt(i);
 			if(c == wrapDelimiter)
-				bldr.append(wrapDelimiter); // escape wrapDelimiter occurrences by doubling them
-			if(c == wrapDelimiter || ArrayUtils.contains(avoid, c))
+				needsWrapping = needsEscaping = true;
+			else if(!needsWrapping && avoid != null && ArrayUtils.contains(avoid, c))
 				needsWrapping = true;
-			bldr.append(c);
-		}			
-		return (needsWrapping ? wrapDelimiter : "") + bldr.toString() + (needsWrapping ? wrapDelimiter : "");
+		}
+		if(!needsWrapping)
+			return bldr.append(chars);
+		// Wrap & escape wrapDelimiter occurrences by doubling them:
+		bldr.append(wrapDelimiter);
+		if(!needsEscaping)
+			bldr.append(chars);
+		else
+			for(int i = 0; i < length; i++)
+			{
+				char c = chars.charAt(i);
+				if(c == wrapDelimiter)
+					bldr.append(wrapDelimiter);
+				bldr.append(c);
+			}
+		return bldr.append(wrapDelimiter);
 	}
 	
 	/**
@@ -254,9 +289,44 @@ public final class StringUtils
 	{
 		if(str == null || str.length() < 2)
 			return str;
-		boolean wrapped = (str.charAt(0) == wrapDelimiter) && (str.charAt(str.length() - 1) == wrapDelimiter);
-		// Remove outer wrapDelimiters and replace inner doubled wrapDelimiters by single ones:
-		return str.substring(wrapped ? 1 : 0, str.length() - (wrapped ? 1 : 0)).replace("" + wrapDelimiter + wrapDelimiter, "" + wrapDelimiter); 
+		return deescapeByDoublingAndWrapping(str, 0, str.length(), wrapDelimiter);
+	}
+	
+	/**
+	 * Same as {@link #deescapeByDoublingAndWrapping(String, char)} but operates on a range of the given {@code chars}.
+	 * Only a single String is created, unless there are doubled occurrences of the {@code wrapDelimiter} to replace.
+	 * 
+	 * @param chars
+	 * @param start index of the first character of the range
+	 * @param end index after the last character of the range
+	 * @param wrapDelimiter
+	 * @return
+	 */
+	static public String deescapeByDoublingAndWrapping(final CharSequence chars, int start, int end, final char wrapDelimiter)
+	{
+		// Remove outer wrapDelimiters:
+		if(end - start >= 2 && chars.charAt(start) == wrapDelimiter && chars.charAt(end - 1) == wrapDelimiter)
+		{
+			start++;
+			end--;
+		}
+		// Look for doubled wrapDelimiters:
+		int d = start;
+		while(d < end - 1 && (chars.charAt(d) != wrapDelimiter || chars.charAt(d + 1) != wrapDelimiter))
+			d++;
+		if(d >= end - 1)
+			return chars.subSequence(start, end).toString(); // nothing to replace
+		// Replace doubled wrapDelimiters by single ones:
+		StringBuilder bldr = new StringBuilder(end - start - 1);
+		bldr.append(chars, start, d);
+		for(int i = d; i < end; i++)
+		{
+			char c = chars.charAt(i);
+			bldr.append(c);
+			if(c == wrapDelimiter && i + 1 < end && chars.charAt(i + 1) == wrapDelimiter)
+				i++; // skip the second one
+		}
+		return bldr.toString();
 	}
 	
 	static public int countOccurances(String haystack, char needle)
@@ -74,5 +74,28 @@ public abstract class DocumentParser extends Handler
 			StreamHelpers.SilentClose(input);
 		}
 	}
+	
+	/**
+	 * Parses a previously made {@link XMLRecording} of an XML document, instead of the document itself.
+	 * 
+	 * @param recording
+	 * @throws Exception
+	 */
+	protected void parse(XMLRecording recording) throws Exception
+	{
+		if(recording == null)
+			throw new IllegalArgumentException("Invalid recording");
+		clearWarnings();
+		try
+		{
+			recording.replay(this); // (this will call startDocument(), startElement(), ...)
+		}
+		catch(SAXException saxE)
+		{	// See parse(InputStream):
+			Exception cause = saxE.getException();
+			throw cause != null ? 	cause : // throw unwrapped cause
+									saxE;
+		}
+	}
 
 }
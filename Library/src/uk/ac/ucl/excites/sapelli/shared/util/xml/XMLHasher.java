@@ -76,6 +76,26 @@ public class XMLHasher extends DocumentParser
 		}
 	}
 	
+	/**
+	 * Returns a signed 32bit hash code, computed in "Java-style" (i.e. similarly to {@link Object#hashCode()})
+	 * 
+	 * @param recording
+	 * @return
+	 * @throws Exception
+	 */
+	public int getJavaHashCode(XMLRecording recording) throws Exception
+	{
+		try
+		{
+			parse(recording);
+			return hashCode;
+		}
+		finally
+		{	// Reset:
+			hashCode = 1;
+		}
+	}
+	
 	/**
 	 * Returns an unsigned 32bit hash code, computed using CRC32
 	 * 
@@ -0,0 +1,227 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.shared.util.xml;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import uk.ac.ucl.excites.sapelli.shared.io.StreamHelpers;
+
+/**
+ * Immutable recording of the element and character events a SAX parser produces for an XML document.
+ * Replaying it into a {@link ContentHandler} (see {@link DocumentParser#parse(XMLRecording)}) produces the same
+ * calls, in the same order and with the same chunking of character data, as parsing the document again would,
+ * but without the cost of decoding and tokenising the XML.
+ * 
+ * A recording holds no reference to the handlers it is replayed into, so it can be safely kept and replayed
+ * concurrently by several threads.
+ */
+public final class XMLRecording
+{
+
+	/**
+	 * Records the given XML document. The stream is closed afterwards.
+	 * 
+	 * @param input
+	 * @return the recording
+	 * @throws Exception
+	 */
+	static public XMLRecording Record(InputStream input) throws Exception
+	{
+		if(input == null)
+			throw new IllegalArgumentException("Invalid input stream");
+		Recorder recorder = new Recorder();
+		try
+		{
+			SAXParser sp = SAXParserFactory.newInstance().newSAXParser();
+			XMLReader xr = sp.getXMLReader();
+			xr.setContentHandler(recorder);
+			xr.parse(new InputSource(input));
+		}
+		catch(SAXException saxE)
+		{
+			Exception cause = saxE.getException();
+			throw cause != null ? cause : saxE;
+		}
+		finally
+		{
+			StreamHelpers.SilentClose(input);
+		}
+		return new XMLRecording(recorder.events, recorder.charCount);
+	}
+	
+	private final List<Event> events;
+	private final int charCount;
+	
+	private XMLRecording(List<Event> events, int charCount)
+	{
+		this.events = Collections.unmodifiableList(new ArrayList<Event>(events));
+		this.charCount = charCount;
+	}
+	
+	/**
+	 * Replays the recorded events into the given handler, between calls to {@link ContentHandler#startDocument()} and
+	 * {@link ContentHandler#endDocument()}.
+	 * 
+	 * @param handler
+	 * @throws SAXException
+	 */
+	public void replay(ContentHandler handler) throws SAXException
+	{
+		handler.startDocument();
+		for(Event event : events)
+			event.replay(handler);
+		handler.endDocument();
+	}
+	
+	/**
+	 * @return the number of recorded events
+	 */
+	public int getEventCount()
+	{
+		return events.size();
+	}
+	
+	/**
+	 * @return the total number of recorded characters (character data only)
+	 */
+	public int getCharacterCount()
+	{
+		return charCount;
+	}
+	
+	/**
+	 * A recorded SAX event
+	 */
+	static private abstract class Event
+	{
+		
+		abstract void replay(ContentHandler handler) throws SAXException;
+		
+	}
+	
+	static private final class StartElement extends Event
+	{
+		
+		private final String uri;
+		private final String localName;
+		private final String qName;
+		private final Attributes attributes;
+		
+		StartElement(String uri, String localName, String qName, Attributes attributes)
+		{
+			this.uri = uri;
+			this.localName = localName;
+			this.qName = qName;
+			this.attributes = new AttributesImpl(attributes); // copy, the parser reuses its instance
+		}
+
+		@Override
+		void replay(ContentHandler handler) throws SAXException
+		{
+			handler.startElement(uri, localName, qName, new AttributesImpl(attributes)); // pass a copy so the handler cannot alter the recording
+		}
+		
+	}
+	
+	static private final class EndElement extends Event
+	{
+		
+		private final String uri;
+		private final String localName;
+		private final String qName;
+		
+		EndElement(String uri, String localName, String qName)
+		{
+			this.uri = uri;
+			this.localName = localName;
+			this.qName = qName;
+		}
+
+		@Override
+		void replay(ContentHandler handler) throws SAXException
+		{
+			handler.endElement(uri, localName, qName);
+		}
+		
+	}
+	
+	static private final class Characters extends Event
+	{
+		
+		private final char[] chars;
+		
+		Characters(char[] ch, int start, int length)
+		{
+			this.chars = Arrays.copyOfRange(ch, start, start + length);
+		}
+
+		@Override
+		void replay(ContentHandler handler) throws SAXException
+		{
+			handler.characters(chars.clone(), 0, chars.length); // pass a copy so the handler cannot alter the recording
+		}
+		
+	}
+	
+	/**
+	 * Handler which records the events produced by the SAX parser
+	 */
+	static private final class Recorder extends DefaultHandler
+	{
+		
+		final List<Event> events = new ArrayList<Event>();
+		int charCount = 0;
+		
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+		{
+			events.add(new StartElement(uri, localName, qName, attributes));
+		}
+		
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException
+		{
+			events.add(new EndElement(uri, localName, qName));
+		}
+		
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException
+		{
+			events.add(new Characters(ch, start, length));
+			charCount += length;
+		}
+		
+	}
+	
+}
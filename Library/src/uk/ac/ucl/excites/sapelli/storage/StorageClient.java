@@ -26,6 +26,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -544,6 +545,29 @@ public abstract class StorageClient implements StorageObserver, Console
 				observer.storageEvent(operation, recordRef, recordStore);
 	}
 	
+	@Override
+	public final void storageEvents(RecordOperation operation, List<RecordReference> recordRefs, RecordStore recordStore)
+	{
+		if(recordRefs.isEmpty() || observers.isEmpty() || !recordStore.isInitialised()) // avoids forwarding events during db upgrades
+			return;
+		// Only forward events about records whose Schema has track changes enabled:
+		List<RecordReference> trackedRefs = recordRefs;
+		for(int r = 0; r < recordRefs.size(); r++)
+			if(!recordRefs.get(r).getReferencedSchema().hasFlags(SCHEMA_FLAG_TRACK_CHANGES))
+			{	// Filter out the untracked ones (only copies if there are any):
+				trackedRefs = new ArrayList<RecordReference>(recordRefs.size());
+				for(RecordReference recordRef : recordRefs)
+					if(recordRef.getReferencedSchema().hasFlags(SCHEMA_FLAG_TRACK_CHANGES))
+						trackedRefs.add(recordRef);
+				break;
+			}
+		if(trackedRefs.isEmpty())
+			return;
+		trackedRefs = Collections.unmodifiableList(trackedRefs);
+		for(StorageObserver observer : observers)
+			observer.storageEvents(operation, trackedRefs, recordStore);
+	}
+	
 	@Override
 	public final void logError(String msg)
 	{
@@ -18,6 +18,8 @@
 
 package uk.ac.ucl.excites.sapelli.storage;
 
+import java.util.List;
+
 import uk.ac.ucl.excites.sapelli.storage.StorageClient.RecordOperation;
 import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
 import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
@@ -39,4 +41,14 @@ public interface StorageObserver
 	 */
 	public void storageEvent(RecordOperation operation, RecordReference recordRef, RecordStore recordStore);
 	
+	/**
+	 * Reports an operation which affected a batch of records at once (e.g. a set-based deletion),
+	 * rather than one {@link #storageEvent(RecordOperation, RecordReference, RecordStore)} call per record.
+	 * 
+	 * @param operation
+	 * @param recordRefs references to the affected records, never empty
+	 * @param recordStore
+	 */
+	public void storageEvents(RecordOperation operation, List<RecordReference> recordRefs, RecordStore recordStore);
+	
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
@@ -29,8 +30,12 @@ import java.util.Stack;
 import uk.ac.ucl.excites.sapelli.shared.db.Store;
 import uk.ac.ucl.excites.sapelli.shared.db.StoreBackupper;
 import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
+import uk.ac.ucl.excites.sapelli.shared.util.CollectionUtils;
+import uk.ac.ucl.excites.sapelli.shared.util.Logger;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient.RecordOperation;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Counter;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Operation;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBConstraintException;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBPrimaryKeyException;
 import uk.ac.ucl.excites.sapelli.storage.model.Column;
@@ -62,6 +67,11 @@ public abstract class RecordStore extends Store
 	protected final StorageClient client;
 	protected boolean loggingEnabled = false;
 	
+	/**
+	 * Operation counters & latency histograms
+	 */
+	protected final RecordStoreMetrics metrics = new RecordStoreMetrics();
+	
 	/**
 	 * Few DBMSs support nested transactions, but this counter allows us to simulate them,
 	 * which enables us to keep code that deals with transactions simpler. 
@@ -143,7 +153,17 @@ public abstract class RecordStore extends Store
 	{
 		if(isInTransaction())
 		{
-			doCommitTransaction(); // throws DBException
+			long startNS = metrics.startTimer();
+			boolean success = false;
+			try
+			{
+				doCommitTransaction(); // throws DBException
+				success = true;
+			}
+			finally
+			{
+				metrics.record(Operation.COMMIT, null, startNS, success);
+			}
 			
 			openTransactions--; // !!!
 			
@@ -186,7 +206,9 @@ public abstract class RecordStore extends Store
 		if(!isInTransaction())
 			return; // System.err.println("Warning: there is no open transaction to roll back!");
 		// Perform actual roll-back:
+		long startNS = metrics.startTimer();
 		doRollbackTransaction(); // throws DBException
+		metrics.record(Operation.ROLLBACK, null, startNS, true);
 		// Reduce number of open transactions:
 		openTransactions--;
 		// Run RollbackTasks associated with the rolled-back transaction:
@@ -278,7 +300,7 @@ public abstract class RecordStore extends Store
 		Boolean insert = null;
 		try
 		{
-			insert = doStore(record);
+			insert = timedStore(record);
 		}
 		catch(DBException e)
 		{
@@ -311,15 +333,23 @@ public abstract class RecordStore extends Store
 		if(!isStorable(record))
 			throw new IllegalArgumentException(String.format("Record (%s) cannot be inserted!", record.toString(false)));
 		boolean inserted = false;
+		long startNS = metrics.startTimer();
+		boolean success = false;
 		try
 		{
 			inserted = doInsert(record);
+			success = true;
 		}
 		catch(DBException e)
 		{
 			rollbackTransactions(); // !!!
 			throw e;
 		}
+		finally
+		{
+			metrics.record(Operation.INSERT, record.getSchema(), startNS, success);
+		}
+		metrics.increment(inserted ? Counter.RECORDS_INSERTED : Counter.RECORDS_UNCHANGED);
 		// Inform client if a real insert happened:
 		if(inserted)
 			client.storageEvent(RecordOperation.Inserted, record.getReference(), this);
@@ -343,7 +373,7 @@ public abstract class RecordStore extends Store
 		{
 			for(Record record : records)
 				if(isStorable(record))
-					insert[r++] = doStore(record);
+					insert[r++] = timedStore(record);
 				else
 					throw new IllegalArgumentException(String.format("Record (%s) cannot be stored!", record.toString(false)));
 		}
@@ -367,6 +397,70 @@ public abstract class RecordStore extends Store
 		}
 	}
 	
+	/**
+	 * Sets the given column to the given value in all records which match the query.
+	 * A transaction will be used. If there is a problem with updating one of the records the whole operation will be rolled back.
+	 * 
+	 * Default implementation, which retrieves, modifies and stores the matching records one at a time. Implementations
+	 * which can express this as a set-based operation (e.g. a single SQL UPDATE statement) should override it.
+	 * 
+	 * @param query selects the records to update
+	 * @param column a top-level, non-primary key column of the schema(ta) of the selected records
+	 * @param value the new value
+	 * @return the number of updated records
+	 * @throws DBException in case of a database problem
+	 */
+	public <T> int update(RecordsQuery query, Column<T> column, T value) throws DBException
+	{
+		List<Record> records = retrieveRecords(query);
+		List<Record> updated = new ArrayList<Record>(records.size());
+		startTransaction();
+		try
+		{
+			for(Record record : records)
+			{
+				column.storeValue(record, value);
+				if(timedStore(record) != null) // (record cannot be new)
+					updated.add(record);
+			}
+		}
+		catch(Exception e)
+		{
+			rollbackTransactions();
+			throw e instanceof DBException ? (DBException) e : new DBException(e);
+		}
+		commitTransaction();
+		// Inform client:
+		for(Record record : updated)
+			client.storageEvent(RecordOperation.Updated, record.getReference(), this);
+		return updated.size();
+	}
+	
+	/**
+	 * Calls {@link #doStore(Record)} and records metrics.
+	 * 
+	 * @param record
+	 * @return see {@link #doStore(Record)}
+	 * @throws DBException
+	 * @throws IllegalStateException
+	 */
+	private Boolean timedStore(Record record) throws DBException, IllegalStateException
+	{
+		long startNS = metrics.startTimer();
+		boolean success = false;
+		try
+		{
+			Boolean insert = doStore(record);
+			success = true;
+			metrics.increment(insert == null ? Counter.RECORDS_UNCHANGED : (insert ? Counter.RECORDS_INSERTED : Counter.RECORDS_UPDATED));
+			return insert;
+		}
+		finally
+		{
+			metrics.record(Operation.STORE, record.getSchema(), startNS, success);
+		}
+	}
+	
 	/**
 	 * Stores (insert or update/replace) a record
 	 * 
@@ -438,6 +532,25 @@ public abstract class RecordStore extends Store
 	 */
 	public abstract List<RecordReference> retrieveRecordReferences(RecordsQuery query);
 	
+	/**
+	 * Retrieves the distinct non-{@code null} values which the given column holds in the records selected by the query.
+	 * Any ordering or limit of the query is ignored.
+	 * 
+	 * Default implementation, which retrieves the matching records. Implementations which can project the selection
+	 * onto the column (e.g. with a single SQL "SELECT DISTINCT" statement) should override it.
+	 * 
+	 * @param query selects the records
+	 * @param column a top-level column of the schema(ta) of the selected records
+	 * @return a {@link Set} of values, in order of first occurrence, possibly empty, never {@code null}
+	 */
+	public <T> Set<T> retrieveDistinctValues(RecordsQuery query, Column<T> column)
+	{
+		Set<T> values = new LinkedHashSet<T>();
+		for(Record record : retrieveRecords(new RecordsQuery(query.getSource(), query.getConstraints())))
+			CollectionUtils.addIgnoreNull(values, column.retrieveValue(record));
+		return values;
+	}
+	
 	/**
 	 * Retrieve a single record by SingleRecordQuery.
 	 * 
@@ -481,7 +594,7 @@ public abstract class RecordStore extends Store
 			return;
 		try
 		{
-			doDelete(record);
+			timedDelete(record);
 		}
 		catch(DBException e)
 		{
@@ -548,7 +661,7 @@ public abstract class RecordStore extends Store
 			for(Record record : records)
 				if(isStorable(record))
 				{
-					if(doDelete(record))
+					if(timedDelete(record))
 						deleted.add(record);
 				}
 		}
@@ -559,8 +672,13 @@ public abstract class RecordStore extends Store
 		}
 		commitTransaction();
 		// Inform client:
-		for(Record record : deleted)
-			client.storageEvent(RecordOperation.Deleted, record.getReference(), this);
+		if(!deleted.isEmpty())
+		{
+			List<RecordReference> deletedRefs = new ArrayList<RecordReference>(deleted.size());
+			for(Record record : deleted)
+				deletedRefs.add(record.getReference());
+			client.storageEvents(RecordOperation.Deleted, deletedRefs, this);
+		}
 	}
 	
 	/**
@@ -587,6 +705,31 @@ public abstract class RecordStore extends Store
 		return retrieveAllRecords();
 	}
 	
+	/**
+	 * Calls {@link #doDelete(Record)} and records metrics.
+	 * 
+	 * @param record
+	 * @return see {@link #doDelete(Record)}
+	 * @throws DBException
+	 */
+	private boolean timedDelete(Record record) throws DBException
+	{
+		long startNS = metrics.startTimer();
+		boolean success = false;
+		try
+		{
+			boolean deleted = doDelete(record);
+			success = true;
+			if(deleted)
+				metrics.increment(Counter.RECORDS_DELETED);
+			return deleted;
+		}
+		finally
+		{
+			metrics.record(Operation.DELETE, record.getSchema(), startNS, success);
+		}
+	}
+	
 	/**
 	 * @param record - the record to delete
 	 * @return whether or not the record was really deleted
@@ -633,7 +776,17 @@ public abstract class RecordStore extends Store
 	{
 		if(isInTransaction())
 			throw new DBException("Cannot back-up database due to uncommited transaction!");
-		doBackup(backuper, destinationFolder);
+		long startNS = metrics.startTimer();
+		boolean success = false;
+		try
+		{
+			doBackup(backuper, destinationFolder);
+			success = true;
+		}
+		finally
+		{
+			metrics.record(Operation.BACKUP, null, startNS, success);
+		}
 	}
 	
 	/**
@@ -664,6 +817,24 @@ public abstract class RecordStore extends Store
 		this.loggingEnabled = loggingEnabled;
 	}
 
+	/**
+	 * @return the metrics (operation counters & latency histograms) of this RecordStore
+	 */
+	public RecordStoreMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Writes a snapshot of the metrics of this RecordStore to the given Logger.
+	 * 
+	 * @param logger
+	 */
+	public void dumpMetrics(Logger logger)
+	{
+		metrics.dump(logger);
+	}
+
 	/**
 	 * A task to execute upon roll-back of open transaction(s)
 	 * 
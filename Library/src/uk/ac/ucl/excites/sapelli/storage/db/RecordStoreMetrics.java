@@ -0,0 +1,603 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.storage.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import uk.ac.ucl.excites.sapelli.shared.util.Logger;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+
+/**
+ * Lightweight, thread-safe collection of counters and latency histograms for {@link RecordStore} operations,
+ * kept both in total and per {@link Schema}.
+ * 
+ * Recording a timed operation costs 2 calls to {@link System#nanoTime()} and a handful of atomic increments.
+ * Latencies are counted in fixed, exponentially growing buckets (1-2-5 series, from 10µs up to 10s), which means
+ * percentiles obtained from a {@link HistogramSnapshot} are upper bounds (at most 2.5 times the actual value).
+ * Operations which take longer than a configurable threshold are also remembered (the most recent ones are kept).
+ * 
+ * Note: counters use {@link AtomicLong} rather than {@code LongAdder} because the Library must remain Java 7 (and Android) compatible.
+ */
+public class RecordStoreMetrics
+{
+
+	// STATIC -----------------------------------------------------------------
+	/**
+	 * Timed RecordStore operations
+	 */
+	static public enum Operation
+	{
+		STORE,
+		INSERT,
+		UPDATE,
+		RETRIEVE,
+		RETRIEVE_SINGLE,
+		DELETE,
+		COMMIT,
+		ROLLBACK,
+		BACKUP
+	}
+	
+	/**
+	 * Untimed RecordStore event counters
+	 */
+	static public enum Counter
+	{
+		RECORDS_INSERTED,
+		RECORDS_UPDATED,
+		RECORDS_UNCHANGED,
+		RECORDS_DELETED,
+		RECORDS_RETRIEVED,
+		STATEMENT_COMPILATIONS,
+		STATEMENT_CACHE_HITS
+	}
+	
+	/**
+	 * Value returned by {@link #startTimer()} when metrics are disabled
+	 */
+	static public final long NOT_TIMED = Long.MIN_VALUE;
+	
+	static public final long DEFAULT_SLOW_OPERATION_THRESHOLD_MS = 100;
+	
+	static public final int MAX_SLOW_OPERATIONS = 32;
+	
+	/**
+	 * Inclusive upper bounds (in nanoseconds) of the histogram buckets, the last bucket (not listed) is unbounded.
+	 */
+	static private final long[] BUCKET_UPPER_BOUNDS_NS;
+	static
+	{
+		final long[] steps = { 1, 2, 5 };
+		List<Long> bounds = new ArrayList<Long>();
+		for(long decade = TimeUnit.MICROSECONDS.toNanos(10); decade <= TimeUnit.SECONDS.toNanos(10); decade *= 10)
+			for(long step : steps)
+				if(step * decade <= TimeUnit.SECONDS.toNanos(10))
+					bounds.add(step * decade);
+		BUCKET_UPPER_BOUNDS_NS = new long[bounds.size()];
+		for(int b = 0; b < BUCKET_UPPER_BOUNDS_NS.length; b++)
+			BUCKET_UPPER_BOUNDS_NS[b] = bounds.get(b);
+	}
+	
+	static private final int NUMBER_OF_BUCKETS = BUCKET_UPPER_BOUNDS_NS.length + 1;
+	
+	static private int GetBucketIndex(long durationNS)
+	{
+		int low = 0, high = BUCKET_UPPER_BOUNDS_NS.length; // high = overflow bucket
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if(durationNS <= BUCKET_UPPER_BOUNDS_NS[mid])
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return low;
+	}
+	
+	static private String FormatNS(long ns)
+	{
+		if(ns == Long.MAX_VALUE)
+			return ">" + FormatNS(BUCKET_UPPER_BOUNDS_NS[BUCKET_UPPER_BOUNDS_NS.length - 1]);
+		if(ns < TimeUnit.MILLISECONDS.toNanos(1))
+			return String.format("%.1fus", ns / 1000.0d);
+		return String.format("%.2fms", ns / 1000000.0d);
+	}
+	
+	static private String GetSchemaName(Schema schema)
+	{
+		Model model = schema.getModel();
+		return (model != null ? model.getName() + ":" : "") + schema.getName();
+	}
+	
+	/**
+	 * Lock-free fixed-bucket latency histogram.
+	 */
+	static private final class Histogram
+	{
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong totalNS = new AtomicLong();
+		private final AtomicLong maxNS = new AtomicLong();
+		
+		public void record(long durationNS, boolean success)
+		{
+			buckets.incrementAndGet(GetBucketIndex(durationNS));
+			count.incrementAndGet();
+			if(!success)
+				failures.incrementAndGet();
+			totalNS.addAndGet(durationNS);
+			long max;
+			while(durationNS > (max = maxNS.get()) && !maxNS.compareAndSet(max, durationNS));
+		}
+		
+		public HistogramSnapshot snapshot()
+		{
+			long[] bucketCounts = new long[NUMBER_OF_BUCKETS];
+			for(int b = 0; b < NUMBER_OF_BUCKETS; b++)
+				bucketCounts[b] = buckets.get(b);
+			return new HistogramSnapshot(bucketCounts, count.get(), failures.get(), totalNS.get(), maxNS.get());
+		}
+		
+		public void reset()
+		{
+			for(int b = 0; b < NUMBER_OF_BUCKETS; b++)
+				buckets.set(b, 0);
+			count.set(0);
+			failures.set(0);
+			totalNS.set(0);
+			maxNS.set(0);
+		}
+		
+	}
+	
+	/**
+	 * Per-schema statistics
+	 */
+	static private final class SchemaStats
+	{
+		
+		private final String schemaName;
+		private final Histogram[] histograms = new Histogram[Operation.values().length];
+		
+		public SchemaStats(String schemaName)
+		{
+			this.schemaName = schemaName;
+			for(int o = 0; o < histograms.length; o++)
+				histograms[o] = new Histogram();
+		}
+		
+	}
+	
+	/**
+	 * Immutable snapshot of a latency histogram.
+	 */
+	static public final class HistogramSnapshot
+	{
+		
+		private final long[] bucketCounts;
+		private final long count;
+		private final long failures;
+		private final long totalNS;
+		private final long maxNS;
+		
+		private HistogramSnapshot(long[] bucketCounts, long count, long failures, long totalNS, long maxNS)
+		{
+			this.bucketCounts = bucketCounts;
+			this.count = count;
+			this.failures = failures;
+			this.totalNS = totalNS;
+			this.maxNS = maxNS;
+		}
+		
+		/**
+		 * @return the number of recorded operations (including failed ones)
+		 */
+		public long getCount()
+		{
+			return count;
+		}
+		
+		/**
+		 * @return the number of recorded operations which failed (i.e. threw an exception)
+		 */
+		public long getFailures()
+		{
+			return failures;
+		}
+		
+		public long getTotalNS()
+		{
+			return totalNS;
+		}
+		
+		public long getMaxNS()
+		{
+			return maxNS;
+		}
+		
+		public long getMeanNS()
+		{
+			return count == 0 ? 0 : totalNS / count;
+		}
+		
+		/**
+		 * @param percentile in range [0, 100]
+		 * @return an upper bound for the given percentile (i.e. the upper bound of the bucket in which it falls, but never more than the maximum), {@link Long#MAX_VALUE} if it falls in the unbounded bucket, or 0 if no operations were recorded
+		 */
+		public long getPercentileNS(double percentile)
+		{
+			if(percentile < 0.0d || percentile > 100.0d)
+				throw new IllegalArgumentException("Percentile must be in range [0, 100]");
+			long total = 0;
+			for(long bucketCount : bucketCounts)
+				total += bucketCount; // don't rely on count, buckets and count are not updated atomically together
+			if(total == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100.0d * total));
+			long seen = 0;
+			for(int b = 0; b < bucketCounts.length; b++)
+			{
+				seen += bucketCounts[b];
+				if(seen >= rank)
+					return b < BUCKET_UPPER_BOUNDS_NS.length ? Math.min(BUCKET_UPPER_BOUNDS_NS[b], maxNS) : Long.MAX_VALUE;
+			}
+			return Long.MAX_VALUE;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format(	"count=%d;failures=%d;mean=%s;p50=%s;p95=%s;p99=%s;max=%s;total=%s",
+									count, failures, FormatNS(getMeanNS()), FormatNS(getPercentileNS(50)), FormatNS(getPercentileNS(95)), FormatNS(getPercentileNS(99)), FormatNS(maxNS), FormatNS(totalNS));
+		}
+		
+	}
+	
+	/**
+	 * Immutable snapshot of the statistics for a single schema.
+	 */
+	static public final class SchemaSnapshot
+	{
+		
+		private final String schemaName;
+		private final HistogramSnapshot[] histograms;
+		
+		private SchemaSnapshot(SchemaStats stats)
+		{
+			this.schemaName = stats.schemaName;
+			this.histograms = new HistogramSnapshot[stats.histograms.length];
+			for(int o = 0; o < histograms.length; o++)
+				histograms[o] = stats.histograms[o].snapshot();
+		}
+		
+		/**
+		 * @return the schema name, prefixed with the model name
+		 */
+		public String getSchemaName()
+		{
+			return schemaName;
+		}
+		
+		public HistogramSnapshot get(Operation operation)
+		{
+			return histograms[operation.ordinal()];
+		}
+		
+		/**
+		 * @return the total time spent on operations involving this schema
+		 */
+		public long getTotalNS()
+		{
+			long total = 0;
+			for(HistogramSnapshot h : histograms)
+				total += h.getTotalNS();
+			return total;
+		}
+		
+	}
+	
+	/**
+	 * Description of an operation which took longer than the slow operation threshold.
+	 */
+	static public final class SlowOperation
+	{
+		
+		public final Operation operation;
+		public final String schemaName;
+		public final long durationNS;
+		public final long timestampMS;
+		
+		private SlowOperation(Operation operation, String schemaName, long durationNS, long timestampMS)
+		{
+			this.operation = operation;
+			this.schemaName = schemaName;
+			this.durationNS = durationNS;
+			this.timestampMS = timestampMS;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return operation.name() + ";schema=" + (schemaName != null ? schemaName : "-") + ";duration=" + FormatNS(durationNS) + ";at=" + timestampMS;
+		}
+		
+	}
+	
+	/**
+	 * Immutable snapshot of all metrics.
+	 */
+	static public final class Snapshot
+	{
+		
+		private final long takenAtMS;
+		private final HistogramSnapshot[] operations;
+		private final long[] counters;
+		private final List<SchemaSnapshot> schemata;
+		private final List<SlowOperation> slowOperations;
+		
+		private Snapshot(HistogramSnapshot[] operations, long[] counters, List<SchemaSnapshot> schemata, List<SlowOperation> slowOperations)
+		{
+			this.takenAtMS = System.currentTimeMillis();
+			this.operations = operations;
+			this.counters = counters;
+			this.schemata = Collections.unmodifiableList(schemata);
+			this.slowOperations = Collections.unmodifiableList(slowOperations);
+		}
+		
+		public long getTakenAtMS()
+		{
+			return takenAtMS;
+		}
+		
+		/**
+		 * @param operation
+		 * @return the latency histogram for the given operation, across all schemata
+		 */
+		public HistogramSnapshot get(Operation operation)
+		{
+			return operations[operation.ordinal()];
+		}
+		
+		public long get(Counter counter)
+		{
+			return counters[counter.ordinal()];
+		}
+		
+		/**
+		 * @return per-schema statistics, sorted by descending total time (i.e. "hottest" schemata first)
+		 */
+		public List<SchemaSnapshot> getSchemata()
+		{
+			return schemata;
+		}
+		
+		/**
+		 * @return the most recent operations which took longer than the slow operation threshold, oldest first
+		 */
+		public List<SlowOperation> getSlowOperations()
+		{
+			return slowOperations;
+		}
+		
+		/**
+		 * @return the snapshot in human-readable form, one line per operation/counter/schema-operation/slow operation
+		 */
+		public List<String> toLines()
+		{
+			List<String> lines = new ArrayList<String>();
+			for(Operation op : Operation.values())
+				if(get(op).getCount() > 0)
+					lines.add("operation;" + op.name() + ";" + get(op).toString());
+			for(Counter counter : Counter.values())
+				lines.add("counter;" + counter.name() + ";" + get(counter));
+			for(SchemaSnapshot schema : schemata)
+				for(Operation op : Operation.values())
+					if(schema.get(op).getCount() > 0)
+						lines.add("schema;" + schema.getSchemaName() + ";" + op.name() + ";" + schema.get(op).toString());
+			for(SlowOperation slowOp : slowOperations)
+				lines.add("slow;" + slowOp.toString());
+			return lines;
+		}
+		
+		@Override
+		public String toString()
+		{
+			StringBuilder bldr = new StringBuilder();
+			for(String line : toLines())
+				bldr.append(line).append('\n');
+			return bldr.toString();
+		}
+		
+	}
+	
+	// DYNAMIC ----------------------------------------------------------------
+	private volatile boolean enabled = true;
+	private volatile long slowOperationThresholdNS = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_OPERATION_THRESHOLD_MS);
+	
+	private final Histogram[] operations = new Histogram[Operation.values().length];
+	private final AtomicLong[] counters = new AtomicLong[Counter.values().length];
+	/**
+	 * Per-schema statistics, keyed by {@link Schema.Comparator#getSortCode(Schema)} (i.e. model ID & schema number)
+	 */
+	private final ConcurrentMap<Long, SchemaStats> schemaStats = new ConcurrentHashMap<Long, SchemaStats>();
+	private final Schema.Comparator schemaKeyProvider = new Schema.Comparator();
+	private final LinkedList<SlowOperation> slowOperations = new LinkedList<SlowOperation>();
+	
+	public RecordStoreMetrics()
+	{
+		for(int o = 0; o < operations.length; o++)
+			operations[o] = new Histogram();
+		for(int c = 0; c < counters.length; c++)
+			counters[c] = new AtomicLong();
+	}
+	
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+	
+	/**
+	 * @param enabled whether or not to record metrics (they are enabled by default)
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * @param thresholdMS duration above which an operation is considered to be slow
+	 */
+	public void setSlowOperationThresholdMS(long thresholdMS)
+	{
+		this.slowOperationThresholdNS = TimeUnit.MILLISECONDS.toNanos(thresholdMS);
+	}
+	
+	/**
+	 * @return the start time to pass to {@link #record(Operation, Schema, long, boolean)}, or {@link #NOT_TIMED} if metrics are disabled
+	 */
+	public long startTimer()
+	{
+		return enabled ? System.nanoTime() : NOT_TIMED;
+	}
+	
+	/**
+	 * Records a completed operation.
+	 * 
+	 * @param operation
+	 * @param schema the schema the operation pertained to, may be {@code null}
+	 * @param startNS the value returned by {@link #startTimer()} when the operation started
+	 * @param success whether or not the operation succeeded
+	 */
+	public void record(Operation operation, Schema schema, long startNS, boolean success)
+	{
+		if(startNS == NOT_TIMED)
+			return;
+		long durationNS = Math.max(0, System.nanoTime() - startNS);
+		operations[operation.ordinal()].record(durationNS, success);
+		if(schema != null)
+			getSchemaStats(schema).histograms[operation.ordinal()].record(durationNS, success);
+		if(durationNS >= slowOperationThresholdNS)
+		{
+			synchronized(slowOperations)
+			{
+				if(slowOperations.size() == MAX_SLOW_OPERATIONS)
+					slowOperations.removeFirst();
+				slowOperations.addLast(new SlowOperation(operation, schema != null ? GetSchemaName(schema) : null, durationNS, System.currentTimeMillis()));
+			}
+		}
+	}
+	
+	private SchemaStats getSchemaStats(Schema schema)
+	{
+		Long key = schemaKeyProvider.getSortCode(schema);
+		SchemaStats stats = schemaStats.get(key);
+		if(stats == null)
+		{
+			SchemaStats newStats = new SchemaStats(GetSchemaName(schema));
+			stats = schemaStats.putIfAbsent(key, newStats);
+			if(stats == null)
+				stats = newStats;
+		}
+		return stats;
+	}
+	
+	public void increment(Counter counter)
+	{
+		if(enabled)
+			counters[counter.ordinal()].incrementAndGet();
+	}
+	
+	public void add(Counter counter, long delta)
+	{
+		if(enabled && delta != 0)
+			counters[counter.ordinal()].addAndGet(delta);
+	}
+	
+	/**
+	 * @return a snapshot of the current metrics
+	 */
+	public Snapshot snapshot()
+	{
+		HistogramSnapshot[] operationSnapshots = new HistogramSnapshot[operations.length];
+		for(int o = 0; o < operations.length; o++)
+			operationSnapshots[o] = operations[o].snapshot();
+		long[] counterValues = new long[counters.length];
+		for(int c = 0; c < counters.length; c++)
+			counterValues[c] = counters[c].get();
+		List<SchemaSnapshot> schemata = new ArrayList<SchemaSnapshot>(schemaStats.size());
+		for(SchemaStats stats : schemaStats.values())
+			schemata.add(new SchemaSnapshot(stats));
+		Collections.sort(schemata, new Comparator<SchemaSnapshot>()
+		{
+			@Override
+			public int compare(SchemaSnapshot lhs, SchemaSnapshot rhs)
+			{
+				long lhsTotal = lhs.getTotalNS();
+				long rhsTotal = rhs.getTotalNS();
+				return lhsTotal < rhsTotal ? 1 : (lhsTotal == rhsTotal ? 0 : -1); // descending
+			}
+		});
+		List<SlowOperation> slowOps;
+		synchronized(slowOperations)
+		{
+			slowOps = new ArrayList<SlowOperation>(slowOperations);
+		}
+		return new Snapshot(operationSnapshots, counterValues, schemata, slowOps);
+	}
+	
+	/**
+	 * Writes a snapshot of the current metrics to the given Logger (one line per item).
+	 * 
+	 * @param logger
+	 */
+	public void dump(Logger logger)
+	{
+		for(String line : snapshot().toLines())
+			logger.addLine(getClass().getSimpleName(), line);
+	}
+	
+	/**
+	 * Resets all metrics.
+	 */
+	public void reset()
+	{
+		for(Histogram histogram : operations)
+			histogram.reset();
+		for(AtomicLong counter : counters)
+			counter.set(0);
+		schemaStats.clear();
+		synchronized(slowOperations)
+		{
+			slowOperations.clear();
+		}
+	}
+	
+}
@@ -37,6 +37,9 @@ import uk.ac.ucl.excites.sapelli.shared.util.TransactionalStringBuilder;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient.RecordOperation;
 import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Counter;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Operation;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBConstraintException;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBPrimaryKeyException;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteRecordStore;
@@ -53,6 +56,7 @@ import uk.ac.ucl.excites.sapelli.storage.model.ValueSetColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.VirtualColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.BooleanListColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.ByteArrayListColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.FloatColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.ForeignKeyColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerListColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.StringListColumn;
@@ -66,13 +70,16 @@ import uk.ac.ucl.excites.sapelli.storage.queries.SingleRecordQuery;
 import uk.ac.ucl.excites.sapelli.storage.queries.SingleRecordQuery.Executor;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.AndConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.BitFlagConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.BoundingBoxConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.CompositeConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.DummyConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.EqualityConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.ListMembershipConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.NotConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.OrConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RadiusConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint.Comparison;
 import uk.ac.ucl.excites.sapelli.storage.queries.sources.Source;
@@ -80,9 +87,11 @@ import uk.ac.ucl.excites.sapelli.storage.queries.sources.SourceByFlags;
 import uk.ac.ucl.excites.sapelli.storage.queries.sources.SourceBySchemata;
 import uk.ac.ucl.excites.sapelli.storage.queries.sources.SourceResolver;
 import uk.ac.ucl.excites.sapelli.storage.types.LineColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
 import uk.ac.ucl.excites.sapelli.storage.types.LocationColumn;
 import uk.ac.ucl.excites.sapelli.storage.types.OrientationColumn;
 import uk.ac.ucl.excites.sapelli.storage.types.PolygonColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
 import uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer;
 import uk.ac.ucl.excites.sapelli.storage.util.InvalidValueException;
 import uk.ac.ucl.excites.sapelli.storage.visitors.SchemaTraverser;
@@ -102,6 +111,18 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 	// STATIC ------------------------------------------------------------
 	static protected final String SPACE = " ";
 	
+	/**
+	 * Projection for queries which only check whether a matching row exists (see {@link RecordProbeHelper})
+	 */
+	static private final SelectProjection PROBE_PROJECTION = new SelectProjection()
+	{
+		@Override
+		public String getProjectionString()
+		{
+			return "1";
+		}
+	};
+	
 	// DYNAMIC -----------------------------------------------------------
 	private STable modelsTable;
 	private STable schemataTable;
@@ -354,6 +375,7 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			table = getTableFactory().generateTable(schema);
 			if(!Model.META_MODEL.contains(schema)) // the "tables" map is only for tables of "real" (non-meta) schemata!
 				tables.put(schemaMetaRecordRef, table);
+			table.initialise();
 		}
 		
 		// If requested then create the actual table in the database if it is not there:
@@ -388,15 +410,34 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 	 * Finds schema tables that have become empty and drops them,
 	 * along with deleting the corresponding row from the Schemata
 	 * table. It also (re-)checks whether tables (still) exist in
-	 * the database (important for upgrades!). 
+	 * the database (important for upgrades!).
+	 * 
+	 * Existence is checked against the result of a single catalog query (see {@link #getAllTableNames()}),
+	 * and only tables which may be empty (see {@link SQLTable#isPossiblyEmpty()}) are counted, so each table is counted
+	 * at most once during the lifetime of the store unless records are deleted from it.
 	 * 
 	 * @see uk.ac.ucl.excites.sapelli.storage.db.RecordStore#cleanup()
 	 */
-	protected synchronized void cleanup() throws DBException
+	@Override
+	protected void cleanup() throws DBException
+	{
+		cleanup(false);
+	}
+	
+	/**
+	 * @param countAllTables whether to count the records in all existing tables, rather than only in those which may be empty
+	 * 	(should be {@code true} after tables have been manipulated directly, e.g. during upgrades)
+	 * @throws DBException
+	 * @see #cleanup()
+	 */
+	protected synchronized void cleanup(boolean countAllTables) throws DBException
 	{
 		if(loggingEnabled)
 			client.logInfo(getClass().getSimpleName() + ": cleaning up...");
 		
+		// Get the names of all tables in the database (null if they could not be determined):
+		Set<String> tableNamesInDB = getAllTableNamesSet();
+		
 		// Find empty tables & release all table resources:
 		List<Map.Entry<RecordReference, STable>> emptyTables = null;
 		for(Iterator<Map.Entry<RecordReference, STable>> tablesIt = tables.entrySet().iterator(); tablesIt.hasNext();)
@@ -406,12 +447,12 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			try
 			{
 				// Check if this table exists in the db:
-				if(!table.isInDB(true)) // true: really check against db
+				if(!table.isInDB(tableNamesInDB)) // really check against db (catalog)
 				{	// The table doesn't exist in the db, so forget about it:
 					tablesIt.remove(); // removes entry from tables map
 				}
-				// When the table does exist, check if table if it is empty:
-				else if(table.isEmpty())
+				// When the table does exist, and it may have become empty, check if it really is empty:
+				else if((countAllTables || table.isPossiblyEmpty()) && table.isEmpty())
 				{
 					// remember empty table so we can drop it below:
 					if(emptyTables == null)
@@ -452,6 +493,8 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 					
 					// Drop the table itself:
 					emptyTable.drop();
+					if(tableNamesInDB != null)
+						tableNamesInDB.remove(emptyTable.getUnsanitisedName());
 					
 					// Remember model:
 					possiblyRemovableModels.add(emptyTable.schema.getModel());
@@ -460,7 +503,7 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 				modelLoop : for(Model model : possiblyRemovableModels)
 				{
 					for(Schema schema : model.getSchemata())
-						if(doesTableExist(schema))
+						if(tableNamesInDB != null ? tableNamesInDB.contains(schema.tableName) : doesTableExist(schema))
 							continue modelLoop; // one of the model's schemata corresponds to a table, so we should not forget about this model
 					// None of the model's schemata correspond to a table, so unregister (i.e. "forget") the model in the modelsTable:
 					modelsTable.delete(Model.GetModelRecordReference(model));
@@ -482,6 +525,16 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		}
 	}
 	
+	/**
+	 * Forgets the record counts of all known tables, so that {@link #cleanup()} counts them again.
+	 * Must be called after a transaction was rolled back, because the counts may include rolled-back inserts.
+	 */
+	protected void forgetRecordCounts()
+	{
+		for(STable table : tables.values())
+			table.forgetRecordCount();
+	}
+	
 	protected Collection<Schema> getSchemata(Source source)
 	{
 		if(source.isNone())
@@ -660,7 +713,10 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 	protected boolean doDelete(Record record) throws DBException
 	{
 		STable table = getTable(record.getSchema(), false); // no need to create the table in the db if it isn't there!
-		return table.isInDB() && table.delete(record);
+		if(!table.isInDB() || !table.delete(record))
+			return false;
+		table.recordCountChanged(-1);
+		return true;
 	}
 	
 	/**
@@ -674,13 +730,33 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 	public void delete(RecordReference recordRef) throws DBException
 	{
 		STable table = getTable(recordRef.getReferencedSchema(), false); // no need to create the table in the db if it isn't there!
-		if(table.isInDB() && table.delete(recordRef))
+		if(!table.isInDB())
+			return;
+		long startNS = metrics.startTimer();
+		boolean success = false;
+		boolean deleted;
+		try
+		{
+			deleted = table.delete(recordRef);
+			success = true;
+		}
+		finally
+		{
+			metrics.record(Operation.DELETE, table.schema, startNS, success);
+		}
+		if(deleted)
+		{
+			table.recordCountChanged(-1);
+			metrics.increment(Counter.RECORDS_DELETED);
 			client.storageEvent(RecordOperation.Deleted, recordRef, this); // inform client
+		}
 	}
 	
 	/**
 	 * Deletes all records that match the query.
-	 * Overridden for increased performance.
+	 * Overridden for increased performance: uses a single DELETE statement per table.
+	 * For schemata with change tracking the references of the matching records are first captured, within the same
+	 * transaction as the DELETE, so that the client can be informed about the deletion by means of a single batched event.
 	 * 
 	 * @param recordsQuery
 	 * @throws DBException
@@ -690,28 +766,111 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 	{
 		for(Schema schema : getSchemata(query.getSource()))
 		{
+			long startNS = RecordStoreMetrics.NOT_TIMED;
+			boolean success = false;
+			List<RecordReference> deletedRefs = null;
 			try
 			{
 				STable table = getTable(schema, false);
 				if(!table.isInDB())
 					continue; // table does no exist in DB, so there are no records to retrieve
+				startNS = metrics.startTimer();
+				RecordsQuery schemaQuery = new RecordsQuery(schema, query.getConstraints());
 				if(!schema.hasFlags(StorageClient.SCHEMA_FLAG_TRACK_CHANGES))
-					// Efficient but does not allow to report which records were deleted:
-					table.delete(query);
+				{	// Efficient but does not allow to report which records were deleted:
+					int deleted = table.delete(schemaQuery);
+					table.recordCountChanged(-deleted);
+					metrics.add(Counter.RECORDS_DELETED, deleted);
+				}
 				else
-				{	// Less efficient, but allows to inform client:
-					for(RecordReference recordRef : retrieveRecordReferences(new RecordsQuery(schema, query.getConstraints())))
-						if(table.delete(recordRef))
-							client.storageEvent(RecordOperation.Deleted, recordRef, this); // inform client
+				{	// Capture the references and delete the records they point to, in one transaction:
+					startTransaction();
+					try
+					{
+						deletedRefs = table.selectReferences(schemaQuery);
+						if(!deletedRefs.isEmpty())
+						{
+							int deleted = table.delete(schemaQuery); // matches the same set of records as the SELECT
+							table.recordCountChanged(-deleted);
+							metrics.add(Counter.RECORDS_DELETED, deleted);
+						}
+					}
+					catch(DBException dbE)
+					{
+						deletedRefs = null;
+						rollbackTransactions();
+						throw dbE;
+					}
+					commitTransaction();
 				}
+				success = true;
 			}
 			catch(DBException dbE)
 			{
 				client.logError("Error in delete(RecordsQuery)", dbE);
 			}
+			finally
+			{
+				metrics.record(Operation.DELETE, schema, startNS, success);
+			}
+			if(deletedRefs != null && !deletedRefs.isEmpty())
+				client.storageEvents(RecordOperation.Deleted, deletedRefs, this); // inform client
 		}
 	}
 	
+	/**
+	 * Sets the given column to the given value in all records which match the query.
+	 * Overridden for increased performance: uses a single UPDATE statement per table, all within one transaction.
+	 * Falls back to the record-at-a-time super implementation for schemata with change tracking (to allow the client
+	 * to be informed about each updated record), for columns which are not represented by a single SQL column (or
+	 * whose list elements are also stored in normalised form), and for constraints which cannot be expressed in SQL.
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.db.RecordStore#update(uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery, uk.ac.ucl.excites.sapelli.storage.model.Column, java.lang.Object)
+	 */
+	@Override
+	public <T> int update(RecordsQuery query, Column<T> column, T value) throws DBException
+	{
+		int updated = 0;
+		startTransaction();
+		try
+		{
+			for(Schema schema : getSchemata(query.getSource()))
+			{
+				STable table = getTable(schema, false);
+				if(!table.isInDB())
+					continue; // table does no exist in DB, so there are no records to update
+				SColumn sqlCol = table.getSQLColumn(column);
+				if(	schema.hasFlags(StorageClient.SCHEMA_FLAG_TRACK_CHANGES) || sqlCol == null || sqlCol.isBoolColForAllOptionalValueSetCol() || table.getKeyPartSQLColumns().contains(sqlCol) ||
+					table.getListElementsTable(sqlCol.sourceColumnPointer) != null || !table.canExpress(query.getConstraints()))
+					// Less efficient, but allows to inform client:
+					updated += super.update(new RecordsQuery(schema, query.getConstraints()), column, value);
+				else
+				{	// Efficient but does not allow to report which records were updated:
+					long startNS = metrics.startTimer();
+					boolean success = false;
+					try
+					{
+						int affected = table.update(query, sqlCol, value);
+						metrics.add(Counter.RECORDS_UPDATED, affected);
+						updated += affected;
+						success = true;
+					}
+					finally
+					{
+						metrics.record(Operation.UPDATE, schema, startNS, success);
+					}
+				}
+			}
+		}
+		catch(DBException dbE)
+		{
+			rollbackTransactions();
+			throw dbE;
+		}
+		commitTransaction();
+		return updated;
+	}
+	
 	/* (non-Javadoc)
 	 * @see uk.ac.ucl.excites.sapelli.storage.db.RecordStore#retrieveRecords(uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery)
 	 */
@@ -757,6 +916,50 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			return retrieveRecordValueSets(query, schemata, recordReferenceSelectRunner);
 	}
 	
+	/**
+	 * Overridden for increased performance: uses a single "SELECT DISTINCT" statement per table which only retrieves the
+	 * SQL column(s) representing the given column. Falls back to the super implementation for optional composite columns
+	 * (whose nullness is represented by an additional SQL column) and for constraints which cannot be expressed in SQL.
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.db.RecordStore#retrieveDistinctValues(uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery, uk.ac.ucl.excites.sapelli.storage.model.Column)
+	 */
+	@Override
+	public <T> Set<T> retrieveDistinctValues(RecordsQuery query, Column<T> column)
+	{
+		Set<T> values = new LinkedHashSet<T>();
+		for(Schema schema : getSchemata(query.getSource()))
+		{
+			try
+			{
+				STable table = getTable(schema, false);
+				if(!table.isInDB())
+					continue; // table does no exist in DB, so there are no values to retrieve
+				long startNS = metrics.startTimer();
+				List<Record> projected = null;
+				boolean success = false;
+				try
+				{
+					projected = table.selectDistinct(query, column);
+					success = true;
+				}
+				finally
+				{
+					metrics.record(Operation.RETRIEVE, schema, startNS, success);
+				}
+				if(projected == null)
+					values.addAll(super.retrieveDistinctValues(new RecordsQuery(schema, query.getConstraints()), column));
+				else
+					for(Record record : projected)
+						CollectionUtils.addIgnoreNull(values, column.retrieveValue(record));
+			}
+			catch(DBException dbE)
+			{
+				client.logError("Error in retrieveDistinctValues()", dbE);
+			}
+		}
+		return values;
+	}
+	
 	/**
 	 * @author mstevens
 	 *
@@ -780,7 +983,17 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 				STable table = getTable(s, false);
 				if(!table.isInDB())
 					continue; // table does no exist in DB, so there are no records to retrieve
-				List<R> subResult = selectRunner.run(table, query);
+				long startNS = metrics.startTimer();
+				List<R> subResult = null;
+				try
+				{
+					subResult = selectRunner.run(table, query);
+				}
+				finally
+				{
+					metrics.record(Operation.RETRIEVE, s, startNS, subResult != null);
+				}
+				metrics.add(Counter.RECORDS_RETRIEVED, subResult.size());
 				if(!subResult.isEmpty())
 				{
 					if(resultAcc == null)
@@ -812,9 +1025,21 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 				STable table = getTable(s, false);
 				if(!table.isInDB())
 					continue; // table does no exist in DB, so there are no records to retrieve
-				Record candidate = table.select(query);
+				long startNS = metrics.startTimer();
+				boolean success = false;
+				Record candidate;
+				try
+				{
+					candidate = table.select(query);
+					success = true;
+				}
+				finally
+				{
+					metrics.record(Operation.RETRIEVE_SINGLE, s, startNS, success);
+				}
 				if(candidate != null)
 				{
+					metrics.increment(Counter.RECORDS_RETRIEVED);
 					if(candidates == null)
 						candidates = new ArrayList<Record>();
 					candidates.add(candidate);
@@ -854,6 +1079,17 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		return null; // this should never happen
 	}
 	
+	/**
+	 * Returns the operator for null-safe inequality comparisons, i.e. one which considers 2 nulls as equal and a null and a non-null value as different.
+	 * Subclasses may need to override this because not all SQL dialects support "IS NOT" for this purpose (SQL:1999 has "IS DISTINCT FROM").
+	 * 
+	 * @return
+	 */
+	protected String getNullSafeInequalityOperator()
+	{
+		return "IS NOT";
+	}
+	
 	/**
 	 * @return a {@link List} of the (unsanitised!) names of tables that are protected
 	 */
@@ -867,6 +1103,23 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 	 */
 	protected abstract List<String> getAllTableNames();
 	
+	/**
+	 * @param sanitisedTableName
+	 * @return a {@link Map} of the sanitised names of the columns of the given table to the types they are declared with in the database, empty if the table does not exist
+	 * @throws DBException
+	 */
+	protected abstract Map<String, String> getColumnTypes(String sanitisedTableName) throws DBException;
+	
+	/**
+	 * @return a {@link Set} of the (unsanitised!) names of all tables in the database, or {@code null} if they could not be determined
+	 */
+	private Set<String> getAllTableNamesSet()
+	{
+		List<String> tableNames = getAllTableNames();
+		// The modelsTable always exists (in an initialised store), if it is not listed the lookup must have failed (getAllTableNames() returns an empty list upon error):
+		return modelsTable != null && tableNames.contains(modelsTable.getUnsanitisedName()) ? new HashSet<String>(tableNames) : null;
+	}
+	
 	/**
 	 * Drops the table with the given name. Use with care!
 	 * Will fail, with {@link DBException} thrown, if the table is protected and unless {@code force} is {@code true}.
@@ -1040,6 +1293,13 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		private Boolean existsInDB;
 		private TableCreationHelper creator;
 		
+		/**
+		 * The number of records in the table, as far as we know (i.e. it was counted, or implied by the creation of the table,
+		 * and kept up-to-date as records were inserted & deleted since), or {@code null} if unknown.
+		 * Only used as a hint (see {@link #isPossiblyEmpty()}), it is forgotten upon roll-backs (see {@link #forgetRecordCount()}).
+		 */
+		private Long knownRecordCount;
+		
 		/**
 		 * Mapping of Sapelli ColumnPointers (usually leaf columns) to corresponding  SQLColumns.
 		 */
@@ -1056,6 +1316,16 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		 */
 		private Set<SColumn> keyPartSqlColumns;
 		
+		/**
+		 * Mapping of the ColumnPointers of ListColumns which are (also) stored in normalised form to their side tables, or {@code null} if there are none.
+		 */
+		private Map<ColumnPointer<?>, ListElementsTable> listElementsTables;
+		
+		/**
+		 * Mapping of the ColumnPointers of LocationColumns which have a spatial index to those indexes, or {@code null} if there are none.
+		 */
+		private Map<ColumnPointer<?>, LocationIndex> locationIndexes;
+		
 		public SQLTable(Schema schema)
 		{
 			this.schema = schema;
@@ -1105,6 +1375,129 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			}
 		}
 		
+		/**
+		 * @param listElementsTable side table holding the elements of a ListColumn which is also represented by a SQLColumn of this table
+		 */
+		public void addListElementsTable(ListElementsTable listElementsTable)
+		{
+			if(existsInDB != null)
+				throw new IllegalStateException("Cannot add list elements tables to SQLTable that exists in the database or whose's creation has been attempted.");
+			if(sqlColumns.get(listElementsTable.listColumnPointer) == null)
+				throw new IllegalArgumentException("The list column must be represented by a SQLColumn of this table");
+			if(listElementsTables == null)
+				listElementsTables = new HashMap<ColumnPointer<?>, ListElementsTable>();
+			if(listElementsTables.put(listElementsTable.listColumnPointer, listElementsTable) != null)
+				throw new IllegalArgumentException("Duplicate list elements table!");
+		}
+		
+		/**
+		 * @param listColumnPointer
+		 * @return the side table holding the elements of the pointed-to ListColumn, or {@code null} if it is not stored in normalised form
+		 */
+		public ListElementsTable getListElementsTable(ColumnPointer<?> listColumnPointer)
+		{
+			if(listElementsTables == null)
+				return null;
+			// Try pointer as such (assumes it contains a complete path):
+			ListElementsTable listElementsTable = listElementsTables.get(listColumnPointer);
+			if(listElementsTable == null)
+				// Try to find the column:
+				listElementsTable = listElementsTables.get(new ColumnPointer<Column<?>>(schema, listColumnPointer.getColumn()));
+			return listElementsTable;
+		}
+		
+		/**
+		 * @return the side tables holding the elements of ListColumns which are stored in normalised form, possibly empty, never {@code null}
+		 */
+		public Collection<ListElementsTable> getListElementsTables()
+		{
+			return listElementsTables != null ? listElementsTables.values() : Collections.<ListElementsTable> emptyList();
+		}
+		
+		/**
+		 * @param locationIndex spatial index on the latitude & longitude of a LocationColumn which is represented by SQLColumns of this table
+		 */
+		public void addLocationIndex(LocationIndex locationIndex)
+		{
+			if(existsInDB != null)
+				throw new IllegalStateException("Cannot add location indexes to SQLTable that exists in the database or whose's creation has been attempted.");
+			if(locationIndex.latitudeColumn == null || locationIndex.longitudeColumn == null)
+				throw new IllegalArgumentException("The latitude & longitude of the location column must be represented by SQLColumns of this table");
+			if(locationIndexes == null)
+				locationIndexes = new HashMap<ColumnPointer<?>, LocationIndex>();
+			if(locationIndexes.put(locationIndex.locationColumnPointer, locationIndex) != null)
+				throw new IllegalArgumentException("Duplicate location index!");
+		}
+		
+		/**
+		 * @param locationColumnPointer
+		 * @return the spatial index on the pointed-to LocationColumn, or {@code null} if it has none
+		 */
+		public LocationIndex getLocationIndex(ColumnPointer<?> locationColumnPointer)
+		{
+			if(locationIndexes == null)
+				return null;
+			// Try pointer as such (assumes it contains a complete path):
+			LocationIndex locationIndex = locationIndexes.get(locationColumnPointer);
+			if(locationIndex == null)
+				// Try to find the column:
+				locationIndex = locationIndexes.get(new ColumnPointer<Column<?>>(schema, locationColumnPointer.getColumn()));
+			return locationIndex;
+		}
+		
+		/**
+		 * @return the spatial indexes on LocationColumns of this table, possibly empty, never {@code null}
+		 */
+		public Collection<LocationIndex> getLocationIndexes()
+		{
+			return locationIndexes != null ? locationIndexes.values() : Collections.<LocationIndex> emptyList();
+		}
+		
+		/**
+		 * Checks whether the given constraints can be translated into a WHERE clause for this table which matches exactly the same records.
+		 * This is not the case for {@link ListMembershipConstraint}s on ListColumns which are not stored in normalised form, nor for
+		 * {@link RadiusConstraint}s, of which only the bounding box can be evaluated by the database (see {@link #canNarrowDown(Constraint)}).
+		 * 
+		 * @param constraints may be {@code null}
+		 * @return whether or not the constraints can be evaluated by the database
+		 */
+		public boolean canExpress(Constraint constraints)
+		{
+			if(constraints == null)
+				return true;
+			ExpressibilityChecker checker = new ExpressibilityChecker();
+			constraints.accept(checker);
+			return checker.expressible;
+		}
+		
+		/**
+		 * Checks whether the given constraints can be translated into a WHERE clause for this table which matches at least all matching records
+		 * (but possibly more), such that the database can be used to narrow down the records on which the constraints must be evaluated in memory.
+		 * 
+		 * @param constraints may be {@code null}
+		 * @return whether or not the constraints can be (approximately) evaluated by the database
+		 * @see #canExpress(Constraint)
+		 */
+		public boolean canNarrowDown(Constraint constraints)
+		{
+			if(constraints == null)
+				return true;
+			ExpressibilityChecker checker = new ExpressibilityChecker();
+			constraints.accept(checker);
+			return checker.narrowable;
+		}
+		
+		/**
+		 * Called right after the SQLTable object has been generated (and before it is used).
+		 * May be overridden to bring database objects which accompany the table (e.g. side tables) up to date when the table already exists in the database.
+		 * 
+		 * @throws DBException
+		 */
+		public void initialise() throws DBException
+		{
+			// does nothing by default
+		}
+		
 		public boolean isInDB()
 		{
 			return isInDB(false);
@@ -1117,6 +1510,21 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			return existsInDB;
 		}
 		
+		/**
+		 * Checks whether the table exists in the database by looking up its name in the given set, which is assumed to hold
+		 * the names of all tables currently in the database (e.g. as obtained by means of a single catalog query).
+		 * 
+		 * @param unsanitisedTableNamesInDB may be {@code null}, in which case the database is queried directly
+		 * @return whether the table exists in the database
+		 */
+		public boolean isInDB(Set<String> unsanitisedTableNamesInDB)
+		{
+			if(unsanitisedTableNamesInDB == null)
+				return isInDB(true);
+			existsInDB = unsanitisedTableNamesInDB.contains(getUnsanitisedName());
+			return existsInDB;
+		}
+		
 		/**
 		 * Creates the table (+ any indexes) in the database.
 		 * Assumes the table does not already exist in the database! (caller must therefore first call isInDB())
@@ -1140,6 +1548,8 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 					{	// If this code run that means the table wasn't created in the DB after all, so...
 						//	mark table as non-existing in DB:
 						existsInDB = false;
+						//	forget the record count:
+						knownRecordCount = null;
 						//	and re-set the creator so it doesn't have to be generated again:
 						creator = holdCreator;
 					}
@@ -1153,6 +1563,9 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			// Now the table exists...
 			existsInDB = true; // !!!
 			
+			// ... and it is empty:
+			knownRecordCount = 0L;
+			
 			// Discard the creator to limit memory consumption:
 			creator = null;
 		}
@@ -1210,10 +1623,11 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			if(!isRecordInDB(record))
 			{
 				insert(record);
+				recordCountChanged(1);
 				return true;
 			}
 			else if(!updateAllowed)
-				return record.hasEqualValues(select(record.getRecordQuery())) ? null : false;
+				return isRecordChanged(record) ? false : null;
 			else
 				return update(record) ? false : null;
 		}
@@ -1236,6 +1650,7 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		
 		/**
 		 * Checks if the given {@link Record}, or the one indicated by the given {@link RecordReference}, already exists in the database table.
+		 * Uses a probe query which does not retrieve any of the record's values.
 		 * 
 		 * May be overridden.
 		 * 
@@ -1244,9 +1659,27 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		 * @throws NullPointerException
 		 * @throws DBException
 		 */
+		@SuppressWarnings("unchecked")
 		public boolean isRecordInDB(RecordValueSet<?> recordOrReference) throws DBException
 		{
-			return getStoredVersion(recordOrReference) != null;
+			return isInDB() && recordOrReference.isReferenceable() /*also checks autoIncrPK*/ && executeProbe(new RecordProbeHelper((STable) this, recordOrReference));
+		}
+		
+		/**
+		 * Checks if the stored version of the given {@link Record}, which is assumed to exist in the database table,
+		 * has at least one value which differs from those of the given Record.
+		 * Uses a probe query which does not retrieve any of the record's values.
+		 * 
+		 * May be overridden.
+		 * 
+		 * @param record
+		 * @return
+		 * @throws DBException
+		 */
+		@SuppressWarnings("unchecked")
+		public boolean isRecordChanged(Record record) throws DBException
+		{
+			return executeProbe(new RecordProbeHelper((STable) this, record, true));
 		}
 		
 		/**
@@ -1276,14 +1709,10 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		 * May be overridden.
 		 * 
 		 * Note:
-		 * 	Currently the detection of _actual_ changes to the record does *not* work.
-		 * 	If the UPDATE statement's WHERE clause matches an existing row that row will (at least in SQLite) be considered
-		 * 	as changed/affected (i.e. this method will return true) even if the actual values remained unchanged.
-		 * 	The only obvious way to fix this is to generate UPDATE statements in which the WHERE clause checks whether
-		 * 	values _need_ to be updated. E.g. "UPDATE table SET col1 = "newVal1", col2 = "newVal2" WHERE id = X AND (col1 IS NOT 'newVal1' OR col2 IS NOT 'newVal2');"
-		 * 	We could implement such a solution in RecordUpdateHelper but will wait until we are certain this feature will be required.
+		 * 	The WHERE clause of the UPDATE statement only matches the existing row if at least one of its values _needs_ to be updated,
+		 * 	e.g. "UPDATE table SET col1 = 'newVal1', col2 = 'newVal2' WHERE id = X AND (col1 IS NOT 'newVal1' OR col2 IS NOT 'newVal2');".
+		 * 	This way unchanged rows are not rewritten, nor reported as affected (which SQLite would otherwise do).
 		 * @see See: <a href="http://stackoverflow.com/questions/26372449">http://stackoverflow.com/questions/26372449</a>
-		 * TODO implement solution to detect actual record value changes
 		 * 
 		 * @param record
 		 * @return whether the record was really updated or stayed unchanged (because the record that was passed is identical to the stored one)
@@ -1296,6 +1725,24 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			return executeSQLReturnAffectedRows(new RecordUpdateHelper((STable) this, record).getQuery()) == 1;
 		}
 		
+		/**
+		 * Sets the given column to the given value in all records (identified by a RecordsQuery) in database table.
+		 * Assumes the table exists in the database!
+		 * 
+		 * May be overridden.
+		 * 
+		 * @param query
+		 * @param sqlCol a non-primary key column of this table
+		 * @param sapValue the new value (Sapelli type)
+		 * @return the number of updated records
+		 * @throws DBException
+		 */
+		@SuppressWarnings("unchecked")
+		public int update(RecordsQuery query, SColumn sqlCol, Object sapValue) throws DBException
+		{
+			return executeSQLReturnAffectedRows(new RecordsUpdateHelper((STable) this, query, sqlCol, sapValue).getQuery());
+		}
+		
 		/**
 		 * Delete existing record (given as a Record or RecordReference) in database table.
 		 * Assumes the table exists in the database!
@@ -1325,6 +1772,14 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		@SuppressWarnings("unchecked")
 		public int delete(RecordsQuery query) throws DBException
 		{
+			if(!canExpress(query.getConstraints()))
+			{	// The constraints must be evaluated in memory, so delete the matching records one by one:
+				int deleted = 0;
+				for(Record record : select(query))
+					if(delete(record))
+						deleted++;
+				return deleted;
+			}
 			return executeSQLReturnAffectedRows(new RecordsDeleteHelper((STable) this, query).getQuery());
 		}
 		
@@ -1339,6 +1794,9 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		@SuppressWarnings("unchecked")
 		public List<Record> select(RecordsQuery query) throws DBException
 		{
+			if(!canExpress(query.getConstraints()))
+				// Select all records, or only those which may match the constraints, and execute the query in memory:
+				return query.execute(executeRecordSelection(new RecordValueSetSelectHelper<Record>((STable) this, recordSelectionProjection, canNarrowDown(query.getConstraints()) ? new RecordsQuery(schema, query.getConstraints()) : new RecordsQuery(schema))));
 			return executeRecordSelection(new RecordValueSetSelectHelper<Record>((STable) this, recordSelectionProjection, query));
 		}
 		
@@ -1353,9 +1811,37 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		@SuppressWarnings("unchecked")
 		public List<RecordReference> selectReferences(RecordsQuery query) throws DBException
 		{
+			if(!canExpress(query.getConstraints()))
+			{	// Select the matching records (filtered in memory) and get their references:
+				List<Record> records = select(query);
+				List<RecordReference> recordRefs = new ArrayList<RecordReference>(records.size());
+				for(Record r : records)
+					recordRefs.add(r.getReference());
+				return recordRefs;
+			}
 			return executeRecordSelection(new RecordValueSetSelectHelper<RecordReference>((STable) this, recordReferenceSelectionProjection, query));
 		}
 		
+		/**
+		 * Selects the distinct values of the given column in the rows which match the constraints of the {@link RecordsQuery}.
+		 * Assumes the table exists in the database!
+		 * 
+		 * @param query
+		 * @param column a top-level column of the table's schema
+		 * @return a {@link List} of {@link Record}s in which only the given column is set, possibly empty, or {@code null} if the selection cannot be expressed in SQL
+		 * @throws DBException
+		 */
+		@SuppressWarnings("unchecked")
+		public List<Record> selectDistinct(RecordsQuery query, Column<?> column) throws DBException
+		{
+			if(column instanceof ValueSetColumn && getSQLColumn(column) != null)
+				return null; // optional composite, its nullness is represented by an additional boolean SQLColumn
+			List<SColumn> sqlCols = getSQLColumns(column);
+			if(sqlCols == null || sqlCols.isEmpty() || sqlCols.contains(null) || !canExpress(query.getConstraints()))
+				return null;
+			return executeRecordSelection(new RecordValueSetSelectHelper<Record>((STable) this, new DistinctSelectionProjection((STable) this, sqlCols), new RecordsQuery(schema, query.getConstraints())));
+		}
+		
 		/**
 		 * Selects a single record from the database table based on a SingleRecordQuery.
 		 * Assumes the table exists in the database!
@@ -1366,6 +1852,10 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		 */
 		public Record select(SingleRecordQuery query) throws DBException
 		{
+			if(!canExpress(query.getConstraints()))
+				// Select the matching records (filtered in memory, see above) and execute the query on them:
+				return query.execute(select(new RecordsQuery(schema, query.getConstraints())));
+			
 			List<Record> results = query.<List<Record>, DBException> acceptExecutor(new Executor<List<Record>, DBException>()
 			{
 				
@@ -1393,7 +1883,67 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		 */
 		public boolean isEmpty() throws DBException
 		{
-			return !isInDB() || getRecordCount() == 0;
+			if(!isInDB())
+				return true;
+			knownRecordCount = getRecordCount();
+			return knownRecordCount == 0;
+		}
+		
+		/**
+		 * Keeps track of the number of records in the table.
+		 * To be called after records were inserted (positive delta) or deleted (negative delta).
+		 * 
+		 * @param delta
+		 */
+		public void recordCountChanged(long delta)
+		{
+			if(knownRecordCount != null)
+				knownRecordCount = Math.max(0L, knownRecordCount + delta);
+		}
+		
+		/**
+		 * Forgets the number of records in the table, which is necessary when changes may have been rolled back.
+		 */
+		public void forgetRecordCount()
+		{
+			knownRecordCount = null;
+		}
+		
+		/**
+		 * Indicates whether the table may be empty, based on the records inserted & deleted since it was created or counted.
+		 * Tables for which this returns {@code false} are not empty unless records were removed behind our back;
+		 * when it returns {@code true} {@link #isEmpty()} must be used to find out for sure.
+		 * 
+		 * @return whether the table is known to be empty, or its record count is unknown (i.e. it was not counted since the store was opened)
+		 */
+		public boolean isPossiblyEmpty()
+		{
+			return knownRecordCount == null || knownRecordCount == 0;
+		}
+		
+		/**
+		 * Compares the types of the SQLColumns which represent {@link TimeStampColumn}s with the types the corresponding columns are
+		 * declared with in the database table. A mismatch means the table was created with another setting for
+		 * {@link TableFactory#isUsingIntegersForTimeStampColumns()}, in which case its time stamps would be misinterpreted.
+		 * Assumes the table exists in the database!
+		 * 
+		 * @return the SQLColumns representing TimeStampColumns whose type differs from the one declared in the database, possibly empty, never {@code null}
+		 * @throws DBException
+		 */
+		public List<SColumn> getTimeStampColumnTypeMismatches() throws DBException
+		{
+			List<SColumn> mismatches = new ArrayList<SColumn>();
+			Map<String, String> typesInDB = null;
+			for(SColumn sqlCol : sqlColumns.values())
+				if(sqlCol.sourceColumnPointer != null && sqlCol.sourceColumnPointer.getColumn() instanceof TimeStampColumn)
+				{
+					if(typesInDB == null)
+						typesInDB = getColumnTypes(sanitisedName);
+					String typeInDB = typesInDB.get(sqlCol.sanitisedName);
+					if(typeInDB != null && !typeInDB.equalsIgnoreCase(sqlCol.type))
+						mismatches.add(sqlCol);
+				}
+			return mismatches;
 		}
 		
 		/**
@@ -1436,6 +1986,7 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			
 			// Now the table is gone...
 			existsInDB = false; // !!!
+			knownRecordCount = null;
 		}
 		
 		/**
@@ -1445,6 +1996,13 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		 */
 		protected abstract <R extends RecordValueSet<?>> List<R> executeRecordSelection(RecordValueSetSelectHelper<R> recordValueSetSelectHelper) throws DBException;
 		
+		/**
+		 * @param probeHelper
+		 * @return whether the probe query matched a row
+		 * @throws DBException
+		 */
+		protected abstract boolean executeProbe(RecordProbeHelper probeHelper) throws DBException;
+		
 		/**
 		 * Release any resources associated with this table
 		 */
@@ -1453,12 +2011,183 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		/* (non-Javadoc)
 		 * @see java.lang.Object#toString()
 		 */
-		@Override
-		public String toString()
+		@Override
+		public String toString()
+		{
+			return "Database table '" + getUnsanitisedName() + "'";
+		}
+		
+		/**
+		 * Visits constraints to find out whether they can all be translated into SQL, either exactly (see {@link SQLTable#canExpress(Constraint)})
+		 * or approximately (see {@link SQLTable#canNarrowDown(Constraint)}).
+		 */
+		private class ExpressibilityChecker implements ConstraintVisitor
+		{
+			
+			private boolean expressible = true;
+			private boolean narrowable = true;
+			private boolean negated = false;
+			
+			@Override
+			public void visit(AndConstraint andConstr)
+			{
+				visitAll(andConstr.getSubConstraints());
+			}
+			
+			@Override
+			public void visit(OrConstraint orConstr)
+			{
+				visitAll(orConstr.getSubConstraints());
+			}
+			
+			private void visitAll(List<Constraint> subConstraints)
+			{
+				for(Constraint subConstr : subConstraints)
+				{
+					if(!narrowable)
+						return;
+					subConstr.accept(this);
+				}
+			}
+			
+			@Override
+			public void visit(NotConstraint notConstr)
+			{
+				negated = !negated;
+				notConstr.getNegatedConstraint().accept(this);
+				negated = !negated;
+			}
+			
+			@Override
+			public void visit(EqualityConstraint equalityConstr) { /* always expressible */ }
+			
+			@Override
+			public void visit(RuleConstraint ruleConstr) { /* always expressible */ }
+			
+			@Override
+			public void visit(BitFlagConstraint bitFlagConstr) { /* always expressible */ }
+			
+			@Override
+			public void visit(DummyConstraint dummyConstr) { /* always expressible */ }
+			
+			@Override
+			public void visit(ListMembershipConstraint listMembershipConstr)
+			{
+				if(getListElementsTable(listMembershipConstr.getListColumnPointer()) == null)
+					expressible = narrowable = false;
+			}
+			
+			@Override
+			public void visit(BoundingBoxConstraint boundingBoxConstr) { /* always expressible */ }
+			
+			@Override
+			public void visit(RadiusConstraint radiusConstr)
+			{
+				expressible = false; // the database only evaluates the bounding box, ...
+				if(negated)
+					narrowable = false; // ... the negation of which would exclude matching records
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Describes a side table which holds the elements of a {@link ListColumn} in normalised form, i.e. one row per element,
+	 * identified by the owning row (in the table of the {@link Schema}) and the position of the element in the list.
+	 * The owning row keeps its own (serialised) copy of the list, so records can be read without joining the side table,
+	 * which is used to evaluate {@link ListMembershipConstraint}s.
+	 */
+	public class ListElementsTable
+	{
+		
+		public final String sanitisedName;
+		
+		public final ColumnPointer<? extends ListColumn<?, ?>> listColumnPointer;
+		
+		/**
+		 * SQL expression which identifies a row of the owning table (e.g. its ROWID).
+		 */
+		public final String ownerKeyExpression;
+		
+		/**
+		 * Column of the side table which holds the value of the {@link #ownerKeyExpression} of the owning row.
+		 */
+		public final SColumn ownerColumn;
+		
+		/**
+		 * Column of the side table which holds the position of the element in the list.
+		 */
+		public final SColumn indexColumn;
+		
+		/**
+		 * Column of the side table which holds the element itself.
+		 */
+		public final SColumn elementColumn;
+		
+		/**
+		 * @param unsanitisedName
+		 * @param listColumnPointer
+		 * @param ownerKeyExpression
+		 * @param ownerColumn
+		 * @param indexColumn
+		 * @param elementColumn
+		 */
+		public ListElementsTable(String unsanitisedName, ColumnPointer<? extends ListColumn<?, ?>> listColumnPointer, String ownerKeyExpression, SColumn ownerColumn, SColumn indexColumn, SColumn elementColumn)
+		{
+			this.sanitisedName = sanitiseIdentifier(unsanitisedName);
+			this.listColumnPointer = listColumnPointer;
+			this.ownerKeyExpression = ownerKeyExpression;
+			this.ownerColumn = ownerColumn;
+			this.indexColumn = indexColumn;
+			this.elementColumn = elementColumn;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "List elements table " + sanitisedName;
+		}
+		
+	}
+	
+	/**
+	 * Describes a spatial index on the latitude & longitude (sub)columns of a {@link LocationColumn}, which is used to quickly
+	 * find candidate rows for {@link BoundingBoxConstraint}s (and {@link RadiusConstraint}s). The index only narrows down the
+	 * rows, the exact latitude & longitude conditions are always evaluated as well.
+	 */
+	public abstract class LocationIndex
+	{
+		
+		public final ColumnPointer<? extends LocationColumn> locationColumnPointer;
+		
+		public final SColumn latitudeColumn;
+		
+		public final SColumn longitudeColumn;
+		
+		/**
+		 * @param table the table holding the location column
+		 * @param locationColumnPointer
+		 */
+		public LocationIndex(STable table, ColumnPointer<? extends LocationColumn> locationColumnPointer)
 		{
-			return "Database table '" + getUnsanitisedName() + "'";
+			this.locationColumnPointer = locationColumnPointer;
+			this.latitudeColumn = table.getSQLColumn(new ColumnPointer<FloatColumn>(locationColumnPointer, Location.COLUMN_LATITUDE));
+			this.longitudeColumn = table.getSQLColumn(new ColumnPointer<FloatColumn>(locationColumnPointer, Location.COLUMN_LONGITUDE));
 		}
 		
+		/**
+		 * Returns a condition which matches (at least) all rows whose location lies within the given bounds.
+		 * The bounds never cross the antimeridian.
+		 * 
+		 * @param minLatitude
+		 * @param maxLatitude
+		 * @param minLongitude
+		 * @param maxLongitude
+		 * @return an SQL expression, or {@code null} if the index cannot help to narrow down the rows for these bounds
+		 */
+		public abstract String getCandidateCondition(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude);
+		
 	}
 	
 	/**
@@ -1596,7 +2325,47 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		{
 			return false;
 		}
-		
+
+		/**
+		 * Indicates whether this SQLColumn stores values which compare as equal (i.e. {@link Column#compareValues(Object, Object)}
+		 * returns 0) as different SQL values (e.g. TimeStamps which indicate the same instant but have a different UTC offset).
+		 * If so, the SQL values which represent equivalent Sapelli values must form a contiguous range, of which the bounds are
+		 * given by {@link #getLowestEquivalentValue(Object)} & {@link #getHighestEquivalentValue(Object)}, and comparisons between
+		 * 2 such columns must be made using {@link #getComparisonExpression()}.
+		 *
+		 * @return whether RuleConstraints involving this column need to be translated into range comparisons
+		 */
+		public boolean hasEquivalentValues()
+		{
+			return false;
+		}
+
+		/**
+		 * @param sapValue non-null
+		 * @return the Sapelli value which compares as equal to the given one and is represented by the lowest SQL value
+		 */
+		public Object getLowestEquivalentValue(Object sapValue)
+		{
+			return sapValue;
+		}
+
+		/**
+		 * @param sapValue non-null
+		 * @return the Sapelli value which compares as equal to the given one and is represented by the highest SQL value
+		 */
+		public Object getHighestEquivalentValue(Object sapValue)
+		{
+			return sapValue;
+		}
+
+		/**
+		 * @return an SQL expression to use when comparing the values in this column to those in another column
+		 */
+		public String getComparisonExpression()
+		{
+			return sanitisedName;
+		}
+
 		@Override
 		public String toString()
 		{
@@ -1678,6 +2447,19 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		 */
 		public void setUseBLOBsForAllListColumns(boolean enable) throws DBException;
 		
+		/**
+		 * For upgrade purposes only.
+		 * 
+		 * @param enable whether or not the TableFactory will use INTEGER-based SQLColumns to represent {@link TimeStampColumn}s (instead of String-based ones)
+		 * @throws DBException when called outside of initialisation phase
+		 */
+		public void setUseIntegersForTimeStampColumns(boolean enable) throws DBException;
+		
+		/**
+		 * @return whether or not the TableFactory uses INTEGER-based SQLColumns to represent {@link TimeStampColumn}s
+		 */
+		public boolean isUsingIntegersForTimeStampColumns();
+		
 	}
 	
 	/**
@@ -1699,6 +2481,20 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		
 		private boolean insertBoolColsForAllOptionalValueSetCols = true; // !!!
 		private boolean useBLOBsForAllListColumns = false; // !!!
+		private boolean useIntegersForTimeStampColumns;
+		
+		public BasicTableFactory()
+		{
+			this(false);
+		}
+		
+		/**
+		 * @param useIntegersForTimeStampColumns whether or not to use INTEGER-based SQLColumns to represent {@link TimeStampColumn}s (subclasses which do not support this should ignore it)
+		 */
+		public BasicTableFactory(boolean useIntegersForTimeStampColumns)
+		{
+			this.useIntegersForTimeStampColumns = useIntegersForTimeStampColumns;
+		}
 		
 		/**
 		 * Note:
@@ -1768,6 +2564,20 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 				throw new DBException("Changing 'useBLOBsForAllListColumns' is only allowed during initialisation/upgrade!");
 			useBLOBsForAllListColumns = enable;
 		}
+		
+		@Override
+		public void setUseIntegersForTimeStampColumns(boolean enable) throws DBException
+		{
+			if(!isInitialising())
+				throw new DBException("Changing 'useIntegersForTimeStampColumns' is only allowed during initialisation/upgrade!");
+			useIntegersForTimeStampColumns = enable;
+		}
+		
+		@Override
+		public boolean isUsingIntegersForTimeStampColumns()
+		{
+			return useIntegersForTimeStampColumns;
+		}
 
 		/* (non-Javadoc)
 		 * @see uk.ac.ucl.excites.sapelli.storage.visitors.SchemaTraverser#enter(uk.ac.ucl.excites.sapelli.storage.model.ValueSetColumn)
@@ -2230,6 +3040,44 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			bldr.commitTransaction();
 			// WHERE clause:
 			appendWhereClause(record);
+			//	only match the row if it needs to be updated:
+			appendValueChangeClause(record);
+		}
+		
+	}
+	
+	/**
+	 * Helper class to build UPDATE statements (parameterised or literal) which set a single column for multiple records.
+	 */
+	protected class RecordsUpdateHelper extends RecordsByConstraintsHelper
+	{
+		
+		/**
+		 * @param table
+		 * @param recordsQuery
+		 * @param sqlCol
+		 * @param sapValue
+		 */
+		public RecordsUpdateHelper(STable table, RecordsQuery recordsQuery, SColumn sqlCol, Object sapValue)
+		{
+			// Initialise
+			super(table);
+			
+			// Build statement:
+			bldr.append("UPDATE");
+			bldr.append(table.sanitisedName);
+			bldr.append("SET");
+			bldr.append(sqlCol.sanitisedName);
+			bldr.append("=");
+			if(isParameterised())
+			{
+				bldr.append(valuePlaceHolder);
+				addParameterColumnAndValue(sqlCol, sapValue);
+			}
+			else
+				bldr.append(sqlCol.sapelliObjectToLiteral(sapValue, true));
+			// WHERE clause:
+			appendWhereClause(recordsQuery.getConstraints());
 		}
 		
 	}
@@ -2334,6 +3182,43 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			}
 		}
 		
+		/**
+		 * Appends "AND (col1 IS NOT val1 OR col2 IS NOT val2 ...)", covering all non-primary key columns, in order to make the preceding
+		 * WHERE clause (see {@link #appendWhereClause(RecordValueSet)}) only match a row which has at least one value that differs from
+		 * those of the given Record.
+		 * 
+		 * @param record a Record instance (when the statement is not parameterised) or null (when it is parameterised)
+		 */
+		protected void appendValueChangeClause(Record record)
+		{
+			bldr.openTransaction();
+			bldr.append("AND (");
+			bldr.openTransaction(" OR ");
+			for(SColumn sqlCol : table.sqlColumns.values())
+				if(!table.getKeyPartSQLColumns().contains(sqlCol))
+				{
+					bldr.openTransaction(SPACE);
+					bldr.append(sqlCol.sanitisedName);
+					bldr.append(getNullSafeInequalityOperator());
+					if(isParameterised())
+					{
+						bldr.append(valuePlaceHolder);
+						addParameterColumn(sqlCol);
+					}
+					else
+						bldr.append(sqlCol.retrieveAsLiteral(record, true));
+					bldr.commitTransaction();
+				}
+			if(!bldr.isCurrentTransactionEmpty())
+			{
+				bldr.commitTransaction(false);
+				bldr.append(")", false);
+				bldr.commitTransaction();
+			}
+			else
+				bldr.rollbackTransactions(2); // there are no non-primary key columns
+		}
+		
 		protected void addParameterColumnAndValue(SColumn column, Object sapValue)
 		{
 			addParameterColumn(column);
@@ -2464,6 +3349,11 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			}
 			// All other cases:
 			SColumn lhsSCol = table.getSQLColumn(ruleConstr.getLHSColumnPointer());
+			if(lhsSCol.hasEquivalentValues())
+			{
+				visitRangeRule(ruleConstr, lhsSCol);
+				return;
+			}
 			bldr.append(lhsSCol.sanitisedName);
 			bldr.append(getComparisonOperator(ruleConstr.getComparison()));
 			if(ruleConstr.isRHSColumn())
@@ -2481,6 +3371,60 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 			}
 		}
 
+		/**
+		 * Translates a RuleConstraint on a column which represents equivalent values by different SQL values (see {@link SQLColumn#hasEquivalentValues()}).
+		 * Comparisons with a value are made against the bounds of the range of SQL values equivalent to it, e.g. "col <= x" becomes "col <= highest(x)"
+		 * and "col = x" becomes "col BETWEEN lowest(x) AND highest(x)". Comparisons with another column are made using {@link SQLColumn#getComparisonExpression()}.
+		 *
+		 * @param ruleConstr
+		 * @param lhsSCol
+		 */
+		private void visitRangeRule(RuleConstraint ruleConstr, SColumn lhsSCol)
+		{
+			if(ruleConstr.isRHSColumn())
+			{
+				bldr.append(lhsSCol.getComparisonExpression());
+				bldr.append(getComparisonOperator(ruleConstr.getComparison()));
+				bldr.append(table.getSQLColumn(ruleConstr.getRHSColumnPointer()).getComparisonExpression());
+				return;
+			}
+			Object sapValue = ruleConstr.getRHSValue();
+			bldr.append(lhsSCol.sanitisedName);
+			switch(ruleConstr.getComparison())
+			{
+				case SMALLER :
+				case GREATER_OR_EQUAL :
+					bldr.append(getComparisonOperator(ruleConstr.getComparison()));
+					appendValue(lhsSCol, lhsSCol.getLowestEquivalentValue(sapValue));
+					break;
+				case SMALLER_OR_EQUAL :
+				case GREATER :
+					bldr.append(getComparisonOperator(ruleConstr.getComparison()));
+					appendValue(lhsSCol, lhsSCol.getHighestEquivalentValue(sapValue));
+					break;
+				case EQUAL :
+				case NOT_EQUAL :
+					if(ruleConstr.getComparison() == Comparison.NOT_EQUAL)
+						bldr.append("NOT");
+					bldr.append("BETWEEN");
+					appendValue(lhsSCol, lhsSCol.getLowestEquivalentValue(sapValue));
+					bldr.append("AND");
+					appendValue(lhsSCol, lhsSCol.getHighestEquivalentValue(sapValue));
+					break;
+			}
+		}
+
+		private void appendValue(SColumn sqlCol, Object sapValue)
+		{
+			if(isParameterised())
+			{
+				bldr.append(valuePlaceHolder);
+				addParameterColumnAndValue(sqlCol, sapValue);
+			}
+			else
+				bldr.append(sqlCol.sapelliObjectToLiteral(sapValue, true));
+		}
+
 		/**
 		 * Produces: "(flagsColumn & flagsPatter) = CAST(flagsPattern AS [type])"
 		 * 
@@ -2536,6 +3480,137 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 				bldr.append(Integer.toString(1));
 			}
 		}
+		
+		/**
+		 * Generates a subquery on the side table which holds the list elements in normalised form, e.g.:
+		 * 	"ROWID IN (SELECT Owner FROM Table_ListCol_Elements WHERE Element = ?)".
+		 * Only possible if the ListColumn is stored in normalised form (see {@link SQLTable#canExpress(Constraint)}).
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor#visit(uk.ac.ucl.excites.sapelli.storage.queries.constraints.ListMembershipConstraint)
+		 */
+		@Override
+		public void visit(ListMembershipConstraint listMembershipConstr)
+		{
+			ListElementsTable elementsTable = table.getListElementsTable(listMembershipConstr.getListColumnPointer());
+			if(elementsTable == null)
+			{
+				exception = new DBException("Failed to generate SQL for listMembershipConstraint on column " + listMembershipConstr.getListColumnPointer().getQualifiedColumnName(table.schema) + " (list is not stored in normalised form)");
+				return;
+			}
+			bldr.append(elementsTable.ownerKeyExpression);
+			if(!listMembershipConstr.isContained())
+				bldr.append("NOT");
+			bldr.append("IN (SELECT");
+			bldr.append(elementsTable.ownerColumn.sanitisedName);
+			bldr.append("FROM");
+			bldr.append(elementsTable.sanitisedName);
+			bldr.append("WHERE");
+			bldr.append(elementsTable.elementColumn.sanitisedName);
+			Object element = listMembershipConstr.getElement();
+			if(element == null)
+				bldr.append("IS NULL");
+			else
+			{
+				bldr.append(getComparisonOperator(Comparison.EQUAL));
+				if(isParameterised())
+				{
+					bldr.append(valuePlaceHolder);
+					addParameterColumnAndValue(elementsTable.elementColumn, element);
+				}
+				else
+					bldr.append(elementsTable.elementColumn.sapelliObjectToLiteral(element, true));
+			}
+			bldr.append(")", false);
+		}
+		
+		/**
+		 * Generates range conditions on the latitude & longitude (sub)columns, e.g.:
+		 * 	"(Loc_Lat IS NOT NULL AND Loc_Lat BETWEEN ? AND ? AND Loc_Lon BETWEEN ? AND ?)",
+		 * preceded by a condition on the spatial index of the LocationColumn if it has one (see {@link LocationIndex}).
+		 * The explicit null check ensures that records with a {@code null} location do match the negation of the constraint.
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor#visit(uk.ac.ucl.excites.sapelli.storage.queries.constraints.BoundingBoxConstraint)
+		 */
+		@Override
+		public void visit(BoundingBoxConstraint boundingBoxConstr)
+		{
+			ColumnPointer<? extends LocationColumn> cp = boundingBoxConstr.getLocationColumnPointer();
+			SColumn latCol = table.getSQLColumn(new ColumnPointer<FloatColumn>(cp, Location.COLUMN_LATITUDE));
+			SColumn lonCol = table.getSQLColumn(new ColumnPointer<FloatColumn>(cp, Location.COLUMN_LONGITUDE));
+			if(latCol == null || lonCol == null)
+			{
+				exception = new DBException("Failed to generate SQL for boundingBoxConstraint on column " + cp.getQualifiedColumnName(table.schema));
+				return;
+			}
+			boolean crossesAntimeridian = boundingBoxConstr.crossesAntimeridian();
+			bldr.append("(");
+			bldr.openTransaction(" AND ");
+			// Spatial index (if any):
+			LocationIndex locationIndex = table.getLocationIndex(cp);
+			if(locationIndex != null)
+			{
+				String candidateCondition = crossesAntimeridian ?
+					combineCandidateConditions(	locationIndex.getCandidateCondition(boundingBoxConstr.getMinLatitude(), boundingBoxConstr.getMaxLatitude(), boundingBoxConstr.getMinLongitude(), BoundingBoxConstraint.MAX_LONGITUDE),
+												locationIndex.getCandidateCondition(boundingBoxConstr.getMinLatitude(), boundingBoxConstr.getMaxLatitude(), BoundingBoxConstraint.MIN_LONGITUDE, boundingBoxConstr.getMaxLongitude())) :
+					locationIndex.getCandidateCondition(boundingBoxConstr.getMinLatitude(), boundingBoxConstr.getMaxLatitude(), boundingBoxConstr.getMinLongitude(), boundingBoxConstr.getMaxLongitude());
+				if(candidateCondition != null)
+					bldr.append(candidateCondition);
+			}
+			// Latitude:
+			bldr.openTransaction(SPACE);
+			bldr.append(latCol.sanitisedName);
+			bldr.append("IS NOT NULL");
+			bldr.commitTransaction();
+			bldr.openTransaction(SPACE);
+			bldr.append(latCol.sanitisedName);
+			bldr.append("BETWEEN");
+			appendValue(latCol, boundingBoxConstr.getMinLatitude());
+			bldr.append("AND");
+			appendValue(latCol, boundingBoxConstr.getMaxLatitude());
+			bldr.commitTransaction();
+			// Longitude:
+			bldr.openTransaction(SPACE);
+			if(crossesAntimeridian)
+			{
+				bldr.append("(");
+				bldr.append(lonCol.sanitisedName, false);
+				bldr.append(getComparisonOperator(Comparison.GREATER_OR_EQUAL));
+				appendValue(lonCol, boundingBoxConstr.getMinLongitude());
+				bldr.append("OR");
+				bldr.append(lonCol.sanitisedName);
+				bldr.append(getComparisonOperator(Comparison.SMALLER_OR_EQUAL));
+				appendValue(lonCol, boundingBoxConstr.getMaxLongitude());
+				bldr.append(")", false);
+			}
+			else
+			{
+				bldr.append(lonCol.sanitisedName);
+				bldr.append("BETWEEN");
+				appendValue(lonCol, boundingBoxConstr.getMinLongitude());
+				bldr.append("AND");
+				appendValue(lonCol, boundingBoxConstr.getMaxLongitude());
+			}
+			bldr.commitTransaction();
+			bldr.commitTransaction(false);
+			bldr.append(")", false);
+		}
+		
+		private String combineCandidateConditions(String condition1, String condition2)
+		{
+			return condition1 != null && condition2 != null ? "(" + condition1 + " OR " + condition2 + ")" : null;
+		}
+		
+		/**
+		 * Generates the SQL for the bounding box of the circle, which matches a superset of the records which lie within the radius.
+		 * Only to be used when the constraints are evaluated in memory afterwards (see {@link SQLTable#canNarrowDown(Constraint)}).
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor#visit(uk.ac.ucl.excites.sapelli.storage.queries.constraints.RadiusConstraint)
+		 */
+		@Override
+		public void visit(RadiusConstraint radiusConstr)
+		{
+			visit(radiusConstr.getBoundingBox());
+		}
 
 	}
 	
@@ -2827,6 +3902,101 @@ public abstract class SQLRecordStore<SRS extends SQLRecordStore<SRS, STable, SCo
 		
 	}
 	
+	/**
+	 * A {@link SelectProjection} class for the execution of "SELECT DISTINCT" queries on the SQL column(s) representing
+	 * a single Sapelli column, resulting in {@link Record}s in which only that column is set.
+	 */
+	protected class DistinctSelectionProjection extends RecordValueSetSelectionProjection<Record>
+	{
+		
+		private final List<SColumn> sqlColumns;
+		
+		public DistinctSelectionProjection(STable table, List<SColumn> sqlColumns)
+		{
+			super(table);
+			this.sqlColumns = sqlColumns;
+		}
+		
+		@Override
+		public String getProjectionString()
+		{
+			return "DISTINCT " + super.getProjectionString();
+		}
+		
+		@Override
+		public Record createRecordValueSet()
+		{
+			return table.schema.createRecord();
+		}
+		
+		@Override
+		public Collection<SColumn> getProjectionColumns()
+		{
+			return sqlColumns;
+		}
+		
+	}
+	
+	/**
+	 * Helper class to build SELECT statements (parameterised or literal) which probe for the existence of a single record,
+	 * or for a changed version of it, without retrieving any of its values: "SELECT 1 FROM table WHERE pk = X [AND (...)] LIMIT 1;"
+	 */
+	protected class RecordProbeHelper extends SelectHelper<SelectProjection>
+	{
+		
+		/**
+		 * The record (or reference) whose values will be bound to the parameters (in case the statement is parameterised), may be null
+		 */
+		public final RecordValueSet<?> recordOrReference;
+		
+		/**
+		 * Parameterised
+		 * 
+		 * @param table
+		 * @param changedOnly whether to only match a stored version of the record which has at least one value that differs from those of the record bound to the parameters
+		 */
+		public RecordProbeHelper(STable table, boolean changedOnly)
+		{
+			this(table, null, changedOnly);
+		}
+		
+		/**
+		 * @param table
+		 * @param recordOrReference a {@link RecordValueSet} instance, either the {@link Record} itself or a {@link RecordReference} pointing to it
+		 */
+		public RecordProbeHelper(STable table, RecordValueSet<?> recordOrReference)
+		{
+			super(table, PROBE_PROJECTION, false);
+			this.recordOrReference = recordOrReference;
+			buildProbe(false);
+		}
+		
+		/**
+		 * @param table
+		 * @param record a record instance (when the statement is not parameterised) or null (when it is parameterised)
+		 * @param changedOnly whether to only match a stored version of the record which has at least one value that differs from those of the given one
+		 */
+		public RecordProbeHelper(STable table, Record record, boolean changedOnly)
+		{
+			super(table, PROBE_PROJECTION, false);
+			this.recordOrReference = record;
+			buildProbe(changedOnly);
+		}
+		
+		private void buildProbe(boolean changedOnly)
+		{
+			bldr.append("SELECT");
+			bldr.append(projection.getProjectionString());
+			bldr.append("FROM");
+			bldr.append(table.sanitisedName);
+			appendWhereClause(recordOrReference);
+			if(changedOnly)
+				appendValueChangeClause((Record) recordOrReference);
+			bldr.append("LIMIT 1");
+		}
+		
+	}
+	
 	/**
 	 * A {@link SelectHelper} class for the execution of SELECT COUNT(*) queries.
 	 * 
@@ -112,7 +112,7 @@ public abstract class SQLRecordStoreUpgrader
 				// Close transaction:
 				recordStore.commitTransaction();
 				// Run clean-up before continuing with next upgrade step or completing upgrade:
-				recordStore.cleanup();
+				recordStore.cleanup(true); // count all tables, the step may have manipulated them directly
 			}
 			catch(Exception e)
 			{
@@ -233,16 +233,27 @@ public abstract class SQLRecordStoreUpgrader
 		}
 		
 		/**
-		 * Calls {@link SQLRecordStore#cleanup()}.
+		 * @param schema a schema whose table exists in the database
+		 * @return whether the table of the given schema has columns representing TimeStampColumns whose type differs from the one the
+		 * 	{@link TableFactory} of the record store currently uses for them
+		 * @see SQLRecordStore.SQLTable#getTimeStampColumnTypeMismatches()
+		 */
+		public boolean hasTimeStampColumnTypeMismatches(SQLRecordStore<?, ?, ?> recordStore, Schema schema) throws DBException
+		{
+			return !recordStore.getTableFactory().generateTable(schema).getTimeStampColumnTypeMismatches().isEmpty();
+		}
+		
+		/**
+		 * Calls {@link SQLRecordStore#cleanup(boolean)}, counting the records in all tables.
 		 * 
 		 * Note that this method is already called after completion of each upgrade step, so UpgradeSteps
 		 * should only call this themselves in case they require a cleanup to happen during the step itself.
 		 * 
-		 * @see SQLRecordStore#cleanup()
+		 * @see SQLRecordStore#cleanup(boolean)
 		 */
 		public void cleanup(SQLRecordStore<?, ?, ?> recordStore) throws DBException
 		{
-			recordStore.cleanup();
+			recordStore.cleanup(true);
 		}
 		
 		/**
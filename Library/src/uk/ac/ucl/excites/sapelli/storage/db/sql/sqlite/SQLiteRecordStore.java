@@ -21,9 +21,12 @@ package uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite;
 import java.io.Closeable;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
@@ -38,6 +41,7 @@ import uk.ac.ucl.excites.sapelli.shared.util.StringUtils;
 import uk.ac.ucl.excites.sapelli.shared.util.TimeUtils;
 import uk.ac.ucl.excites.sapelli.shared.util.TransactionalStringBuilder;
 import uk.ac.ucl.excites.sapelli.storage.StorageClient;
+import uk.ac.ucl.excites.sapelli.storage.db.RecordStoreMetrics.Counter;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBConstraintException;
 import uk.ac.ucl.excites.sapelli.storage.db.exceptions.DBPrimaryKeyException;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore;
@@ -46,6 +50,8 @@ import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.types.SQLiteBooleanColumn
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.types.SQLiteDoubleColumn;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.types.SQLiteIntegerColumn;
 import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.types.SQLiteStringColumn;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.types.SQLiteTimeStampColumn;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.IntegerTimeStampsUpgradeStep;
 import uk.ac.ucl.excites.sapelli.storage.model.Column;
 import uk.ac.ucl.excites.sapelli.storage.model.ColumnSet;
 import uk.ac.ucl.excites.sapelli.storage.model.ListColumn;
@@ -53,6 +59,7 @@ import uk.ac.ucl.excites.sapelli.storage.model.Record;
 import uk.ac.ucl.excites.sapelli.storage.model.RecordValueSet;
 import uk.ac.ucl.excites.sapelli.storage.model.Schema;
 import uk.ac.ucl.excites.sapelli.storage.model.ValueSet;
+import uk.ac.ucl.excites.sapelli.storage.model.ValueSetColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.BooleanColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.ByteArrayColumn;
 import uk.ac.ucl.excites.sapelli.storage.model.columns.FloatColumn;
@@ -62,7 +69,11 @@ import uk.ac.ucl.excites.sapelli.storage.model.indexes.AutoIncrementingPrimaryKe
 import uk.ac.ucl.excites.sapelli.storage.model.indexes.Index;
 import uk.ac.ucl.excites.sapelli.storage.model.indexes.PrimaryKey;
 import uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.BoundingBoxConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.ListMembershipConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RadiusConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.sources.Source;
+import uk.ac.ucl.excites.sapelli.storage.types.LocationColumn;
 import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
 import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
 import uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer;
@@ -96,6 +107,15 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 	
 	static private final boolean LOG_QUALIFIED_QUERIES = false;
 	
+	static private final String LIST_ELEMENTS_INDEX_SUFFIX = "ElementIdx";
+	static private final String LIST_ELEMENTS_TRIGGER_SUFFIX = "Cleanup";
+	
+	static private final String LOCATION_INDEX_INSERT_TRIGGER_SUFFIX = "Insert";
+	static private final String LOCATION_INDEX_UPDATE_TRIGGER_SUFFIX = "Update";
+	static private final String LOCATION_INDEX_DELETE_TRIGGER_SUFFIX = "Delete";
+	
+	static private final String RTREE_COMPILE_OPTION = "ENABLE_RTREE";
+	
 	/**
 	 * Test method
 	 */
@@ -110,14 +130,52 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 	
 	// Dynamics---------------------------------------------
 	private final SQLiteTableFactory factory;
+	private Boolean rTreeSupported;
 	
 	/**
 	 * @param client
 	 */
 	public SQLiteRecordStore(StorageClient client)
+	{
+		this(client, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param integerTimeStamps whether or not to store {@link TimeStampColumn} values as INTEGERs (see {@link SQLiteTimeStampColumn}) rather than as ISO-8601 Strings,
+	 * 	existing databases which use Strings must be converted using {@link uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.IntegerTimeStampsUpgradeStep}
+	 */
+	public SQLiteRecordStore(StorageClient client, boolean integerTimeStamps)
+	{
+		this(client, integerTimeStamps, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param integerTimeStamps whether or not to store {@link TimeStampColumn} values as INTEGERs (see {@link SQLiteTimeStampColumn}) rather than as ISO-8601 Strings,
+	 * 	existing databases which use Strings must be converted using {@link uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.IntegerTimeStampsUpgradeStep}
+	 * @param normalisedListColumns whether or not to also store the elements of {@link ListColumn}s in normalised form, in a side table per ListColumn
+	 * 	(see {@link SQLiteListElementsTable}), which allows {@link ListMembershipConstraint}s to be evaluated by the database; when enabled on an existing
+	 * 	database the missing side tables of existing tables are created and filled when those tables are first used (see {@link SQLiteTable#initialise()})
+	 */
+	public SQLiteRecordStore(StorageClient client, boolean integerTimeStamps, boolean normalisedListColumns)
+	{
+		this(client, integerTimeStamps, normalisedListColumns, false);
+	}
+	
+	/**
+	 * @param client
+	 * @param integerTimeStamps whether or not to store {@link TimeStampColumn} values as INTEGERs (see {@link SQLiteTimeStampColumn}) rather than as ISO-8601 Strings,
+	 * 	existing databases which use Strings must be converted using {@link uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades.IntegerTimeStampsUpgradeStep}
+	 * @param normalisedListColumns whether or not to also store the elements of {@link ListColumn}s in normalised form, in a side table per ListColumn
+	 * 	(see {@link SQLiteListElementsTable}), which allows {@link ListMembershipConstraint}s to be evaluated by the database
+	 * @param locationIndexes whether or not to add a spatial index to each {@link LocationColumn} (see {@link SQLiteLocationIndex}), which speeds up
+	 * 	the evaluation of {@link BoundingBoxConstraint}s and {@link RadiusConstraint}s
+	 */
+	public SQLiteRecordStore(StorageClient client, boolean integerTimeStamps, boolean normalisedListColumns, boolean locationIndexes)
 	{
 		super(client, PARAM_PLACEHOLDER);
-		factory = new SQLiteTableFactory();
+		factory = new SQLiteTableFactory(integerTimeStamps, normalisedListColumns, locationIndexes);
 	}
 
 	/* (non-Javadoc)
@@ -183,6 +241,7 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 	protected void doRollbackTransaction()
 	{
 		if(numberOfOpenTransactions() == 1) // higher numbers indicate nested transactions which are simulated
+		{
 			try
 			{
 				executeSQL("ROLLBACK TRANSACTION;");
@@ -191,6 +250,8 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			{
 				client.logError("Could not roll-back SQLite transaction: " + ExceptionHelpers.getMessageAndCause(ex));
 			}
+			forgetRecordCounts(); // the known counts may include rolled-back inserts
+		}
 	}
 	
 	/**
@@ -262,6 +323,75 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore#getColumnTypes(java.lang.String)
+	 */
+	@Override
+	protected Map<String, String> getColumnTypes(String sanitisedTableName) throws DBException
+	{
+		SQLiteCursor cursor = null;
+		try
+		{
+			SQLiteStringColumn<String> nameCol = new SQLiteStringColumn<String>(this, "name", null, null);
+			SQLiteStringColumn<String> typeCol = new SQLiteStringColumn<String>(this, "type", null, null);
+			cursor = executeQuery(	"PRAGMA table_info(" + sanitisedTableName + ");",
+									Collections.<SQLiteColumn<?, ?>> emptyList(),
+									Collections.<String> emptyList());
+			Map<String, String> columnTypes = new HashMap<String, String>();
+			if(cursor != null)
+				while(cursor.moveToNext())
+				{
+					String name = nameCol.getValueOrNull(cursor, 1);
+					if(name != null)
+						columnTypes.put(sanitiseIdentifier(name), typeCol.getValueOrNull(cursor, 2));
+				}
+			return columnTypes;
+		}
+		finally
+		{
+			if(cursor != null)
+				cursor.close();
+		}
+	}
+	
+	/**
+	 * Checks (once) whether the SQLite library was compiled with the R*Tree module.
+	 * 
+	 * @return whether or not R*Tree virtual tables can be created
+	 * @see https://www.sqlite.org/rtree.html
+	 * @see https://www.sqlite.org/pragma.html#pragma_compile_options
+	 */
+	protected boolean isRTreeSupported()
+	{
+		if(rTreeSupported == null)
+		{
+			SQLiteCursor cursor = null;
+			try
+			{
+				SQLiteStringColumn<String> optionCol = new SQLiteStringColumn<String>(this, "compile_option", null, null);
+				cursor = executeQuery(	"PRAGMA compile_options;",
+										Collections.<SQLiteColumn<?, ?>> emptyList(),
+										Collections.<String> emptyList());
+				rTreeSupported = false;
+				if(cursor != null)
+					while(cursor.moveToNext())
+						if(RTREE_COMPILE_OPTION.equals(optionCol.getValueOrNull(cursor, 0)))
+							rTreeSupported = true;
+			}
+			catch(DBException e)
+			{
+				client.logError("Error in isRTreeSupported()", e);
+				rTreeSupported = false;
+			}
+			finally
+			{
+				if(cursor != null)
+					cursor.close();
+			}
+		}
+		return rTreeSupported;
+	}
+	
 	/* (non-Javadoc)
 	 * @see uk.ac.ucl.excites.sapelli.storage.db.RecordStore#hasFullIndexSupport()
 	 */
@@ -395,6 +525,14 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 				return new SelectROWIDHelper(SQLiteTable.this);
 			}
 		};
+		private final StatementHandle changeProbeStatementHandle = new StatementHandle(/*RecordProbeHelper.class*/)
+		{
+			@Override
+			protected StatementHelper getHelper()
+			{
+				return new RecordProbeHelper(SQLiteTable.this, true);
+			}
+		};
 		private final StatementHandle insertStatementHandle = new StatementHandle(/*RecordInsertHelper.class*/)
 		{
 			@Override
@@ -436,12 +574,91 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 		 * @see https://www.sqlite.org/autoinc.html
 		 */
 		private SQLiteIntegerColumn<?> rowidAliasColumn;
+		
+		/**
+		 * Side tables holding the elements of ListColumns in normalised form (empty unless the store uses normalised list columns).
+		 */
+		private final List<SQLiteListElementsTable> listElementsTables = new ArrayList<SQLiteListElementsTable>();
+		
+		/**
+		 * Spatial indexes on LocationColumns (empty unless the store uses location indexes).
+		 */
+		private final List<SQLiteLocationIndex> locationIndexes = new ArrayList<SQLiteLocationIndex>();
 
 		public SQLiteTable(Schema schema)
 		{
 			super(schema);
 		}
 		
+		/**
+		 * @param listElementsTable
+		 */
+		public void addListElementsTable(SQLiteListElementsTable listElementsTable)
+		{
+			super.addListElementsTable(listElementsTable);
+			listElementsTables.add(listElementsTable);
+		}
+		
+		/**
+		 * @param locationIndex
+		 */
+		public void addLocationIndex(SQLiteLocationIndex locationIndex)
+		{
+			super.addLocationIndex(locationIndex);
+			locationIndexes.add(locationIndex);
+		}
+		
+		/**
+		 * Refuses to use a table that already exists in the database if its time stamps are stored in another way (INTEGER vs.
+		 * String) than this store uses, which is the case when it was created before {@code integerTimeStamps} was changed and
+		 * it was not converted using {@link IntegerTimeStampsUpgradeStep}.
+		 * 
+		 * Creates and fills any side tables (list elements tables or location indexes) which are missing for a table that already exists in the database,
+		 * which is the case when it was created before normalised list columns or location indexes were enabled.
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#initialise()
+		 */
+		@Override
+		public void initialise() throws DBException
+		{
+			boolean hasTimeStampColumns = false;
+			for(SQLiteColumn<?, ?> sqlCol : sqlColumns.values())
+				if(sqlCol.sourceColumnPointer != null && sqlCol.sourceColumnPointer.getColumn() instanceof TimeStampColumn)
+					hasTimeStampColumns = true;
+			if((!hasTimeStampColumns && listElementsTables.isEmpty() && locationIndexes.isEmpty()) || !isInDB())
+				return;
+			List<SQLiteColumn<?, ?>> mismatches = hasTimeStampColumns ? getTimeStampColumnTypeMismatches() : Collections.<SQLiteColumn<?, ?>> emptyList();
+			if(!mismatches.isEmpty())
+				throw new DBException(	"Column " + mismatches.get(0).sanitisedName + " of " + toString() + " was not created with type " + mismatches.get(0).type
+										+ ", its time stamps are stored in another way than this store uses (see " + IntegerTimeStampsUpgradeStep.class.getSimpleName() + ")");
+			if(listElementsTables.isEmpty() && locationIndexes.isEmpty())
+				return;
+			startTransaction();
+			try
+			{
+				for(SQLiteListElementsTable elementsTable : listElementsTables)
+					if(!doesTableExist(elementsTable.unsanitisedName))
+					{
+						client.logInfo("Adding " + elementsTable.toString() + " to existing " + toString());
+						elementsTable.create();
+						elementsTable.populate();
+					}
+				for(SQLiteLocationIndex locationIndex : locationIndexes)
+					if(!doesTableExist(locationIndex.unsanitisedName))
+					{
+						client.logInfo("Adding " + locationIndex.toString() + " to existing " + toString());
+						locationIndex.create();
+						locationIndex.populate();
+					}
+			}
+			catch(DBException dbE)
+			{
+				rollbackTransactions();
+				throw dbE;
+			}
+			commitTransaction();
+		}
+		
 		@Override
 		protected SQLRecordStore<SQLiteRecordStore, SQLiteTable, SQLiteColumn<?, ?>>.TableCreationHelper getTableCreationHelper()
 		{
@@ -492,6 +709,15 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			return executeLongQuery(recordOrReference, ROWIDStatementHandle);
 		}
 		
+		/* (non-Javadoc)
+		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#isRecordChanged(uk.ac.ucl.excites.sapelli.storage.model.Record)
+		 */
+		@Override
+		public boolean isRecordChanged(Record record) throws DBException
+		{
+			return executeLongQuery(record, changeProbeStatementHandle) != null;
+		}
+		
 		/**
 		 * @see https://www.sqlite.org/lang_createtable.html#rowid
 		 * @see https://www.sqlite.org/autoinc.html
@@ -499,6 +725,37 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 		 */
 		@Override
 		public synchronized void insert(Record record) throws DBPrimaryKeyException, DBConstraintException, DBException
+		{
+			if(listElementsTables.isEmpty())
+			{
+				insertRow(record);
+				return;
+			}
+			
+			// Insert the row and its list elements within a single transaction:
+			startTransaction();
+			try
+			{
+				long rowID = insertRow(record);
+				for(SQLiteListElementsTable elementsTable : listElementsTables)
+					elementsTable.insertElements(rowID, record);
+			}
+			catch(DBException dbE)
+			{
+				rollbackTransactions();
+				throw dbE;
+			}
+			commitTransaction();
+		}
+		
+		/**
+		 * @param record
+		 * @return the ROWID of the inserted row
+		 * @throws DBPrimaryKeyException
+		 * @throws DBConstraintException
+		 * @throws DBException
+		 */
+		private long insertRow(Record record) throws DBPrimaryKeyException, DBConstraintException, DBException
 		{
 			// Get/recycle statement...
 			SQLiteStatement insertStatement = insertStatementHandle.getStatement();
@@ -552,18 +809,14 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 					commitTransaction();
 				}
 			}
+			
+			return rowID;
 		}
 
 		/**
 		 * Note:
-		 * 	Currently the detection of _actual_ changes to the record does *not* work.
-		 * 	If the UPDATE statement's WHERE clause matches an existing row that row will (at least in SQLite) be considered
-		 * 	as changed/affected (i.e. this method will return true) even if the actual values remained unchanged.
-		 * 	The only obvious way to fix this is to generate UPDATE statements in which the WHERE clause checks whether
-		 * 	values _need_ to be updated. E.g. "UPDATE table SET col1 = "newVal1", col2 = "newVal2" WHERE id = X AND (col1 IS NOT 'newVal1' OR col2 IS NOT 'newVal2');"
-		 * 	We could implement such a solution in RecordUpdateHelper but will wait until we are certain this feature will be required.
-		 * @see See: <a href="http://stackoverflow.com/questions/26372449">http://stackoverflow.com/questions/26372449</a>
-		 * TODO implement solution to detect actual record value changes
+		 * 	The UPDATE statement only matches the row if at least one of its values needs to be updated (see {@link RecordUpdateHelper}),
+		 * 	so this method returns {@code false} when the given record is identical to the stored one.
 		 * 
 		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#update(uk.ac.ucl.excites.sapelli.storage.model.Record)
 		 */
@@ -576,8 +829,33 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			// Bind parameters:
 			updateStatement.retrieveAndBindAll(record);
 			
-			// Execute:
-			return updateStatement.executeUpdate() == 1;
+			if(listElementsTables.isEmpty())
+				// Execute:
+				return updateStatement.executeUpdate() == 1;
+			
+			// Update the row and, if it changed, replace its list elements, within a single transaction:
+			boolean changed;
+			startTransaction();
+			try
+			{
+				changed = updateStatement.executeUpdate() == 1;
+				if(changed)
+				{
+					Long rowID = getROWID(record);
+					for(SQLiteListElementsTable elementsTable : listElementsTables)
+					{
+						elementsTable.deleteElements(rowID);
+						elementsTable.insertElements(rowID, record);
+					}
+				}
+			}
+			catch(DBException dbE)
+			{
+				rollbackTransactions();
+				throw dbE;
+			}
+			commitTransaction();
+			return changed;
 		}
 		
 		public synchronized void upsert(Record record) throws DBException
@@ -586,6 +864,28 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			// and http://stackoverflow.com/questions/418898/sqlite-upsert-not-insert-or-replace
 		}
 
+		/* (non-Javadoc)
+		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#update(uk.ac.ucl.excites.sapelli.storage.queries.RecordsQuery, uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLColumn, java.lang.Object)
+		 */
+		@Override
+		public synchronized int update(RecordsQuery query, SQLiteColumn<?, ?> sqlCol, Object sapValue) throws DBException
+		{
+			RecordsUpdateHelper updateHelper = new RecordsUpdateHelper(this, query, sqlCol, sapValue);
+			SQLiteStatement updateByQStatement = generateStatement(updateHelper.getQuery(), updateHelper.getParameterColumns());
+			
+			// Bind parameters:
+			updateByQStatement.bindAll(updateHelper.getSapArguments());
+			
+			// Execute:
+			int affected = updateByQStatement.executeUpdate();
+			
+			// Close statement:
+			updateByQStatement.close();
+			
+			// Return number of affected rows:
+			return affected;
+		}
+		
 		/* (non-Javadoc)
 		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#delete(uk.ac.ucl.excites.sapelli.storage.model.RecordValueSet)
 		 */
@@ -607,6 +907,10 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 		 */
 		public synchronized int delete(RecordsQuery query) throws DBException
 		{
+			if(!canExpress(query.getConstraints()))
+				return super.delete(query); // delete records one by one
+			
+			// Note: list elements (if any) are deleted by a trigger (see SQLiteListElementsTable)
 			RecordsDeleteHelper deleteHelper = new RecordsDeleteHelper(this, query);
 			SQLiteStatement deleteByQStatement = generateStatement(deleteHelper.getQuery(), deleteHelper.getParameterColumns());
 			
@@ -659,6 +963,27 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			}
 		}
 		
+		/* (non-Javadoc)
+		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#executeProbe(uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.RecordProbeHelper)
+		 */
+		@Override
+		protected synchronized boolean executeProbe(RecordProbeHelper probeHelper) throws DBException
+		{
+			SQLiteStatement probeStatement = generateStatement(probeHelper.getQuery(), probeHelper.getParameterColumns());
+			try
+			{
+				// Bind parameters:
+				probeStatement.retrieveAndBindAll(probeHelper.recordOrReference);
+				
+				// Execute:
+				return probeStatement.executeLongQuery() != null;
+			}
+			finally
+			{
+				probeStatement.close();
+			}
+		}
+		
 		/* (non-Javadoc)
 		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#getRecordCount()
 		 */
@@ -668,14 +993,32 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			return countStatementHandle.getStatement().executeLongQuery();
 		}
 		
+		/**
+		 * Drops the table and its side tables holding list elements or location indexes (if any).
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLTable#drop()
+		 */
+		@Override
+		public void drop() throws DBException
+		{
+			super.drop(); // also drops the triggers on the table
+			for(SQLiteListElementsTable elementsTable : listElementsTables)
+				elementsTable.drop();
+			for(SQLiteLocationIndex locationIndex : locationIndexes)
+				locationIndex.drop();
+		}
+		
 		@Override
 		public synchronized void release()
 		{
 			ROWIDStatementHandle.close();
+			changeProbeStatementHandle.close();
 			insertStatementHandle.close();
 			updateStatementHandle.close();
 			deleteStatementHandle.close();
 			countStatementHandle.close();
+			for(SQLiteListElementsTable elementsTable : listElementsTables)
+				elementsTable.release();
 		}
 		
 		/**
@@ -712,7 +1055,10 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 					statement = generateStatement(helper.getQuery(), helper.getParameterColumns());
 				}
 				else
+				{
 					statement.clearAllBindings(); // clear bindings for reuse
+					metrics.increment(Counter.STATEMENT_CACHE_HITS);
+				}
 				// Return:
 				return statement;
 			}
@@ -836,6 +1182,31 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 	protected class SQLiteTableFactory extends BasicTableFactory
 	{
 		
+		static private final String LIST_ELEMENT_COLUMN_NAME = "Element";
+		
+		private final boolean normaliseListColumns;
+		private final boolean indexLocationColumns;
+		
+		/**
+		 * @param useIntegersForTimeStampColumns
+		 */
+		public SQLiteTableFactory(boolean useIntegersForTimeStampColumns)
+		{
+			this(useIntegersForTimeStampColumns, false, false);
+		}
+		
+		/**
+		 * @param useIntegersForTimeStampColumns
+		 * @param normaliseListColumns whether or not to add a {@link SQLiteListElementsTable} for each ListColumn
+		 * @param indexLocationColumns whether or not to add a {@link SQLiteLocationIndex} for each LocationColumn
+		 */
+		public SQLiteTableFactory(boolean useIntegersForTimeStampColumns, boolean normaliseListColumns, boolean indexLocationColumns)
+		{
+			super(useIntegersForTimeStampColumns);
+			this.normaliseListColumns = normaliseListColumns;
+			this.indexLocationColumns = indexLocationColumns;
+		}
+		
 		@Override
 		protected SQLiteTable createTable(Schema schema) throws DBException
 		{
@@ -858,12 +1229,31 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			PrimaryKey pk = table.schema.getPrimaryKey();
 			if(!pk.isMultiColumn())
 			{
-				SQLiteColumn<?, ?> pkSQLiteColumn = table.getSQLColumn(pk.getColumns(false).get(0));
-				if(pkSQLiteColumn.type.equalsIgnoreCase(SQLiteIntegerColumn.SQLITE_DATA_TYPE))
+				SQLiteColumn<?, ?> pkSQLiteColumn = table.getSQLColumn(pk.getColumns(false).get(0)); // null if the column is composite (e.g. a foreign key)
+				if(pkSQLiteColumn != null && pkSQLiteColumn.type.equalsIgnoreCase(SQLiteIntegerColumn.SQLITE_DATA_TYPE))
 					table.rowidAliasColumn = (SQLiteIntegerColumn<?>) pkSQLiteColumn;
 			}
 		}
 
+		/**
+		 * Adds a location index once all subcolumns of a LocationColumn have been added to the table (if location indexes are enabled).
+		 * An R*Tree is used if the SQLite library supports it, otherwise a grid.
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.visitors.SchemaTraverser#leave(uk.ac.ucl.excites.sapelli.storage.model.ValueSetColumn)
+		 */
+		@Override
+		public <VS extends ValueSet<CS>, CS extends ColumnSet> void leave(ValueSetColumn<VS, CS> valueSetCol)
+		{
+			super.leave(valueSetCol);
+			if(indexLocationColumns && valueSetCol instanceof LocationColumn)
+			{
+				ColumnPointer<LocationColumn> locColPointer = getColumnPointer((LocationColumn) valueSetCol); // (parent stack no longer contains the LocationColumn itself)
+				table.addLocationIndex(isRTreeSupported() ?
+					new SQLiteRTreeLocationIndex(table, locColPointer) :
+					new SQLiteGridLocationIndex(table, locColPointer));
+			}
+		}
+
 		/* (non-Javadoc)
 		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.BasicTableFactory#addBoolColForAllOptionalValueSetCol(uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer, uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.TypeMapping)
 		 */
@@ -891,9 +1281,19 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			table.addColumn(new SQLiteBooleanColumn.Simple(SQLiteRecordStore.this, getColumnPointer(boolCol)));
 		}
 		
+		/**
+		 * TimeStampColumns are represented either by a {@link SQLiteTimeStampColumn} (INTEGER) or, by default, by an ISO-8601 String.
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.visitors.ColumnVisitor#visit(uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn)
+		 */
 		@Override
 		public void visit(final TimeStampColumn timeStampCol)
 		{
+			if(isUsingIntegersForTimeStampColumns())
+			{
+				table.addColumn(new SQLiteTimeStampColumn(SQLiteRecordStore.this, getColumnPointer(timeStampCol)));
+				return;
+			}
 			table.addColumn(new SQLiteStringColumn<TimeStamp>(SQLiteRecordStore.this, getColumnPointer(timeStampCol), new TypeMapping<String, TimeStamp>()
 			{
 
@@ -938,16 +1338,17 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 		
 		/**
 		 * We store the values of ListColumns as either String or BLOBs, based on the {@code useStringBasedColumn} parameter.
-		 * (Later we may change this by solution based on normalisation.)
+		 * When normalisation is enabled the elements are also stored in a side table (see {@link SQLiteListElementsTable}).
 		 * 
 		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.BasicTableFactory#visitListColumn(uk.ac.ucl.excites.sapelli.storage.model.ListColumn, boolean)
 		 */
 		@Override
 		public <L extends List<T>, T> void visitListColumn(final ListColumn<L, T> listCol, boolean useStringBasedColumn)
 		{
+			ColumnPointer<ListColumn<L, T>> listColPointer = getColumnPointer(listCol);
 			if(useStringBasedColumn)
 			{	// use SQLiteStringColumn
-				table.addColumn(new SQLiteStringColumn<L>(SQLiteRecordStore.this, getColumnPointer(listCol), new TypeMapping<String, L>()
+				table.addColumn(new SQLiteStringColumn<L>(SQLiteRecordStore.this, listColPointer, new TypeMapping<String, L>()
 				{
 					@Override
 					public String toSQLType(L value)
@@ -980,7 +1381,7 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			}
 			else
 			{	// use SQLiteBlobColumn:
-				table.addColumn(new SQLiteBlobColumn<L>(SQLiteRecordStore.this, getColumnPointer(listCol), new TypeMapping<byte[], L>()
+				table.addColumn(new SQLiteBlobColumn<L>(SQLiteRecordStore.this, listColPointer, new TypeMapping<byte[], L>()
 				{
 					@Override
 					public byte[] toSQLType(L value)
@@ -1011,6 +1412,55 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 					}
 				}));
 			}
+			
+			// Side table:
+			if(normaliseListColumns)
+				table.addListElementsTable(new SQLiteListElementsTable(table, listColPointer, getListElementColumn(listCol.getSingleColumn())));
+		}
+		
+		/**
+		 * Creates the SQLiteColumn to hold the elements of a ListColumn in its side table.
+		 * Elements of types without a dedicated SQLite type are stored as Strings.
+		 * 
+		 * @param singleCol
+		 * @return
+		 */
+		@SuppressWarnings("unchecked")
+		protected <T> SQLiteColumn<?, ?> getListElementColumn(final Column<T> singleCol)
+		{
+			if(singleCol instanceof BooleanColumn)
+				return new SQLiteBooleanColumn.Simple(SQLiteRecordStore.this, LIST_ELEMENT_COLUMN_NAME, new ColumnPointer<BooleanColumn>((BooleanColumn) singleCol));
+			if(singleCol instanceof IntegerColumn)
+				return new SQLiteIntegerColumn<Long>(SQLiteRecordStore.this, LIST_ELEMENT_COLUMN_NAME, new ColumnPointer<IntegerColumn>((IntegerColumn) singleCol), null);
+			if(singleCol instanceof FloatColumn)
+				return new SQLiteDoubleColumn<Double>(SQLiteRecordStore.this, LIST_ELEMENT_COLUMN_NAME, new ColumnPointer<FloatColumn>((FloatColumn) singleCol), null);
+			if(singleCol instanceof StringColumn)
+				return new SQLiteStringColumn<String>(SQLiteRecordStore.this, LIST_ELEMENT_COLUMN_NAME, new ColumnPointer<StringColumn>((StringColumn) singleCol), null);
+			if(singleCol instanceof ByteArrayColumn)
+				return new SQLiteBlobColumn<byte[]>(SQLiteRecordStore.this, LIST_ELEMENT_COLUMN_NAME, new ColumnPointer<ByteArrayColumn>((ByteArrayColumn) singleCol), null);
+			// else:
+			return new SQLiteStringColumn<T>(SQLiteRecordStore.this, LIST_ELEMENT_COLUMN_NAME, new ColumnPointer<Column<T>>(singleCol), new TypeMapping<String, T>()
+			{
+				@Override
+				public String toSQLType(T value)
+				{
+					return singleCol.toString(value);
+				}
+
+				@Override
+				public T toSapelliType(String value)
+				{
+					try
+					{
+						return singleCol.parse(value);
+					}
+					catch(Exception e)
+					{
+						client.logError("Error upon parsing list element", e);
+						return null;
+					}
+				}
+			});
 		}
 
 	}
@@ -1091,6 +1541,21 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 			return bldr.toString();
 		}
 
+		/**
+		 * Also creates the side tables holding list elements or location indexes (if any).
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.TableCreationHelper#createTableAndIndexes()
+		 */
+		@Override
+		public void createTableAndIndexes() throws DBException
+		{
+			super.createTableAndIndexes();
+			for(SQLiteListElementsTable elementsTable : table.listElementsTables)
+				elementsTable.create();
+			for(SQLiteLocationIndex locationIndex : table.locationIndexes)
+				locationIndex.create();
+		}
+
 		@Override
 		protected void addTableConstraints(List<Index> indexesToProcess)
 		{
@@ -1135,6 +1600,407 @@ public abstract class SQLiteRecordStore extends SQLRecordStore<SQLiteRecordStore
 		
 	}
 	
+	/**
+	 * {@link ListElementsTable} implementation in which the elements are linked to the owning row by means of its ROWID.
+	 * A trigger on the owning table removes the elements of deleted rows, so that all kinds of DELETE statements keep the side table in sync.
+	 * 
+	 * Note: the ROWIDs of tables without an INTEGER PRIMARY KEY may change upon a VACUUM, which must therefore be avoided on databases with side tables.
+	 * @see https://www.sqlite.org/lang_createtrigger.html
+	 */
+	protected class SQLiteListElementsTable extends ListElementsTable
+	{
+		
+		private final SQLiteTable ownerTable;
+		private final String unsanitisedName;
+		
+		private SQLiteStatement insertStatement;
+		private SQLiteStatement deleteStatement;
+		
+		/**
+		 * @param ownerTable
+		 * @param listColumnPointer
+		 * @param elementColumn
+		 */
+		public SQLiteListElementsTable(SQLiteTable ownerTable, ColumnPointer<? extends ListColumn<?, ?>> listColumnPointer, SQLiteColumn<?, ?> elementColumn)
+		{
+			this(ownerTable, ownerTable.getUnsanitisedName() + "_" + listColumnPointer.getQualifiedColumnName(SQLiteColumn.QUALIFIED_COLUMN_NAME_SEPARATOR) + "_Elements", listColumnPointer, elementColumn);
+		}
+		
+		private SQLiteListElementsTable(SQLiteTable ownerTable, String unsanitisedName, ColumnPointer<? extends ListColumn<?, ?>> listColumnPointer, SQLiteColumn<?, ?> elementColumn)
+		{
+			super(	unsanitisedName,
+					listColumnPointer,
+					"ROWID",
+					new SQLiteIntegerColumn<Long>(SQLiteRecordStore.this, "Owner", null, null),
+					new SQLiteIntegerColumn<Long>(SQLiteRecordStore.this, "Idx", null, null),
+					elementColumn);
+			this.ownerTable = ownerTable;
+			this.unsanitisedName = unsanitisedName;
+		}
+		
+		/**
+		 * Creates the side table, the index on its element column, and the trigger which deletes the elements of deleted rows of the owning table.
+		 * 
+		 * @throws DBException
+		 */
+		public void create() throws DBException
+		{
+			executeSQL(String.format(	"CREATE TABLE %1$s (%2$s %3$s NOT NULL, %4$s %5$s NOT NULL, %6$s %7$s, PRIMARY KEY (%2$s, %4$s));",
+										sanitisedName,
+										ownerColumn.sanitisedName, ownerColumn.type,
+										indexColumn.sanitisedName, indexColumn.type,
+										elementColumn.sanitisedName, elementColumn.type));
+			executeSQL(String.format(	"CREATE INDEX %s ON %s (%s, %s);",
+										sanitiseIdentifier(unsanitisedName + "_" + LIST_ELEMENTS_INDEX_SUFFIX),
+										sanitisedName,
+										elementColumn.sanitisedName,
+										ownerColumn.sanitisedName));
+			executeSQL(String.format(	"CREATE TRIGGER %s AFTER DELETE ON %s FOR EACH ROW BEGIN DELETE FROM %s WHERE %s = OLD.%s; END;",
+										sanitiseIdentifier(unsanitisedName + "_" + LIST_ELEMENTS_TRIGGER_SUFFIX),
+										ownerTable.sanitisedName,
+										sanitisedName,
+										ownerColumn.sanitisedName,
+										ownerKeyExpression));
+		}
+		
+		/**
+		 * Inserts the elements of the list held by the given record.
+		 * 
+		 * @param ownerROWID the ROWID of the record's row in the owning table
+		 * @param record
+		 * @throws DBException
+		 */
+		public void insertElements(long ownerROWID, Record record) throws DBException
+		{
+			List<?> list = (List<?>) listColumnPointer.retrieveValue(record);
+			if(list == null || list.isEmpty())
+				return;
+			if(insertStatement == null)
+				insertStatement = generateStatement(
+					String.format(	"INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?);",
+									sanitisedName,
+									ownerColumn.sanitisedName,
+									indexColumn.sanitisedName,
+									elementColumn.sanitisedName),
+					Arrays.<SQLiteColumn<?, ?>> asList(ownerColumn, indexColumn, elementColumn));
+			long idx = 0;
+			for(Object element : list)
+			{
+				insertStatement.clearAllBindings();
+				insertStatement.bindAll(Arrays.<Object> asList(ownerROWID, idx++, element));
+				insertStatement.executeInsert();
+			}
+		}
+		
+		/**
+		 * Inserts the elements of the lists held by all records in the owning table.
+		 * 
+		 * @throws DBException
+		 */
+		public void populate() throws DBException
+		{
+			for(Record record : ownerTable.select(new RecordsQuery(ownerTable.schema)))
+			{
+				Long rowID = ownerTable.getROWID(record);
+				if(rowID != null)
+					insertElements(rowID, record);
+			}
+		}
+		
+		/**
+		 * Deletes the elements owned by the row with the given ROWID.
+		 * 
+		 * @param ownerROWID
+		 * @throws DBException
+		 */
+		public void deleteElements(long ownerROWID) throws DBException
+		{
+			if(deleteStatement == null)
+				deleteStatement = generateStatement(
+					String.format(	"DELETE FROM %s WHERE %s = ?;",
+									sanitisedName,
+									ownerColumn.sanitisedName),
+					Collections.<SQLiteColumn<?, ?>> singletonList(ownerColumn));
+			else
+				deleteStatement.clearAllBindings();
+			deleteStatement.bindAll(Collections.singletonList(ownerROWID));
+			deleteStatement.executeDelete();
+		}
+		
+		/**
+		 * Drops the side table (the trigger is dropped along with the owning table).
+		 * 
+		 * @throws DBException
+		 */
+		public void drop() throws DBException
+		{
+			release();
+			executeSQL(String.format("DROP TABLE IF EXISTS %s;", sanitisedName));
+		}
+		
+		public void release()
+		{
+			if(insertStatement != null)
+			{
+				insertStatement.close();
+				insertStatement = null;
+			}
+			if(deleteStatement != null)
+			{
+				deleteStatement.close();
+				deleteStatement = null;
+			}
+		}
+		
+	}
+	
+	/**
+	 * {@link LocationIndex} implementation which uses a side table, linked to the owning rows by means of their ROWID.
+	 * The side table is kept in sync with the latitude & longitude columns of the owning table by triggers, so no further work is needed upon insert/update/delete.
+	 * 
+	 * Note: the ROWIDs of tables without an INTEGER PRIMARY KEY may change upon a VACUUM, which must therefore be avoided on databases with side tables.
+	 * @see https://www.sqlite.org/lang_createtrigger.html
+	 */
+	protected abstract class SQLiteLocationIndex extends LocationIndex
+	{
+		
+		static protected final String OWNER_COLUMN_NAME = "Owner";
+		
+		protected final SQLiteTable ownerTable;
+		protected final String unsanitisedName;
+		protected final String sanitisedName;
+		
+		/**
+		 * @param ownerTable
+		 * @param locationColumnPointer
+		 * @param suffix
+		 */
+		public SQLiteLocationIndex(SQLiteTable ownerTable, ColumnPointer<? extends LocationColumn> locationColumnPointer, String suffix)
+		{
+			super(ownerTable, locationColumnPointer);
+			this.ownerTable = ownerTable;
+			this.unsanitisedName = ownerTable.getUnsanitisedName() + "_" + locationColumnPointer.getQualifiedColumnName(SQLiteColumn.QUALIFIED_COLUMN_NAME_SEPARATOR) + "_" + suffix;
+			this.sanitisedName = sanitiseIdentifier(unsanitisedName);
+		}
+		
+		/**
+		 * Creates the side table (and any indexes on it), as well as the triggers which keep it in sync with the owning table.
+		 * 
+		 * @throws DBException
+		 */
+		public void create() throws DBException
+		{
+			createSideTable();
+			executeSQL(String.format(	"CREATE TRIGGER %s AFTER INSERT ON %s FOR EACH ROW WHEN NEW.%s IS NOT NULL BEGIN INSERT INTO %s (%s) VALUES (%s); END;",
+										sanitiseIdentifier(unsanitisedName + "_" + LOCATION_INDEX_INSERT_TRIGGER_SUFFIX),
+										ownerTable.sanitisedName,
+										latitudeColumn.sanitisedName,
+										sanitisedName,
+										getEntryColumns(),
+										getEntryValues("NEW.ROWID", "NEW." + latitudeColumn.sanitisedName, "NEW." + longitudeColumn.sanitisedName)));
+			executeSQL(String.format(	"CREATE TRIGGER %s AFTER UPDATE OF %s, %s ON %s FOR EACH ROW BEGIN DELETE FROM %s WHERE %s = OLD.ROWID; INSERT INTO %s (%s) SELECT %s WHERE NEW.%s IS NOT NULL; END;",
+										sanitiseIdentifier(unsanitisedName + "_" + LOCATION_INDEX_UPDATE_TRIGGER_SUFFIX),
+										latitudeColumn.sanitisedName,
+										longitudeColumn.sanitisedName,
+										ownerTable.sanitisedName,
+										sanitisedName,
+										OWNER_COLUMN_NAME,
+										sanitisedName,
+										getEntryColumns(),
+										getEntryValues("NEW.ROWID", "NEW." + latitudeColumn.sanitisedName, "NEW." + longitudeColumn.sanitisedName),
+										latitudeColumn.sanitisedName));
+			executeSQL(String.format(	"CREATE TRIGGER %s AFTER DELETE ON %s FOR EACH ROW BEGIN DELETE FROM %s WHERE %s = OLD.ROWID; END;",
+										sanitiseIdentifier(unsanitisedName + "_" + LOCATION_INDEX_DELETE_TRIGGER_SUFFIX),
+										ownerTable.sanitisedName,
+										sanitisedName,
+										OWNER_COLUMN_NAME));
+		}
+		
+		/**
+		 * Creates the side table itself.
+		 * 
+		 * @throws DBException
+		 */
+		protected abstract void createSideTable() throws DBException;
+		
+		/**
+		 * @return comma-separated list of the side table columns which are set for each owning row
+		 */
+		protected abstract String getEntryColumns();
+		
+		/**
+		 * @param rowIDExpression
+		 * @param latitudeExpression
+		 * @param longitudeExpression
+		 * @return comma-separated list of the SQL expressions which compute the values of the {@link #getEntryColumns()} of an owning row
+		 */
+		protected abstract String getEntryValues(String rowIDExpression, String latitudeExpression, String longitudeExpression);
+		
+		/**
+		 * Fills the side table with entries for all rows in the owning table which have a location.
+		 * 
+		 * @throws DBException
+		 */
+		public void populate() throws DBException
+		{
+			executeSQL(String.format(	"INSERT INTO %s (%s) SELECT %s FROM %s WHERE %s IS NOT NULL;",
+										sanitisedName,
+										getEntryColumns(),
+										getEntryValues("ROWID", latitudeColumn.sanitisedName, longitudeColumn.sanitisedName),
+										ownerTable.sanitisedName,
+										latitudeColumn.sanitisedName));
+		}
+		
+		/**
+		 * Drops the side table (the triggers are dropped along with the owning table).
+		 * 
+		 * @throws DBException
+		 */
+		public void drop() throws DBException
+		{
+			executeSQL(String.format("DROP TABLE IF EXISTS %s;", sanitisedName));
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "Location index " + sanitisedName;
+		}
+		
+	}
+	
+	/**
+	 * {@link SQLiteLocationIndex} which uses an R*Tree virtual table, holding a "box" of size 0 for each location.
+	 * Because an R*Tree stores coordinates as 32 bit floats (rounded outwards) it may return a few rows just outside of the bounds,
+	 * these are removed by the exact conditions on the latitude & longitude columns (see {@link LocationIndex}).
+	 * @see https://www.sqlite.org/rtree.html
+	 */
+	protected class SQLiteRTreeLocationIndex extends SQLiteLocationIndex
+	{
+		
+		static private final String SUFFIX = "RTree";
+		
+		/**
+		 * @param ownerTable
+		 * @param locationColumnPointer
+		 */
+		public SQLiteRTreeLocationIndex(SQLiteTable ownerTable, ColumnPointer<? extends LocationColumn> locationColumnPointer)
+		{
+			super(ownerTable, locationColumnPointer, SUFFIX);
+		}
+
+		@Override
+		protected void createSideTable() throws DBException
+		{
+			executeSQL(String.format("CREATE VIRTUAL TABLE %s USING rtree(%s);", sanitisedName, getEntryColumns()));
+		}
+
+		@Override
+		protected String getEntryColumns()
+		{
+			return OWNER_COLUMN_NAME + ", MinLat, MaxLat, MinLon, MaxLon";
+		}
+
+		@Override
+		protected String getEntryValues(String rowIDExpression, String latitudeExpression, String longitudeExpression)
+		{
+			return String.format("%1$s, %2$s, %2$s, %3$s, %3$s", rowIDExpression, latitudeExpression, longitudeExpression);
+		}
+
+		@Override
+		public String getCandidateCondition(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude)
+		{
+			return String.format(	"ROWID IN (SELECT %s FROM %s WHERE MaxLat >= %s AND MinLat <= %s AND MaxLon >= %s AND MinLon <= %s)",
+									OWNER_COLUMN_NAME,
+									sanitisedName,
+									Double.toString(minLatitude),
+									Double.toString(maxLatitude),
+									Double.toString(minLongitude),
+									Double.toString(maxLongitude));
+		}
+		
+	}
+	
+	/**
+	 * {@link SQLiteLocationIndex} for SQLite libraries without R*Tree module, which assigns each location to a cell of a fixed grid of
+	 * {@link #CELL_SIZE} by {@link #CELL_SIZE} degrees. The (indexed) cell numbers are computed by the triggers, in SQL. A query with bounds
+	 * spanning at most {@link #MAX_ROWS} rows of cells is translated into one range of cell numbers per row.
+	 */
+	protected class SQLiteGridLocationIndex extends SQLiteLocationIndex
+	{
+		
+		static private final String SUFFIX = "Grid";
+		static private final String CELL_COLUMN_NAME = "Cell";
+		static private final String CELL_INDEX_SUFFIX = "CellIdx";
+		
+		static private final int CELLS_PER_DEGREE = 100;
+		static private final double CELL_SIZE = 1.0d / CELLS_PER_DEGREE;
+		static private final long LONGITUDE_CELLS = 360 * CELLS_PER_DEGREE + 1; // +1 for longitude = 180
+		static private final long LATITUDE_CELLS = 180 * CELLS_PER_DEGREE + 1; // +1 for latitude = 90
+		static private final int MAX_ROWS = 64;
+		
+		/**
+		 * @param ownerTable
+		 * @param locationColumnPointer
+		 */
+		public SQLiteGridLocationIndex(SQLiteTable ownerTable, ColumnPointer<? extends LocationColumn> locationColumnPointer)
+		{
+			super(ownerTable, locationColumnPointer, SUFFIX);
+		}
+
+		@Override
+		protected void createSideTable() throws DBException
+		{
+			executeSQL(String.format("CREATE TABLE %s (%s INTEGER PRIMARY KEY, %s INTEGER NOT NULL);", sanitisedName, OWNER_COLUMN_NAME, CELL_COLUMN_NAME));
+			executeSQL(String.format("CREATE INDEX %s ON %s (%s);", sanitiseIdentifier(unsanitisedName + "_" + CELL_INDEX_SUFFIX), sanitisedName, CELL_COLUMN_NAME));
+		}
+
+		@Override
+		protected String getEntryColumns()
+		{
+			return OWNER_COLUMN_NAME + ", " + CELL_COLUMN_NAME;
+		}
+
+		/**
+		 * Note: the same computation is done in Java by {@link #getRow(double)} and {@link #getColumn(double)}.
+		 * 
+		 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteRecordStore.SQLiteLocationIndex#getEntryValues(java.lang.String, java.lang.String, java.lang.String)
+		 */
+		@Override
+		protected String getEntryValues(String rowIDExpression, String latitudeExpression, String longitudeExpression)
+		{
+			return String.format(	"%1$s, CAST((%2$s + 90) * %4$d AS INTEGER) * %5$d + CAST((%3$s + 180) * %4$d AS INTEGER)",
+									rowIDExpression, latitudeExpression, longitudeExpression, CELLS_PER_DEGREE, LONGITUDE_CELLS);
+		}
+		
+		private long getRow(double latitude)
+		{
+			return Math.max(0, Math.min(LATITUDE_CELLS - 1, (long) ((latitude + 90) * CELLS_PER_DEGREE)));
+		}
+		
+		private long getColumn(double longitude)
+		{
+			return Math.max(0, Math.min(LONGITUDE_CELLS - 1, (long) ((longitude + 180) * CELLS_PER_DEGREE)));
+		}
+
+		@Override
+		public String getCandidateCondition(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude)
+		{
+			// Widen the range of cells by 1 on each side to be safe from rounding differences:
+			long minRow = getRow(minLatitude - CELL_SIZE);
+			long maxRow = getRow(maxLatitude + CELL_SIZE);
+			if(maxRow - minRow + 1 > MAX_ROWS)
+				return null; // the index would not be selective enough
+			long minCol = getColumn(minLongitude - CELL_SIZE);
+			long maxCol = getColumn(maxLongitude + CELL_SIZE);
+			TransactionalStringBuilder bldr = new TransactionalStringBuilder(" OR ");
+			for(long row = minRow; row <= maxRow; row++)
+				bldr.append(String.format("%1$s BETWEEN %2$d AND %3$d", CELL_COLUMN_NAME, row * LONGITUDE_CELLS + minCol, row * LONGITUDE_CELLS + maxCol));
+			return String.format("ROWID IN (SELECT %s FROM %s WHERE %s)", OWNER_COLUMN_NAME, sanitisedName, bldr.toString());
+		}
+		
+	}
+	
 	/**
 	 * A {@link SelectHelper} class for the execution of SELECT ROWID queries.
 	 * 
@@ -0,0 +1,129 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.types;
+
+import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.TypeMapping;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.SQLiteRecordStore;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
+import uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer;
+
+/**
+ * INTEGER-based SQLiteColumn representing a {@link TimeStampColumn}.
+ * 
+ * Each TimeStamp is stored as a single (64 bit) integer of which the 7 least significant bits hold the
+ * UTC offset (in quarters of an hour, shifted to make it non-negative) and all other bits hold the
+ * number of milliseconds since the epoch. This means that the SQL values sort exactly like the TimeStamps
+ * they represent (by instant, see {@link TimeStamp#compareTo(TimeStamp)}), which allows time-range
+ * constraints and orderings to be evaluated by SQLite as plain numeric comparisons (and to use indexes).
+ * 
+ * TimeStamps which indicate the same instant but have a different UTC offset compare as equal, yet
+ * are represented by different SQL values. Therefore this column reports {@link #hasEquivalentValues()}.
+ */
+public class SQLiteTimeStampColumn extends SQLiteIntegerColumn<TimeStamp>
+{
+	
+	static private final int OFFSET_BITS = 7;
+	static private final int OFFSET_MASK = (1 << OFFSET_BITS) - 1;
+	static private final int OFFSET_SHIFT = 1 << (OFFSET_BITS - 1);
+	
+	static private final int LOWEST_QH_OFFSET = -OFFSET_SHIFT;
+	static private final int HIGHEST_QH_OFFSET = OFFSET_MASK - OFFSET_SHIFT;
+	
+	static private final TypeMapping<Long, TimeStamp> MAPPING = new TypeMapping<Long, TimeStamp>()
+	{
+		
+		@Override
+		public Long toSQLType(TimeStamp value)
+		{
+			return Pack(value);
+		}
+		
+		@Override
+		public TimeStamp toSapelliType(Long value)
+		{
+			return Unpack(value);
+		}
+		
+	};
+	
+	/**
+	 * @param timeStamp non-null
+	 * @return the packed representation of the given TimeStamp
+	 */
+	static public long Pack(TimeStamp timeStamp)
+	{
+		return (timeStamp.getMsSinceEpoch() << OFFSET_BITS) | ((timeStamp.getQuarterHourOffsetWrtUTC() + OFFSET_SHIFT) & OFFSET_MASK);
+	}
+	
+	/**
+	 * @param packed
+	 * @return the TimeStamp represented by the given packed value
+	 */
+	static public TimeStamp Unpack(long packed)
+	{
+		return new TimeStamp(packed >> OFFSET_BITS, (int) (packed & OFFSET_MASK) - OFFSET_SHIFT);
+	}
+	
+	/**
+	 * @param store
+	 * @param sourceColumnPointer
+	 */
+	public SQLiteTimeStampColumn(SQLiteRecordStore store, ColumnPointer<TimeStampColumn> sourceColumnPointer)
+	{
+		super(store, sourceColumnPointer, MAPPING);
+	}
+	
+	@Override
+	public boolean hasEquivalentValues()
+	{
+		return true;
+	}
+	
+	/**
+	 * @return the same instant as the given TimeStamp, with the lowest representable UTC offset
+	 */
+	@Override
+	public Object getLowestEquivalentValue(Object sapValue)
+	{
+		return new TimeStamp(((TimeStamp) sourceColumnPointer.getColumn().convert(sapValue)).getMsSinceEpoch(), LOWEST_QH_OFFSET);
+	}
+	
+	/**
+	 * @return the same instant as the given TimeStamp, with the highest representable UTC offset
+	 */
+	@Override
+	public Object getHighestEquivalentValue(Object sapValue)
+	{
+		return new TimeStamp(((TimeStamp) sourceColumnPointer.getColumn().convert(sapValue)).getMsSinceEpoch(), HIGHEST_QH_OFFSET);
+	}
+	
+	/**
+	 * Strips off the UTC offset bits (SQLite's {@code >>} operator is an arithmetic shift, so this also works for instants before the epoch).
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.SQLColumn#getComparisonExpression()
+	 */
+	@Override
+	public String getComparisonExpression()
+	{
+		return "(" + sanitisedName + " >> " + OFFSET_BITS + ")";
+	}
+	
+}
@@ -0,0 +1,113 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.storage.db.sql.upgrades;
+
+import java.util.List;
+
+import uk.ac.ucl.excites.sapelli.storage.StorageClient;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStore.TableFactory;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStoreUpgrader.UpgradeOperations;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.SQLRecordStoreUpgrader.UpgradeStep;
+import uk.ac.ucl.excites.sapelli.storage.db.sql.sqlite.types.SQLiteTimeStampColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.Column;
+import uk.ac.ucl.excites.sapelli.storage.model.ColumnSet;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.storage.model.ValueSetColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
+
+/**
+ * UpgradeStep which converts the tables of an existing database from String-based to INTEGER-based storage
+ * of {@link TimeStampColumn}s (see {@link SQLiteTimeStampColumn}).
+ * 
+ * Only has effect on SQLRecordStores whose {@link TableFactory} has been set up to use INTEGER-based SQLColumns
+ * for TimeStampColumns (see {@link TableFactory#isUsingIntegersForTimeStampColumns()}), on others it does nothing.
+ */
+public class IntegerTimeStampsUpgradeStep<C extends StorageClient> extends UpgradeStep<C>
+{
+	
+	/**
+	 * @param client
+	 * @param fromVersion
+	 * @param toVersion
+	 */
+	public IntegerTimeStampsUpgradeStep(C client, int fromVersion, int toVersion)
+	{
+		super(client, fromVersion, toVersion);
+	}
+	
+	/**
+	 * @param client
+	 * @param fromVersion
+	 */
+	public IntegerTimeStampsUpgradeStep(C client, int fromVersion)
+	{
+		super(client, fromVersion);
+	}
+	
+	@Override
+	public void apply(SQLRecordStore<?, ?, ?> recordStore, UpgradeOperations upgradeOps) throws Exception
+	{
+		TableFactory<?> tableFactory = upgradeOps.getTableFactory(recordStore);
+		if(!tableFactory.isUsingIntegersForTimeStampColumns())
+			return; // the record store keeps using String-based columns, there is nothing to convert
+		
+		try
+		{
+			// Loop over all schemata:
+			for(Schema schema : upgradeOps.getAllSchemata(recordStore))
+			{
+				// Check if there is a table with TimeStampColumns for the schema which are not INTEGER-based yet (e.g. because it was created by an earlier step):
+				if(!hasTimeStampColumn(schema) || !upgradeOps.doesTableExist(recordStore, schema.tableName) || !upgradeOps.hasTimeStampColumnTypeMismatches(recordStore, schema))
+					continue;
+				
+				// Get all current records using a SQLTable instance with String-based TimeStamp columns:
+				tableFactory.setUseIntegersForTimeStampColumns(false);
+				upgradeOps.forgetTable(recordStore, schema.tableName);
+				List<Record> records = recordStore.retrieveRecords(schema);
+				
+				// Drop table (this will also get rid of the above-mentioned SQLTable instance):
+				upgradeOps.dropTable(recordStore, schema.tableName, false);
+				
+				// Re-insert all records in a new table (which will have INTEGER-based TimeStamp columns):
+				tableFactory.setUseIntegersForTimeStampColumns(true);
+				recordStore.store(records);
+			}
+		}
+		finally
+		{
+			tableFactory.setUseIntegersForTimeStampColumns(true);
+		}
+	}
+	
+	/**
+	 * @param columnSet
+	 * @return whether the given ColumnSet has a (non-virtual) TimeStampColumn, at the top-level or nested within a ValueSetColumn
+	 */
+	private boolean hasTimeStampColumn(ColumnSet columnSet)
+	{
+		for(Column<?> col : columnSet.getColumns(false))
+			if(col instanceof TimeStampColumn || (col instanceof ValueSetColumn<?, ?> && hasTimeStampColumn(((ValueSetColumn<?, ?>) col).getColumnSet())))
+				return true;
+		return false;
+	}
+	
+}
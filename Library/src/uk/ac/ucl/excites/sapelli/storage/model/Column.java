@@ -1168,7 +1168,7 @@ public abstract class Column<T> implements Serializable, Comparator<ValueSet<?>>
 	 */
 	public T toLossy(T value)
 	{
-		if(!canBeLossy())
+		if(value == null || !canBeLossy())
 			return value;
 		// else:
 		try
@@ -1186,6 +1186,18 @@ public abstract class Column<T> implements Serializable, Comparator<ValueSet<?>>
 		}
 	}
 	
+	/**
+	 * Same as {@link #toLossy(Object)} but accepts an untyped value.
+	 * 
+	 * @param valueObject
+	 * @return value as retrieved from lossy binary representation
+	 * @throws ClassCastException when the value cannot be casted to the column's type {@code <T>}
+	 */
+	public T toLossyObject(Object valueObject) throws ClassCastException
+	{
+		return toLossy(cast(valueObject));
+	}
+	
 	/**
 	 * <p>
 	 * Retrieves previously stored value for this column from the given valueSet.
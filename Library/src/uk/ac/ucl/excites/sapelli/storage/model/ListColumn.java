@@ -51,6 +51,11 @@ public abstract class ListColumn<L extends List<T>, T> extends Column<L> impleme
 	static public final char DEFAULT_SERIALISATION_SEPARATOR = ';';
 	static public final char DEFAULT_VALUE_SERIALISATION_DELIMITER = ValueSet.DEFAULT_SERIALISATION_DELIMITER;
 	
+	/**
+	 * Used to pre-size the buffer in {@link #toString(List, boolean)}
+	 */
+	static private final int SERIALISED_VALUE_LENGTH_ESTIMATE = 8;
+	
 	static protected int GetMaxLengthForSizeFieldSize(int minLength, int sizeBits)
 	{
 		return IntegerRangeMapping.ForSize(minLength, sizeBits).highBound().intValue();
@@ -401,35 +406,26 @@ public abstract class ListColumn<L extends List<T>, T> extends Column<L> impleme
 		List<T> parsedValues = new ArrayList<>(StringUtils.countOccurances(listString, serialisationSeparator));
 		final char valueDelimiter = singleColumn.getSerialisationDelimiter() != null ? singleColumn.getSerialisationDelimiter() : DEFAULT_VALUE_SERIALISATION_DELIMITER;
 		int valueDelimiterCount = 0;
-		StringBuilder valueStringBldr = new StringBuilder();
-		for(char c : listString.toCharArray())
+		int valueStart = 0;
+		for(int i = 0, length = listString.length(); i < length; i++)
 		{
+			char c = listString.charAt(i);
 			if(c == valueDelimiter)
-			{	// count the number of valueDelimiters we've passed
-				valueDelimiterCount++;
-				// Append char:
-				valueStringBldr.append(c); // !!!
-			}
+				valueDelimiterCount++; // count the number of valueDelimiters we've passed
 			else if(c == serialisationSeparator && valueDelimiterCount % 2 == 0)
 			{	// if delimiterCount is even this means we are not *inside* a value and this is an actual serialisation separator
-				String valueString = valueStringBldr.toString();
-				
 				// If the column does not apply it's own serialisation delimiting then
-				//	it could be that valueString is wrapped using the default value serialisation delimiters:
-				if(!singleColumn.isApplyingSerialisationDelimiting())
-					valueString = StringUtils.deescapeByDoublingAndWrapping(valueString, DEFAULT_VALUE_SERIALISATION_DELIMITER);
+				//	it could be that the value is wrapped using the default value serialisation delimiters:
+				String valueString = !singleColumn.isApplyingSerialisationDelimiting() ?
+					StringUtils.deescapeByDoublingAndWrapping(listString, valueStart, i, DEFAULT_VALUE_SERIALISATION_DELIMITER) :
+					listString.substring(valueStart, i);
 				
 				// Parse value:
 				parsedValues.add(singleColumn.stringToValue(valueString)); // if the column applies it's own delimiters these will be removed/deescaped; validation will be performed
 				
 				// We are done with this column:
 				valueDelimiterCount = 0; // !!!
-				valueStringBldr.setLength(0); // reset valueString builder!
-			}
-			else
-			{	
-				// Append char:
-				valueStringBldr.append(c); // !!!
+				valueStart = i + 1;
 			}
 		}
 		
@@ -464,17 +460,17 @@ public abstract class ListColumn<L extends List<T>, T> extends Column<L> impleme
 	@Override
 	public String toString(L values, boolean undelimited)
 	{
-		StringBuilder bldr = new StringBuilder();
+		StringBuilder bldr = new StringBuilder(values.size() * SERIALISED_VALUE_LENGTH_ESTIMATE);
 		for(T value : values)
 		{
-			String valueString = singleColumn.valueToString(value); // will return empty String for null values
+			String valueString = singleColumn.valueToString(value); // will return null for null values
 			
 			// 	If the column does not apply it's own serialisation delimiting then
 			//	 we may have to wrap the valueString in the default value serialisation delimiters:
 			if(!singleColumn.isApplyingSerialisationDelimiting())
-				valueString = StringUtils.escapeByDoublingAndWrapping(valueString, DEFAULT_VALUE_SERIALISATION_DELIMITER, /*don't force:*/ false, serialisationSeparator);
-			
-			bldr.append(valueString == null ? "" /*just in case*/ : valueString);
+				StringUtils.appendEscapedByDoublingAndWrapping(bldr, valueString, DEFAULT_VALUE_SERIALISATION_DELIMITER, /*don't force:*/ false, serialisationSeparator);
+			else if(valueString != null /*just in case*/)
+				bldr.append(valueString);
 			bldr.append(serialisationSeparator); // there are as many separators as elements (this allows us to preserve the difference between an empty list and a list with 1 null element)
 		}
 		 // unless undelimited, wrap in serialisationDelimiters (this allows us to preserve the difference between a null list and an empty list):
@@ -562,6 +558,22 @@ public abstract class ListColumn<L extends List<T>, T> extends Column<L> impleme
 	{
 		return singleColumn.canBeLossy();
 	}
+	
+	/**
+	 * Overridden to avoid an actual binary encoding/decoding round trip: each element is made lossy by the single column.
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.model.Column#toLossy(java.lang.Object)
+	 */
+	@Override
+	public L toLossy(L values)
+	{
+		if(values == null || !canBeLossy())
+			return values;
+		L lossyValues = getNewList(values.size());
+		for(T value : values)
+			lossyValues.add(singleColumn.toLossy(value));
+		return lossyValues;
+	}
 
 	/**
 	 * @return the maxLength
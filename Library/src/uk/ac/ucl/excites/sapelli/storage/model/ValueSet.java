@@ -59,6 +59,11 @@ public class ValueSet<CS extends ColumnSet> implements Serializable
 	static final public char SERIALISATION_SEPARATOR = ',';
 	static final public char DEFAULT_SERIALISATION_DELIMITER = '`';
 	
+	/**
+	 * Used to pre-size the buffer in {@link #serialise(boolean, Set)}
+	 */
+	static final private int SERIALISED_VALUE_LENGTH_ESTIMATE = 16;
+	
 	// Dynamics------------------------------------------------------
 	protected /*final*/ CS columnSet; // not final (for now) for Record#setSchema() methods
 	
@@ -572,9 +577,27 @@ public class ValueSet<CS extends ColumnSet> implements Serializable
 	 */
 	public String serialise(boolean includeVirtual, Set<? extends Column<?>> skipColumns)
 	{
-		StringBuilder bldr = new StringBuilder();
+		List<Column<?>> columns = columnSet.getColumns(includeVirtual, skipColumns);
+		return serialise(new StringBuilder(columns.size() * SERIALISED_VALUE_LENGTH_ESTIMATE), columns).toString();
+	}
+	
+	/**
+	 * Serialise the ValueSet by appending to the given {@link StringBuilder}, which allows callers to reuse the builder.
+	 * 
+	 * @param bldr
+	 * @param includeVirtual
+	 * @param skipColumns
+	 * @return the given {@link StringBuilder}
+	 */
+	public StringBuilder serialise(StringBuilder bldr, boolean includeVirtual, Set<? extends Column<?>> skipColumns)
+	{
+		return serialise(bldr, columnSet.getColumns(includeVirtual, skipColumns));
+	}
+	
+	private StringBuilder serialise(StringBuilder bldr, List<Column<?>> columns)
+	{
 		boolean first = true;
-		for(Column<?> col : columnSet.getColumns(includeVirtual, skipColumns))
+		for(Column<?> col : columns)
 		{
 			// Separator:
 			if(first)
@@ -586,10 +609,11 @@ public class ValueSet<CS extends ColumnSet> implements Serializable
 			// 	If the column does not apply it's own serialisation delimiting then
 			//	 we may have to wrap the valueString in the default serialisation delimiters:
 			if(!col.isApplyingSerialisationDelimiting())
-				valueString = StringUtils.escapeByDoublingAndWrapping(valueString, DEFAULT_SERIALISATION_DELIMITER, /*don't force:*/ false, SERIALISATION_SEPARATOR);
-			bldr.append(valueString == null ? "" /*just in case*/ : valueString);
+				StringUtils.appendEscapedByDoublingAndWrapping(bldr, valueString, DEFAULT_SERIALISATION_DELIMITER, /*don't force:*/ false, SERIALISATION_SEPARATOR);
+			else if(valueString != null /*just in case*/)
+				bldr.append(valueString);
 		}
-		return bldr.toString();
+		return bldr;
 	}
 	
 	/**
@@ -621,70 +645,71 @@ public class ValueSet<CS extends ColumnSet> implements Serializable
 	{
 		if(serialisedValueSet == null)
 			throw new IllegalArgumentException("Cannot parse null String, it represents a null ValueSet object");
-
-		// Get columns included in serialisedValueSet:
+		return parse(serialisedValueSet, 0, serialisedValueSet.length(), includeVirtual, skipColumns);
+	}
+	
+	/**
+	 * Deserialise the values of a ValueSet from a range of the given {@link CharSequence}.
+	 * The characters are scanned in place, only the individual value Strings are created (as needed by {@link Column#storeString(ValueSet, String)}).
+	 * 
+	 * @param chars should not be {@code null}
+	 * @param start index of the first character of the serialised ValueSet
+	 * @param end index after the last character of the serialised ValueSet
+	 * @param includeVirtual whether or not to expect values for the virtual columns
+	 * @param skipColumns a set of columns not to expect values for
+	 * @return this ValueSet
+	 * @throws ParseException
+	 * @throws IllegalArgumentException
+	 * @throws NullPointerException
+	 * @see {@link #serialise(boolean, Set)}
+	 */
+	public ValueSet<CS> parse(CharSequence chars, int start, int end, boolean includeVirtual, Set<? extends Column<?>> skipColumns) throws ParseException, IllegalArgumentException, NullPointerException
+	{
+		// Get columns included in serialised ValueSet:
 		List<Column<?>> expectedColumns = columnSet.getColumns(includeVirtual, skipColumns);
-
-		// Add trailing separator (this simplifies the code below):
-		serialisedValueSet += SERIALISATION_SEPARATOR;
 		
-		// Parse serialisedValueSet column by column (splitting the string by looking for separators outside of delimited values):
+		// Parse column by column (splitting the range by looking for separators outside of delimited values).
+		//	The end of the range is treated as a (final) separator, so there is at least 1 value to parse:
 		Iterator<Column<?>> colIter = expectedColumns.iterator();
 		int valueCount = 0;
-		Column<?> col = null;
-		char colDelimiter = DEFAULT_SERIALISATION_DELIMITER;
-		int colDelimiterCount = 0;
-		StringBuilder valueStringBldr = new StringBuilder();
-		for(char c : serialisedValueSet.toCharArray())
+		int valueStart = start;
+		while(valueStart <= end)
 		{
 			// Get column:
-			if(col == null)
+			if(!colIter.hasNext())
 			{
-				if(colIter.hasNext())
-				{
-					col = colIter.next();
-					colDelimiter = col.getSerialisationDelimiter() != null ? col.getSerialisationDelimiter() : DEFAULT_SERIALISATION_DELIMITER;
-					colDelimiterCount = 0; // !!!
-				}
-				else
-				{
-					valueCount++; // there is at least 1 more value to parse
-					break; // stop parsing...
-				}
-			}
-			// Treat character:
-			if(c == colDelimiter)
-			{	// count the number of colDelimiters we've passed
-				colDelimiterCount++;
-				// Append char:
-				valueStringBldr.append(c); // !!!
+				valueCount++; // there is at least 1 more value to parse
+				break; // stop parsing...
 			}
-			else if(c == SERIALISATION_SEPARATOR && colDelimiterCount % 2 == 0)
-			{	// if delimiterCount is even this means we are not *inside* a value and this is an actual serialisation separator
-				// Parse value, unless this is a virtual column:
-				if(	(!includeVirtual || !(col instanceof VirtualColumn)))	// ignore virtual column values as they never store their own value
-				{
-					String valueString = valueStringBldr.toString();
-					
-					// If the column does not apply it's own serialisation delimiting then
-					//	it could be that valueString is wrapped using the default serialisation delimiters:
-					if(!col.isApplyingSerialisationDelimiting())
-						valueString = StringUtils.deescapeByDoublingAndWrapping(valueString, DEFAULT_SERIALISATION_DELIMITER);
-					
-					// Parse & store:
-					col.storeString(this, valueString); // if the column applies it's own delimiters these will be removed/deescaped; validation will be performed
-				}
-				
-				// We are done with this column:
-				valueCount++;
-				col = null;
-				valueStringBldr.setLength(0); // reset valueString builder!
-			}
-			else
-			{	
-				// Append char:
-				valueStringBldr.append(c); // !!!
+			Column<?> col = colIter.next();
+			char colDelimiter = col.getSerialisationDelimiter() != null ? col.getSerialisationDelimiter() : DEFAULT_SERIALISATION_DELIMITER;
+			
+			// Find the end of the value (i.e. the next separator which is not *inside* a delimited value):
+			int colDelimiterCount = 0;
+			int valueEnd = valueStart;
+			for(char c; valueEnd < end; valueEnd++)
+			{
+				c = chars.charAt(valueEnd);
+				if(c == colDelimiter)
+					colDelimiterCount++; // count the number of colDelimiters we've passed
+				else if(c == SERIALISATION_SEPARATOR && colDelimiterCount % 2 == 0)
+					break; // if delimiterCount is even this means we are not *inside* a value and this is an actual serialisation separator
 			}
+			if(valueEnd == end && colDelimiterCount % 2 != 0)
+				break; // the last value is not terminated (i.e. the end of the range is *inside* it), so there is no value to parse
+
+			// Parse value, unless this is a virtual column:
+			if(!includeVirtual || !(col instanceof VirtualColumn)) // ignore virtual column values as they never store their own value
+				col.storeString(this,	// if the column applies it's own delimiters these will be removed/deescaped; validation will be performed
+								// If the column does not apply it's own serialisation delimiting then
+								//	it could be that the value is wrapped using the default serialisation delimiters:
+								!col.isApplyingSerialisationDelimiting() ?
+									StringUtils.deescapeByDoublingAndWrapping(chars, valueStart, valueEnd, DEFAULT_SERIALISATION_DELIMITER) :
+									chars.subSequence(valueStart, valueEnd).toString());
+			
+			// We are done with this column:
+			valueCount++;
+			valueStart = valueEnd + 1; // skip separator
 		}
 		
 		// Check number of values:
@@ -1057,11 +1082,45 @@ public class ValueSet<CS extends ColumnSet> implements Serializable
 	{
 		if(other == null)
 			return false;
-		if(this != other)
-			for(Column<?> c : columns)
-				if(	!Objects.deepEquals(c.retrieveValue(this, asLossyEncoded),
-										c.retrieveValue(other, asLossyEncoded)))
+		if(this == other)
+			return true;
+		/* Note: rather than calling Column#retrieveValue(ValueSet, boolean), which checks ValueSet#isLossy() for every
+		 * column, we determine whether either side needs to be made lossy only once, and only if there is a column
+		 * which can be lossy at all. Lossy versions of values are only computed if the values are not equal as they are. */
+		boolean lossyStateKnown = false, thisLossy = false, otherLossy = false;
+		for(Column<?> c : columns)
+		{
+			Object thisValue = c.retrieveValue(this);
+			Object otherValue = c.retrieveValue(other);
+			if(thisValue == null || otherValue == null)
+			{
+				if(thisValue != otherValue)
+					return false; // null values are never made lossy
+				continue;
+			}
+			if(!asLossyEncoded || !c.canBeLossy())
+			{
+				if(!Objects.deepEquals(thisValue, otherValue))
 					return false;
+				continue;
+			}
+			if(!lossyStateKnown)
+			{
+				thisLossy = this.isLossy();
+				otherLossy = other.isLossy();
+				lossyStateKnown = true;
+			}
+			if(thisLossy == otherLossy)
+			{	// Both sides are (made) lossy or neither is, so values which are equal as they are will also be equal when lossy:
+				if(Objects.deepEquals(thisValue, otherValue))
+					continue;
+				if(thisLossy) // both sides are lossy already
+					return false;
+			}
+			if(!Objects.deepEquals(	thisLossy ? thisValue : c.toLossyObject(thisValue),
+									otherLossy ? otherValue : c.toLossyObject(otherValue)))
+				return false;
+		}
 		return true;
 	}
 	
@@ -333,6 +333,32 @@ public abstract class ValueSetColumn<VS extends ValueSet<CS>, CS extends ColumnS
 				return true; // one of the columns used for binary writing/reading can produce lossy output
 		return false;
 	}
+	
+	/**
+	 * Overridden to avoid an actual binary encoding/decoding round trip: the lossy value set is
+	 * assembled subcolumn by subcolumn (mirroring {@link #write(ValueSet, BitOutputStream, boolean)} and
+	 * {@link #read(BitInputStream, boolean)}), leaving out skipped subcolumns.
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.model.Column#toLossy(java.lang.Object)
+	 */
+	@Override
+	public VS toLossy(VS value)
+	{
+		if(value == null || !canBeLossy())
+			return value;
+		try
+		{
+			VS lossyValue = getNewValueSet();
+			for(Column<?> subCol : columnSet.getColumns(false))
+				if(!isColumnSkipped(subCol))
+					subCol.storeObject(lossyValue, getBinaryColumn(subCol).toLossyObject(subCol.retrieveValue(value)));
+			return lossyValue;
+		}
+		catch(Exception e)
+		{
+			return super.toLossy(value); // will report the error
+		}
+	}
 
 	/**
 	 * Checks, possibly recursively, whether a non-{code null} value for this column is set in the given valueSet.
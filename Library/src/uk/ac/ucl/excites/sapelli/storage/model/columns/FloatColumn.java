@@ -191,6 +191,19 @@ public class FloatColumn extends NumberColumn<Double>
 	{
 		return !doublePrecision; // more efficient than Column#canBeLossy()
 	}
+	
+	/**
+	 * Overridden to avoid an actual binary encoding/decoding round trip: a lossyly written value is a single precision float.
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.model.Column#toLossy(java.lang.Object)
+	 */
+	@Override
+	public Double toLossy(Double value)
+	{
+		if(value == null || doublePrecision)
+			return value;
+		return Double.valueOf(value.floatValue());
+	}
 
 	@Override
 	protected int getMinimumValueSize(boolean lossless)
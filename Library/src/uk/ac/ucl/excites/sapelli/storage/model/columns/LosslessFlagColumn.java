@@ -75,6 +75,17 @@ public final class LosslessFlagColumn extends BooleanColumn
 		return true; // !!!
 	}
 	
+	/**
+	 * Overridden to avoid an actual binary encoding/decoding round trip: once lossyly written the value is always {@link #VALUE_LOSSY}.
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.model.Column#toLossy(java.lang.Object)
+	 */
+	@Override
+	public Boolean toLossy(Boolean value)
+	{
+		return value == null ? null : VALUE_LOSSY;
+	}
+	
 	/* (non-Javadoc)
 	 * @see uk.ac.ucl.excites.sapelli.storage.model.columns.BooleanColumn#write(java.lang.Boolean, uk.ac.ucl.excites.sapelli.shared.io.BitOutputStream, boolean)
 	 */
@@ -276,7 +276,7 @@ public class RecordsQuery extends Query<List<Record>>
 		order.sort(records);
 		
 		// Limit:
-		if(limit != NO_LIMIT)
+		if(limit != NO_LIMIT && records.size() > limit)
 			records = records.subList(0, limit);
 		
 		return records;
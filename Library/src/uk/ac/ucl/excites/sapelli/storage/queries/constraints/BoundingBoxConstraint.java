@@ -0,0 +1,193 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.storage.queries.constraints;
+
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
+import uk.ac.ucl.excites.sapelli.storage.types.LocationColumn;
+import uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer;
+
+/**
+ * Constraint that checks whether or not the {@link Location} held in a {@link LocationColumn} lies within a "box" of latitude and longitude bounds.
+ * All bounds are inclusive. If the minimum longitude is larger than the maximum longitude the box is assumed to cross the antimeridian (i.e. the 180 degrees meridian).
+ * A record with a {@code null} location is never within the box.
+ */
+public class BoundingBoxConstraint extends Constraint
+{
+	
+	// STATICS-------------------------------------------------------
+	static public final double MIN_LATITUDE = -90.0d;
+	static public final double MAX_LATITUDE = 90.0d;
+	static public final double MIN_LONGITUDE = -180.0d;
+	static public final double MAX_LONGITUDE = 180.0d;
+	
+	// DYNAMICS------------------------------------------------------
+	private final ColumnPointer<? extends LocationColumn> locationColumnPointer;
+	private final double minLatitude;
+	private final double maxLatitude;
+	private final double minLongitude;
+	private final double maxLongitude;
+	
+	/**
+	 * @param locationColumn
+	 * @param minLatitude
+	 * @param maxLatitude
+	 * @param minLongitude
+	 * @param maxLongitude
+	 * @throws IllegalArgumentException when the bounds are invalid
+	 */
+	public BoundingBoxConstraint(LocationColumn locationColumn, double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) throws IllegalArgumentException
+	{
+		this(new ColumnPointer<LocationColumn>(locationColumn), minLatitude, maxLatitude, minLongitude, maxLongitude);
+	}
+	
+	/**
+	 * @param locationColumnPointer
+	 * @param minLatitude
+	 * @param maxLatitude
+	 * @param minLongitude
+	 * @param maxLongitude
+	 * @throws IllegalArgumentException when the bounds are invalid
+	 */
+	public BoundingBoxConstraint(ColumnPointer<? extends LocationColumn> locationColumnPointer, double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) throws IllegalArgumentException
+	{
+		// Column null check:
+		if(locationColumnPointer == null || /*not possible(?), but just in case:*/ locationColumnPointer.getColumn() == null)
+			throw new NullPointerException("Please provide a non-null location column(pointer)");
+		// Bounds checks (also rejects NaNs):
+		if(!(MIN_LATITUDE <= minLatitude && minLatitude <= maxLatitude && maxLatitude <= MAX_LATITUDE))
+			throw new IllegalArgumentException("Invalid latitude bounds: [" + minLatitude + ", " + maxLatitude + "]");
+		if(!(MIN_LONGITUDE <= minLongitude && minLongitude <= MAX_LONGITUDE && MIN_LONGITUDE <= maxLongitude && maxLongitude <= MAX_LONGITUDE))
+			throw new IllegalArgumentException("Invalid longitude bounds: [" + minLongitude + ", " + maxLongitude + "]");
+		
+		// Initialise:
+		this.locationColumnPointer = locationColumnPointer;
+		this.minLatitude = minLatitude;
+		this.maxLatitude = maxLatitude;
+		this.minLongitude = minLongitude;
+		this.maxLongitude = maxLongitude;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#_isValid(uk.ac.ucl.excites.sapelli.storage.model.Record)
+	 */
+	@Override
+	protected boolean _isValid(Record record)
+	{
+		Location location = (Location) locationColumnPointer.retrieveValue(record);
+		return location != null && contains(location.getLatitude(), location.getLongitude());
+	}
+	
+	/**
+	 * @param latitude
+	 * @param longitude
+	 * @return whether or not the given point lies within the box
+	 */
+	public boolean contains(double latitude, double longitude)
+	{
+		if(latitude < minLatitude || latitude > maxLatitude)
+			return false;
+		if(crossesAntimeridian())
+			return longitude >= minLongitude || longitude <= maxLongitude;
+		else
+			return longitude >= minLongitude && longitude <= maxLongitude;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#accept(uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor)
+	 */
+	@Override
+	public void accept(ConstraintVisitor visitor)
+	{
+		visitor.visit(this);
+	}
+	
+	public ColumnPointer<? extends LocationColumn> getLocationColumnPointer()
+	{
+		return locationColumnPointer;
+	}
+
+	public double getMinLatitude()
+	{
+		return minLatitude;
+	}
+
+	public double getMaxLatitude()
+	{
+		return maxLatitude;
+	}
+
+	public double getMinLongitude()
+	{
+		return minLongitude;
+	}
+
+	public double getMaxLongitude()
+	{
+		return maxLongitude;
+	}
+	
+	/**
+	 * @return whether or not the box crosses the antimeridian, in which case it consists of the longitude ranges [minLongitude, 180] and [-180, maxLongitude]
+	 */
+	public boolean crossesAntimeridian()
+	{
+		return minLongitude > maxLongitude;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true; // references to same object
+		if(obj instanceof BoundingBoxConstraint)
+		{
+			BoundingBoxConstraint that = (BoundingBoxConstraint) obj;
+			return	this.locationColumnPointer.equals(that.locationColumnPointer) &&
+					Double.compare(this.minLatitude, that.minLatitude) == 0 &&
+					Double.compare(this.maxLatitude, that.maxLatitude) == 0 &&
+					Double.compare(this.minLongitude, that.minLongitude) == 0 &&
+					Double.compare(this.maxLongitude, that.maxLongitude) == 0;
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		int hash = 1;
+		hash = 31 * hash + locationColumnPointer.hashCode();
+		long bits = Double.doubleToLongBits(minLatitude);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		bits = Double.doubleToLongBits(maxLatitude);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		bits = Double.doubleToLongBits(minLongitude);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		bits = Double.doubleToLongBits(maxLongitude);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		return hash;
+	}
+
+}
@@ -38,6 +38,12 @@ public interface ConstraintVisitor
 	
 	public void visit(BitFlagConstraint bitFlagConstr);
 	
+	public void visit(ListMembershipConstraint listMembershipConstr);
+	
+	public void visit(BoundingBoxConstraint boundingBoxConstr);
+	
+	public void visit(RadiusConstraint radiusConstr);
+	
 	public void visit(DummyConstraint dummyConstr);
 
 }
@@ -0,0 +1,174 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.storage.queries.constraints;
+
+import java.util.List;
+
+import uk.ac.ucl.excites.sapelli.shared.util.Objects;
+import uk.ac.ucl.excites.sapelli.storage.model.Column;
+import uk.ac.ucl.excites.sapelli.storage.model.ListColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer;
+import uk.ac.ucl.excites.sapelli.storage.util.InvalidValueException;
+
+/**
+ * Constraint that checks whether or not the list held in a {@link ListColumn} contains a given element.
+ * Elements are compared using {@link Objects#deepEquals(Object, Object)}.
+ * A record with a {@code null} list does not contain any element.
+ */
+public class ListMembershipConstraint extends Constraint
+{
+
+	// STATICS-------------------------------------------------------
+	static public ListMembershipConstraint Contains(ListColumn<?, ?> listColumn, Object element) throws InvalidValueException
+	{
+		return new ListMembershipConstraint(new ColumnPointer<ListColumn<?, ?>>(listColumn), element, true);
+	}
+	
+	static public ListMembershipConstraint DoesNotContain(ListColumn<?, ?> listColumn, Object element) throws InvalidValueException
+	{
+		return new ListMembershipConstraint(new ColumnPointer<ListColumn<?, ?>>(listColumn), element, false);
+	}
+	
+	// DYNAMICS------------------------------------------------------
+	private final ColumnPointer<? extends ListColumn<?, ?>> listColumnPointer;
+	private final Object element;
+	private final boolean contained;
+	
+	public ListMembershipConstraint(ColumnPointer<? extends ListColumn<?, ?>> listColumnPointer, Object element) throws InvalidValueException
+	{
+		this(listColumnPointer, element, true);
+	}
+	
+	public ListMembershipConstraint(ColumnPointer<? extends ListColumn<?, ?>> listColumnPointer, Object element, boolean contained) throws InvalidValueException
+	{
+		// Column null check:
+		if(listColumnPointer == null || /*not possible(?), but just in case:*/ listColumnPointer.getColumn() == null)
+			throw new NullPointerException("Please provide a non-null list column(pointer)");
+		Column<?> singleColumn = listColumnPointer.getColumn().getSingleColumn();
+		
+		if(element != null)
+		{	// Check if element is valid for the single column:
+			try
+			{
+				if(!singleColumn.isValidValueObject(element, true /*convert!*/))
+					throw new Exception();
+			}
+			catch(InvalidValueException ive)
+			{
+				throw ive; // re-throw
+			}
+			catch(Exception e)
+			{
+				throw new InvalidValueException(ListMembershipConstraint.class.getSimpleName() + ": element (" + element.toString() + ") is invalid for list column " + listColumnPointer.getColumn().name, listColumnPointer.getColumn());
+			}
+		}
+		
+		// Initialise:
+		this.listColumnPointer = listColumnPointer;
+		this.element = singleColumn.convert(element); // convert to element type!
+		this.contained = contained;
+	}
+	
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#negate()
+	 */
+	@Override
+	public ListMembershipConstraint negate()
+	{
+		return new ListMembershipConstraint(listColumnPointer,
+											element,
+											!contained); // invert!
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#_isValid(uk.ac.ucl.excites.sapelli.storage.model.Record)
+	 */
+	@Override
+	protected boolean _isValid(Record record)
+	{
+		boolean found = false;
+		List<?> list = (List<?>) listColumnPointer.retrieveValue(record);
+		if(list != null)
+			for(Object e : list)
+				if(Objects.deepEquals(e, element))
+				{
+					found = true;
+					break;
+				}
+		return contained == found;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#accept(uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor)
+	 */
+	@Override
+	public void accept(ConstraintVisitor visitor)
+	{
+		visitor.visit(this);
+	}
+	
+	public ColumnPointer<? extends ListColumn<?, ?>> getListColumnPointer()
+	{
+		return listColumnPointer;
+	}
+	
+	public Object getElement()
+	{
+		return element;
+	}
+	
+	public boolean isContained()
+	{
+		return contained;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true; // references to same object
+		if(obj instanceof ListMembershipConstraint)
+		{
+			ListMembershipConstraint that = (ListMembershipConstraint) obj;
+			return	this.listColumnPointer.equals(that.listColumnPointer) &&
+					Objects.deepEquals(this.element, that.element) &&
+					this.contained == that.contained;
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		int hash = 1;
+		hash = 31 * hash + listColumnPointer.hashCode();
+		hash = 31 * hash + (element != null ? element.hashCode() : 0);
+		hash = 31 * hash + (contained ? 0 : 1);
+		return hash;
+	}
+
+}
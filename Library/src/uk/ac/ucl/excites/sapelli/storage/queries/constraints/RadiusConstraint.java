@@ -0,0 +1,200 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.storage.queries.constraints;
+
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
+import uk.ac.ucl.excites.sapelli.storage.types.LocationColumn;
+import uk.ac.ucl.excites.sapelli.storage.util.ColumnPointer;
+
+/**
+ * Constraint that checks whether or not the {@link Location} held in a {@link LocationColumn} lies within a given distance from a centre point.
+ * Distances are great-circle distances (see {@link Location#GetDistance(double, double, double, double)}), the bound is inclusive.
+ * A record with a {@code null} location is never within the radius.
+ */
+public class RadiusConstraint extends Constraint
+{
+	
+	// STATICS-------------------------------------------------------
+	/**
+	 * Margin (in degrees) by which the {@link #getBoundingBox()} is widened to make sure rounding errors never cause it to exclude points within the radius.
+	 */
+	static private final double BOUNDING_BOX_MARGIN = 1e-6d;
+	
+	// DYNAMICS------------------------------------------------------
+	private final ColumnPointer<? extends LocationColumn> locationColumnPointer;
+	private final double centreLatitude;
+	private final double centreLongitude;
+	private final double radius;
+	private BoundingBoxConstraint boundingBox;
+	
+	/**
+	 * @param locationColumn
+	 * @param centre
+	 * @param radius in meters
+	 * @throws IllegalArgumentException when the centre or radius is invalid
+	 */
+	public RadiusConstraint(LocationColumn locationColumn, Location centre, double radius) throws IllegalArgumentException
+	{
+		this(new ColumnPointer<LocationColumn>(locationColumn), centre.getLatitude(), centre.getLongitude(), radius);
+	}
+	
+	/**
+	 * @param locationColumnPointer
+	 * @param centreLatitude
+	 * @param centreLongitude
+	 * @param radius in meters
+	 * @throws IllegalArgumentException when the centre or radius is invalid
+	 */
+	public RadiusConstraint(ColumnPointer<? extends LocationColumn> locationColumnPointer, double centreLatitude, double centreLongitude, double radius) throws IllegalArgumentException
+	{
+		// Column null check:
+		if(locationColumnPointer == null || /*not possible(?), but just in case:*/ locationColumnPointer.getColumn() == null)
+			throw new NullPointerException("Please provide a non-null location column(pointer)");
+		// Centre & radius checks (also rejects NaNs):
+		if(!(BoundingBoxConstraint.MIN_LATITUDE <= centreLatitude && centreLatitude <= BoundingBoxConstraint.MAX_LATITUDE && BoundingBoxConstraint.MIN_LONGITUDE <= centreLongitude && centreLongitude <= BoundingBoxConstraint.MAX_LONGITUDE))
+			throw new IllegalArgumentException("Invalid centre: " + centreLatitude + ", " + centreLongitude);
+		if(!(radius >= 0.0d) || Double.isInfinite(radius))
+			throw new IllegalArgumentException("Invalid radius: " + radius);
+		
+		// Initialise:
+		this.locationColumnPointer = locationColumnPointer;
+		this.centreLatitude = centreLatitude;
+		this.centreLongitude = centreLongitude;
+		this.radius = radius;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#_isValid(uk.ac.ucl.excites.sapelli.storage.model.Record)
+	 */
+	@Override
+	protected boolean _isValid(Record record)
+	{
+		Location location = (Location) locationColumnPointer.retrieveValue(record);
+		return location != null && Location.GetDistance(centreLatitude, centreLongitude, location.getLatitude(), location.getLongitude()) <= radius;
+	}
+	
+	/**
+	 * Returns a box which encloses the circle described by this constraint, meaning that all matching locations are within the box, but not
+	 * necessarily vice versa. This allows the (costly) distance computation to be limited to the locations within the box.
+	 * 
+	 * @return the bounding box
+	 * @see http://janmatuschek.de/LatitudeLongitudeBoundingCoordinates
+	 */
+	public BoundingBoxConstraint getBoundingBox()
+	{
+		if(boundingBox == null)
+		{
+			double angularRadius = radius / Location.EARTH_RADIUS_M; // in radians
+			double dLat = Math.toDegrees(angularRadius) + BOUNDING_BOX_MARGIN;
+			double minLat = centreLatitude - dLat;
+			double maxLat = centreLatitude + dLat;
+			double minLon = BoundingBoxConstraint.MIN_LONGITUDE;
+			double maxLon = BoundingBoxConstraint.MAX_LONGITUDE;
+			if(minLat > BoundingBoxConstraint.MIN_LATITUDE && maxLat < BoundingBoxConstraint.MAX_LATITUDE)
+			{	// The circle does not contain a pole, so the longitude range can be narrowed down:
+				double dLon = Math.toDegrees(Math.asin(Math.sin(angularRadius) / Math.cos(Math.toRadians(centreLatitude)))) + BOUNDING_BOX_MARGIN;
+				if(dLon < 180.0d)
+				{
+					minLon = centreLongitude - dLon;
+					if(minLon < BoundingBoxConstraint.MIN_LONGITUDE)
+						minLon += 360.0d; // wrap around the antimeridian
+					maxLon = centreLongitude + dLon;
+					if(maxLon > BoundingBoxConstraint.MAX_LONGITUDE)
+						maxLon -= 360.0d; // wrap around the antimeridian
+				}
+			}
+			boundingBox = new BoundingBoxConstraint(locationColumnPointer,
+													Math.max(BoundingBoxConstraint.MIN_LATITUDE, minLat),
+													Math.min(BoundingBoxConstraint.MAX_LATITUDE, maxLat),
+													minLon,
+													maxLon);
+		}
+		return boundingBox;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#accept(uk.ac.ucl.excites.sapelli.storage.queries.constraints.ConstraintVisitor)
+	 */
+	@Override
+	public void accept(ConstraintVisitor visitor)
+	{
+		visitor.visit(this);
+	}
+	
+	public ColumnPointer<? extends LocationColumn> getLocationColumnPointer()
+	{
+		return locationColumnPointer;
+	}
+
+	public double getCentreLatitude()
+	{
+		return centreLatitude;
+	}
+
+	public double getCentreLongitude()
+	{
+		return centreLongitude;
+	}
+
+	/**
+	 * @return the radius in meters
+	 */
+	public double getRadius()
+	{
+		return radius;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true; // references to same object
+		if(obj instanceof RadiusConstraint)
+		{
+			RadiusConstraint that = (RadiusConstraint) obj;
+			return	this.locationColumnPointer.equals(that.locationColumnPointer) &&
+					Double.compare(this.centreLatitude, that.centreLatitude) == 0 &&
+					Double.compare(this.centreLongitude, that.centreLongitude) == 0 &&
+					Double.compare(this.radius, that.radius) == 0;
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		int hash = 1;
+		hash = 31 * hash + locationColumnPointer.hashCode();
+		long bits = Double.doubleToLongBits(centreLatitude);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		bits = Double.doubleToLongBits(centreLongitude);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		bits = Double.doubleToLongBits(radius);
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		return hash;
+	}
+
+}
@@ -69,6 +69,29 @@ public class Location extends ValueSet<ColumnSet>
 		}
 	}
 	
+	/**
+	 * Mean radius of the Earth, in meters (IUGG value).
+	 */
+	static public final double EARTH_RADIUS_M = 6371008.8;
+	
+	/**
+	 * Computes the great-circle distance between 2 points using the haversine formula (assuming a spherical Earth).
+	 * 
+	 * @param lat1 latitude of the 1st point, in decimal degrees
+	 * @param lon1 longitude of the 1st point, in decimal degrees
+	 * @param lat2 latitude of the 2nd point, in decimal degrees
+	 * @param lon2 longitude of the 2nd point, in decimal degrees
+	 * @return the distance in meters
+	 * @see https://en.wikipedia.org/wiki/Haversine_formula
+	 */
+	static public double GetDistance(double lat1, double lon1, double lat2, double lon2)
+	{
+		double sinHalfDLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+		double sinHalfDLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+		double h = sinHalfDLat * sinHalfDLat + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinHalfDLon * sinHalfDLon;
+		return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1.0d, Math.sqrt(h)));
+	}
+	
 	// ColumnSet & Columns:
 	static final public ColumnSet COLUMN_SET = new ColumnSet(Location.class.getSimpleName(), false);
 	// LATITUDE (non-optional signed 64 bit float):
@@ -251,6 +274,16 @@ public class Location extends ValueSet<ColumnSet>
 		return COLUMN_PROVIDER.retrieveValue(this).intValue();
 	}
 
+	/**
+	 * @param another
+	 * @return the great-circle distance between this and the given location, in meters (altitudes are ignored)
+	 * @see #GetDistance(double, double, double, double)
+	 */
+	public double distanceTo(Location another)
+	{
+		return GetDistance(getLatitude(), getLongitude(), another.getLatitude(), another.getLongitude());
+	}
+
 	/**
 	 * This method supports parsing Locations from 2 v1.x formats, one from before and
 	 * one from after 2013-07-13.
@@ -447,6 +447,28 @@ public class TimeStampColumn extends ComparableColumn<TimeStamp>
 	{
 		return !keepMS || !keepLocalTimezone; // more efficient than Column#canBeLossy()
 	}
+	
+	/**
+	 * Overridden to avoid an actual binary encoding/decoding round trip: the lossy value is computed
+	 * directly by rounding to the second and/or dropping the local timezone (mirroring {@link #write(TimeStamp, BitOutputStream, boolean)}).
+	 * 
+	 * @see uk.ac.ucl.excites.sapelli.storage.model.Column#toLossy(java.lang.Object)
+	 */
+	@Override
+	public TimeStamp toLossy(TimeStamp value)
+	{
+		if(value == null || !canBeLossy())
+			return value;
+		long ms = value.getMsSinceEpoch();
+		if(!keepMS)
+		{
+			long s = Math.round(ms / 1000d);
+			if(!timeMapping.inRange(s, false))
+				return super.toLossy(value); // let write() deal with the out of range value
+			ms = s * 1000;
+		}
+		return new TimeStamp(ms, keepLocalTimezone ? value.getQuarterHourOffsetWrtUTC() : 0 /*UTC*/);
+	}
 
 	@Override
 	protected int getMinimumValueSize(boolean lossless)
@@ -18,11 +18,19 @@
 
 package uk.ac.ucl.excites.sapelli.transmission;
 
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.collections4.map.AbstractReferenceMap.ReferenceStrength;
+import org.apache.commons.collections4.map.ReferenceIdentityMap;
+
+import uk.ac.ucl.excites.sapelli.shared.compression.PresetDictionary;
 import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle;
 import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreCreator;
 import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle.StoreSetter;
@@ -33,15 +41,18 @@ import uk.ac.ucl.excites.sapelli.storage.StorageClient;
 import uk.ac.ucl.excites.sapelli.storage.StorageObserver;
 import uk.ac.ucl.excites.sapelli.storage.db.RecordStore;
 import uk.ac.ucl.excites.sapelli.storage.model.Column;
+import uk.ac.ucl.excites.sapelli.storage.model.Model;
 import uk.ac.ucl.excites.sapelli.storage.model.Record;
 import uk.ac.ucl.excites.sapelli.storage.model.RecordReference;
 import uk.ac.ucl.excites.sapelli.storage.model.Schema;
 import uk.ac.ucl.excites.sapelli.storage.model.indexes.AutoIncrementingPrimaryKey;
 import uk.ac.ucl.excites.sapelli.transmission.control.TransmissionController;
+import uk.ac.ucl.excites.sapelli.transmission.crypto.PayloadCipher;
 import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore;
 import uk.ac.ucl.excites.sapelli.transmission.model.Correspondent;
 import uk.ac.ucl.excites.sapelli.transmission.model.Payload;
 import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
 
 /**
  * @author mstevens
@@ -89,15 +100,40 @@ public abstract class TransmissionClient extends StorageClient
 		@Override
 		public void createAndSetStore(StoreSetter<TransmissionStore> setter) throws DBException
 		{
-			setter.setAndInitialise(new TransmissionStore(TransmissionClient.this));
+			setter.setAndInitialise(createTransmissionStore());
 		}
 	});
 	
+	/**
+	 * Cached transmission projections, with schemata compared by identity (Schema#hashCode() is expensive) and weakly referenced.
+	 * Projections are softly referenced because their columns may still (indirectly) refer to the schema, e.g. through a
+	 * self-referencing foreign key, which would otherwise keep the key, and thus the entry, alive forever.
+	 */
+	private final Map<Schema, TransmissionProjection> transmissionProjections = Collections.synchronizedMap(new ReferenceIdentityMap<Schema, TransmissionProjection>(ReferenceStrength.WEAK, ReferenceStrength.SOFT));
+	
+	/**
+	 * The most recently used payload cipher and its key (see {@link #getPayloadCipher(byte[])})
+	 */
+	private PayloadCipher payloadCipher;
+	private byte[] payloadCipherKey;
+	
 	public TransmissionClient()
 	{
 		transmissionStorageObserver = new TransmissionStorageObserver(); // will register itself as a StorageObserver
 	}
 	
+	/**
+	 * Creates the {@link TransmissionStore} managed by {@link #transmissionStoreHandle}.
+	 * May be overridden to use a subclass.
+	 * 
+	 * @return a new TransmissionStore instance
+	 * @throws DBException
+	 */
+	protected TransmissionStore createTransmissionStore() throws DBException
+	{
+		return new TransmissionStore(this);
+	}
+	
 	/**
 	 * Creates instances of non-built-in Payload types.
 	 * 
@@ -139,9 +175,42 @@ public abstract class TransmissionClient extends StorageClient
 	 * It is assumed these are optional columns, or non-optional columns with a default value.
 	 * 
 	 * @param schema
-	 * @return
+	 * @return an unmodifiable set of columns
 	 */
 	public final Set<Column<?>> getNonTransmittableColumns(Schema schema)
+	{
+		return getTransmissionProjection(schema).getNonTransmittableColumns();
+	}
+	
+	/**
+	 * Returns the projection of the given schema onto its transmittable columns. Projections of sealed schemas are
+	 * computed only once and then cached, until {@link #invalidateTransmissionProjections()} is called.
+	 * 
+	 * @param schema
+	 * @return the transmission projection of the schema
+	 */
+	public final TransmissionProjection getTransmissionProjection(Schema schema)
+	{
+		TransmissionProjection projection = transmissionProjections.get(schema);
+		if(projection == null)
+		{
+			projection = new TransmissionProjection(schema, computeNonTransmittableColumns(schema));
+			if(schema.isSealed()) // columns of unsealed schemas may still change
+				transmissionProjections.put(schema, projection);
+		}
+		return projection;
+	}
+	
+	/**
+	 * Discards all cached {@link TransmissionProjection}s. Subclasses must call this whenever the result of
+	 * {@link #getNonTransmittableClientColumns(Schema)} changes for a schema it was called for before.
+	 */
+	protected void invalidateTransmissionProjections()
+	{
+		transmissionProjections.clear();
+	}
+	
+	private Set<Column<?>> computeNonTransmittableColumns(Schema schema)
 	{
 		Set<Column<?>> nonTransmitCols = new HashSet<Column<?>>();
 		
@@ -169,6 +238,114 @@ public abstract class TransmissionClient extends StorageClient
 		return Collections.<Column<?>> emptySet(); // nothing by default.
 	}
 	
+	/**
+	 * Returns the preset dictionary to use when compressing the records in a {@link RecordsPayload} of the given Model.
+	 * Subclasses can override this to provide a dictionary which was trained (offline or locally) on previously sent
+	 * records of the Model (e.g. using {@link RecordsPayload#getEncodedRecords()} and {@link PresetDictionary#Train(int, java.util.Collection, int)}).
+	 * The receiving side must be able to return the exact same dictionary from {@link #getPresetDictionary(Model, int)}.
+	 * 
+	 * @param model
+	 * @return a preset dictionary, or {@code null} (the default) if none should be used
+	 */
+	public PresetDictionary getPresetDictionary(Model model)
+	{
+		return null; // none by default.
+	}
+	
+	/**
+	 * Returns the preset dictionary with the given ID for the given Model, which is needed to decompress the records
+	 * in a received {@link RecordsPayload} which was compressed with it.
+	 * 
+	 * @param model
+	 * @param dictionaryID
+	 * @return the preset dictionary, or {@code null} (the default) if it is unknown
+	 */
+	public PresetDictionary getPresetDictionary(Model model, int dictionaryID)
+	{
+		return null; // none by default.
+	}
+	
+	/**
+	 * Whether the records in {@link RecordsPayload}s of the given Model which are exchanged with the given correspondent
+	 * must be encrypted. Subclasses can override this to enable encryption (e.g. when the {@code SendSchedule} asks for it).
+	 * On the sending side the correspondent is the receiver, and the records are encrypted. On the receiving side it is the
+	 * sender, and unencrypted payloads are rejected (such that stripping the encryption cannot go unnoticed).
+	 * 
+	 * @param model
+	 * @param correspondent
+	 * @return whether or not encryption is required, {@code false} by default
+	 * @see #getPayloadKey(Model)
+	 */
+	public boolean isPayloadEncryptionRequired(Model model, Correspondent correspondent)
+	{
+		return false; // no encryption by default.
+	}
+	
+	/**
+	 * Returns the (client-supplied) key with which the records in {@link RecordsPayload}s of the given Model are
+	 * encrypted and decrypted (see {@link PayloadCipher}). Sending and receiving side must return the same key.
+	 * 
+	 * @param model
+	 * @return the key (at least 16 bytes), or {@code null} (the default) if there is none
+	 */
+	public byte[] getPayloadKey(Model model)
+	{
+		return null; // none by default.
+	}
+	
+	/**
+	 * Returns the cipher to use when encrypting the records in a {@link RecordsPayload} of the given Model which
+	 * is to be sent to the given receiver. By default this is a cipher for the {@link #getPayloadKey(Model) key} of
+	 * the Model if {@link #isPayloadEncryptionRequired(Model, Correspondent) encryption is required}. The receiving
+	 * side must be able to return a cipher initialised with the same key from {@link #getPayloadCipher(Model, int)}.
+	 * 
+	 * @param model
+	 * @param receiver
+	 * @return a payload cipher, or {@code null} if the records should not be encrypted
+	 * @throws GeneralSecurityException when encryption is required but there is no key, or the cipher cannot be initialised
+	 */
+	public PayloadCipher getPayloadCipher(Model model, Correspondent receiver) throws GeneralSecurityException
+	{
+		if(!isPayloadEncryptionRequired(model, receiver))
+			return null;
+		byte[] key = getPayloadKey(model);
+		if(key == null) // never fall back to sending unencrypted records
+			throw new GeneralSecurityException("Encryption is required for model " + model.getName() + " but there is no key.");
+		return getPayloadCipher(key);
+	}
+	
+	/**
+	 * Returns the cipher for the key with the given ID for the given Model, which is needed to decrypt the records
+	 * in a received {@link RecordsPayload} which was encrypted with it.
+	 * 
+	 * @param model
+	 * @param keyID
+	 * @return the payload cipher, or {@code null} if the key is unknown
+	 * @throws GeneralSecurityException when the cipher cannot be initialised
+	 */
+	public PayloadCipher getPayloadCipher(Model model, int keyID) throws GeneralSecurityException
+	{
+		byte[] key = getPayloadKey(model);
+		if(key == null || PayloadCipher.GetKeyID(key) != keyID)
+			return null;
+		return getPayloadCipher(key);
+	}
+	
+	/**
+	 * @param key
+	 * @return a cipher for the given key, reused as long as the same key is used
+	 * @throws GeneralSecurityException
+	 */
+	private synchronized PayloadCipher getPayloadCipher(byte[] key) throws GeneralSecurityException
+	{
+		if(payloadCipher == null || !Arrays.equals(payloadCipherKey, key))
+		{
+			payloadCipher = new PayloadCipher(key);
+			payloadCipherKey = key.clone();
+		}
+		return payloadCipher;
+	}
+	
 	/**
 	 * @param recordRef
 	 * @param receiver
@@ -243,6 +420,24 @@ public abstract class TransmissionClient extends StorageClient
 				}
 		}
 		
+		@Override
+		public void storageEvents(RecordOperation operation, List<RecordReference> recordRefs, RecordStore recordStore)
+		{
+			if(operation != RecordOperation.Deleted)
+			{
+				for(RecordReference recordRef : recordRefs)
+					storageEvent(operation, recordRef, recordStore);
+				return;
+			}
+			// Forget about all deleted transmittable records in one go:
+			List<RecordReference> transmittableRefs = new ArrayList<RecordReference>(recordRefs.size());
+			for(RecordReference recordRef : recordRefs)
+				if(recordRef.getReferencedSchema().hasFlags(SCHEMA_FLAG_TRANSMITTABLE) && !getReceiversFor(recordRef.getReferencedSchema()).isEmpty())
+					transmittableRefs.add(recordRef);
+			if(!transmittableRefs.isEmpty() && init() /*make sure we have tStore*/)
+				tStore.deleteTransmittableRecords(transmittableRefs);
+		}
+		
 		@Override
 		public void finalize()
 		{
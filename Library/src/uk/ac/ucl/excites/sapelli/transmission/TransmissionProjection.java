@@ -0,0 +1,129 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.transmission;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.ucl.excites.sapelli.storage.model.Column;
+import uk.ac.ucl.excites.sapelli.storage.model.Record;
+import uk.ac.ucl.excites.sapelli.storage.model.Schema;
+import uk.ac.ucl.excites.sapelli.transmission.model.content.RecordsPayload;
+
+/**
+ * Immutable projection of a {@link Schema} onto the columns whose values are transmitted (e.g. in a {@link RecordsPayload}),
+ * i.e. all non-virtual columns except those returned by {@link TransmissionClient#getNonTransmittableColumns(Schema)}.
+ * 
+ * Instances are computed once per (sealed) schema and cached by the {@link TransmissionClient}, see {@link TransmissionClient#getTransmissionProjection(Schema)}.
+ * A projection deliberately holds no reference to its schema, which is the (weakly referenced) key it is cached under.
+ */
+public final class TransmissionProjection
+{
+	
+	private final Set<Column<?>> nonTransmittableColumns;
+	private final List<Column<?>> transmittableColumns;
+	private final int minimumSizeLossless;
+	private final int minimumSizeLossy;
+	
+	/**
+	 * @param schema
+	 * @param nonTransmittableColumns
+	 */
+	/*package*/ TransmissionProjection(Schema schema, Set<Column<?>> nonTransmittableColumns)
+	{
+		this.nonTransmittableColumns = Collections.unmodifiableSet(nonTransmittableColumns);
+		this.transmittableColumns = Collections.unmodifiableList(schema.getColumns(false, nonTransmittableColumns));
+		this.minimumSizeLossless = GetMinimumSize(transmittableColumns, true);
+		this.minimumSizeLossy = GetMinimumSize(transmittableColumns, false);
+	}
+	
+	static private int GetMinimumSize(List<Column<?>> columns, boolean lossless)
+	{
+		int total = 0;
+		for(Column<?> c : columns)
+			total += c.getMinimumSize(lossless);
+		return total;
+	}
+	
+	/**
+	 * @return an unmodifiable set of the columns which are not transmitted (includes the auto-incrementing primary key column, if there is one)
+	 */
+	public Set<Column<?>> getNonTransmittableColumns()
+	{
+		return nonTransmittableColumns;
+	}
+	
+	/**
+	 * @return an unmodifiable list of the (non-virtual) columns which are transmitted, in schema order
+	 */
+	public List<Column<?>> getTransmittableColumns()
+	{
+		return transmittableColumns;
+	}
+	
+	/**
+	 * @param skipColumns transmittable columns to leave out (e.g. factored-out ones), may be {@code null} or empty
+	 * @return a list of the (non-virtual) columns which are transmitted, in schema order, excluding the given ones
+	 */
+	public List<Column<?>> getTransmittableColumns(Set<? extends Column<?>> skipColumns)
+	{
+		if(skipColumns == null || skipColumns.isEmpty())
+			return transmittableColumns;
+		List<Column<?>> colSubset = new ArrayList<Column<?>>(transmittableColumns.size());
+		for(Column<?> col : transmittableColumns)
+			if(!skipColumns.contains(col))
+				colSubset.add(col);
+		return colSubset;
+	}
+	
+	/**
+	 * @param lossless
+	 * @return the minimum number of bits the transmittable values of a record take up
+	 */
+	public int getMinimumSize(boolean lossless)
+	{
+		return lossless ? minimumSizeLossless : minimumSizeLossy;
+	}
+	
+	/**
+	 * @param columns a subset of {@link #getTransmittableColumns()}, as returned by {@link #getTransmittableColumns(Set)}
+	 * @param lossless
+	 * @return the minimum number of bits the values of a record in the given columns take up
+	 */
+	public int getMinimumSize(List<Column<?>> columns, boolean lossless)
+	{
+		return columns == transmittableColumns ? getMinimumSize(lossless) : GetMinimumSize(columns, lossless);
+	}
+	
+	/**
+	 * @param record a record of the schema
+	 * @return whether the record has non-{@code null} values for all non-optional transmittable columns
+	 */
+	public boolean isFilled(Record record)
+	{
+		for(Column<?> col : transmittableColumns)
+			if(!col.isValuePresentOrOptional(record, false))
+				return false; // null value in non-optional column
+		return true;
+	}
+	
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import org.joda.time.DateTime;
 
@@ -32,6 +33,7 @@ import uk.ac.ucl.excites.sapelli.shared.db.StoreHandle;
 import uk.ac.ucl.excites.sapelli.shared.db.exceptions.DBException;
 import uk.ac.ucl.excites.sapelli.shared.io.FileStorageException;
 import uk.ac.ucl.excites.sapelli.shared.util.ExceptionHelpers;
+import uk.ac.ucl.excites.sapelli.shared.util.LockStripes;
 import uk.ac.ucl.excites.sapelli.shared.util.Logger;
 import uk.ac.ucl.excites.sapelli.shared.util.StringUtils;
 import uk.ac.ucl.excites.sapelli.shared.util.TransactionalStringBuilder;
@@ -43,6 +45,7 @@ import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
 import uk.ac.ucl.excites.sapelli.storage.util.UnknownModelException;
 import uk.ac.ucl.excites.sapelli.transmission.TransmissionClient;
 import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore;
+import uk.ac.ucl.excites.sapelli.transmission.db.TransmissionStore.PendingSMSTransmission;
 import uk.ac.ucl.excites.sapelli.transmission.model.Correspondent;
 import uk.ac.ucl.excites.sapelli.transmission.model.Payload;
 import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
@@ -74,6 +77,13 @@ import uk.ac.ucl.excites.sapelli.transmission.util.UnknownCorrespondentException
 /**
  * Controller class to handling all incoming / outgoing transmissions.
  * 
+ * The controller is safe for use by multiple threads. Work concerning a single correspondent (sending records or
+ * queries to it, receiving transmissions from it, and requesting resends of its incomplete transmissions) is
+ * serialised by means of a per-correspondent lock (see {@link #getCorrespondentLock(Correspondent)}), while work
+ * for different correspondents (payload preparation, encoding, sending, decoding, etc.) proceeds concurrently.
+ * Database access is serialised by the {@link TransmissionStore}, whose monitor is also held when received
+ * records are stored in the (shared) {@link RecordStore}.
+ * 
  * @author mstevens, benelliott
  */
 public abstract class TransmissionController implements StoreHandle.StoreUser
@@ -81,6 +91,8 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	
 	static protected final String LOG_FILENAME_PREFIX = "Transmission_";
 	
+	static private final int CORRESPONDENT_LOCK_STRIPES = 64;
+	
 	static public enum ModelQueryStatus
 	{
 		Pending,
@@ -96,8 +108,10 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	protected final RecordStore recordStore;
 	protected final TransmissionStore transmissionStore;
 	
+	// Locks:
+	private final LockStripes correspondentLocks = new LockStripes(CORRESPONDENT_LOCK_STRIPES);
+	
 	// Handlers:
-	private final SMSReceiver smsReceiver = new SMSReceiver();
 	private final PayloadReceiver payloadReceiver;
 	private final PayloadAckHandler payloadAckHandler;
 	
@@ -176,9 +190,36 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	
 	public abstract GeoKeyClient getGeoKeyClient();
 	
+	/**
+	 * Returns the lock which serialises all sending and receiving work concerning the given correspondent.
+	 * Correspondents are identified by their transmission type and address (not by name or local ID, which
+	 * are not yet known for unknown senders), and different correspondents may share a lock.
+	 * 
+	 * @param correspondent
+	 * @return the lock to hold while working on transmissions to/from the given correspondent
+	 */
+	protected Lock getCorrespondentLock(Correspondent correspondent)
+	{
+		return correspondentLocks.get(correspondent != null ? correspondent.getAddress() : null);
+	}
+	
 	// ================= SEND =================
 	
-	public synchronized void sendRecords(Model model, Correspondent receiver)
+	public void sendRecords(Model model, Correspondent receiver)
+	{
+		Lock lock = getCorrespondentLock(receiver);
+		lock.lock();
+		try
+		{
+			doSendRecords(model, receiver);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	private void doSendRecords(Model model, Correspondent receiver)
 	{
 		// Retrieve records of given model that need to be sent to given receiver:
 		List<Record> recsToSend = transmissionStore.retrieveRecordsToTransmitNow(receiver, model);
@@ -253,19 +294,28 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	 * @param receiver
 	 * @param the "modelQueryID" (to be used to call {@link #getModelQueryStatus(int)}), which is the localID of the transmission used to send the {@link ModelQueryPayload}
 	 */
-	public synchronized int sendModelQuery(Model model, Correspondent receiver)
+	public int sendModelQuery(Model model, Correspondent receiver)
 	{
-		// Create ModelQueryPayload...
-		ModelQueryPayload payload = new ModelQueryPayload(model.id);
-
-		// ... and a new Transmission:
-		Transmission<?> transmission = createOutgoingTransmission(payload, receiver);
-		
-		// Store & send the transmission:
-		storeAndSend(transmission);
-
-		// Return local id:
-		return transmission.getLocalID();
+		Lock lock = getCorrespondentLock(receiver);
+		lock.lock();
+		try
+		{
+			// Create ModelQueryPayload...
+			ModelQueryPayload payload = new ModelQueryPayload(model.id);
+	
+			// ... and a new Transmission:
+			Transmission<?> transmission = createOutgoingTransmission(payload, receiver);
+			
+			// Store & send the transmission:
+			storeAndSend(transmission);
+	
+			// Return local id:
+			return transmission.getLocalID();
+		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 	
 	/**
@@ -275,7 +325,7 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	 * @return a {@link ModelQueryStatus}
 	 * @throws IllegalArgumentException
 	 */
-	public synchronized ModelQueryStatus getModelQueryStatus(int modelQueryID) throws IllegalArgumentException
+	public ModelQueryStatus getModelQueryStatus(int modelQueryID) throws IllegalArgumentException
 	{
 		Transmission<?> modelQueryT = transmissionStore.retrieveTransmission(false, modelQueryID);
 		if(modelQueryT == null)
@@ -380,7 +430,21 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	 * @param transmission the transmission that has been received, it is assumed to be complete!
 	 * @throws TransmissionReceivingException when something goes wrong
 	 */
-	protected synchronized void doReceive(Transmission<?> transmission) throws TransmissionReceivingException
+	protected void doReceive(Transmission<?> transmission) throws TransmissionReceivingException
+	{
+		Lock lock = getCorrespondentLock(transmission.getCorrespondent());
+		lock.lock();
+		try
+		{
+			doReceiveLocked(transmission);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	private void doReceiveLocked(Transmission<?> transmission) throws TransmissionReceivingException
 	{	
 		addLogLine(	"INCOMING", "Transmission", transmission.getType().toString(),
 					"From: " + transmission.getCorrespondent());
@@ -388,10 +452,10 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 		// "Receive" the transmission (merge parts, decode, verify):
 		transmission.receive(); // throws TransmissionReceivingException
 		
-		// Store/update transmission now that the payload type is known:
+		// Store/update transmission now that the payload type is known (the parts themselves are unaffected):
 		try
 		{
-			transmissionStore.store(transmission);
+			transmissionStore.updateTransmissionRecord(transmission);
 		}
 		catch(DBException dbE)
 		{
@@ -431,16 +495,18 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	/**
 	 * @param msg
 	 */
-	public synchronized void receiveSMS(Message<?, ?> msg) throws Exception
+	public void receiveSMS(Message<?, ?> msg) throws Exception
 	{
+		// All parts of a transmission come from the same sender, so holding its lock also serialises work on the transmission itself:
+		Lock lock = getCorrespondentLock(msg.getSender());
+		lock.lock();
 		try
 		{
 			// Receive the message:
-			smsReceiver.receive(msg);
-			SMSTransmission<?> smsTrans = smsReceiver.transmission;
+			SMSTransmission<?> smsTrans = new SMSReceiver().receive(msg);
 			
-			// Store transmission:
-			transmissionStore.store(smsTrans);
+			// Store new part (and update transmission record):
+			transmissionStore.storeReceivedPart(smsTrans, msg);
 			
 			// Try receiving the transmission:
 			if(!smsTrans.isComplete())
@@ -453,7 +519,7 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 				if(smsTrans.getTotalNumberOfParts() > 1) // ... and consisted of more than one part:
 					cancelSMSResendRequest(smsTrans.getLocalID()); // cancel any pending resend requests
 				// Further (payload) receiving work:
-				doReceive(smsReceiver.transmission);
+				doReceive(smsTrans);
 			}
 		}
 		catch(Exception e)
@@ -461,6 +527,10 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 			addLogLine("ERROR", "Upon SMS message reception", ExceptionHelpers.getMessageAndCause(e));
 			throw e;
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -469,27 +539,50 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	 * @return whether or not future resend requests may needed for this transmission 
 	 * @throws Exception
 	 */
-	public synchronized void sendSMSResendRequest(int localID, boolean force)
+	public void sendSMSResendRequest(int localID, boolean force)
 	{
-		// Query for the subject transmission:
-		Transmission<?> trans = transmissionStore.retrieveTransmission(true, localID);
+		// Query for the summary of the subject transmission (only exists if it is an incomplete SMSTransmission):
+		if(!isSMSResendRequestDue(transmissionStore.retrievePendingSMSTransmission(localID), force))
+			return;
 		
-		// Check if it makes sense to send the request...
-		if(trans == null || !( trans instanceof SMSTransmission) || trans.isComplete())
+		// Query for the subject transmission itself (needed to create the request):
+		Transmission<?> trans = transmissionStore.retrieveTransmission(true, localID);
+		if(trans == null || !( trans instanceof SMSTransmission))
 			return;
-
+		
 		// Cast to SMSTransmission:
 		final SMSTransmission<?> smsTrans = (SMSTransmission<?>) trans;
 		
-		// Further checks...
-		TimeStamp sendReqAt = smsTrans.getNextResendRequestSendingTime();
-		if(sendReqAt == null || (!force && sendReqAt.isAfter(TimeStamp.now())))
-			return; // either no more reqs are allowed, or it is too early to send the next one (shouldn't happen)
-		
-		addLogLine("PREPARING", "Outgoing resend request for incomplete transmission with local ID: " + localID);
-		
-		// Send request:
-		storeAndSendResponse(new ResendRequestPayload(smsTrans, this));
+		Lock lock = getCorrespondentLock(smsTrans.getCorrespondent());
+		lock.lock();
+		try
+		{
+			// Check again now that we hold the lock (parts may have been received in the meantime):
+			if(smsTrans.isComplete() || !isSMSResendRequestDue(transmissionStore.retrievePendingSMSTransmission(localID), force))
+				return;
+			
+			addLogLine("PREPARING", "Outgoing resend request for incomplete transmission with local ID: " + localID);
+			
+			// Send request:
+			storeAndSendResponse(new ResendRequestPayload(smsTrans, this));
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @param pending summary of an incomplete SMSTransmission, may be {@code null}
+	 * @param force if {@code true} the request is due even if it is too early
+	 * @return whether it makes sense to send a resend request for the given transmission
+	 */
+	private boolean isSMSResendRequestDue(PendingSMSTransmission pending, boolean force)
+	{
+		if(pending == null)
+			return false;
+		TimeStamp sendReqAt = pending.getNextResendRequestSendingTime();
+		return sendReqAt != null && (force || !sendReqAt.isAfter(TimeStamp.now())); // if false: either no more reqs are allowed, or it is too early to send the next one (shouldn't happen)
 	}
 	
 	/**
@@ -499,14 +592,14 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	 * @return whether any requests were scheduled
 	 * @throws Exception
 	 */
-	public synchronized boolean scheduleSMSResendRequests() throws Exception
+	public boolean scheduleSMSResendRequests() throws Exception
 	{
-		// Query for incomplete SMSTransmissions:
-		List<SMSTransmission<?>> incompleteSMSTs = transmissionStore.retrieveIncompleteSMSTransmissions();		
+		// Query for summaries of incomplete SMSTransmissions:
+		List<PendingSMSTransmission> incompleteSMSTs = transmissionStore.retrievePendingSMSTransmissions();
 		addLogLine("Incomplete SMS transmissions found: " + incompleteSMSTs.size());
 		
 		boolean atLeast1 = false;
-		for(SMSTransmission<?> incomplete : incompleteSMSTs)
+		for(PendingSMSTransmission incomplete : incompleteSMSTs)
 		{
 			TimeStamp sendReqAt = incomplete.getNextResendRequestSendingTime();
 			if(sendReqAt != null)
@@ -530,18 +623,21 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 	protected abstract void cancelSMSResendRequest(int localID);
 	
 	/**
-	 * Helper class to handle incoming SMS messages
+	 * Helper class to handle incoming SMS messages. A new instance is used for every message.
 	 * 
 	 * @author mstevens
 	 */
 	private class SMSReceiver implements Message.Handler
 	{
 		
-		public SMSTransmission<?> transmission;
+		private SMSTransmission<?> transmission;
 		
-		public void receive(Message<?, ?> smsMsg)
+		/**
+		 * @param smsMsg
+		 * @return the (new or existing) transmission the message belongs to, with the message added to it
+		 */
+		public SMSTransmission<?> receive(Message<?, ?> smsMsg)
 		{
-			transmission = null; // wipe previous transmission !!!
 			try
 			{	// try finding an (incomplete) transmission this message belongs to (assuming this is not the first part):
 				transmission = (SMSTransmission<?>) transmissionStore.retrieveTransmission(true, smsMsg.getTransmissionType(), smsMsg.getSender(), smsMsg.getSendingSideTransmissionID(), smsMsg.getPayloadHash(), smsMsg.getTotalParts());
@@ -557,6 +653,8 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 			
 			// Handle specific message type:
 			smsMsg.handle(this);
+			
+			return transmission;
 		}
 		
 		@Override
@@ -664,8 +762,11 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 			}
 			try
 			{
-				// Store received records...
-				recordStore.store(recordsPayload.getRecords());
+				// Store received records (holding the TransmissionStore's monitor, as it shares the RecordStore)...
+				synchronized(transmissionStore)
+				{
+					recordStore.store(recordsPayload.getRecords());
+				}
 			}
 			catch (Exception e)
 			{
@@ -815,7 +916,7 @@ public abstract class TransmissionController implements StoreHandle.StoreUser
 					addLogLine("Canceling furter resend requests for received SMSTransmission (localID: " + incompleteSMST.getLocalID() + ")");
 					cancelSMSResendRequest(incompleteSMST.getLocalID());
 					incompleteSMST.setNumberOfSentResendRequests(SMSTransmission.MAX_RESEND_REQUESTS + 1);
-					transmissionStore.store(incompleteSMST);
+					transmissionStore.updateTransmissionRecord(incompleteSMST);
 				}
 				catch(Exception e)
 				{
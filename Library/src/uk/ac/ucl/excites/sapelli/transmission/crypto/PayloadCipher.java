@@ -0,0 +1,194 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+
+package uk.ac.ucl.excites.sapelli.transmission.crypto;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import uk.ac.ucl.excites.sapelli.shared.crypto.Hashing;
+import uk.ac.ucl.excites.sapelli.shared.util.IntegerRangeMapping;
+
+/**
+ * Authenticated encryption of (compressed) payload data, using AES-128 in CTR mode and a HMAC-SHA256 tag
+ * (truncated to {@link #TAG_SIZE} bytes) computed over the associated data, the nonce and the ciphertext
+ * (i.e. "encrypt-then-MAC").
+ * 
+ * AES-GCM and ChaCha20-Poly1305 are not available on Java 7 and older Android versions, whereas AES/CTR and
+ * HmacSHA256 are available on all of them. Because CTR mode is a stream cipher the ciphertext is exactly as long as
+ * the plaintext, which allows data to be encrypted in place (e.g. in the buffer a {@link uk.ac.ucl.excites.sapelli.shared.compression.Compressor}
+ * has just written to) and keeps the overhead down to {@link #OVERHEAD_BITS} bits per payload.
+ * 
+ * Each payload is encrypted under a random 96 bit nonce, followed by a 32 bit block counter. Because a key may be shared by
+ * many devices a per-device counter would not guarantee uniqueness, whereas with 96 random bits a nonce (and thus keystream)
+ * collision only becomes likely after about 2^48 payloads under the same key.
+ * 
+ * The encryption and MAC keys are derived from the given key (e.g. one generated by {@link SecureKeyGenerator}).
+ * The key is identified by an 8 bit {@link #getID() ID}, derived from its SHA-256 hash, such that the receiving side can look it up.
+ * 
+ * Instances are thread-safe, the JCE {@link Cipher} and {@link Mac} objects are reused across calls.
+ */
+public class PayloadCipher
+{
+
+	// STATICS ------------------------------------------------------
+	static public final int KEY_ID_SIZE = 8; // bits
+	static public final IntegerRangeMapping KEY_ID_FIELD = IntegerRangeMapping.ForSize(0, KEY_ID_SIZE);
+	
+	static public final int NONCE_SIZE = 12; // bytes
+	static public final int TAG_SIZE = 8; // bytes
+	
+	/**
+	 * Number of bits the encryption adds to a payload: key ID, nonce and tag.
+	 */
+	static public final int OVERHEAD_BITS = KEY_ID_SIZE + (NONCE_SIZE + TAG_SIZE) * Byte.SIZE;
+	
+	static private final String CIPHER_ALGORITHM = "AES/CTR/NoPadding";
+	static private final String MAC_ALGORITHM = "HmacSHA256";
+	static private final int ENCRYPTION_KEY_SIZE = 16; // bytes (AES-128)
+	static private final int BLOCK_SIZE = 16; // bytes
+	static private final Charset LABEL_CHARSET = Charset.forName("UTF-8");
+	static private final byte[] ENCRYPTION_KEY_LABEL = "Sapelli payload encryption".getBytes(LABEL_CHARSET);
+	static private final byte[] MAC_KEY_LABEL = "Sapelli payload authentication".getBytes(LABEL_CHARSET);
+	
+	static private final SecureRandom RANDOM = new SecureRandom();
+	
+	/**
+	 * @param key
+	 * @return the ID of the given key
+	 */
+	static public int GetKeyID(byte[] key)
+	{
+		return Hashing.getSHA256Hash(key)[0] & 0xff;
+	}
+	
+	static private byte[] DeriveKey(byte[] key, byte[] label, int size) throws GeneralSecurityException
+	{
+		Mac mac = Mac.getInstance(MAC_ALGORITHM);
+		mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+		return Arrays.copyOf(mac.doFinal(label), size);
+	}
+	
+	// DYNAMICS -----------------------------------------------------
+	private final int id;
+	private final SecretKeySpec encryptionKey;
+	private final Cipher cipher;
+	private final Mac mac;
+	private final byte[] iv = new byte[BLOCK_SIZE];
+	
+	/**
+	 * @param key the key to derive the encryption and MAC keys from, should be at least 16 bytes long
+	 * @throws GeneralSecurityException when the necessary algorithms are not available
+	 */
+	public PayloadCipher(byte[] key) throws GeneralSecurityException
+	{
+		if(key == null || key.length < ENCRYPTION_KEY_SIZE)
+			throw new IllegalArgumentException("Key must be at least " + ENCRYPTION_KEY_SIZE + " bytes long");
+		this.id = GetKeyID(key);
+		this.encryptionKey = new SecretKeySpec(DeriveKey(key, ENCRYPTION_KEY_LABEL, ENCRYPTION_KEY_SIZE), "AES");
+		this.cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+		this.mac = Mac.getInstance(MAC_ALGORITHM);
+		this.mac.init(new SecretKeySpec(DeriveKey(key, MAC_KEY_LABEL, mac.getMacLength()), MAC_ALGORITHM));
+	}
+	
+	/**
+	 * @return the 8 bit ID of the key
+	 */
+	public int getID()
+	{
+		return id;
+	}
+	
+	/**
+	 * @return a new random nonce, never to be reused with the same key
+	 */
+	public byte[] newNonce()
+	{
+		byte[] nonce = new byte[NONCE_SIZE];
+		RANDOM.nextBytes(nonce);
+		return nonce;
+	}
+	
+	/**
+	 * Encrypts {@code length} bytes of {@code data}, starting at {@code offset}, in place.
+	 * 
+	 * @param nonce a nonce obtained from {@link #newNonce()}
+	 * @param associatedData data which is not encrypted but is authenticated along with the ciphertext (may be {@code null})
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return the authentication tag ({@link #TAG_SIZE} bytes)
+	 * @throws GeneralSecurityException
+	 */
+	public synchronized byte[] encrypt(byte[] nonce, byte[] associatedData, byte[] data, int offset, int length) throws GeneralSecurityException
+	{
+		initCipher(Cipher.ENCRYPT_MODE, nonce);
+		cipher.doFinal(data, offset, length, data, offset); // CTR mode: output is as long as input, so this is safe
+		return computeTag(nonce, associatedData, data, offset, length);
+	}
+	
+	/**
+	 * Verifies the tag and then decrypts {@code length} bytes of {@code data}, starting at {@code offset}, in place.
+	 * 
+	 * @param nonce
+	 * @param associatedData the same associated data as given upon encryption
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param tag
+	 * @throws GeneralSecurityException when the tag does not match (i.e. the data, nonce or associated data was altered or the wrong key is used), data is then left untouched
+	 */
+	public synchronized void decrypt(byte[] nonce, byte[] associatedData, byte[] data, int offset, int length, byte[] tag) throws GeneralSecurityException
+	{
+		if(!MessageDigest.isEqual(computeTag(nonce, associatedData, data, offset, length), tag))
+			throw new GeneralSecurityException("Payload authentication failed");
+		initCipher(Cipher.DECRYPT_MODE, nonce);
+		cipher.doFinal(data, offset, length, data, offset);
+	}
+	
+	private void initCipher(int mode, byte[] nonce) throws GeneralSecurityException
+	{
+		if(nonce == null || nonce.length != NONCE_SIZE)
+			throw new IllegalArgumentException("Nonce must be " + NONCE_SIZE + " bytes long");
+		// IV = nonce || 32 bit block counter starting at 0 (allows up to 64 GiB per payload):
+		System.arraycopy(nonce, 0, iv, 0, NONCE_SIZE);
+		Arrays.fill(iv, NONCE_SIZE, BLOCK_SIZE, (byte) 0);
+		cipher.init(mode, encryptionKey, new IvParameterSpec(iv));
+	}
+	
+	private byte[] computeTag(byte[] nonce, byte[] associatedData, byte[] data, int offset, int length)
+	{
+		int adLength = associatedData != null ? associatedData.length : 0;
+		mac.update(new byte[] { (byte) (adLength >>> 24), (byte) (adLength >>> 16), (byte) (adLength >>> 8), (byte) adLength }); // unambiguous boundary
+		if(associatedData != null)
+			mac.update(associatedData);
+		mac.update(nonce);
+		mac.update(data, offset, length);
+		return Arrays.copyOf(mac.doFinal(), TAG_SIZE);
+	}
+	
+}
@@ -0,0 +1,305 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.transmission.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.Message;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.SMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinaryMessage;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.binary.BinarySMSTransmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.text.TextMessage;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.sms.text.TextSMSTransmission;
+
+/**
+ * Bounded cache of {@link Transmission}s, keyed by their local ID.
+ * 
+ * The cache holds at most a given number of transmissions and at most a given total weight, where the weight
+ * of a transmission is the (approximate) size in bytes of the bodies of its parts. When either limit is exceeded
+ * the least-recently-used transmissions are evicted, but "finished" transmissions (i.e. complete ones which have
+ * been acknowledged by means of a response) always go before unfinished ones, because those are the most likely
+ * to still be needed (e.g. to add received parts or resend).
+ * 
+ * The number of cache hits and misses is counted to allow the limits to be tuned.
+ */
+public class TransmissionCache
+{
+	
+	static public final int DEFAULT_MAX_ENTRIES = 8;
+	static public final long DEFAULT_MAX_WEIGHT = 256 * 1024; // 256 KB
+	
+	static private final float LOAD_FACTOR = 0.75f;
+	static private final int MIN_INITIAL_CAPACITY = 16;
+	static private final int MAX_INITIAL_CAPACITY = 1024; // larger maps grow as needed rather than being pre-allocated
+	
+	private final int maxEntries;
+	private final long maxWeight;
+	
+	/**
+	 * Unfinished transmissions, in access order
+	 */
+	private final LinkedHashMap<Integer, Entry> unfinished;
+	
+	/**
+	 * Finished (complete & acknowledged) transmissions, in access order
+	 */
+	private final LinkedHashMap<Integer, Entry> finished;
+	
+	private final WeightCalculator weightCalculator = new WeightCalculator();
+	
+	private long weight = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	
+	public TransmissionCache()
+	{
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+	}
+	
+	/**
+	 * @param maxEntries the maximum number of cached transmissions (must be at least 1)
+	 * @param maxWeight the maximum total weight (in bytes) of the cached transmissions (must be at least 1); transmissions which weigh more than this on their own are never cached
+	 */
+	public TransmissionCache(int maxEntries, long maxWeight)
+	{
+		if(maxEntries < 1)
+			throw new IllegalArgumentException("Maximum number of entries must be strictly positive");
+		if(maxWeight < 1)
+			throw new IllegalArgumentException("Maximum weight must be strictly positive");
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		int initialCapacity = (int) Math.min(Math.max(maxEntries / LOAD_FACTOR + 1, MIN_INITIAL_CAPACITY), MAX_INITIAL_CAPACITY); // avoids rehashing until maxEntries is reached
+		this.unfinished = new LinkedHashMap<Integer, Entry>(initialCapacity, LOAD_FACTOR, true);
+		this.finished = new LinkedHashMap<Integer, Entry>(initialCapacity, LOAD_FACTOR, true);
+	}
+	
+	/**
+	 * @param localID
+	 * @return the cached transmission with the given local ID, or {@code null} if there is none
+	 */
+	public synchronized Transmission<?> get(int localID)
+	{
+		Entry entry = unfinished.get(localID);
+		if(entry == null)
+			entry = finished.get(localID);
+		if(entry != null)
+		{
+			hits++;
+			return entry.transmission;
+		}
+		else
+		{
+			misses++;
+			return null;
+		}
+	}
+	
+	/**
+	 * Puts the given transmission in the cache, or updates its position and weight if it is already cached.
+	 * Should be called again whenever the transmission changes (e.g. when parts are added or a response is set).
+	 * 
+	 * @param transmission must have a local ID
+	 */
+	public synchronized void put(Transmission<?> transmission)
+	{
+		int localID = transmission.getLocalID();
+		remove(localID);
+		long entryWeight = weightCalculator.getWeight(transmission);
+		if(entryWeight > maxWeight)
+			return; // would push out everything else
+		(IsFinished(transmission) ? finished : unfinished).put(localID, new Entry(transmission, entryWeight));
+		weight += entryWeight;
+		// Evict until we are within limits again (finished transmissions first):
+		while(size() > maxEntries || weight > maxWeight)
+			evictEldest(!finished.isEmpty() ? finished : unfinished);
+	}
+	
+	private void evictEldest(LinkedHashMap<Integer, Entry> map)
+	{
+		Iterator<Entry> eldest = map.values().iterator();
+		weight -= eldest.next().weight;
+		eldest.remove();
+		evictions++;
+	}
+	
+	/**
+	 * @param localID
+	 */
+	public synchronized void remove(int localID)
+	{
+		Entry entry = unfinished.remove(localID);
+		if(entry == null)
+			entry = finished.remove(localID);
+		if(entry != null)
+			weight -= entry.weight;
+	}
+	
+	public synchronized void clear()
+	{
+		unfinished.clear();
+		finished.clear();
+		weight = 0;
+	}
+	
+	/**
+	 * @return the number of cached transmissions
+	 */
+	public synchronized int size()
+	{
+		return unfinished.size() + finished.size();
+	}
+	
+	/**
+	 * @return the total weight (in bytes) of the cached transmissions
+	 */
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+	
+	/**
+	 * @return the maxEntries
+	 */
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+	
+	/**
+	 * @return the maxWeight
+	 */
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+	
+	/**
+	 * @return the number of {@link #get(int)} calls which found a cached transmission
+	 */
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+	
+	/**
+	 * @return the number of {@link #get(int)} calls which did not find a cached transmission
+	 */
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+	
+	/**
+	 * @return the number of transmissions which were evicted to stay within the limits
+	 */
+	public synchronized long getEvictionCount()
+	{
+		return evictions;
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		return getClass().getSimpleName() + "[size: " + size() + "/" + maxEntries + "; weight: " + weight + "/" + maxWeight + "; hits: " + hits + "; misses: " + misses + "; evictions: " + evictions + "]";
+	}
+	
+	/**
+	 * @param transmission
+	 * @return whether the transmission is complete and has been acknowledged
+	 */
+	static private boolean IsFinished(Transmission<?> transmission)
+	{
+		if(!transmission.hasResponse())
+			return false;
+		if(transmission instanceof SMSTransmission && ((SMSTransmission<?>) transmission).getParts().isEmpty())
+			return false; // isComplete() would throw an IllegalStateException
+		return transmission.isComplete();
+	}
+	
+	static private final class Entry
+	{
+		
+		final Transmission<?> transmission;
+		final long weight;
+		
+		public Entry(Transmission<?> transmission, long weight)
+		{
+			this.transmission = transmission;
+			this.weight = weight;
+		}
+		
+	}
+	
+	/**
+	 * Computes the weight of transmissions, i.e. the size in bytes of the bodies of their parts
+	 */
+	static private final class WeightCalculator implements Transmission.Handler, Message.Handler
+	{
+		
+		private long weight;
+		
+		public long getWeight(Transmission<?> transmission)
+		{
+			weight = 0;
+			transmission.handle(this);
+			return weight;
+		}
+		
+		@Override
+		public void handle(BinarySMSTransmission binSMST)
+		{
+			for(BinaryMessage msg : binSMST.getParts())
+				msg.handle(this);
+		}
+		
+		@Override
+		public void handle(TextSMSTransmission txtSMST)
+		{
+			for(TextMessage msg : txtSMST.getParts())
+				msg.handle(this);
+		}
+		
+		@Override
+		public void handle(GeoKeyTransmission geoKeyT)
+		{
+			if(geoKeyT.getBody() != null)
+				weight += geoKeyT.getBody().length;
+		}
+		
+		@Override
+		public void handle(BinaryMessage binMsg)
+		{
+			if(binMsg.getBody() != null)
+				weight += (binMsg.getBody().length() + Byte.SIZE - 1) / Byte.SIZE;
+		}
+		
+		@Override
+		public void handle(TextMessage txtMsg)
+		{
+			if(txtMsg.getBody() != null)
+				weight += txtMsg.getBody().length() * (Character.SIZE / Byte.SIZE);
+		}
+		
+	}
+	
+}
@@ -21,10 +21,11 @@ package uk.ac.ucl.excites.sapelli.transmission.db;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.io.Charsets;
 
 import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
@@ -54,6 +55,7 @@ import uk.ac.ucl.excites.sapelli.storage.queries.SingleRecordQuery;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.AndConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.Constraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.EqualityConstraint;
+import uk.ac.ucl.excites.sapelli.storage.queries.constraints.OrConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint;
 import uk.ac.ucl.excites.sapelli.storage.queries.constraints.RuleConstraint.Comparison;
 import uk.ac.ucl.excites.sapelli.storage.queries.sources.Source;
@@ -79,6 +81,11 @@ import uk.ac.ucl.excites.sapelli.transmission.util.UnknownCorrespondentException
 /**
  * Class to handle storage of transmissions and their parts. Based on {@link RecordStore}.
  * 
+ * All methods which access the underlying {@link RecordStore} are synchronised on the TransmissionStore instance.
+ * Because RecordStore transactions are not bound to threads this monitor serialises all database access, which
+ * also makes the allocation of local IDs to newly stored correspondents and transmissions atomic. Callers which
+ * use the same RecordStore directly while other threads use the TransmissionStore must hold the monitor as well.
+ * 
  * @author mstevens, Michalis Vitos, benelliott
  */
 public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
@@ -215,13 +222,41 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	static public final ColumnPointer<IntegerColumn> TRANSMITTABLE_RECORDS_CP_TRANSMISSION_ID = new ColumnPointer<IntegerColumn>(TRANSMITTABLE_RECORDS_SCHEMA, TRANSMISSION_COLUMN_ID);
 	static public final ColumnPointer<IntegerColumn> TRANSMITTABLE_RECORDS_CP_MODEL_ID = new ColumnPointer<IntegerColumn>(TRANSMITTABLE_RECORDS_SCHEMA, Model.MODEL_ID_COLUMN);
 	static public final ColumnPointer<IntegerColumn> TRANSMITTABLE_RECORDS_CP_SCHEMA_NUMBER = new ColumnPointer<IntegerColumn>(TRANSMITTABLE_RECORDS_SCHEMA, Model.SCHEMA_SCHEMA_NUMBER_COLUMN);
+	//	Pending SMS Transmissions schema (summaries of incomplete incoming SMS transmissions, used for resend request scheduling):
+	static final public Schema PENDING_SMS_TRANSMISSION_SCHEMA = TransmissionClient.CreateSchemaWithSuffixedTableName(TRANSMISSION_MANAGEMENT_MODEL, "PendingSMS" + Transmission.class.getSimpleName(), "s");
+	//		Columns:
+	static final public ForeignKeyColumn PENDING_SMS_TRANSMISSION_COLUMN_TRANSMISSION = PENDING_SMS_TRANSMISSION_SCHEMA.addColumn(new ForeignKeyColumn(INCOMING_TRANSMISSION_SCHEMA, false));
+	static final public IntegerColumn PENDING_SMS_TRANSMISSION_COLUMN_RECEIVED_PARTS = PENDING_SMS_TRANSMISSION_SCHEMA.addColumn(new IntegerColumn("ReceivedParts", false, false, Math.max(BinarySMSTransmission.MAX_TRANSMISSION_PARTS, TextSMSTransmission.MAX_TRANSMISSION_PARTS))); // bitmap: bit i set <=> part i+1 received
+	static final public TimeStampColumn PENDING_SMS_TRANSMISSION_COLUMN_NEXT_RESEND_REQ_AT = TimeStampColumn.JavaMSTime("NextResendReqAt", true, false); // null if no (more) resend requests are to be sent
+	//		Add shared columns, set PK, add index & seal:
+	static
+	{
+		PENDING_SMS_TRANSMISSION_SCHEMA.addColumn(TRANSMISSION_COLUMN_NUMBER_OF_PARTS);
+		PENDING_SMS_TRANSMISSION_SCHEMA.addColumn(TRANSMISSION_COLUMN_NUMBER_OF_RESEND_REQS_SENT);
+		PENDING_SMS_TRANSMISSION_SCHEMA.addColumn(PENDING_SMS_TRANSMISSION_COLUMN_NEXT_RESEND_REQ_AT);
+		PENDING_SMS_TRANSMISSION_SCHEMA.setPrimaryKey(PrimaryKey.WithColumnNames(PENDING_SMS_TRANSMISSION_COLUMN_TRANSMISSION));
+		PENDING_SMS_TRANSMISSION_SCHEMA.addIndex(new Index(PENDING_SMS_TRANSMISSION_COLUMN_NEXT_RESEND_REQ_AT, false));
+		PENDING_SMS_TRANSMISSION_SCHEMA.seal();
+	}
 	//	Seal the model:
 	static
 	{
 		TRANSMISSION_MANAGEMENT_MODEL.seal();
 	}
 	
-	static private final int MAX_CACHE_SIZE = 8;
+	/**
+	 * Maximum number of record references to combine (in an {@link OrConstraint}) in a single query,
+	 * to stay well within the parameter and expression depth limits of SQL databases.
+	 */
+	static private final int MAX_REFERENCES_PER_QUERY = 250;
+	
+	static private long GetReceivedPartsBitmap(SMSTransmission<?> smsTransmission)
+	{
+		long bitmap = 0;
+		for(Message<?, ?> part : smsTransmission.getParts())
+			bitmap |= 1L << (part.getPartNumber() - SMSTransmission.MIN_PART_NUMBER);
+		return bitmap;
+	}
 	
 	static public TimeStamp retrieveTimeStamp(TimeStampColumn column, Record record)
 	{
@@ -229,28 +264,46 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	}
 	
 	// DYNAMICS--------------------------------------------
-	private final Map<Integer, Transmission<?>> outCache;
-	private final Map<Integer, Transmission<?>> inCache;
+	private final TransmissionCache outCache;
+	private final TransmissionCache inCache;
 	
 	private final TransmissionRecordGenerator generator = new TransmissionRecordGenerator();
 	
+	private boolean pendingSMSTransmissionsReconciled = false;
+	
 	/**
 	 * @param client
 	 * @throws DBException
 	 */
 	public TransmissionStore(TransmissionClient client) throws DBException
+	{
+		this(client, TransmissionCache.DEFAULT_MAX_ENTRIES, TransmissionCache.DEFAULT_MAX_WEIGHT);
+	}
+	
+	/**
+	 * @param client
+	 * @param maxCachedTransmissions the maximum number of incoming (and, separately, outgoing) transmissions to keep cached in memory
+	 * @param maxCachedWeight the maximum total size (in bytes) of the part bodies of the incoming (and, separately, outgoing) transmissions to keep cached in memory
+	 * @throws DBException
+	 * @see TransmissionCache
+	 */
+	public TransmissionStore(TransmissionClient client, int maxCachedTransmissions, long maxCachedWeight) throws DBException
 	{
 		super(client);
-		this.outCache = Collections.synchronizedMap(new LRUMap<Integer, Transmission<?>>(MAX_CACHE_SIZE));
-		this.inCache = Collections.synchronizedMap(new LRUMap<Integer, Transmission<?>>(MAX_CACHE_SIZE));
+		this.outCache = new TransmissionCache(maxCachedTransmissions, maxCachedWeight);
+		this.inCache = new TransmissionCache(maxCachedTransmissions, maxCachedWeight);
 	}
 	
-	protected Map<Integer, Transmission<?>> getCache(boolean incoming)
+	/**
+	 * @param incoming
+	 * @return the cache of incoming or outgoing transmissions (e.g. to inspect its hit & miss counts)
+	 */
+	public TransmissionCache getCache(boolean incoming)
 	{
 		return incoming ? inCache : outCache;
 	}
 	
-	public void store(Correspondent correspondent) throws DBException
+	public synchronized void store(Correspondent correspondent) throws DBException
 	{
 		// Start transaction
 		recordStore.startTransaction();
@@ -322,7 +375,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @return a RecordReference pointing to the Record representing the Correspondent in the database, or null if it has never been stored (or is null itself)
 	 * @throws DBException
 	 */
-	public RecordReference getCorrespondentRecordReference(Correspondent correspondent, boolean storeIfNeeded, boolean forceUpdate) throws DBException
+	public synchronized RecordReference getCorrespondentRecordReference(Correspondent correspondent, boolean storeIfNeeded, boolean forceUpdate) throws DBException
 	{
 		if(correspondent == null)
 			return null;
@@ -371,7 +424,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param recordQuery
 	 * @return
 	 */
-	public Correspondent retrieveCorrespondentByQuery(SingleRecordQuery recordQuery)
+	public synchronized Correspondent retrieveCorrespondentByQuery(SingleRecordQuery recordQuery)
 	{
 		// Query for record and convert to Correspondent object:
 		return correspondentFromRecord(recordStore.retrieveRecord(recordQuery));
@@ -382,7 +435,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param includeUserDeleted
 	 * @return
 	 */
-	public List<Correspondent> retrieveCorrespondents(boolean includeUnknownSenders, boolean includeUserDeleted)
+	public synchronized List<Correspondent> retrieveCorrespondents(boolean includeUnknownSenders, boolean includeUserDeleted)
 	{
 		RecordsQuery query = new RecordsQuery(	Source.From(CORRESPONDENT_SCHEMA),
 												(!includeUnknownSenders ? new EqualityConstraint(CORRESPONDENT_COLUMN_NAME, Correspondent.UNKNOWN_SENDER_NAME, false) : null),
@@ -400,7 +453,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param binarySMS
 	 * @return the correspondent or null
 	 */
-	public SMSCorrespondent retrieveSMSCorrespondent(PhoneNumber phoneNumber, boolean binarySMS)
+	public synchronized SMSCorrespondent retrieveSMSCorrespondent(PhoneNumber phoneNumber, boolean binarySMS)
 	{
 		return (SMSCorrespondent) retrieveCorrespondentByQuery(
 			new FirstRecordQuery(	CORRESPONDENT_SCHEMA,
@@ -415,7 +468,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	/**
 	 * @param correspondent to delete
 	 */
-	public void deleteCorrespondent(Correspondent correspondent)
+	public synchronized void deleteCorrespondent(Correspondent correspondent)
 	{
 		if(!correspondent.isLocalIDSet())
 			return; // the correspondent was never stored
@@ -468,36 +521,23 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 			List<Record> records = generator.generate(transmission);
 			if(records.size() < 2)
 				throw new IllegalStateException("No transmission (part) record(s) generated!");
-			Record tRec = records.get(0);
-			
-			// Set foreign key for Correspondent record (possibly first storing/updating it):
-			TRANSMISSION_COLUMN_CORRESPONDENT.storeValue(tRec, getCorrespondentRecordReference(transmission.getCorrespondent(), true, false));
 			
 			// Store the transmission record:
-			recordStore.store(tRec);
-			//	local ID should now be set in the record...
-			
-			// Check/set it on the object:
-			if(transmission.isLocalIDSet()) // if the object already had a local transmissionID...
-			{	// then it should match the ID on the record, so let's verify:
-				if(transmission.getLocalID() != TRANSMISSION_COLUMN_ID.retrieveValue(tRec).intValue())
-					throw new IllegalStateException("Non-matching transmission ID"); // this should never happen
-			}
-			else
-				// Set local transmissionID in object as on the record: 
-				transmission.setLocalID(TRANSMISSION_COLUMN_ID.retrieveValue(tRec).intValue());
+			RecordReference tRecRef = doStoreTransmissionRecord(transmission, records.get(0));
 			
 			// Store part records:
 			ForeignKeyColumn tFKCol = transmission.incoming ? TRANSMISSION_PART_COLUMN_INCOMING_TRANSMISSION : TRANSMISSION_PART_COLUMN_OUTGOING_TRANSMISSION;
-			RecordReference tRecRef = tRec.getReference();
 			for(Record tPartRec : records.subList(1, records.size()))
 			{
 				tFKCol.storeValue(tPartRec, tRecRef); // set foreign key!
 				recordStore.store(tPartRec);
 			}
 			
+			// Store/delete pending SMS transmission record:
+			doStorePendingSMSTransmissionRecord(transmission);
+			
 			// Put/update in cache:
-			getCache(transmission.incoming).put(transmission.getLocalID(), transmission);
+			getCache(transmission.incoming).put(transmission);
 		}
 		catch(Exception e)
 		{
@@ -511,6 +551,169 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 		recordStore.commitTransaction();
 	}
 	
+	/**
+	 * Updates only the transmission record (i.e. not the part records) of a previously stored transmission.
+	 * Meant to be used when only transmission-level values (e.g. payload type, reception time, number of sent resend requests)
+	 * have changed. If the transmission has never been stored before it is stored in full using {@link #store(Transmission)}.
+	 * 
+	 * @param transmission
+	 * @throws DBException
+	 */
+	public synchronized void updateTransmissionRecord(Transmission<?> transmission) throws DBException
+	{
+		if(!transmission.isLocalIDSet())
+		{
+			store(transmission);
+			return;
+		}
+		
+		// Start transaction
+		recordStore.startTransaction();
+		
+		try
+		{
+			doStoreTransmissionRecord(transmission, generator.generateTransmissionRecord(transmission));
+			
+			// Store/delete pending SMS transmission record:
+			doStorePendingSMSTransmissionRecord(transmission);
+			
+			// Put/update in cache:
+			getCache(transmission.incoming).put(transmission);
+		}
+		catch(Exception e)
+		{
+			recordStore.rollbackTransactions();
+			if(e instanceof DBException)
+				throw (DBException) e;
+			throw new DBException(e);
+		}
+		
+		// Commit transaction
+		recordStore.commitTransaction();
+	}
+	
+	/**
+	 * Stores a newly received part of an incoming {@link SMSTransmission}.
+	 * 
+	 * Unlike {@link #store(Transmission)}, which rewrites the transmission record and the records of all parts received so far,
+	 * this only inserts the record of the new part and updates the transmission record. This keeps the cost of receiving a
+	 * transmission of n parts linear in n. If the transmission has never been stored before (i.e. {@code part} is the first one
+	 * to be received) it is stored in full, which at that point involves just the one part record.
+	 * 
+	 * @param smsTransmission the incoming transmission, to which {@code part} has already been added
+	 * @param part the newly received part
+	 * @return whether the part was stored, {@code false} if it was a duplicate of a previously received part (which {@link SMSTransmission#addPart(Message)} discards)
+	 * @throws DBException
+	 */
+	public synchronized boolean storeReceivedPart(SMSTransmission<?> smsTransmission, Message<?, ?> part) throws DBException
+	{
+		if(!smsTransmission.incoming)
+			throw new IllegalArgumentException("Only parts of incoming transmissions can be stored this way");
+		
+		// Check if the part was actually added to the transmission (if not it is a duplicate):
+		if(smsTransmission.getPart(part.getPartNumber()) != part)
+			return false;
+		
+		// First part:
+		if(!smsTransmission.isLocalIDSet())
+		{
+			store(smsTransmission);
+			return true;
+		}
+		
+		// Start transaction
+		recordStore.startTransaction();
+		
+		try
+		{
+			// Update the transmission record:
+			RecordReference tRecRef = doStoreTransmissionRecord(smsTransmission, generator.generateTransmissionRecord(smsTransmission));
+			
+			// Insert the new part record:
+			Record tPartRec = generator.generatePartRecord(smsTransmission, part);
+			TRANSMISSION_PART_COLUMN_INCOMING_TRANSMISSION.storeValue(tPartRec, tRecRef); // set foreign key!
+			recordStore.insert(tPartRec);
+			
+			// Store/delete pending SMS transmission record:
+			doStorePendingSMSTransmissionRecord(smsTransmission);
+			
+			// Put/update in cache:
+			getCache(true).put(smsTransmission);
+		}
+		catch(Exception e)
+		{
+			recordStore.rollbackTransactions();
+			// The cached object (if any) holds a part which could not be stored, so evict it to have it reloaded from the db next time:
+			getCache(true).remove(smsTransmission.getLocalID());
+			if(e instanceof DBException)
+				throw (DBException) e;
+			throw new DBException(e);
+		}
+		
+		// Commit transaction
+		recordStore.commitTransaction();
+		return true;
+	}
+	
+	/**
+	 * Stores (inserts or updates) the given transmission record and sets/checks the local ID of the transmission object.
+	 * Must be called within a transaction.
+	 * 
+	 * @param transmission
+	 * @param tRec the transmission record, as generated by the {@link TransmissionRecordGenerator}
+	 * @return a reference to the stored transmission record
+	 * @throws DBException
+	 */
+	private RecordReference doStoreTransmissionRecord(Transmission<?> transmission, Record tRec) throws DBException
+	{
+		// Set foreign key for Correspondent record (possibly first storing/updating it):
+		TRANSMISSION_COLUMN_CORRESPONDENT.storeValue(tRec, getCorrespondentRecordReference(transmission.getCorrespondent(), true, false));
+		
+		// Store the transmission record:
+		recordStore.store(tRec);
+		//	local ID should now be set in the record...
+		
+		// Check/set it on the object:
+		if(transmission.isLocalIDSet()) // if the object already had a local transmissionID...
+		{	// then it should match the ID on the record, so let's verify:
+			if(transmission.getLocalID() != TRANSMISSION_COLUMN_ID.retrieveValue(tRec).intValue())
+				throw new IllegalStateException("Non-matching transmission ID"); // this should never happen
+		}
+		else
+			// Set local transmissionID in object as on the record: 
+			transmission.setLocalID(TRANSMISSION_COLUMN_ID.retrieveValue(tRec).intValue());
+		
+		return tRec.getReference();
+	}
+	
+	/**
+	 * Stores (inserts or updates) or deletes the {@link #PENDING_SMS_TRANSMISSION_SCHEMA} record which summarises the given
+	 * transmission, depending on whether or not it is an incomplete incoming {@link SMSTransmission}.
+	 * Must be called within a transaction, after the transmission record has been stored.
+	 * 
+	 * @param transmission
+	 * @throws DBException
+	 */
+	private void doStorePendingSMSTransmissionRecord(Transmission<?> transmission) throws DBException
+	{
+		if(!transmission.incoming || !(transmission instanceof SMSTransmission))
+			return;
+		SMSTransmission<?> smsT = (SMSTransmission<?>) transmission;
+		RecordReference tRecRef = INCOMING_TRANSMISSION_SCHEMA.createRecordReference(smsT.getLocalID());
+		if(smsT.isComplete())
+		{	// No longer pending (a single-part transmission never was, so it cannot have a record):
+			if(smsT.getTotalNumberOfParts() > 1)
+				recordStore.delete(PENDING_SMS_TRANSMISSION_SCHEMA.createRecordReference(tRecRef));
+		}
+		else
+			recordStore.store(PENDING_SMS_TRANSMISSION_SCHEMA.createRecord(
+				tRecRef,
+				GetReceivedPartsBitmap(smsT),
+				smsT.getTotalNumberOfParts(),
+				smsT.getNumberOfSentResendRequests(),
+				smsT.getNextResendRequestSendingTime()));
+	}
+	
 	/**
 	 * @param incoming if {@code true} the transmission was received on the local device, if {@code false} it was created for sending from the local device to another one
 	 * @param type
@@ -548,7 +751,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @return
 	 * @throws IllegalStateException when more than 1 matching Transmission is found (cannot happen for queries that check localID, which is unique)
 	 */
-	protected Transmission<?> retrieveTransmissionByQuery(RecordsQuery multiRecordQuery, boolean knownLocalID) throws IllegalStateException
+	protected synchronized Transmission<?> retrieveTransmissionByQuery(RecordsQuery multiRecordQuery, boolean knownLocalID) throws IllegalStateException
 	{
 		List<Transmission<?>> results = retrieveTransmissionsByQuery(multiRecordQuery);
 		if(results.size() > 1)
@@ -564,7 +767,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 			return results.get(0);
 	}
 	
-	protected List<Transmission<?>> retrieveTransmissionsByQuery(RecordsQuery multiRecordQuery)
+	protected synchronized List<Transmission<?>> retrieveTransmissionsByQuery(RecordsQuery multiRecordQuery)
 	{
 		List<Transmission<?>> transmissions = new ArrayList<Transmission<?>>();
 		for(Record record : recordStore.retrieveRecords(multiRecordQuery))
@@ -583,8 +786,9 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 		int localID = TRANSMISSION_COLUMN_ID.retrieveValue(tRec).intValue();
 		
 		// Check cache:
-		if(getCache(incoming).containsKey(localID))
-			return getCache(incoming).get(localID);
+		Transmission<?> cached = getCache(incoming).get(localID);
+		if(cached != null)
+			return cached;
 		
 		// Check if transmission is not deleted by hiding:
 		if(TRANSMISSION_COLUMN_DELETED.retrieveValue(tRec) && !includeDeleted)
@@ -674,8 +878,9 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 		try
 		{
 			// Check cache:
-			if(getCache(incoming).containsKey(localID))
-				return getCache(incoming).get(localID);
+			Transmission<?> cached = getCache(incoming).get(localID);
+			if(cached != null)
+				return cached;
 			//else:
 			return transmissionFromRecord(recordStore.retrieveRecord(getTransmissionSchema(incoming).createRecordReference(localID)), findDeleted);
 		}
@@ -717,7 +922,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param numberOfParts
 	 * @return a matching Transmission, or {@code null} if no such transmission was found or an error occurred (check log output).
 	 */
-	public Transmission<?> retrieveTransmission(boolean incoming, int localID, int payloadHash, Integer numberOfParts)
+	public synchronized Transmission<?> retrieveTransmission(boolean incoming, int localID, int payloadHash, Integer numberOfParts)
 	{
 		return retrieveTransmissionByQuery(getTransmissionsQuery(incoming, null, localID, null, null, payloadHash, numberOfParts), true);
 	}
@@ -735,7 +940,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @throws IllegalStateException when more than 1 matching Transmission is found
 	 * @throws UnknownCorrespondentException when the correspondent is unknown
 	 */
-	public Transmission<?> retrieveTransmission(boolean incoming, Transmission.Type type, Correspondent correspondent, int remoteID, int payloadHash, int numberOfParts) throws IllegalStateException, UnknownCorrespondentException
+	public synchronized Transmission<?> retrieveTransmission(boolean incoming, Transmission.Type type, Correspondent correspondent, int remoteID, int payloadHash, int numberOfParts) throws IllegalStateException, UnknownCorrespondentException
 	{
 		return retrieveTransmissionByQuery(getTransmissionsQuery(incoming, type, null, remoteID, correspondent, payloadHash, numberOfParts), false);
 	}
@@ -749,7 +954,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param numberOfParts
 	 * @return a matching Transmission, or {@code null} if no such transmission was found or an error occurred (check log output).
 	 */
-	public SMSTransmission<?> retrieveSMSTransmission(boolean incoming, int localID, boolean binary, int numberOfParts)
+	public synchronized SMSTransmission<?> retrieveSMSTransmission(boolean incoming, int localID, boolean binary, int numberOfParts)
 	{
 		return (SMSTransmission<?>) retrieveTransmissionByQuery(getTransmissionsQuery(incoming, binary ? Type.BINARY_SMS : Type.TEXTUAL_SMS, localID, null, null, null, numberOfParts), true);
 	}
@@ -761,7 +966,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * 
 	 * @return a list of incomplete SMSTransmissions
 	 */
-	public List<SMSTransmission<?>> retrieveIncompleteSMSTransmissions()
+	public synchronized List<SMSTransmission<?>> retrieveIncompleteSMSTransmissions()
 	{
 		List<SMSTransmission<?>> incompleteSMSTs = new ArrayList<SMSTransmission<?>>();
 		
@@ -773,6 +978,78 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 		 return incompleteSMSTs;
 	}
 	
+	/**
+	 * Retrieves summaries of all incomplete incoming SMSTransmissions, in the order in which their next resend requests are due.
+	 * Unlike {@link #retrieveIncompleteSMSTransmissions()} this does not retrieve the transmissions themselves, nor their parts.
+	 * 
+	 * @return a list of summaries of incomplete SMSTransmissions
+	 */
+	public synchronized List<PendingSMSTransmission> retrievePendingSMSTransmissions()
+	{
+		reconcilePendingSMSTransmissions();
+		
+		List<PendingSMSTransmission> pendingSMSTs = new ArrayList<PendingSMSTransmission>();
+		for(Record pRec : recordStore.retrieveRecords(new RecordsQuery(PENDING_SMS_TRANSMISSION_SCHEMA, Order.AscendingBy(PENDING_SMS_TRANSMISSION_COLUMN_NEXT_RESEND_REQ_AT))))
+			pendingSMSTs.add(new PendingSMSTransmission(pRec));
+		return pendingSMSTs;
+	}
+	
+	/**
+	 * @param localID local ID of an incoming SMSTransmission
+	 * @return a summary of the SMSTransmission with the given local ID, or {@code null} if there is no such transmission or it is not (or no longer) incomplete
+	 */
+	public synchronized PendingSMSTransmission retrievePendingSMSTransmission(int localID)
+	{
+		Record pRec = recordStore.retrieveRecord(PENDING_SMS_TRANSMISSION_SCHEMA.createRecordReference(INCOMING_TRANSMISSION_SCHEMA.createRecordReference(localID)));
+		return pRec != null ? new PendingSMSTransmission(pRec) : null;
+	}
+	
+	/**
+	 * Creates the missing {@link #PENDING_SMS_TRANSMISSION_SCHEMA} records for incomplete incoming SMSTransmissions
+	 * which were stored before that table was introduced. Only runs once per TransmissionStore instance and only
+	 * compares record references, so transmissions are only retrieved in full if they lack a summary record.
+	 */
+	private void reconcilePendingSMSTransmissions()
+	{
+		if(pendingSMSTransmissionsReconciled)
+			return;
+		pendingSMSTransmissionsReconciled = true;
+		try
+		{
+			recordStore.startTransaction();
+			
+			// Transmissions which already have a summary record:
+			Set<RecordReference> summarised = new HashSet<RecordReference>();
+			for(RecordReference pRecRef : recordStore.retrieveRecordReferences(new RecordsQuery(PENDING_SMS_TRANSMISSION_SCHEMA)))
+				summarised.add(PENDING_SMS_TRANSMISSION_COLUMN_TRANSMISSION.retrieveValue(pRecRef));
+			
+			// Incomplete SMS transmissions:
+			for(RecordReference tRecRef : recordStore.retrieveRecordReferences(
+				new RecordsQuery(	INCOMING_TRANSMISSION_SCHEMA,
+									EqualityConstraint.IsNull(COLUMN_RECEIVED_AT),
+									new EqualityConstraint(TRANSMISSION_COLUMN_DELETED, Boolean.FALSE),
+									new OrConstraint(	new RuleConstraint(TRANSMISSION_COLUMN_TYPE, Comparison.EQUAL, Transmission.Type.BINARY_SMS.ordinal()),
+														new RuleConstraint(TRANSMISSION_COLUMN_TYPE, Comparison.EQUAL, Transmission.Type.TEXTUAL_SMS.ordinal())))))
+				if(!summarised.contains(tRecRef))
+				{
+					Transmission<?> transmission = retrieveTransmission(tRecRef, false);
+					if(transmission != null)
+						doStorePendingSMSTransmissionRecord(transmission);
+				}
+			
+			recordStore.commitTransaction();
+		}
+		catch(Exception e)
+		{
+			client.logError("Error upon reconciling pending SMS transmissions", e);
+			try
+			{
+				recordStore.rollbackTransactions();
+			}
+			catch(Exception ignore) {}
+		}
+	}
+	
 	/**
 	 * Returns a list of all incoming or outgoing transmissions from or to the given correspondent.
 	 * 
@@ -780,7 +1057,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param correspondent
 	 * @return
 	 */
-	public List<Transmission<?>> retrieveTransmissions(boolean incoming, Correspondent correspondent)
+	public synchronized List<Transmission<?>> retrieveTransmissions(boolean incoming, Correspondent correspondent)
 	{
 		try
 		{
@@ -796,7 +1073,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param transmission
 	 * @param byHiding if {@code true} the transmission will only be hidden (marked as deleted, but still in the db), if {@code false} it (and its parts) will be completely removed from the db
 	 */
-	public void deleteTransmission(Transmission<?> transmission, boolean byHiding)
+	public synchronized void deleteTransmission(Transmission<?> transmission, boolean byHiding)
 	{
 		if(!transmission.isLocalIDSet())
 			return; // the transmission was never stored
@@ -823,6 +1100,10 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 				recordStore.delete(tRecRef);
 			}
 			
+			// Delete pending SMS transmission record (if any):
+			if(transmission.incoming && transmission instanceof SMSTransmission)
+				recordStore.delete(PENDING_SMS_TRANSMISSION_SCHEMA.createRecordReference(tRecRef));
+			
 			recordStore.commitTransaction();
 			
 			// Delete from cache:
@@ -847,7 +1128,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param recordReference a RecordReference pointing to the Record which we are told is transmittable
 	 * @param transmission may be null, but if it isn't it must have been stored before
 	 */
-	public void storeTransmittableRecord(Correspondent correspondent, RecordReference recordReference, Transmission<?> transmission)
+	public synchronized void storeTransmittableRecord(Correspondent correspondent, RecordReference recordReference, Transmission<?> transmission)
 	{
 		if(transmission != null && !transmission.isLocalIDSet())
 			throw new IllegalArgumentException("Transmission must have been stored before being associated with records to need sending or have been sent.");
@@ -876,7 +1157,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * 
 	 * @param recordReference
 	 */
-	public void deleteTransmittableRecord(RecordReference recordReference)
+	public synchronized void deleteTransmittableRecord(RecordReference recordReference)
 	{
 		try
 		{
@@ -892,6 +1173,32 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 		}
 	}
 	
+	/**
+	 * Removes all entries relating to the referenced Records from the TransmittableRecords table (possibly for multiple receivers).
+	 * All deletions happen within a single transaction.
+	 * 
+	 * @param recordReferences
+	 */
+	public synchronized void deleteTransmittableRecords(List<RecordReference> recordReferences)
+	{
+		try
+		{
+			recordStore.startTransaction();
+			for(RecordReference recordReference : recordReferences)
+				deleteTransmittableRecord(recordReference);
+			recordStore.commitTransaction();
+		}
+		catch(Exception e)
+		{
+			client.logError("Error upon deleting transmittable(s)", e);
+			try
+			{
+				recordStore.rollbackTransactions();
+			}
+			catch(Exception ignore) {}
+		}
+	}
+	
 	/**
 	 * Retrieves all records, with Schemata from the given Model, that are marked for transmission
 	 * to the given Correspondent and which are not (yet) associated with a Transmission.
@@ -900,7 +1207,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param model
 	 * @return
 	 */
-	public List<Record> retrieveTransmittableRecordsWithoutTransmission(Correspondent correspondent, Model model)
+	public synchronized List<Record> retrieveTransmittableRecordsWithoutTransmission(Correspondent correspondent, Model model)
 	{
 		return retrieveTransmittableUserRecords(correspondent, model, EqualityConstraint.IsNull(TRANSMITTABLE_RECORDS_COLUMN_TRANSMISSION));
 	}
@@ -913,7 +1220,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param model
 	 * @return
 	 */
-	public List<Record> retrieveTransmittableRecordsWithTransmission(Correspondent correspondent, Model model)
+	public synchronized List<Record> retrieveTransmittableRecordsWithTransmission(Correspondent correspondent, Model model)
 	{
 		return retrieveTransmittableUserRecords(correspondent, model, EqualityConstraint.IsNotNull(TRANSMITTABLE_RECORDS_COLUMN_TRANSMISSION));
 	}
@@ -928,7 +1235,7 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 	 * @param transmission
 	 * @return
 	 */
-	public List<Record> retrieveTransmittableRecordsWithTransmission(Model model, Transmission<?> transmission)
+	public synchronized List<Record> retrieveTransmittableRecordsWithTransmission(Model model, Transmission<?> transmission)
 	{
 		return retrieveTransmittableUserRecords(transmission.getCorrespondent(), model, getTransmissionSchema(false).createRecordReference(transmission.getLocalID()).getRecordQueryConstraint());
 	}
@@ -1000,6 +1307,9 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 		// Collection to return:
 		List<Record> userRecs = new ArrayList<Record>();
 		
+		// Received transmissions:
+		List<RecordReference> receivedTRecRefs = new ArrayList<RecordReference>();
+		
 		// Treat per transmission:
 		for(Map.Entry<RecordReference, List<Record>> entry : tRecRef2toSendRecs.entrySet())
 		{
@@ -1019,45 +1329,115 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 					deleteTransmission(transmission, true /*deleting by hiding*/);
 			}
 			else if(transmission.isReceived())
-			{	// transmission is received (i.e. ACKed):
-				for(Record toSendRec : entry.getValue())
-					try
-					{	// Mark transmittable as received:
-						TRANSMITTABLE_RECORDS_COLUMN_RECEIVED.storeValue(toSendRec, Boolean.TRUE);
-						recordStore.store(toSendRec);
-					}
-					catch(Exception e)
-					{
-						client.logError("Error upon storing transmittable", e);
-					}
-			}
+				// transmission is received (i.e. ACKed):
+				receivedTRecRefs.add(entry.getKey());
 		}
 		
+		// Mark transmittables of received transmissions as received:
+		markTransmittablesReceived(correspondent, model, receivedTRecRefs);
+		
 		return userRecs;
 	}
 	
+	/**
+	 * Marks all unreceived transmittables of the given correspondent and model, whose transmission has been received
+	 * (i.e. ACKed), as received. Neither the transmittables nor the transmissions are loaded: the references to the
+	 * transmissions of unreceived transmittables are obtained with {@link RecordStore#retrieveDistinctValues(RecordsQuery, uk.ac.ucl.excites.sapelli.storage.model.Column)},
+	 * those of the received ones among them with {@link RecordStore#retrieveRecordReferences(RecordsQuery)}, and the
+	 * transmittables are then updated per batch of {@link #MAX_REFERENCES_PER_QUERY} transmissions.
+	 * 
+	 * @param correspondent
+	 * @param model
+	 */
 	public synchronized void updateTransmittableReceivedState(Correspondent correspondent, Model model)
 	{
-		// Get all unreceived transmittables with an assigned transmission:
-		Map<RecordReference, List<Record>> tRecRef2toSendRecs =  retrieveUnreceivedTransmittablesWithTransmission(correspondent, model);
+		RecordReference cRecRef = null;
+		try
+		{
+			cRecRef = getCorrespondentRecordReference(correspondent, false, false);
+		}
+		catch(Exception ignore) {}
+		if(cRecRef == null) // this means it has never been stored so there can also be no transmittables for it
+			return;
 		
-		// Treat per transmission:
-		for(Map.Entry<RecordReference, List<Record>> entry : tRecRef2toSendRecs.entrySet())
+		// Get references to the transmissions which have unreceived transmittables:
+		List<RecordReference> tRecRefs = new ArrayList<RecordReference>(recordStore.retrieveDistinctValues(
+			new RecordsQuery(	TRANSMITTABLE_RECORDS_SCHEMA,
+								cRecRef.getRecordQueryConstraint(),
+								model.getModelRecordReference().getRecordQueryConstraint(),
+								EqualityConstraint.IsNotNull(TRANSMITTABLE_RECORDS_COLUMN_TRANSMISSION),
+								new EqualityConstraint(TRANSMITTABLE_RECORDS_COLUMN_RECEIVED, Boolean.FALSE)),
+			TRANSMITTABLE_RECORDS_COLUMN_TRANSMISSION));
+		if(tRecRefs.isEmpty())
+			return;
+		
+		// Determine which of those have been received (and are not deleted):
+		List<RecordReference> receivedTRecRefs = new ArrayList<RecordReference>(tRecRefs.size());
+		for(int b = 0; b < tRecRefs.size(); b += MAX_REFERENCES_PER_QUERY)
 		{
-			Transmission<?> transmission = retrieveTransmission(entry.getKey(), false /*don't include deleted*/);
-			if(transmission != null && transmission.isReceived())
-			{	// transmission is received (i.e. ACKed):
-				for(Record toSendRec : entry.getValue())
-					try
-					{	// Mark transmittable as received:
-						TRANSMITTABLE_RECORDS_COLUMN_RECEIVED.storeValue(toSendRec, Boolean.TRUE);
-						recordStore.store(toSendRec);
-					}
-					catch(Exception e)
-					{
-						client.logError("Error upon storing transmittable", e);
-					}
+			OrConstraint anyOf = new OrConstraint();
+			for(RecordReference tRecRef : tRecRefs.subList(b, Math.min(b + MAX_REFERENCES_PER_QUERY, tRecRefs.size())))
+				anyOf.addConstraint(tRecRef.getRecordQueryConstraint());
+			receivedTRecRefs.addAll(recordStore.retrieveRecordReferences(
+				new RecordsQuery(	OUTGOING_TRANSMISSION_SCHEMA,
+									anyOf,
+									EqualityConstraint.IsNotNull(COLUMN_RECEIVED_AT),
+									new EqualityConstraint(TRANSMISSION_COLUMN_DELETED, Boolean.FALSE))));
+		}
+		
+		// Mark their transmittables as received:
+		markTransmittablesReceived(correspondent, model, receivedTRecRefs);
+	}
+	
+	/**
+	 * Marks the unreceived transmittables of the given correspondent and model which were sent in one of the given
+	 * transmissions as received, using {@link RecordStore#update(RecordsQuery, uk.ac.ucl.excites.sapelli.storage.model.Column, Object)} (i.e. with a single
+	 * UPDATE statement per batch of {@link #MAX_REFERENCES_PER_QUERY} transmissions, on SQL-based record stores),
+	 * all within one transaction.
+	 * 
+	 * @param correspondent
+	 * @param model
+	 * @param transmissionRecRefs references to received outgoing transmissions
+	 */
+	private void markTransmittablesReceived(Correspondent correspondent, Model model, List<RecordReference> transmissionRecRefs)
+	{
+		if(transmissionRecRefs.isEmpty())
+			return;
+		RecordReference cRecRef = null;
+		try
+		{
+			cRecRef = getCorrespondentRecordReference(correspondent, false, false);
+		}
+		catch(Exception ignore) {}
+		if(cRecRef == null) // this means it has never been stored so there can also be no transmittables for it
+			return;
+		try
+		{
+			recordStore.startTransaction();
+			for(int b = 0; b < transmissionRecRefs.size(); b += MAX_REFERENCES_PER_QUERY)
+			{
+				OrConstraint anyOf = new OrConstraint();
+				for(RecordReference tRecRef : transmissionRecRefs.subList(b, Math.min(b + MAX_REFERENCES_PER_QUERY, transmissionRecRefs.size())))
+					anyOf.addConstraint(new EqualityConstraint(TRANSMITTABLE_RECORDS_COLUMN_TRANSMISSION, tRecRef));
+				recordStore.update(
+					new RecordsQuery(	TRANSMITTABLE_RECORDS_SCHEMA,
+										cRecRef.getRecordQueryConstraint(),
+										model.getModelRecordReference().getRecordQueryConstraint(),
+										new EqualityConstraint(TRANSMITTABLE_RECORDS_COLUMN_RECEIVED, Boolean.FALSE),
+										anyOf),
+					TRANSMITTABLE_RECORDS_COLUMN_RECEIVED,
+					Boolean.TRUE);
+			}
+			recordStore.commitTransaction();
+		}
+		catch(Exception e)
+		{
+			client.logError("Error upon marking transmittables as received", e);
+			try
+			{
+				recordStore.rollbackTransactions();
 			}
+			catch(Exception ignore) {}
 		}
 	}
 	
@@ -1161,6 +1541,93 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 		return recordStore.retrieveRecord(getUserRecordReferenceFromTransmittable(toSendRecord, recycleModel));
 	}
 	
+	/**
+	 * Summary of an incomplete incoming {@link SMSTransmission}, as kept in the {@link TransmissionStore#PENDING_SMS_TRANSMISSION_SCHEMA} table.
+	 * Allows resend requests to be scheduled without retrieving the transmission and its parts.
+	 */
+	static public final class PendingSMSTransmission
+	{
+		
+		private final int localID;
+		private final int totalParts;
+		private final long receivedParts;
+		private final int numberOfSentResendRequests;
+		private final TimeStamp nextResendRequestAt;
+		
+		private PendingSMSTransmission(Record pRec)
+		{
+			this.localID = TRANSMISSION_COLUMN_ID.retrieveValue(PENDING_SMS_TRANSMISSION_COLUMN_TRANSMISSION.retrieveValue(pRec)).intValue();
+			this.totalParts = TRANSMISSION_COLUMN_NUMBER_OF_PARTS.retrieveValue(pRec).intValue();
+			this.receivedParts = PENDING_SMS_TRANSMISSION_COLUMN_RECEIVED_PARTS.retrieveValue(pRec).longValue();
+			this.numberOfSentResendRequests = TRANSMISSION_COLUMN_NUMBER_OF_RESEND_REQS_SENT.retrieveValue(pRec).intValue();
+			this.nextResendRequestAt = retrieveTimeStamp(PENDING_SMS_TRANSMISSION_COLUMN_NEXT_RESEND_REQ_AT, pRec);
+		}
+		
+		/**
+		 * @return the local ID of the incoming transmission
+		 */
+		public int getLocalID()
+		{
+			return localID;
+		}
+		
+		/**
+		 * @return the total number of (expected) parts
+		 */
+		public int getTotalNumberOfParts()
+		{
+			return totalParts;
+		}
+		
+		/**
+		 * @return the current number of (received) parts
+		 */
+		public int getCurrentNumberOfParts()
+		{
+			return Long.bitCount(receivedParts);
+		}
+		
+		/**
+		 * @param partNumber a value from [1, totalParts]
+		 * @return whether the part with the given number has been received
+		 */
+		public boolean hasPart(int partNumber)
+		{
+			return (receivedParts & (1L << (partNumber - SMSTransmission.MIN_PART_NUMBER))) != 0;
+		}
+		
+		/**
+		 * @return the numbers of the parts which have not been received yet
+		 */
+		public List<Integer> getMissingPartNumbers()
+		{
+			List<Integer> missing = new ArrayList<Integer>(totalParts - getCurrentNumberOfParts());
+			for(int p = SMSTransmission.MIN_PART_NUMBER; p < SMSTransmission.MIN_PART_NUMBER + totalParts; p++)
+				if(!hasPart(p))
+					missing.add(p);
+			return missing;
+		}
+		
+		/**
+		 * @return the number of resend requests sent so far
+		 */
+		public int getNumberOfSentResendRequests()
+		{
+			return numberOfSentResendRequests;
+		}
+		
+		/**
+		 * @return time at which to send next resend request, or null if no (more) request should be sent
+		 * 
+		 * @see SMSTransmission#getNextResendRequestSendingTime()
+		 */
+		public TimeStamp getNextResendRequestSendingTime()
+		{
+			return nextResendRequestAt;
+		}
+		
+	}
+	
 	/**
 	 * Helper class to generate Records representing Correspondents
 	 * 
@@ -1210,13 +1677,42 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 
 		private Record tRecord;
 		private final List<Record> tPartRecords = new ArrayList<Record>();
+		private boolean includeParts;
 		
 		/**
 		 * @param transmission
 		 * @return a {@link List} of {@link Record}s, the first one of which is the tranmission record, the following ones are the transmission part records
 		 */
 		public List<Record> generate(Transmission<?> transmission)
-		{	
+		{
+			return generate(transmission, true);
+		}
+		
+		/**
+		 * @param transmission
+		 * @return the transmission record (without generating any part records)
+		 */
+		public Record generateTransmissionRecord(Transmission<?> transmission)
+		{
+			return generate(transmission, false).get(0);
+		}
+		
+		/**
+		 * @param smsT
+		 * @param msg a part of smsT
+		 * @return the part record for msg (foreign key not set)
+		 */
+		public Record generatePartRecord(SMSTransmission<?> smsT, Message<?, ?> msg)
+		{
+			tPartRecords.clear();
+			addSMSPartRecord(smsT, msg);
+			return tPartRecords.get(0);
+		}
+		
+		private List<Record> generate(Transmission<?> transmission, boolean includeParts)
+		{
+			this.includeParts = includeParts;
+			
 			// Create new transmission record:
 			tRecord = getTransmissionSchema(transmission.incoming).createRecord();
 			
@@ -1270,16 +1766,20 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 				TRANSMISSION_COLUMN_LAST_RESEND_REQS_SENT_AT.storeValue(tRecord, smsT.getLastResendRequestSentAt());
 			}
 			// Make records for the parts...
-			for(Message<?, ?> msg : smsT.getParts())
-			{
-				Record tPartRec = newPartRecord(smsT, msg.getPartNumber()); // adds to the tPartRecords list as well
-				
-				// Set columns (except for foreign key):
-				COLUMN_SENT_AT.storeValue(tPartRec, msg.getSentAt());
-				TRANSMISSION_PART_COLUMN_DELIVERED_AT.storeValue(tPartRec, msg.getDeliveredAt());
-				COLUMN_RECEIVED_AT.storeValue(tPartRec, msg.getReceivedAt());
-				msg.handle(this); // will set part body and body bit length
-			}
+			if(includeParts)
+				for(Message<?, ?> msg : smsT.getParts())
+					addSMSPartRecord(smsT, msg);
+		}
+		
+		private void addSMSPartRecord(SMSTransmission<?> smsT, Message<?, ?> msg)
+		{
+			Record tPartRec = newPartRecord(smsT, msg.getPartNumber()); // adds to the tPartRecords list as well
+			
+			// Set columns (except for foreign key):
+			COLUMN_SENT_AT.storeValue(tPartRec, msg.getSentAt());
+			TRANSMISSION_PART_COLUMN_DELIVERED_AT.storeValue(tPartRec, msg.getDeliveredAt());
+			COLUMN_RECEIVED_AT.storeValue(tPartRec, msg.getReceivedAt());
+			msg.handle(this); // will set part body and body bit length
 		}
 		
 		@Override
@@ -1320,8 +1820,11 @@ public class TransmissionStore extends RecordStoreWrapper<TransmissionClient>
 			}
 			
 			// Create a single transmission part (only used to store the body):
-			newPartRecord(geoKeyT, 1); // adds to the list as well
-			setPartBody(geoKeyT.getBody()); // will set part body and body bit length
+			if(includeParts)
+			{
+				newPartRecord(geoKeyT, 1); // adds to the list as well
+				setPartBody(geoKeyT.getBody()); // will set part body and body bit length
+			}
 		}
 		
 		private void setPartBody(byte[] bodyBytes)
@@ -22,11 +22,13 @@ import java.io.IOException;
 
 import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory;
 import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory.Compression;
+import uk.ac.ucl.excites.sapelli.shared.compression.PresetDictionary;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArrayInputStream;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArrayOutputStream;
 import uk.ac.ucl.excites.sapelli.shared.io.BitInputStream;
 import uk.ac.ucl.excites.sapelli.shared.io.BitOutputStream;
+import uk.ac.ucl.excites.sapelli.shared.io.CRC16BitArrayOutputStream;
 import uk.ac.ucl.excites.sapelli.shared.io.StreamHelpers;
 import uk.ac.ucl.excites.sapelli.shared.util.IntegerRangeMapping;
 import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
@@ -178,6 +180,16 @@ public abstract class Payload
 		return CompressorFactory.getCompressor(mode).decompress(compressedData);
 	}
 	
+	static protected byte[] Compress(byte[] data, Compression mode, PresetDictionary dictionary) throws IOException
+	{
+		return CompressorFactory.getCompressor(mode, dictionary).compress(data);
+	}
+	
+	static protected byte[] Decompress(byte[] compressedData, Compression mode, PresetDictionary dictionary) throws IOException
+	{
+		return CompressorFactory.getCompressor(mode, dictionary).decompress(compressedData);
+	}
+	
 	// DYNAMICS------------------------------------------------------
 	protected Transmission<?> transmission;
 	
@@ -227,15 +239,26 @@ public abstract class Payload
 	}
 	
 	public BitArray serialise() throws IOException, TransmissionCapacityExceededException
+	{
+		return serialise(new BitArrayOutputStream());
+	}
+	
+	/**
+	 * Serialises the payload using the given stream, which may be a subclass of {@link BitArrayOutputStream}
+	 * that processes the bits as they are written (e.g. a {@link CRC16BitArrayOutputStream}).
+	 * 
+	 * @param bitstream an empty BitArrayOutputStream, will be closed
+	 * @return the serialised payload bits
+	 * @throws IOException
+	 * @throws TransmissionCapacityExceededException
+	 */
+	/*package*/ BitArray serialise(BitArrayOutputStream bitstream) throws IOException, TransmissionCapacityExceededException
 	{
 		if(this.transmission == null)
 			throw new IllegalStateException("Cannot serialise before transmission has been set!");
 	
-		BitArrayOutputStream bitstream = null;
 		try
 		{
-			bitstream = new BitArrayOutputStream();
-		
 			// Serialise payload data:
 			write(bitstream);
 		
@@ -25,6 +25,7 @@ import uk.ac.ucl.excites.sapelli.shared.crypto.Hashing;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArrayInputStream;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArrayOutputStream;
+import uk.ac.ucl.excites.sapelli.shared.io.CRC16BitArrayOutputStream;
 import uk.ac.ucl.excites.sapelli.shared.util.IntegerRangeMapping;
 import uk.ac.ucl.excites.sapelli.shared.util.Objects;
 import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
@@ -551,20 +552,21 @@ public abstract class Transmission<C extends Correspondent>
 				FORMAT_VERSION_FIELD.write(DEFAULT_FORMAT, bitstream);
 				
 				// TODO anonymous / user-cred (maybe only for next transmission format version?)
-				// TODO encrypted flag + encryption-related fields (maybe only for next transmission format version?)
+				// Note: encryption is not signalled here but at the payload level (see RecordsPayload)
 				
 				// Write payload type:
 				Payload.PAYLOAD_TYPE_FIELD.write(payload.getType(), bitstream);
 				
-				// Get serialised payload bits:
-				BitArray payloadBits = payload.serialise();
+				// Get serialised payload bits (hashing them as they are written):
+				CRC16BitArrayOutputStream payloadStream = new CRC16BitArrayOutputStream();
+				BitArray payloadBits = payload.serialise(payloadStream);
 				
 				// Capacity check:
 				if(payloadBits.length() > getMaxPayloadBits())
 					throw new TransmissionCapacityExceededException("Payload is too large for the associated transmission (size: " + payloadBits.length() + " bits; max for this type of transmission: " + getMaxPayloadBits() + " bits");
 				
-				// Compute & store payload hash:
-				this.payloadHash = computePayloadHash(payloadBits);
+				// Store payload hash:
+				this.payloadHash = payloadStream.getCRC16(); // = computePayloadHash(payloadBits)
 				
 				// Write payload bits length:
 				payloadBitsLengthField.write(payloadBits.length(), bitstream);
@@ -712,7 +714,7 @@ public abstract class Transmission<C extends Correspondent>
 	
 	protected int computePayloadHash(BitArray payloadBits)
 	{
-		return Hashing.getCRC16Hash(payloadBits.toByteArray());
+		return Hashing.getCRC16Hash(payloadBits);
 	}
 	
 	public abstract boolean isComplete();
@@ -19,17 +19,20 @@
 package uk.ac.ucl.excites.sapelli.transmission.model.content;
 
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory;
 import uk.ac.ucl.excites.sapelli.shared.compression.CompressorFactory.Compression;
+import uk.ac.ucl.excites.sapelli.shared.compression.PresetDictionary;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArray;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArrayInputStream;
 import uk.ac.ucl.excites.sapelli.shared.io.BitArrayOutputStream;
@@ -43,6 +46,8 @@ import uk.ac.ucl.excites.sapelli.storage.model.Record;
 import uk.ac.ucl.excites.sapelli.storage.model.Schema;
 import uk.ac.ucl.excites.sapelli.storage.util.UnknownModelException;
 import uk.ac.ucl.excites.sapelli.transmission.TransmissionClient;
+import uk.ac.ucl.excites.sapelli.transmission.TransmissionProjection;
+import uk.ac.ucl.excites.sapelli.transmission.crypto.PayloadCipher;
 import uk.ac.ucl.excites.sapelli.transmission.model.Payload;
 import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionCapacityExceededException;
 import uk.ac.ucl.excites.sapelli.transmission.util.TransmissionSendingException;
@@ -61,6 +66,17 @@ public class RecordsPayload extends Payload
 	 */
 	static protected final short V2_FORMAT = 2;
 	
+	/**
+	 * Records payload format V3, which extends V2 with a preset dictionary flag and an encryption flag, following the
+	 * compression flag. If the dictionary flag is set it is followed by the ID of the {@link PresetDictionary} which was
+	 * used to compress the records (see {@link TransmissionClient#getPresetDictionary(Model)}). If the encryption flag is
+	 * set it is followed by the ID of the key and the nonce, and the body holds the encrypted (compressed) records bytes,
+	 * followed by the authentication tag (see {@link PayloadCipher}). The header is then authenticated along with the body.
+	 * V3 is only used when a dictionary and/or encryption is actually used, in all other cases V2 is used such that older
+	 * receivers can still decode it.
+	 */
+	static protected final short V3_FORMAT = 3;
+	
 	/**
 	 * The default Records payload format version being used.
 	 */
@@ -69,11 +85,11 @@ public class RecordsPayload extends Payload
 	/**
 	 * The highest supported Records payload format version
 	 */
-	static protected final short HIGHEST_SUPPORTED_FORMAT = V2_FORMAT;
+	static protected final short HIGHEST_SUPPORTED_FORMAT = V3_FORMAT;
 	
 	/**
 	 * We use 2 bits to store the format version This means up to 4 versions can be differentiated.
-	 * Currently only 1 supported format exists (= V2). If we ever get to V5 it would be best if an
+	 * Currently 2 supported formats exist (V2 & V3). If we ever get to V5 it would be best if an
 	 * additional flag is added to enable future extensions beyond V5.
 	 */
 	static protected final short FORMAT_VERSION_SIZE = 2; // bits
@@ -86,6 +102,16 @@ public class RecordsPayload extends Payload
 	static protected final Compression[] COMPRESSION_MODES = { Compression.NONE, Compression.DEFLATE, Compression.LZMA };
 	static protected final IntegerRangeMapping COMPRESSION_FLAG_FIELD = new IntegerRangeMapping(0, COMPRESSION_MODES.length - 1);
 	
+	/**
+	 * The field used to store the ID of the preset dictionary (in format V3 only).
+	 */
+	static protected final IntegerRangeMapping PRESET_DICTIONARY_ID_FIELD = IntegerRangeMapping.ForSize(0, PresetDictionary.ID_SIZE);
+	
+	/**
+	 * The number of bits taken up by the flags format V3 adds to the header (preset dictionary & encryption).
+	 */
+	static protected final int V3_FLAGS_SIZE = 2;
+	
 	static public int GetType()
 	{
 		return BuiltinType.Records.ordinal();
@@ -150,7 +176,7 @@ public class RecordsPayload extends Payload
 			throw new IllegalArgumentException("Schema of given record(s) is not transmittable.");
 		
 		// Check if record has non-null values for all transmittable columns:
-		if(!record.isFilled(transmission.client.getNonTransmittableColumns(schema))) // includes auto-incr-PK columns
+		if(!transmission.client.getTransmissionProjection(schema).isFilled(record)) // ignores non-transmittable columns (including auto-incr-PK columns)
 			throw new IllegalArgumentException("Record is not filled (some non-optional, transmittable values are null).");
 		
 		// Model:
@@ -261,6 +287,37 @@ public class RecordsPayload extends Payload
 		return !lossless;
 	}
 	
+	/**
+	 * Returns the encoded records, as they are compressed in the body of the serialised payload, but uncompressed.
+	 * Can be used to collect samples to train a {@link PresetDictionary} with.
+	 * 
+	 * @return the encoded records, padded to a byte boundary
+	 * @throws IllegalStateException when no transmission is set or the payload contains no records
+	 * @throws IOException
+	 * @throws TransmissionCapacityExceededException
+	 */
+	public byte[] getEncodedRecords() throws IllegalStateException, IOException, TransmissionCapacityExceededException
+	{
+		if(!isTansmissionSet())
+			throw new IllegalStateException("No transmission set!");
+		if(recordsBySchema.isEmpty())
+			throw new IllegalStateException("Payload contains no records.");
+		return encodeRecords(getSchemataInModelOrder()).toByteArray();
+	}
+	
+	/**
+	 * @return the schemata for which the payload contains records, in model order
+	 */
+	private Schema[] getSchemataInModelOrder()
+	{
+		Schema[] schemataInT = new Schema[getSchemata().size()];
+		int s = 0;
+		for(Schema sInM : model.getSchemata())
+			if(containsRecordsOf(sInM))
+				schemataInT[s++] = sInM;
+		return schemataInT;
+	}
+	
 	/* (non-Javadoc)
 	 * @see uk.ac.ucl.excites.sapelli.transmission.Payload#doSerialise(uk.ac.ucl.excites.sapelli.shared.io.BitOutputStream)
 	 */
@@ -271,49 +328,70 @@ public class RecordsPayload extends Payload
 			throw new IllegalStateException("Payload contains no records. Add at least 1 record before serialising.");
 		try
 		{
-			int numberOfDifferentSchemataInTransmission = getSchemata().size();
-			Schema[] schemataInT = new Schema[numberOfDifferentSchemataInTransmission];
-			
-			// Write HEADER PART 1 ----------------------------------
-			//	Format version (2 bits):
-			FORMAT_VERSION_FIELD.write(DEFAULT_FORMAT, out);
-			//	Lossless flag:
-			out.write(lossless);
-			//	Model & schema identification:
-			// 		Write Model ID (56 bits):
-			Model.MODEL_ID_FIELD.write(model.getID(), out);
-			//		Write schema occurrence bits:
-			int s = 0;
-			for(Schema sInM : model.getSchemata())
-			{	// 1 bit per schema in model, indicating for which schemata this payload contains records (schemata in model order):
-				if(containsRecordsOf(sInM))
-				{
-					out.write(true); // transmission payload contains at least 1 record for this schema
-					schemataInT[s++] = sInM;
-				}
-				else
-					out.write(false); // no records of this schema appear in this transmission payload
-			}
-
 			// Encode records ---------------------------------------
-			BitArray recordsBits = encodeRecords(schemataInT);
+			BitArray recordsBits = encodeRecords(getSchemataInModelOrder());
+			byte[] recordsBytes = recordsBits.toByteArray();
 			// Compress record bits with various compression modes:
-			byte[][] comprResults = Compress(recordsBits, COMPRESSION_MODES);
+			byte[][] comprResults = Compress(recordsBytes, COMPRESSION_MODES);
 			// Determine most space-efficient compression mode:
 			int bestComprIdx = 0;
 			for(int c = 1; c < COMPRESSION_MODES.length; c++)
 				if(comprResults[c].length < comprResults[bestComprIdx].length)
 					bestComprIdx = c;
+			// Try compression with preset dictionary (format V3), if the client has one for this model:
+			PresetDictionary dictionary = transmission.client.getPresetDictionary(model);
+			boolean useDictionary = false;
+			if(dictionary != null)
+				for(int c = 0; c < COMPRESSION_MODES.length; c++)
+					if(CompressorFactory.SupportsPresetDictionary(COMPRESSION_MODES[c]))
+					{
+						byte[] dictResult = Compress(recordsBytes, COMPRESSION_MODES[c], dictionary);
+						// The dictionary ID & the V3 flags take up additional space:
+						if(dictResult.length * Byte.SIZE + PRESET_DICTIONARY_ID_FIELD.size() + V3_FLAGS_SIZE < comprResults[bestComprIdx].length * Byte.SIZE)
+						{
+							comprResults[c] = dictResult;
+							bestComprIdx = c;
+							useDictionary = true;
+						}
+					}
 			
-			// Write HEADER PART 2 ----------------------------------
-			//	Compression flag (2 bits):
-			COMPRESSION_FLAG_FIELD.write(bestComprIdx, out);
-
-			// Write BODY: the encoded & compressed records ---------
-			if(COMPRESSION_MODES[bestComprIdx] != Compression.NONE) // if compressed : write byte array 
-				out.write(comprResults[bestComprIdx]); // write byte array
+			// Get cipher, if the records are to be encrypted (format V3):
+			PayloadCipher cipher = transmission.client.getPayloadCipher(model, transmission.getCorrespondent());
+			short format = (cipher != null || useDictionary) ? V3_FORMAT : DEFAULT_FORMAT;
+			
+			if(cipher == null)
+			{
+				// Write HEADER:
+				writeHeader(out, format, getSchemata(), bestComprIdx, useDictionary ? dictionary : null, null);
+				
+				// Write BODY: the encoded & compressed records ---------
+				if(COMPRESSION_MODES[bestComprIdx] != Compression.NONE) // if compressed : write byte array 
+					out.write(comprResults[bestComprIdx]); // write byte array
+				else
+					recordsBits.writeTo(out); // write bit array (avoid padding to byte boundary)
+			}
 			else
-				recordsBits.writeTo(out); // write bit array (avoid padding to byte boundary)
+			{
+				// Write HEADER (which is also authenticated):
+				BitArrayOutputStream headerOut = new BitArrayOutputStream();
+				writeHeader(headerOut, format, getSchemata(), bestComprIdx, useDictionary ? dictionary : null, cipher);
+				headerOut.close();
+				BitArray headerBits = headerOut.toBitArray();
+				headerBits.writeTo(out);
+				//	Nonce (96 bits):
+				byte[] nonce = cipher.newNonce();
+				out.write(nonce);
+				
+				// Write BODY: the encoded, compressed & encrypted records, followed by the authentication tag:
+				byte[] body = comprResults[bestComprIdx]; // (always written as a byte array, even when not compressed)
+				byte[] tag = cipher.encrypt(nonce, headerBits.toByteArray(), body, 0, body.length); // encrypts in place, no copy needed
+				out.write(body);
+				out.write(tag);
+			}
+		}
+		catch(GeneralSecurityException e)
+		{
+			throw new IOException("Error on encrypting payload.", e);
 		}
 		catch(IOException e)
 		{
@@ -321,6 +399,49 @@ public class RecordsPayload extends Payload
 		}
 	}
 	
+	/**
+	 * Writes the payload header. Used when serialising and, for encrypted payloads, to reconstruct the authenticated
+	 * header upon deserialisation.
+	 * 
+	 * @param out
+	 * @param format
+	 * @param schemataInT schemata for which the payload contains records
+	 * @param compressionIdx index of the compression mode in {@link #COMPRESSION_MODES}
+	 * @param dictionary the preset dictionary used for compression, or {@code null}
+	 * @param cipher the cipher used for encryption (format V3 only), or {@code null}
+	 * @throws IOException
+	 */
+	private void writeHeader(BitOutputStream out, short format, Collection<Schema> schemataInT, int compressionIdx, PresetDictionary dictionary, PayloadCipher cipher) throws IOException
+	{
+		// HEADER PART 1 --------------------------------------------
+		//	Format version (2 bits):
+		FORMAT_VERSION_FIELD.write(format, out);
+		//	Lossless flag:
+		out.write(lossless);
+		//	Model & schema identification:
+		// 		Write Model ID (56 bits):
+		Model.MODEL_ID_FIELD.write(model.getID(), out);
+		//		Write schema occurrence bits:
+		for(Schema sInM : model.getSchemata())
+			// 1 bit per schema in model, indicating for which schemata this payload contains records (schemata in model order):
+			out.write(schemataInT.contains(sInM));
+		
+		// HEADER PART 2 --------------------------------------------
+		//	Compression flag (2 bits):
+		COMPRESSION_FLAG_FIELD.write(compressionIdx, out);
+		if(format < V3_FORMAT)
+			return;
+		//	Preset dictionary & encryption flags (1 bit each; V3 only):
+		out.write(dictionary != null);
+		out.write(cipher != null);
+		//	Preset dictionary ID (8 bits; V3 only):
+		if(dictionary != null)
+			PRESET_DICTIONARY_ID_FIELD.write(dictionary.getID(), out);
+		//	Key ID (8 bits; V3 only):
+		if(cipher != null)
+			PayloadCipher.KEY_ID_FIELD.write(cipher.getID(), out);
+	}
+	
 	/**
 	 * Note: SMSTransmission overrides this to insert a completeness check
 	 * 
@@ -357,14 +478,74 @@ public class RecordsPayload extends Payload
 				schemataInT.add(sInM);
 		//	Compression flag:
 		int compressionMode = COMPRESSION_FLAG_FIELD.readInt(in);
+		//	Preset dictionary & encryption flags (V3 only):
+		boolean useDictionary = false;
+		boolean encrypted = false;
+		if(format >= V3_FORMAT)
+		{
+			useDictionary = in.readBit();
+			encrypted = in.readBit();
+		}
+		//	Preset dictionary ID:
+		PresetDictionary dictionary = null;
+		if(useDictionary)
+		{
+			int dictionaryID = PRESET_DICTIONARY_ID_FIELD.readInt(in);
+			dictionary = transmission.client.getPresetDictionary(model, dictionaryID);
+			if(dictionary == null)
+				throw new RecordsPayloadDecodeException(this, "Unknown preset dictionary (ID: " + dictionaryID + ") for model " + model.getName() + ".");
+		}
+		//	Key ID & nonce:
+		PayloadCipher cipher = null;
+		byte[] nonce = null;
+		if(!encrypted && transmission.client.isPayloadEncryptionRequired(model, transmission.getCorrespondent()))
+			throw new RecordsPayloadDecodeException(this, "Payload is not encrypted, but encryption is required for model " + model.getName() + ".");
+		if(encrypted)
+		{
+			int keyID = PayloadCipher.KEY_ID_FIELD.readInt(in);
+			try
+			{
+				cipher = transmission.client.getPayloadCipher(model, keyID);
+			}
+			catch(GeneralSecurityException e)
+			{
+				throw new RecordsPayloadDecodeException(this, "Could not initialise cipher for key (ID: " + keyID + ").", e);
+			}
+			if(cipher == null)
+				throw new RecordsPayloadDecodeException(this, "Unknown key (ID: " + keyID + ") for model " + model.getName() + ".");
+			nonce = in.readBytes(PayloadCipher.NONCE_SIZE);
+		}
 
-		// Read BODY: encoded records, possibly compressed ----------
+		// Read BODY: encoded records, possibly compressed and/or encrypted ----------
 		BitArray recordsBits;
-		if(COMPRESSION_MODES[compressionMode] == Compression.NONE)
+		if(cipher != null)
+		{	// Read encrypted data & tag as bytes, verify & decrypt (in place):
+			int bodyLength = in.available() - PayloadCipher.TAG_SIZE;
+			if(bodyLength < 0)
+				throw new RecordsPayloadDecodeException(this, "Encrypted payload is too short.");
+			byte[] recordBytes = in.readBytes(bodyLength);
+			byte[] tag = in.readBytes(PayloadCipher.TAG_SIZE);
+			BitArrayOutputStream headerOut = new BitArrayOutputStream();
+			writeHeader(headerOut, format, schemataInT, compressionMode, dictionary, cipher);
+			headerOut.close();
+			try
+			{
+				cipher.decrypt(nonce, headerOut.toBitArray().toByteArray(), recordBytes, 0, recordBytes.length, tag);
+			}
+			catch(GeneralSecurityException e)
+			{
+				throw new RecordsPayloadDecodeException(this, "Could not decrypt payload.", e);
+			}
+			// Decompress if needed & convert to bit array:
+			if(COMPRESSION_MODES[compressionMode] != Compression.NONE)
+				recordBytes = Decompress(recordBytes, COMPRESSION_MODES[compressionMode], dictionary);
+			recordsBits = BitArray.FromBytes(recordBytes);
+		}
+		else if(COMPRESSION_MODES[compressionMode] == Compression.NONE)
 			recordsBits = in.readBitArray(in.bitsAvailable()); // not compressed: read as bits
 		else
 		{	// Read compressed data as bytes & decompress them:
-			byte[] recordBytes = Decompress(in.readBytes(in.available()), COMPRESSION_MODES[compressionMode]);
+			byte[] recordBytes = Decompress(in.readBytes(in.available()), COMPRESSION_MODES[compressionMode], dictionary);
 			// Convert to bit array:
 			recordsBits = BitArray.FromBytes(recordBytes);
 		}
@@ -390,8 +571,8 @@ public class RecordsPayload extends Payload
 			// Encode records per schema...
 			for(Schema schema : schemataInT)
 			{
-				// Get columns which should *not* be transmitted:
-				Set<Column<?>> nonTransmittableColumns = transmission.client.getNonTransmittableColumns(schema); // includes auto-incr-PK columns
+				// Get columns which should be transmitted (i.e. excluding auto-incr-PK columns, etc.):
+				TransmissionProjection projection = transmission.client.getTransmissionProjection(schema);
 				
 				// Get records:
 				List<Record> records = recordsBySchema.get(schema);
@@ -413,9 +594,8 @@ public class RecordsPayload extends Payload
 					{
 						if(first)
 						{	// Get values of first record:
-							for(Column<?> c : schema.getColumns(false))
-								if(!nonTransmittableColumns.contains(c)) // ignore non-transmittable columns
-									factoredOutValues.put(c, c.retrieveValueAsBits(records.get(0), lossless)); // treat all columns as potentially factored-out
+							for(Column<?> c : projection.getTransmittableColumns()) // ignore non-transmittable columns
+								factoredOutValues.put(c, c.retrieveValueAsBits(records.get(0), lossless)); // treat all columns as potentially factored-out
 							first = false;
 						}
 						else
@@ -436,19 +616,16 @@ public class RecordsPayload extends Payload
 						// Write flag which indicates that factoring-out is used:
 						out.write(true);
 						// Write factored-out flags & the actual factored out values:
-						for(Column<?> c : schema.getColumns(false))
+						for(Column<?> c : projection.getTransmittableColumns())
 						{	// for all transmittable columns:
-							if(!nonTransmittableColumns.contains(c))
-							{
-								if(factoredOutValues.containsKey(c))
-								{	// Column is factored out:
-									out.write(true); // write factored-out flag = true
-									out.write(factoredOutValues.get(c)); // write factored out value
-								}
-								else
-									// Column is *not* factored out:
-									out.write(false); // write factored-out flag = false
+							if(factoredOutValues.containsKey(c))
+							{	// Column is factored out:
+								out.write(true); // write factored-out flag = true
+								out.write(factoredOutValues.get(c)); // write factored out value
 							}
+							else
+								// Column is *not* factored out:
+								out.write(false); // write factored-out flag = false
 						}
 					}
 					else
@@ -456,11 +633,10 @@ public class RecordsPayload extends Payload
 						out.write(false);
 				}
 				
-				// Write record data, skipping ...
-				Set<Column<?>> skipColumns = new HashSet<Column<?>>(nonTransmittableColumns); 	// ... non-transmittable,
-				skipColumns.addAll(factoredOutValues.keySet());									// factored-out, ...
+				// Write record data, skipping non-transmittable, factored-out and virtual columns:
+				List<Column<?>> recordColumns = projection.getTransmittableColumns(factoredOutValues.keySet());
 				for(Record r : recordsBySchema.get(schema))
-					r.writeToBitStream(out, false /* ... and virtual columns */, skipColumns, lossless);
+					r.writeColumnsToBitStream(out, recordColumns, lossless);
 			}
 			
 			// Close the stream & return bits:
@@ -493,8 +669,8 @@ public class RecordsPayload extends Payload
 			// Per schema...
 			for(Schema schema : schemataInT)
 			{
-				// Get columns which should *not* be transmitted:
-				Set<Column<?>> nonTransmittableColumns = transmission.client.getNonTransmittableColumns(schema); // includes auto-incr-PK columns
+				// Get columns which should be transmitted (i.e. excluding auto-incr-PK columns, etc.):
+				TransmissionProjection projection = transmission.client.getTransmissionProjection(schema);
 				
 				// Create & store list for the records that will be decoded:
 				List<Record> records = new ArrayList<Record>();
@@ -511,27 +687,24 @@ public class RecordsPayload extends Payload
 					if(in.readBit()) //	read flag that indicates whether or not some columns are factored-out
 					{
 						factoredOutValues = new HashMap<Column<?>, Object>();
-						for(Column<?> c : schema.getColumns(false))
+						for(Column<?> c : projection.getTransmittableColumns())
 						{	// for all transmittable columns:
-							if(!nonTransmittableColumns.contains(c))
-							{
-								if(in.readBit()) // Read factored-out flag, indicating whether column is factored-out; if = true: 
-									factoredOutValues.put(c, c.readValue(in, lossless)); // read factored out value
-							}
+							if(in.readBit()) // Read factored-out flag, indicating whether column is factored-out; if = true: 
+								factoredOutValues.put(c, c.readValue(in, lossless)); // read factored out value
 						}
 					}
 				}
 				
-				// Read record data, skipping ...
-				Set<Column<?>> skipColumns = new HashSet<Column<?>>(nonTransmittableColumns); 	// ... non-transmittable,
-				skipColumns.addAll(factoredOutValues.keySet());									// factored-out, ...
+				// Read record data, skipping non-transmittable, factored-out and virtual columns:
+				List<Column<?>> recordColumns = projection.getTransmittableColumns(factoredOutValues.keySet());
+				int minimumRecordSize = projection.getMinimumSize(recordColumns, lossless);
 				while(	records.size() < numberOfRecordsForSchema &&					
-						in.bitsAvailable() >= schema.getMinimumSize(false /* ... and virtual columns */, skipColumns, lossless))
+						in.bitsAvailable() >= minimumRecordSize)
 				{
 					// Get new Record instance:
 					record = schema.createRecord();
-					// Read record values from the stream, skipping virtual columns and factored-out columns:
-					record.readFromBitStream(in, false /* ... and virtual columns */, skipColumns, lossless);
+					// Read record values from the stream:
+					record.readColumnsFromBitStream(in, recordColumns, lossless);
 					// Set factored-out values:
 					for(Entry<Column<?>, Object> fEntry : factoredOutValues.entrySet())
 						fEntry.getKey().storeObject(record, fEntry.getValue());
@@ -168,8 +168,10 @@ public abstract class SMSTransmission<M extends Message<M, ?>> extends Transmiss
 			for(M m : parts)
 				if(lastReceivedAt == null || lastReceivedAt.isBefore(m.getReceivedAt()))
 					lastReceivedAt = m.getReceivedAt();
-			// the reception time of the most recently received part becomes the receivedAt time of the transmission as a whole:
-			setReceivedAt(lastReceivedAt);
+			// the reception time of the most recently received part becomes the receivedAt time of the transmission as a whole
+			//	(unless the parts carry no reception time, as is the case for outgoing transmissions, whose receivedAt time comes from the ACK):
+			if(lastReceivedAt != null)
+				setReceivedAt(lastReceivedAt);
 		}
 	}
 	
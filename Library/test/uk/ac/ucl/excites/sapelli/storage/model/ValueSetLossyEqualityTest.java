@@ -0,0 +1,239 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+
+package uk.ac.ucl.excites.sapelli.storage.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.ucl.excites.sapelli.shared.util.Objects;
+import uk.ac.ucl.excites.sapelli.storage.StorageClient;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.BooleanColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.FloatColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.IntegerListColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.LosslessFlagColumn;
+import uk.ac.ucl.excites.sapelli.storage.model.columns.StringColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.Line;
+import uk.ac.ucl.excites.sapelli.storage.types.LineColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.Location;
+import uk.ac.ucl.excites.sapelli.storage.types.LocationColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.Orientation;
+import uk.ac.ucl.excites.sapelli.storage.types.OrientationColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.Polygon;
+import uk.ac.ucl.excites.sapelli.storage.types.PolygonColumn;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStamp;
+import uk.ac.ucl.excites.sapelli.storage.types.TimeStampColumn;
+
+/**
+ * Checks, on random values and records with columns of every type (in schemata with and without lossless flag), that
+ * {@link Column#toLossy(Object)}, {@link ValueSet#hasEqualValuesForColumns(ValueSet, java.util.Collection, boolean)} and
+ * {@link Record#equals(Object, boolean, boolean)} behave exactly as comparing values after an actual lossy encoding round trip does.
+ */
+public class ValueSetLossyEqualityTest
+{
+	
+	static private final long RANDOM_SEED = 20160301L;
+	static private final int ROUNDS = 2000;
+	
+	static private Schema withFlag;
+	static private Schema withoutFlag;
+	
+	@BeforeClass
+	static public void createSchemata()
+	{
+		Model model = new Model(1235, "LossyEqualityModel", StorageClient.SCHEMA_FLAG_TRACK_LOSSLESSNESS);
+		withFlag = new Schema(model, "WithLosslessFlag");
+		withFlag.addColumn(TimeStampColumn.Century21("Century21", false, false));
+		withFlag.addColumn(TimeStampColumn.Century21NoMS("Century21NoMS", true, false));
+		withFlag.addColumn(TimeStampColumn.Compact("Compact", true, false));
+		withFlag.addColumn(TimeStampColumn.JavaMSLocalTime("JavaMSLocalTime", true, false));
+		withFlag.addColumn(new FloatColumn("Float", true, true, false));
+		withFlag.addColumn(new FloatColumn("Double", true, true, true));
+		withFlag.addColumn(new LocationColumn("Location", true, false, true, true, true, true, true, true));
+		withFlag.addColumn(new LocationColumn("LocationDouble", true, true, true, false, false, true, false, false));
+		withFlag.addColumn(new OrientationColumn("Orientation", true, true, true, false));
+		withFlag.addColumn(new LineColumn("Line", true, false, true, true, true, true));
+		withFlag.addColumn(new PolygonColumn("Polygon", true, true, false, false, false, false));
+		withFlag.addColumn(new IntegerListColumn("IntegerList", new IntegerColumn("Element", false, 0, 100), true));
+		withFlag.addColumn(new BooleanColumn("Boolean", true));
+		withFlag.addColumn(new StringColumn("String", true, 20));
+		withoutFlag = new Schema(model, "WithoutLosslessFlag");
+		for(Column<?> c : withFlag.getColumns(false))
+			if(!(c instanceof LosslessFlagColumn))
+				withoutFlag.addColumn(c.copy());
+		withFlag.seal();
+		withoutFlag.seal();
+		model.seal();
+	}
+	
+	/**
+	 * Reference implementation: the lossy version of a value, obtained by actually encoding & decoding it (lossyly).
+	 */
+	@SuppressWarnings("unchecked")
+	static private <T> Object ReferenceLossy(Column<T> column, Object value) throws IOException
+	{
+		if(value == null || !column.canBeLossy())
+			return value;
+		return column.fromBytes(column.toBytes((T) value, false), false);
+	}
+	
+	/**
+	 * Reference implementation: value comparison as if lossyly encoded, with lossy versions obtained by round trips.
+	 */
+	static private boolean ReferenceEquals(ValueSet<?> a, ValueSet<?> b, List<? extends Column<?>> columns) throws IOException
+	{
+		boolean aLossy = a.isLossy(), bLossy = b.isLossy();
+		for(Column<?> c : columns)
+		{
+			Object aValue = c.retrieveValue(a), bValue = c.retrieveValue(b);
+			if(!Objects.deepEquals(aLossy ? aValue : ReferenceLossy(c, aValue), bLossy ? bValue : ReferenceLossy(c, bValue)))
+				return false;
+		}
+		return true;
+	}
+	
+	static private List<Column<?>> GetValueColumns(Schema schema)
+	{
+		List<Column<?>> valueColumns = new ArrayList<Column<?>>();
+		for(Column<?> c : schema.getColumns(false))
+			if(!(c instanceof LosslessFlagColumn))
+				valueColumns.add(c);
+		return valueColumns;
+	}
+	
+	@Test
+	public void toLossyMatchesRoundTrip() throws IOException
+	{
+		Random random = new Random(RANDOM_SEED);
+		for(Schema schema : new Schema[] { withFlag, withoutFlag })
+			for(Column<?> c : GetValueColumns(schema))
+				for(int r = 0; r < ROUNDS / 10; r++)
+				{
+					Object value = CreateValue(c, random);
+					assertTrue("toLossy() mismatch for column " + c.getName() + " and value " + value, Objects.deepEquals(c.toLossyObject(value), ReferenceLossy(c, value)));
+				}
+	}
+	
+	@Test
+	public void lossyEqualityMatchesRoundTrip() throws IOException
+	{
+		Random random = new Random(RANDOM_SEED);
+		for(Schema schema : new Schema[] { withFlag, withoutFlag })
+		{
+			List<Column<?>> columns = schema.getColumns(false);
+			List<Column<?>> valueColumns = GetValueColumns(schema);
+			
+			// Compare against lossy & lossless copies, possibly with one value changed:
+			for(int r = 0; r < ROUNDS; r++)
+			{
+				Record a = schema.createRecord();
+				for(Column<?> c : valueColumns)
+					StoreValue(c, a, random);
+				boolean lossless = random.nextBoolean();
+				Record b = schema.createRecord(a.toBytes(lossless), lossless);
+				if(random.nextBoolean())
+					StoreValue(valueColumns.get(random.nextInt(valueColumns.size())), b, random);
+				for(Record[] pair : new Record[][] { { a, b }, { b, a } })
+				{
+					boolean expected = ReferenceEquals(pair[0], pair[1], columns);
+					assertEquals("hasEqualValuesForColumns() mismatch between " + pair[0] + " and " + pair[1], expected, pair[0].hasEqualValuesForColumns(pair[1], columns, true));
+					assertEquals("equals() mismatch between " + pair[0] + " and " + pair[1], expected, pair[0].equals(pair[1], false, true));
+				}
+			}
+		}
+	}
+	
+	static private void StoreValue(Column<?> column, ValueSet<?> valueSet, Random random)
+	{
+		try
+		{
+			column.storeObject(valueSet, CreateValue(column, random));
+		}
+		catch(IllegalArgumentException invalid)
+		{	// e.g. an out-of-range random location:
+			column.storeObject(valueSet, null);
+		}
+	}
+	
+	static private Object CreateValue(Column<?> column, Random random)
+	{
+		if(column.optional && random.nextInt(6) == 0)
+			return null;
+		if(column instanceof TimeStampColumn)
+			return CreateTimeStamp(random);
+		if(column instanceof BooleanColumn)
+			return random.nextBoolean();
+		if(column instanceof IntegerColumn) // e.g. the auto key
+			return (long) random.nextInt(1000);
+		if(column instanceof FloatColumn)
+			return random.nextGaussian() * 1000;
+		if(column instanceof StringColumn)
+			return "s" + random.nextInt(5);
+		if(column instanceof LocationColumn)
+			return CreateLocation(random);
+		if(column instanceof OrientationColumn)
+			return new Orientation(CreateFloat(random), CreateFloat(random), CreateFloat(random));
+		if(column instanceof LineColumn || column instanceof PolygonColumn)
+		{
+			List<Location> line = column instanceof LineColumn ? new Line() : new Polygon();
+			for(int i = random.nextInt(4); i > 0; i--)
+				line.add(CreateLocation(random));
+			return line;
+		}
+		if(column instanceof ListColumn) // integer list (copies are plain ListColumn.Simple instances)
+		{
+			List<Long> list = new ArrayList<Long>();
+			for(int i = random.nextInt(4); i > 0; i--)
+				list.add((long) random.nextInt(100));
+			return list;
+		}
+		throw new IllegalArgumentException("Unsupported column type: " + column.getClass().getName());
+	}
+	
+	static private TimeStamp CreateTimeStamp(Random random)
+	{
+		return new TimeStamp(1456790400000L + (long) (random.nextDouble() * 3e11), random.nextInt(97) - 48); // random quarter-hour offset
+	}
+	
+	static private Float CreateFloat(Random random)
+	{
+		return random.nextInt(4) == 0 ? null : (float) (random.nextGaussian() * 100);
+	}
+	
+	static private Location CreateLocation(Random random)
+	{
+		return new Location(random.nextDouble() * 180 - 90,
+							random.nextDouble() * 360 - 180,
+							random.nextBoolean() ? random.nextGaussian() * 100 : null,
+							CreateFloat(random),
+							CreateFloat(random),
+							CreateFloat(random),
+							random.nextBoolean() ? CreateTimeStamp(random) : null,
+							random.nextInt(3));
+	}
+	
+}
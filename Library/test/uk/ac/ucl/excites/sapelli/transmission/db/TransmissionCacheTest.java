@@ -0,0 +1,98 @@
+/**
+ * Sapelli data collection platform: http://sapelli.org
+ * 
+ * Copyright 2012-2016 University College London - ExCiteS group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and 
+ * limitations under the License.
+ */
+package uk.ac.ucl.excites.sapelli.transmission.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.ac.ucl.excites.sapelli.transmission.model.Transmission;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyServer;
+import uk.ac.ucl.excites.sapelli.transmission.model.transport.geokey.GeoKeyTransmission;
+
+/**
+ * Soaks {@link TransmissionCache}s of various limits with a random mix of puts (of finished, unfinished and oversized
+ * transmissions, and of updates to cached ones), gets and removals, and checks after every operation that the cache
+ * stays within its entry and weight limits.
+ */
+public class TransmissionCacheTest
+{
+	
+	static private final long RANDOM_SEED = 20160301L;
+	static private final int OPERATIONS = 200000;
+	static private final int IDS = 500; // range of local IDs, so updates & hits happen too
+	static private final int[] MAX_ENTRIES = { 1, 2, TransmissionCache.DEFAULT_MAX_ENTRIES, 100, 5000 };
+	static private final long[] MAX_WEIGHTS = { 1, 1000, TransmissionCache.DEFAULT_MAX_WEIGHT };
+	
+	private final GeoKeyServer server = new GeoKeyServer(1, "Test", "http://localhost");
+	private final GeoKeyTransmission response = createTransmission(Integer.MAX_VALUE, 0, null);
+	
+	private GeoKeyTransmission createTransmission(int localID, int bodySize, GeoKeyTransmission response)
+	{
+		return new GeoKeyTransmission(null, server, true, localID, localID, 0, 0, null, null, response, new byte[bodySize]);
+	}
+	
+	@Test
+	public void staysWithinLimits()
+	{
+		Random random = new Random(RANDOM_SEED);
+		for(int maxEntries : MAX_ENTRIES)
+			for(long maxWeight : MAX_WEIGHTS)
+			{
+				TransmissionCache cache = new TransmissionCache(maxEntries, maxWeight);
+				for(int op = 0; op < OPERATIONS / (MAX_ENTRIES.length * MAX_WEIGHTS.length); op++)
+				{
+					int localID = 1 + random.nextInt(IDS);
+					int action = random.nextInt(10);
+					if(action < 5)
+					{	// put new transmission or update cached one (up to twice the max weight, so some are oversized):
+						int size = random.nextInt((int) Math.min(2 * maxWeight, 64 * 1024) + 1);
+						boolean finished = random.nextBoolean();
+						GeoKeyTransmission transmission = createTransmission(localID, size, finished ? response : null);
+						cache.put(transmission);
+						//	an unfinished one is never evicted right away (a finished one may be, to keep older unfinished ones):
+						if(!finished && size <= maxWeight)
+							assertSame("Just-put transmission not found in " + cache, transmission, cache.get(localID));
+						if(size > maxWeight)
+							assertNull("Oversized transmission cached in " + cache, cache.get(localID));
+					}
+					else if(action < 9)
+					{
+						Transmission<?> cached = cache.get(localID);
+						if(cached != null)
+							assertEquals("Wrong transmission returned by " + cache, localID, cached.getLocalID());
+					}
+					else
+					{
+						cache.remove(localID);
+						assertNull("Removed transmission still in " + cache, cache.get(localID));
+					}
+					// Check limits:
+					assertTrue("Limits exceeded: " + cache, cache.size() <= cache.getMaxEntries() && cache.getWeight() <= cache.getMaxWeight() && cache.getWeight() >= 0);
+					if(cache.size() == 0)
+						assertEquals("Empty cache with non-zero weight: " + cache, 0, cache.getWeight());
+				}
+			}
+	}
+	
+}
@@ -4,6 +4,12 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -13,14 +19,16 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.codec.binary.Base64;
 
+import com.db4o.ObjectContainer;
+
 import uk.ac.ucl.excites.collector.project.db.DataAccess;
 import uk.ac.ucl.excites.collector.project.db.ProjectModelProvider;
-import uk.ac.ucl.excites.sapelli.server.db.DataAccessHelper;
+import uk.ac.ucl.excites.sapelli.server.db.Db4oServletListener;
+import uk.ac.ucl.excites.sapelli.server.db.ReceivedSMSPart;
+import uk.ac.ucl.excites.sapelli.server.ingest.IngestionPipeline;
 import uk.ac.ucl.excites.storage.model.Record;
 import uk.ac.ucl.excites.transmission.crypto.Hashing;
-import uk.ac.ucl.excites.transmission.sms.Message;
 import uk.ac.ucl.excites.transmission.sms.SMSAgent;
-import uk.ac.ucl.excites.transmission.sms.SMSTransmission;
 import uk.ac.ucl.excites.transmission.sms.binary.BinaryMessage;
 import uk.ac.ucl.excites.transmission.sms.binary.BinarySMSTransmission;
 import uk.ac.ucl.excites.util.BinaryHelpers;
@@ -28,12 +36,27 @@ import uk.ac.ucl.excites.util.BinaryHelpers;
 /**
  * Servlet implementation to Receive SMS Transmitions from Relay
  * 
+ * Incoming SMS messages are backed-up to file and then handed to an {@link IngestionPipeline}, which decodes them
+ * and, on background threads, stores them as {@link ReceivedSMSPart}s, with one database commit for all messages which
+ * arrived in the meantime. Once all parts of a transmission have been stored the transmission is received and its
+ * records are stored.
+ * When the pipeline is overloaded the request is answered with "503 Service Unavailable" (and a Retry-After header),
+ * telling the relay to try again later.
+ * 
  * @author Michalis Vitos
  */
 public class ServerDataReceiver extends HttpServlet
 {
 	private static final long serialVersionUID = 5655090058815084878L;
-	private DataAccess dao;
+
+	private static final int RETRY_AFTER_SECONDS = 30;
+	private static final long STOP_TIMEOUT_MS = 30 * 1000;
+
+	// Long-lived log writers (shared by request and pipeline threads, access is synchronised on the writer):
+	private FileWriter errorLog;
+	private FileWriter smsLog;
+
+	private IngestionPipeline<IncomingSMS, ReceivedSMS> pipeline;
 
 	/**
 	 * @see HttpServlet#HttpServlet()
@@ -43,6 +66,41 @@ public class ServerDataReceiver extends HttpServlet
 		super();
 	}
 
+	/**
+	 * @see javax.servlet.GenericServlet#init()
+	 */
+	@Override
+	public void init() throws ServletException
+	{
+		super.init();
+		ServletContext context = getServletContext();
+		try
+		{
+			// Logging for errors and SMS
+			errorLog = new FileWriter(ProjectUpload.getProjectsUploadFolderPath(context) + "errors.csv", true);
+			smsLog = new FileWriter(ProjectUpload.getProjectsUploadFolderPath(context) + "sms.csv", true);
+		}
+		catch(IOException e)
+		{
+			throw new ServletException("Could not open log files", e);
+		}
+		pipeline = new IngestionPipeline<IncomingSMS, ReceivedSMS>(new BinarySMSStages(context));
+		pipeline.start();
+	}
+
+	/**
+	 * @see javax.servlet.GenericServlet#destroy()
+	 */
+	@Override
+	public void destroy()
+	{
+		if(pipeline != null && !pipeline.stop(STOP_TIMEOUT_MS))
+			logToCsvLine(errorLog, "Ingestion pipeline stopped before all received SMS messages were processed (see SMS backup files)");
+		closeLog(errorLog);
+		closeLog(smsLog);
+		super.destroy();
+	}
+
 	/**
 	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
 	 */
@@ -59,108 +117,222 @@ public class ServerDataReceiver extends HttpServlet
 	 */
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
 	{
-
 		// Get context
 		ServletContext context = getServletContext();
-		// Get the session container
-		dao = DataAccessHelper.getInstance(request);
-		// Get a writer
-		PrintWriter out = response.getWriter();
-		
-		// Logging for errors and SMS
-		FileWriter errorLog = new FileWriter(ProjectUpload.getProjectsUploadFolderPath(context) + "errors.csv", true);
-		FileWriter smsLog = new FileWriter(ProjectUpload.getProjectsUploadFolderPath(context) + "sms.csv", true);
-		//FileWriter recordLog = new FileWriter(ProjectUpload.getProjectsUploadFolderPath(context) + "record.csv", true);
 		
 		String smsID = request.getParameter("smsID");
 		// Set smsID to -1 if it is null
 		smsID = (smsID == null) ? "-1" : smsID;
 		String smsPhoneNumber = request.getParameter("smsPhoneNumber");
 		String smsTimestamp = request.getParameter("smsTimestamp");
-		byte[] smsData = Base64.decodeBase64(request.getParameter("smsData"));
+		String smsData = request.getParameter("smsData");
 		
+		// Back-up the SMS before acknowledging it, so nothing is lost if the pipeline is stopped before processing it:
 		FileWriter smsBackupLog = new FileWriter(ProjectUpload.getProjectsUploadFolderPath(context) + "SMS_" + smsID + "_" + smsPhoneNumber + "_" + smsTimestamp + ".txt", true);
-		smsBackupLog.append(request.getParameter("smsData"));
+		smsBackupLog.append(smsData);
 		smsBackupLog.flush();
 		smsBackupLog.close();
 
-		// TODO Log SMS
-		logSMStoCsv(smsLog, smsID, smsPhoneNumber, smsTimestamp, BinaryHelpers.toHexadecimealString(Hashing.getMD5Hash(smsData).toByteArray()));
-		//logToCsvLine(errorLog, "Test error log");
-		
-		try
+		// Hand over to the pipeline (decoding, logging & storage happen on its threads):
+		if(pipeline.submit(new IncomingSMS(smsID, smsPhoneNumber, smsTimestamp, smsData)))
+		{
+			PrintWriter out = response.getWriter();
+			out.println("OK:" + smsID);
+			out.close();
+		}
+		else
+		{	// Overloaded: apply back-pressure
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			response.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+			PrintWriter out = response.getWriter();
+			out.println("BUSY:" + smsID);
+			out.close();
+		}
+	}
+
+	/**
+	 * The work done by the ingestion pipeline for incoming binary SMS messages
+	 */
+	private class BinarySMSStages implements IngestionPipeline.Stages<IncomingSMS, ReceivedSMS>
+	{
+
+		private final ServletContext context;
+
+		public BinarySMSStages(ServletContext context)
 		{
-			BinaryMessage sms = new BinaryMessage(new SMSAgent(smsPhoneNumber), smsData);
+			this.context = context;
+		}
+
+		@Override
+		public ReceivedSMS decode(IncomingSMS input) throws Exception
+		{
+			byte[] smsData = Base64.decodeBase64(input.data);
+			logSMStoCsv(smsLog, input.id, input.phoneNumber, input.timestamp, BinaryHelpers.toHexadecimealString(Hashing.getMD5Hash(smsData).toByteArray()));
+			BinaryMessage sms = new BinaryMessage(new SMSAgent(input.phoneNumber), smsData);
 			logToCsvLine(smsLog, "Received SMS " + sms.getPartNumber() + "/" + sms.getTotalParts() + " of transmission with ID " + sms.getTransmissionID() + ".");
+			return new ReceivedSMS(input.phoneNumber, smsData, sms);
 		}
-		catch(Exception e)
+
+		@Override
+		public List<ReceivedSMS> storeParts(List<ReceivedSMS> messages) throws Exception
 		{
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			e.printStackTrace(pw);
-			logToCsvLine(errorLog, sw.toString());
+			// One database session & commit per batch:
+			ObjectContainer db = Db4oServletListener.getObjectContainer(context);
+			try
+			{
+				List<ReceivedSMS> completed = new ArrayList<ReceivedSMS>();
+				// Numbers of the parts stored (earlier or in this batch) per transmission, null if the transmission has been received already:
+				Map<String, Set<Integer>> partNumbersByKey = new HashMap<String, Set<Integer>>();
+				for(ReceivedSMS message : messages)
+				{
+					String key = message.getTransmissionKey();
+					Set<Integer> partNumbers;
+					if(partNumbersByKey.containsKey(key))
+						partNumbers = partNumbersByKey.get(key);
+					else
+					{
+						partNumbers = new HashSet<Integer>();
+						for(ReceivedSMSPart part : ReceivedSMSPart.RetrieveParts(db, key))
+						{
+							if(part.isReceived())
+							{
+								partNumbers = null;
+								break;
+							}
+							partNumbers.add(part.getPartNumber());
+						}
+						partNumbersByKey.put(key, partNumbers);
+					}
+					if(partNumbers == null || !partNumbers.add(message.sms.getPartNumber()))
+						continue; // the transmission has been received already, or duplicate part
+					db.store(new ReceivedSMSPart(key, message.sms.getPartNumber(), message.sms.getTotalParts(), message.phoneNumber, message.data));
+					if(partNumbers.size() == message.sms.getTotalParts())
+						completed.add(message);
+				}
+				db.commit();
+				return completed;
+			}
+			catch(Exception e)
+			{
+				db.rollback();
+				throw e;
+			}
+			finally
+			{
+				db.close();
+			}
 		}
-		
-//		// Save Received SMS, add to transmission and try to decode records
-//		try
-//		{
-//			BinaryMessage sms = new BinaryMessage(new SMSAgent(smsPhoneNumber), smsData);
-//			SMSTransmission transmission = dao.retrieveSMSTransmission(sms.getTransmissionID());
-//			if(transmission == null)
-//			{
-//				logToCsvLine(smsLog, "No transmisison with ID " + sms.getTransmissionID() + " found, creating new one.");
-//				transmission = new BinarySMSTransmission(new ProjectModelProvider(dao));
-//			}
-//			else
-//				logToCsvLine(smsLog, "Found existing transmisison with ID " + sms.getTransmissionID() + ".");
-//				
-//			transmission.addPart(sms);
-//			sms.setTransmission(transmission);
-//		
-//			logToCsvLine(smsLog, "Received SMS " + sms.getPartNumber() + "/" + sms.getTotalParts() + " of transmission with ID " + transmission.getID() + ".");
-//			
-//			//Try to decode: //TODO put this in a separate thread
-//			if(transmission.isComplete())
-//			{
-//				logToCsvLine(smsLog, "Transmission is complete");
-//				transmission.receive();
-//				
-//				//store the records:
-//				for(Record r : transmission.getRecords())
-//				{
-//					logToCsvLine(smsLog, "Decoded record: " + r.toString());
-//					dao.store(r);
-//				}
-//			}
-//			else
-//			{
-//				logToCsvLine(smsLog, "Transmission is incomplete, it has " + transmission.getParts().size() + "/" + transmission.getTotalParts() + " parts.");
-//				logToCsvLine(smsLog, "  Messages received so far:");
-//				for(Message m : transmission.getParts())
-//					logToCsvLine(smsLog, "    - message " + m.getPartNumber() + "/" + m.getTotalParts());
-//			}
-//			dao.store(transmission); //!!!
-//			dao.commit();
-//			
-//			if(dao.retrieveSMSTransmission(transmission.getID()) != null)
-//				logToCsvLine(smsLog, "Transmission successfully stored");
-//			else
-//				logToCsvLine(smsLog, "Transmission not successfully stored");
-//		}
-//		catch(Exception e)
-//		{
-//			StringWriter sw = new StringWriter();
-//			PrintWriter pw = new PrintWriter(sw);
-//			e.printStackTrace(pw);
-//			logToCsvLine(errorLog, sw.toString());
-//		}
-
-		// TODO Print ok or error
-		out.println("OK:" + smsID);
-		out.close();
-		
-		errorLog.close();
-		smsLog.close();
+
+		@Override
+		public void receiveGroup(ReceivedSMS lastPart) throws Exception
+		{
+			ObjectContainer db = Db4oServletListener.getObjectContainer(context);
+			try
+			{
+				List<ReceivedSMSPart> parts = ReceivedSMSPart.RetrieveParts(db, lastPart.getTransmissionKey());
+				if(parts.isEmpty() || parts.get(0).isReceived())
+					return; // received already (by an earlier attempt)
+				DataAccess dao = new DataAccess(db);
+				BinarySMSTransmission transmission = new BinarySMSTransmission(new ProjectModelProvider(dao));
+				for(ReceivedSMSPart part : parts)
+				{
+					BinaryMessage sms = new BinaryMessage(new SMSAgent(part.getPhoneNumber()), part.getData());
+					transmission.addPart(sms);
+					sms.setTransmission(transmission);
+				}
+				try
+				{
+					transmission.receive();
+					for(Record r : transmission.getRecords())
+					{
+						logToCsvLine(smsLog, "Decoded record: " + r.toString());
+						dao.store(r);
+					}
+				}
+				catch(Exception e)
+				{	// the transmission cannot be decoded (retrying will not help), report but still store it:
+					logException(e);
+				}
+				dao.store(transmission);
+				for(ReceivedSMSPart part : parts)
+				{
+					part.markReceived();
+					db.store(part);
+				}
+				dao.commit();
+				logToCsvLine(smsLog, "Stored complete transmission " + lastPart.getTransmissionKey());
+			}
+			catch(Exception e)
+			{
+				db.rollback();
+				throw e;
+			}
+			finally
+			{
+				db.close();
+			}
+		}
+
+		@Override
+		public void onError(String stage, Object subject, Exception e)
+		{
+			logToCsvLine(errorLog, "Error in " + stage + " stage" + (subject instanceof ReceivedSMS ? " (transmission " + ((ReceivedSMS) subject).getTransmissionKey() + ")" : ""));
+			logException(e);
+		}
+
+	}
+
+	/**
+	 * SMS message as received from the relay
+	 */
+	private static class IncomingSMS
+	{
+
+		final String id;
+		final String phoneNumber;
+		final String timestamp;
+		final String data;
+
+		IncomingSMS(String id, String phoneNumber, String timestamp, String data)
+		{
+			this.id = id;
+			this.phoneNumber = phoneNumber;
+			this.timestamp = timestamp;
+			this.data = data;
+		}
+
+	}
+
+	/**
+	 * Decoded SMS message
+	 */
+	private static class ReceivedSMS
+	{
+
+		final String phoneNumber;
+		final byte[] data;
+		final BinaryMessage sms;
+
+		ReceivedSMS(String phoneNumber, byte[] data, BinaryMessage sms)
+		{
+			this.phoneNumber = phoneNumber;
+			this.data = data;
+			this.sms = sms;
+		}
+
+		String getTransmissionKey()
+		{
+			return phoneNumber + "/" + sms.getTransmissionID();
+		}
+
+	}
+
+	private void logException(Exception e)
+	{
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		e.printStackTrace(pw);
+		logToCsvLine(errorLog, sw.toString());
 	}
 
 	private static void logSMStoCsv(FileWriter writer, String smsID, String smsPhoneNumber, String smsTimestamp, String smsData)
@@ -171,10 +343,32 @@ public class ServerDataReceiver extends HttpServlet
 
 	private static void logToCsvLine(FileWriter writer, String msg)
 	{
+		if(writer == null)
+			return;
+		try
+		{
+			synchronized(writer)
+			{
+				writer.append(msg + "\n");
+				writer.flush();
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace(System.err);
+		}
+	}
+
+	private static void closeLog(FileWriter writer)
+	{
+		if(writer == null)
+			return;
 		try
 		{
-			writer.append(msg + "\n");
-			writer.flush();
+			synchronized(writer)
+			{
+				writer.close();
+			}
 		}
 		catch(IOException e)
 		{
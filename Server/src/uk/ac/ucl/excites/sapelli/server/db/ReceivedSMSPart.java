@@ -0,0 +1,99 @@
+package uk.ac.ucl.excites.sapelli.server.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.db4o.ObjectContainer;
+import com.db4o.query.Query;
+
+/**
+ * A part (i.e. SMS message) of an incoming binary SMS transmission, stored as soon as it is received so that transmissions
+ * whose parts arrive on either side of a server restart can still be completed.
+ * Once the transmission has been received the message data is dropped, but the part itself is kept so that late duplicates are recognised.
+ */
+public class ReceivedSMSPart
+{
+
+	public static final String FIELD_TRANSMISSION_KEY = "transmissionKey";
+	public static final String FIELD_PART_NUMBER = "partNumber";
+
+	/**
+	 * @param db
+	 * @param transmissionKey
+	 * @return the stored parts of the transmission with the given key, sorted by part number
+	 */
+	public static List<ReceivedSMSPart> RetrieveParts(ObjectContainer db, String transmissionKey)
+	{
+		Query query = db.query();
+		query.constrain(ReceivedSMSPart.class);
+		query.descend(FIELD_TRANSMISSION_KEY).constrain(transmissionKey);
+		query.descend(FIELD_PART_NUMBER).orderAscending();
+		List<ReceivedSMSPart> parts = new ArrayList<ReceivedSMSPart>();
+		for(Object part : query.execute())
+			parts.add((ReceivedSMSPart) part);
+		return parts;
+	}
+
+	private String transmissionKey;
+	private int partNumber;
+	private int totalParts;
+	private String phoneNumber;
+	private byte[] data;
+	private boolean received;
+
+	public ReceivedSMSPart(String transmissionKey, int partNumber, int totalParts, String phoneNumber, byte[] data)
+	{
+		this.transmissionKey = transmissionKey;
+		this.partNumber = partNumber;
+		this.totalParts = totalParts;
+		this.phoneNumber = phoneNumber;
+		this.data = data;
+		this.received = false;
+	}
+
+	public String getTransmissionKey()
+	{
+		return transmissionKey;
+	}
+
+	public int getPartNumber()
+	{
+		return partNumber;
+	}
+
+	public int getTotalParts()
+	{
+		return totalParts;
+	}
+
+	public String getPhoneNumber()
+	{
+		return phoneNumber;
+	}
+
+	/**
+	 * @return the message data, or {@code null} if the transmission has been received
+	 */
+	public byte[] getData()
+	{
+		return data;
+	}
+
+	/**
+	 * @return whether the transmission this part belongs to has been received
+	 */
+	public boolean isReceived()
+	{
+		return received;
+	}
+
+	/**
+	 * Marks the transmission this part belongs to as received and drops the message data.
+	 */
+	public void markReceived()
+	{
+		this.received = true;
+		this.data = null;
+	}
+
+}
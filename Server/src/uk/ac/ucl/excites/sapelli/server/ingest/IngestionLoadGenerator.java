@@ -0,0 +1,176 @@
+package uk.ac.ucl.excites.sapelli.server.ingest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plain-Java load generator for the {@link IngestionPipeline}, which allows its throughput to be measured without a servlet container.
+ *
+ * A number of simulated devices (threads) submit the parts of multi-part transmissions, in random order, as fast as they can.
+ * Decoding and persisting are simulated by busy work and a fixed per-transaction (i.e. per-batch) store latency, respectively.
+ * Rejected submissions (back-pressure) are retried after a short pause, as a relay would do upon receiving an HTTP 503 response.
+ *
+ * Usage: {@code IngestionLoadGenerator [devices] [transmissionsPerDevice] [partsPerTransmission] [decodeThreads] [storeLatencyMicros]}
+ */
+public class IngestionLoadGenerator
+{
+
+	private static final long DECODE_WORK_ITERATIONS = 20000;
+	private static final int RETRY_PAUSE_MS = 1;
+
+	/**
+	 * Simulated SMS part.
+	 */
+	private static class Part
+	{
+
+		final int device;
+		final int transmission;
+		final int partNumber;
+		final int totalParts;
+
+		Part(int device, int transmission, int partNumber, int totalParts)
+		{
+			this.device = device;
+			this.transmission = transmission;
+			this.partNumber = partNumber;
+			this.totalParts = totalParts;
+		}
+
+		Object getKey()
+		{
+			return ((long) device << 32) | (transmission & 0xFFFFFFFFL);
+		}
+
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		final int devices = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		final int transmissionsPerDevice = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		final int partsPerTransmission = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		final int decodeThreads = args.length > 3 ? Integer.parseInt(args[3]) : IngestionPipeline.DEFAULT_DECODE_THREADS;
+		final long storeLatencyMicros = args.length > 4 ? Long.parseLong(args[4]) : 100;
+		final Map<Object, BitSet> store = new HashMap<Object, BitSet>(); // simulated store of received parts, only accessed by the persist thread
+
+		final AtomicLong checksum = new AtomicLong(); // keeps the simulated decode work from being optimised away
+		final IngestionPipeline<Part, Part> pipeline = new IngestionPipeline<Part, Part>(new IngestionPipeline.Stages<Part, Part>()
+		{
+
+			@Override
+			public Part decode(Part input) throws Exception
+			{
+				long x = input.partNumber;
+				for(long i = 0; i < DECODE_WORK_ITERATIONS; i++)
+					x = x * 6364136223846793005L + 1442695040888963407L;
+				checksum.addAndGet(x);
+				return input;
+			}
+
+			@Override
+			public List<Part> storeParts(List<Part> messages) throws Exception
+			{
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(storeLatencyMicros)); // one "transaction" per batch
+				List<Part> completed = new ArrayList<Part>();
+				for(Part message : messages)
+				{
+					BitSet parts = store.get(message.getKey());
+					if(parts == null)
+					{
+						parts = new BitSet(message.totalParts);
+						store.put(message.getKey(), parts);
+					}
+					if(parts.get(message.partNumber))
+						continue; // duplicate
+					parts.set(message.partNumber);
+					if(parts.cardinality() == message.totalParts)
+						completed.add(message);
+				}
+				return completed;
+			}
+
+			@Override
+			public void receiveGroup(Part lastPart) throws Exception
+			{
+				store.remove(lastPart.getKey());
+			}
+
+			@Override
+			public void onError(String stage, Object subject, Exception e)
+			{
+				System.err.println("Error in " + stage + " stage: " + e);
+			}
+
+		}, decodeThreads, IngestionPipeline.DEFAULT_QUEUE_CAPACITY, IngestionPipeline.DEFAULT_MAX_BATCH_SIZE, IngestionPipeline.DEFAULT_MAX_ATTEMPTS, IngestionPipeline.DEFAULT_RETRY_DELAY_MS);
+		pipeline.start();
+
+		final AtomicLong retries = new AtomicLong();
+		Thread[] deviceThreads = new Thread[devices];
+		long startNS = System.nanoTime();
+		for(int d = 0; d < devices; d++)
+		{
+			final int device = d;
+			deviceThreads[d] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Random random = new Random(device);
+					int[] order = new int[partsPerTransmission];
+					for(int t = 0; t < transmissionsPerDevice; t++)
+					{
+						// Shuffle part order:
+						for(int p = 0; p < partsPerTransmission; p++)
+							order[p] = p + 1;
+						for(int p = partsPerTransmission - 1; p > 0; p--)
+						{
+							int r = random.nextInt(p + 1);
+							int tmp = order[p];
+							order[p] = order[r];
+							order[r] = tmp;
+						}
+						for(int p = 0; p < partsPerTransmission; p++)
+						{
+							Part part = new Part(device, t, order[p], partsPerTransmission);
+							while(!pipeline.submit(part))
+							{
+								retries.incrementAndGet();
+								try
+								{
+									Thread.sleep(RETRY_PAUSE_MS);
+								}
+								catch(InterruptedException ie)
+								{
+									return;
+								}
+							}
+						}
+					}
+				}
+			}, "Device-" + d);
+			deviceThreads[d].start();
+		}
+		for(Thread deviceThread : deviceThreads)
+			deviceThread.join();
+		long expectedGroups = (long) devices * transmissionsPerDevice;
+		while(pipeline.getReceivedGroupCount() + pipeline.getGroupFailureCount() + pipeline.getPartFailureCount() < expectedGroups)
+			Thread.sleep(1);
+		long elapsedNS = System.nanoTime() - startNS;
+		pipeline.stop(TimeUnit.SECONDS.toMillis(10));
+
+		long parts = expectedGroups * partsPerTransmission;
+		double seconds = elapsedNS / 1e9;
+		System.out.println("Devices: " + devices + "; transmissions: " + expectedGroups + "; parts: " + parts + "; decode threads: " + decodeThreads);
+		System.out.println(String.format("Elapsed: %.3f s; throughput: %.0f parts/s, %.0f transmissions/s", seconds, parts / seconds, expectedGroups / seconds));
+		System.out.println("Rejected submissions (retried): " + retries.get() + "; batches persisted: " + pipeline.getPersistedBatchCount() + " (avg. " + (parts / Math.max(1, pipeline.getPersistedBatchCount())) + " parts/batch)");
+		System.out.println("(checksum: " + checksum.get() + ")");
+	}
+
+}
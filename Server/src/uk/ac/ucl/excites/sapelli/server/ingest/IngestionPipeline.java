@@ -0,0 +1,548 @@
+package uk.ac.ucl.excites.sapelli.server.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged, multi-threaded pipeline for ingesting incoming messages (e.g. SMS parts uploaded by a relay).
+ *
+ * Work flows through 2 stages, each fed by a bounded queue:
+ * <ol>
+ * <li><b>decode</b>: a pool of threads turns raw inputs into messages (see {@link Stages#decode(Object)});</li>
+ * <li><b>persist</b>: a single thread takes the messages which have arrived (up to {@code maxBatchSize} at once) and stores
+ * them in a single transaction (see {@link Stages#storeParts(List)}). For each group (e.g. the parts of one transmission)
+ * which the store reports to be complete it then has the group received (see {@link Stages#receiveGroup(Object)}).</li>
+ * </ol>
+ * Incomplete groups are only kept in the store, not in memory, so a group whose parts arrive on either side of a restart
+ * is still completed. When storing a batch fails its messages are stored again one by one, so a failure only affects the
+ * message concerned. Messages which cannot be stored, and groups which cannot be received, are retried (up to
+ * {@code maxAttempts} times, with an increasing delay) from a delay queue, so the persist thread never sleeps and other
+ * work is not held up while waiting for a retry.
+ *
+ * When the decode queue is full {@link #submit(Object)} returns {@code false} immediately, allowing the caller to
+ * signal back-pressure (e.g. with an HTTP 503 response) instead of queueing requests behind disk and database writes.
+ * The persist stage blocks the decode stage when full, so overload always surfaces at the entrance of the pipeline.
+ *
+ * The pipeline does not depend on any servlet classes, so it can be driven and measured on its own (see {@link IngestionLoadGenerator}).
+ *
+ * @param <I> type of the raw inputs
+ * @param <M> type of the decoded messages
+ */
+public class IngestionPipeline<I, M>
+{
+
+	public static final int DEFAULT_DECODE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_RETRY_DELAY_MS = 1000;
+
+	private static final long POLL_TIMEOUT_MS = 500;
+
+	/**
+	 * The work to be done in each of the stages.
+	 *
+	 * @param <I> type of the raw inputs
+	 * @param <M> type of the decoded messages
+	 */
+	public static interface Stages<I, M>
+	{
+
+		/**
+		 * Called on one of the decode threads.
+		 *
+		 * @param input
+		 * @return the decoded message, or {@code null} if the input is to be ignored
+		 * @throws Exception when the input cannot be decoded
+		 */
+		public M decode(I input) throws Exception;
+
+		/**
+		 * Called on the persist thread with a batch of messages which have arrived. Must durably store all of the messages
+		 * in a single transaction (i.e. either all or none of them), in the same way
+		 * {@code TransmissionStore#storeReceivedPart(SMSTransmission, Message)} does for the parts of SMS transmissions,
+		 * such that their groups can still be completed after a restart. Must ignore duplicates, also within the batch.
+		 * When storing a batch fails this is called again for each of its messages on its own (i.e. with a batch of 1),
+		 * and again for a message that could not be stored, after a delay.
+		 *
+		 * @param messages the batch, never empty
+		 * @return the messages which completed the group they belong to (which is now ready to be received), never {@code null}
+		 * @throws Exception when storing fails (and nothing has been stored)
+		 */
+		public List<M> storeParts(List<M> messages) throws Exception;
+
+		/**
+		 * Called on the persist thread once {@link #storeParts(List)} has reported that the group is complete.
+		 * May be called again for the same group, after a delay, if a previous call threw an exception.
+		 *
+		 * @param lastPart the message which completed the group
+		 * @throws Exception when receiving/storing the group fails
+		 */
+		public void receiveGroup(M lastPart) throws Exception;
+
+		/**
+		 * Called (on any of the pipeline threads) when something went wrong.
+		 *
+		 * @param stage name of the stage
+		 * @param subject the input or message being processed (may be null)
+		 * @param e the cause
+		 */
+		public void onError(String stage, Object subject, Exception e);
+
+	}
+
+	private final Stages<I, M> stages;
+	private final int maxBatchSize;
+	private final int maxAttempts;
+	private final long retryDelayMS;
+
+	private final BlockingQueue<I> decodeQueue;
+	private final BlockingQueue<M> persistQueue;
+	private final DelayQueue<Retry> retryQueue = new DelayQueue<Retry>();
+
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private volatile boolean accepting = false;
+	private volatile boolean stopping = false;
+
+	// Statistics:
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong decoded = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong ignored = new AtomicLong();
+	private final AtomicLong partsStored = new AtomicLong();
+	private final AtomicLong partFailures = new AtomicLong();
+	private final AtomicLong groupsReceived = new AtomicLong();
+	private final AtomicLong groupFailures = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong batchesPersisted = new AtomicLong();
+	private final AtomicLong batchFailures = new AtomicLong();
+	private final AtomicInteger pendingGroups = new AtomicInteger(); // complete groups which have not been received (or given up on) yet
+
+	public IngestionPipeline(Stages<I, M> stages)
+	{
+		this(stages, DEFAULT_DECODE_THREADS, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY_MS);
+	}
+
+	/**
+	 * @param stages the work to be done
+	 * @param decodeThreads number of decode threads
+	 * @param queueCapacity capacity of each of the stage queues
+	 * @param maxBatchSize maximum number of messages the persist thread takes from its queue, and stores in one transaction, at once
+	 * @param maxAttempts number of times storing a message, or receiving a group, is attempted before giving up on it
+	 * @param retryDelayMS time to wait before the first retry (doubles with each further attempt)
+	 */
+	public IngestionPipeline(Stages<I, M> stages, int decodeThreads, int queueCapacity, int maxBatchSize, int maxAttempts, long retryDelayMS)
+	{
+		if(stages == null)
+			throw new NullPointerException("stages cannot be null");
+		if(decodeThreads < 1 || queueCapacity < 1 || maxBatchSize < 1 || maxAttempts < 1)
+			throw new IllegalArgumentException("Number of decode threads, queue capacity, batch size and number of attempts must be strictly positive");
+		this.stages = stages;
+		this.maxBatchSize = maxBatchSize;
+		this.maxAttempts = maxAttempts;
+		this.retryDelayMS = Math.max(0, retryDelayMS);
+		this.decodeQueue = new ArrayBlockingQueue<I>(queueCapacity);
+		this.persistQueue = new ArrayBlockingQueue<M>(queueCapacity);
+
+		for(int t = 0; t < decodeThreads; t++)
+			threads.add(new Thread(new Decoder(), "Ingestion-decode-" + t));
+		threads.add(new Thread(new Persister(), "Ingestion-persist"));
+	}
+
+	public synchronized void start()
+	{
+		if(accepting || stopping)
+			return;
+		for(Thread thread : threads)
+		{
+			thread.setDaemon(true);
+			thread.start();
+		}
+		accepting = true;
+	}
+
+	/**
+	 * Hands an input to the pipeline, without blocking.
+	 *
+	 * @param input
+	 * @return {@code true} if the input was accepted, {@code false} if the pipeline is overloaded (or not running)
+	 */
+	public boolean submit(I input)
+	{
+		if(accepting && decodeQueue.offer(input))
+		{
+			accepted.incrementAndGet();
+			return true;
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Stops accepting input, waits (at most {@code timeoutMS}) for the work in the queues (including pending retries) to be
+	 * finished and stops all threads. Parts of incomplete groups have already been stored and their groups will be completed
+	 * by parts received after a restart.
+	 *
+	 * @param timeoutMS
+	 * @return whether all queued work was finished in time
+	 */
+	public boolean stop(long timeoutMS)
+	{
+		synchronized(this)
+		{
+			accepting = false;
+		}
+		long deadline = System.currentTimeMillis() + timeoutMS;
+		while(!isIdle() && System.currentTimeMillis() < deadline)
+		{
+			try
+			{
+				Thread.sleep(10);
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		boolean drained = isIdle();
+		stopping = true;
+		for(Thread thread : threads)
+			thread.interrupt();
+		for(Thread thread : threads)
+		{
+			try
+			{
+				thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return drained;
+	}
+
+	private boolean isIdle()
+	{
+		return	decodeQueue.isEmpty() && persistQueue.isEmpty() && retryQueue.isEmpty() && pendingGroups.get() == 0 &&
+				accepted.get() == decoded.get() + failed.get() && decoded.get() == ignored.get() + partsStored.get() + partFailures.get();
+	}
+
+	private class Decoder implements Runnable
+	{
+
+		@Override
+		public void run()
+		{
+			while(!stopping)
+			{
+				I input;
+				try
+				{
+					input = decodeQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				}
+				catch(InterruptedException ie)
+				{
+					return;
+				}
+				if(input == null)
+					continue;
+				M message = null;
+				try
+				{
+					message = stages.decode(input);
+				}
+				catch(Exception e)
+				{
+					failed.incrementAndGet();
+					stages.onError("decode", input, e);
+					continue;
+				}
+				try
+				{
+					if(message != null)
+						persistQueue.put(message); // blocks when the persist stage is behind
+					else
+						ignored.incrementAndGet();
+					decoded.incrementAndGet();
+				}
+				catch(InterruptedException ie)
+				{
+					failed.incrementAndGet();
+					return;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A message to be stored again, or the group completed by a message to be received again, once its delay has expired.
+	 */
+	private class Retry implements Delayed
+	{
+
+		final M message;
+		final boolean receive;
+		final int attempt;
+		final long dueNS;
+
+		/**
+		 * @param message
+		 * @param receive whether to retry receiving the group completed by the message, rather than storing the message
+		 * @param attempt number of the attempt to be made
+		 * @param delayMS
+		 */
+		Retry(M message, boolean receive, int attempt, long delayMS)
+		{
+			this.message = message;
+			this.receive = receive;
+			this.attempt = attempt;
+			this.dueNS = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMS);
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit)
+		{
+			return unit.convert(dueNS - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other)
+		{
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+		}
+
+	}
+
+	private class Persister implements Runnable
+	{
+
+		@Override
+		public void run()
+		{
+			List<M> batch = new ArrayList<M>(maxBatchSize);
+			while(!stopping)
+			{
+				// Retries which are due:
+				for(Retry retry = retryQueue.poll(); retry != null; retry = retryQueue.poll())
+				{
+					if(retry.receive)
+						receive(retry.message, retry.attempt);
+					else
+						store(retry.message, retry.attempt);
+				}
+				// New messages (waiting no longer than until the next retry is due):
+				try
+				{
+					M first = persistQueue.poll(getPollTimeoutMS(), TimeUnit.MILLISECONDS);
+					if(first == null)
+						continue;
+					batch.add(first);
+					persistQueue.drainTo(batch, maxBatchSize - 1);
+				}
+				catch(InterruptedException ie)
+				{
+					return;
+				}
+				store(batch);
+				batchesPersisted.incrementAndGet();
+				batch.clear();
+			}
+		}
+
+		private long getPollTimeoutMS()
+		{
+			Retry next = retryQueue.peek();
+			return next == null ? POLL_TIMEOUT_MS : Math.max(0, Math.min(POLL_TIMEOUT_MS, next.getDelay(TimeUnit.MILLISECONDS)));
+		}
+
+		/**
+		 * Stores the batch in a single transaction, or, if that fails, each of its messages on its own.
+		 * Then receives the groups which have been completed.
+		 *
+		 * @param batch
+		 */
+		private void store(List<M> batch)
+		{
+			if(batch.size() == 1)
+			{
+				store(batch.get(0), 1);
+				return;
+			}
+			List<M> completed;
+			try
+			{
+				completed = stages.storeParts(batch);
+			}
+			catch(Exception e)
+			{	// Fall back to storing the messages one by one, so only those which cannot be stored are retried:
+				batchFailures.incrementAndGet();
+				for(M message : batch)
+					store(message, 1);
+				return;
+			}
+			partsStored.addAndGet(batch.size());
+			receiveAll(completed);
+		}
+
+		/**
+		 * Stores a single message and, if that completes its group, receives the group. Schedules a retry upon failure.
+		 *
+		 * @param message
+		 * @param attempt
+		 */
+		private void store(M message, int attempt)
+		{
+			List<M> completed;
+			try
+			{
+				completed = stages.storeParts(Collections.singletonList(message));
+			}
+			catch(Exception e)
+			{
+				retryOrGiveUp(message, false, attempt, e);
+				return;
+			}
+			partsStored.incrementAndGet();
+			receiveAll(completed);
+		}
+
+		private void receiveAll(List<M> completed)
+		{
+			for(M lastPart : completed)
+			{
+				pendingGroups.incrementAndGet();
+				receive(lastPart, 1);
+			}
+		}
+
+		/**
+		 * Receives the group completed by the message. Schedules a retry upon failure.
+		 *
+		 * @param lastPart
+		 * @param attempt
+		 */
+		private void receive(M lastPart, int attempt)
+		{
+			try
+			{
+				stages.receiveGroup(lastPart);
+			}
+			catch(Exception e)
+			{
+				retryOrGiveUp(lastPart, true, attempt, e);
+				return;
+			}
+			groupsReceived.incrementAndGet();
+			pendingGroups.decrementAndGet();
+		}
+
+		private void retryOrGiveUp(M message, boolean receive, int attempt, Exception e)
+		{
+			if(attempt >= maxAttempts)
+			{
+				if(receive)
+				{
+					groupFailures.incrementAndGet();
+					pendingGroups.decrementAndGet();
+				}
+				else
+					partFailures.incrementAndGet();
+				stages.onError(receive ? "receive" : "persist", message, e);
+			}
+			else
+			{
+				retries.incrementAndGet();
+				retryQueue.add(new Retry(message, receive, attempt + 1, retryDelayMS << Math.min(attempt - 1, 16)));
+			}
+		}
+
+	}
+
+	public long getAcceptedCount()
+	{
+		return accepted.get();
+	}
+
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	public long getDecodedCount()
+	{
+		return decoded.get();
+	}
+
+	public long getFailedCount()
+	{
+		return failed.get();
+	}
+
+	public long getStoredPartCount()
+	{
+		return partsStored.get();
+	}
+
+	public long getPartFailureCount()
+	{
+		return partFailures.get();
+	}
+
+	public long getReceivedGroupCount()
+	{
+		return groupsReceived.get();
+	}
+
+	public long getGroupFailureCount()
+	{
+		return groupFailures.get();
+	}
+
+	public long getRetryCount()
+	{
+		return retries.get();
+	}
+
+	public long getPersistedBatchCount()
+	{
+		return batchesPersisted.get();
+	}
+
+	/**
+	 * @return number of batches which could not be stored in a single transaction (and were stored message by message instead)
+	 */
+	public long getBatchFailureCount()
+	{
+		return batchFailures.get();
+	}
+
+	/**
+	 * @return number of messages and groups waiting to be retried
+	 */
+	public int getPendingRetryCount()
+	{
+		return retryQueue.size();
+	}
+
+	/**
+	 * @return number of inputs waiting to be decoded
+	 */
+	public int getBacklog()
+	{
+		return decodeQueue.size();
+	}
+
+}